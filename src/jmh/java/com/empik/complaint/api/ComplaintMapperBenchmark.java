@@ -0,0 +1,47 @@
+package com.empik.complaint.api;
+
+import com.empik.complaint.api.dto.ComplaintFullResponse;
+import com.empik.complaint.api.dto.ComplaintResponse;
+import com.empik.complaint.model.Complaint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComplaintMapperBenchmark {
+
+	private final Complaint complaint = Complaint.builder()
+			.id("663e71f9a1a34d4a99a6c458")
+			.productId("31f871b0-321f-4063-88b2-b4aeca45adf0")
+			.content("This product broke after two days.")
+			.creationDate(LocalDateTime.of(2025, 4, 1, 12, 30))
+			.updateDate(LocalDateTime.of(2025, 4, 2, 8, 15))
+			.complainantId("2a0863a2-563f-4a6c-abd3-5305bbfa6436")
+			.country("Poland")
+			.counter(4)
+			.build();
+
+	@Benchmark
+	public ComplaintResponse toComplaintResponse() {
+		return ComplaintMapper.toComplaintResponse(complaint);
+	}
+
+	@Benchmark
+	public ComplaintFullResponse toFullResponse() {
+		return ComplaintMapper.toFullResponse(complaint);
+	}
+}
@@ -0,0 +1,77 @@
+package com.empik.complaint.api;
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.api.dto.ComplaintFullResponse;
+import com.empik.complaint.api.dto.ComplaintResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON (de)serialization of the API records with an ObjectMapper configured the way Spring Boot configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+	private ObjectWriter responseWriter;
+	private ObjectWriter fullResponseWriter;
+	private ObjectReader createRequestReader;
+
+	private ComplaintResponse response;
+	private ComplaintFullResponse fullResponse;
+	private byte[] createRequestJson;
+
+	@Setup
+	public void setUp() {
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		responseWriter = objectMapper.writerFor(ComplaintResponse.class);
+		fullResponseWriter = objectMapper.writerFor(ComplaintFullResponse.class);
+		createRequestReader = objectMapper.readerFor(ComplaintCreateRequest.class);
+
+		LocalDateTime creationDate = LocalDateTime.of(2025, 4, 1, 12, 30, 15, 123_000_000);
+		response = new ComplaintResponse("663e71f9a1a34d4a99a6c458", "31f871b0-321f-4063-88b2-b4aeca45adf0",
+				"This product broke after two days.", creationDate, creationDate.plusDays(1), "Poland");
+		fullResponse = new ComplaintFullResponse("663e71f9a1a34d4a99a6c458", "31f871b0-321f-4063-88b2-b4aeca45adf0",
+				"This product broke after two days.", creationDate, creationDate.plusDays(1),
+				"2a0863a2-563f-4a6c-abd3-5305bbfa6436", "Poland", 4);
+		createRequestJson = """
+				{"productId":"31f871b0-321f-4063-88b2-b4aeca45adf0","content":"This product broke after two days.",\
+				"complainantId":"2a0863a2-563f-4a6c-abd3-5305bbfa6436"}""".getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public byte[] serializeComplaintResponse() throws IOException {
+		return responseWriter.writeValueAsBytes(response);
+	}
+
+	@Benchmark
+	public byte[] serializeComplaintFullResponse() throws IOException {
+		return fullResponseWriter.writeValueAsBytes(fullResponse);
+	}
+
+	@Benchmark
+	public ComplaintCreateRequest deserializeComplaintCreateRequest() throws IOException {
+		return createRequestReader.readValue(createRequestJson);
+	}
+}
@@ -0,0 +1,134 @@
+package com.empik.complaint.api.controller;
+
+import com.empik.complaint.ComplaintApplication;
+import com.empik.complaint.api.dto.BulkComplaintResponse;
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.api.dto.ComplaintResponse;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complaints ingested per second over HTTP, by the whole application against a MongoDB container: a batch posted
+ * to the bulk endpoint versus the same number of single-item posts, {@value #SINGLE_IN_FLIGHT} in flight. Pairs
+ * repeat across invocations, so both new complaints and duplicates are written. The bulk endpoint is meant to
+ * sustain at least ten times the single-item rate. Needs Docker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulkIngestBenchmark {
+
+	private static final int BATCH = 1000;
+	private static final int SINGLE_IN_FLIGHT = 64;
+	private static final int PRODUCTS = 1000;
+	private static final int COMPLAINANTS = 1000;
+	private static final String COMPLAINTS_PATH = "/complaint/api/v1/complaints";
+
+	private MongoDBContainer mongoDBContainer;
+	private HttpServer server;
+	private ConfigurableApplicationContext context;
+	private WebClient webClient;
+	private final SplittableRandom random = new SplittableRandom(42);
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"));
+		mongoDBContainer.start();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/json/", exchange -> {
+			byte[] body = "{\"status\":\"success\",\"country\":\"Poland\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+
+		context = new SpringApplicationBuilder(ComplaintApplication.class)
+				.properties(Map.of(
+						"server.port", "0",
+						"spring.data.mongodb.uri", mongoDBContainer.getReplicaSetUrl(),
+						"application.geolocation.base-url", "http://127.0.0.1:" + server.getAddress().getPort(),
+						"logging.level.root", "WARN"))
+				.run();
+		String port = context.getEnvironment().getRequiredProperty("local.server.port");
+		webClient = WebClient.builder()
+				.baseUrl("http://127.0.0.1:" + port + COMPLAINTS_PATH)
+				.codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+				.build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+		server.stop(0);
+		mongoDBContainer.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<ComplaintResponse> singlePosts() {
+		return Flux.fromIterable(batch())
+				.flatMap(request -> webClient.post()
+						.contentType(MediaType.APPLICATION_JSON)
+						.bodyValue(request)
+						.retrieve()
+						.bodyToMono(ComplaintResponse.class), SINGLE_IN_FLIGHT)
+				.collectList()
+				.block();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<BulkComplaintResponse> bulkPost() {
+		return webClient.post()
+				.uri("/bulk")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.bodyValue(batch())
+				.retrieve()
+				.bodyToFlux(BulkComplaintResponse.class)
+				.collectList()
+				.block();
+	}
+
+	private List<ComplaintCreateRequest> batch() {
+		return random.ints(BATCH, 0, PRODUCTS * COMPLAINANTS)
+				.mapToObj(pair -> new ComplaintCreateRequest("product-" + pair % PRODUCTS,
+						"This product broke after two days.", "customer-" + pair / PRODUCTS))
+				.toList();
+	}
+}
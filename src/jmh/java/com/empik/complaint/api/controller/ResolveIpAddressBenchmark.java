@@ -0,0 +1,48 @@
+package com.empik.complaint.api.controller;
+
+import com.empik.complaint.api.ClientIpResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveIpAddressBenchmark {
+
+	private final ClientIpResolver resolver = new ClientIpResolver(List.of("10.0.0.0/8"));
+
+	private final MockServerWebExchange forwarded = MockServerWebExchange.from(MockServerHttpRequest
+			.post("/api/v1/complaints")
+			.header("X-Forwarded-For", "83.24.17.5, 10.0.0.2")
+			.remoteAddress(new InetSocketAddress("10.0.0.1", 54321)));
+
+	private final MockServerWebExchange direct = MockServerWebExchange.from(MockServerHttpRequest
+			.post("/api/v1/complaints")
+			.remoteAddress(new InetSocketAddress("83.24.17.5", 54321)));
+
+	@Benchmark
+	public String fromForwardedForHeader() {
+		return resolver.resolve(forwarded);
+	}
+
+	@Benchmark
+	public String fromRemoteAddress() {
+		return resolver.resolve(direct);
+	}
+}
@@ -0,0 +1,113 @@
+package com.empik.complaint.client;
+
+import com.empik.complaint.config.WebClientConfig;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups through {@link HttpGeoLocationClient} from 128 concurrent callers to a stub provider on localhost
+ * that answers after 10 ms, with connection pools smaller than, close to and larger than the concurrency.
+ * Throughput shows where the pool caps the request rate; the sample-time percentiles show the tail latency
+ * of callers queueing for a connection. The client runs with the production pool and timeout settings except
+ * for the pool size; cache, retries and the circuit breaker are off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(128)
+@Fork(1)
+public class GeoConnectionPoolBenchmark {
+
+	private static final long PROVIDER_LATENCY_MS = 10;
+
+	@Param({"16", "64", "256"})
+	int maxConnections;
+
+	private HttpServer server;
+	private ConnectionProvider connectionProvider;
+	private HttpGeoLocationClient client;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/json/", exchange -> {
+			try {
+				Thread.sleep(PROVIDER_LATENCY_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = "{\"status\":\"success\",\"country\":\"Poland\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.start();
+
+		connectionProvider = ConnectionProvider.builder("geolocation-benchmark")
+				.maxConnections(maxConnections)
+				.pendingAcquireMaxCount(1000)
+				.pendingAcquireTimeout(Duration.ofSeconds(10))
+				.maxIdleTime(Duration.ofSeconds(30))
+				.build();
+
+		String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		WebClient webClient = WebClient.builder()
+				.baseUrl(baseUrl)
+				.clientConnector(new ReactorClientHttpConnector(
+						WebClientConfig.geoLocationHttpClient(connectionProvider, HttpProtocol.HTTP11)))
+				.build();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		GeoLocationCache noCache = new GeoLocationCache(meterRegistry, false, 0, 0, 0);
+		GeoLocationCircuitBreaker noCircuitBreaker = new GeoLocationCircuitBreaker(meterRegistry, false, 50, 20, 0.5,
+				2000, 0.8, 10_000, 3, 250, 5000, 3, 0.1, 10);
+		client = new HttpGeoLocationClient(webClient, noCache, noCircuitBreaker, meterRegistry);
+		ReflectionTestUtils.setField(client, "geoLocationBaseUrl", baseUrl);
+		ReflectionTestUtils.setField(client, "maxAttempts", 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		connectionProvider.dispose();
+		server.stop(0);
+	}
+
+	@Benchmark
+	public String lookup() {
+		int address = ThreadLocalRandom.current().nextInt();
+		return client.getCountryFromIp((address >>> 24) + "." + (address >>> 16 & 0xFF) + "." + (address >>> 8 & 0xFF)
+				+ "." + (address & 0xFF)).block();
+	}
+}
@@ -0,0 +1,134 @@
+package com.empik.complaint.client;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares country resolution through the local {@link GeoIpDatabase} with a round trip through
+ * {@link HttpGeoLocationClient} to a stub server on localhost (cache disabled, no network latency),
+ * i.e. the best case for the HTTP path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoLookupBenchmark {
+
+	private static final int ADDRESSES = 4096;
+
+	@State(Scope.Benchmark)
+	public static class LocalDatabase {
+
+		@Param({"1000", "300000"})
+		int ranges;
+
+		GeoIpDatabase database;
+		String[] addresses;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			Path file = Files.createTempFile("geoip", ".csv");
+			try (Writer writer = Files.newBufferedWriter(file)) {
+				long blockSize = Long.highestOneBit((1L << 32) / ranges);
+				int prefix = 32 - Long.numberOfTrailingZeros(blockSize);
+				for (int i = 0; i < ranges; i++) {
+					writer.write(toDottedQuad(i * blockSize) + "/" + prefix + ",Country" + (i % 250) + "\n");
+				}
+			}
+			database = GeoIpDatabase.load(file);
+			Files.delete(file);
+			addresses = randomAddresses();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class HttpProvider {
+
+		HttpServer server;
+		HttpGeoLocationClient client;
+		String[] addresses;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/json/", exchange -> {
+				byte[] body = "{\"status\":\"success\",\"country\":\"Poland\"}".getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			});
+			server.setExecutor(Executors.newFixedThreadPool(4));
+			server.start();
+
+			String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+			SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+			GeoLocationCache noCache = new GeoLocationCache(meterRegistry, false, 0, 0, 0);
+			GeoLocationCircuitBreaker circuitBreaker = new GeoLocationCircuitBreaker(meterRegistry, true, 50, 20, 0.5,
+					2000, 0.8, 10_000, 3, 250, 5000, 3, 0.1, 10);
+			client = new HttpGeoLocationClient(WebClient.builder().baseUrl(baseUrl).build(), noCache, circuitBreaker,
+					meterRegistry);
+			ReflectionTestUtils.setField(client, "geoLocationBaseUrl", baseUrl);
+			ReflectionTestUtils.setField(client, "maxAttempts", 0);
+			addresses = randomAddresses();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			server.stop(0);
+		}
+	}
+
+	@Benchmark
+	public String localDatabase(LocalDatabase state) {
+		return state.database.lookup(state.addresses[state.next++ & (ADDRESSES - 1)]);
+	}
+
+	@Benchmark
+	public String httpProvider(HttpProvider state) {
+		return state.client.getCountryFromIp(state.addresses[state.next++ & (ADDRESSES - 1)]).block();
+	}
+
+	private static String[] randomAddresses() {
+		SplittableRandom random = new SplittableRandom(42);
+		String[] addresses = new String[ADDRESSES];
+		for (int i = 0; i < ADDRESSES; i++) {
+			addresses[i] = toDottedQuad(random.nextLong(1L << 32));
+		}
+		return addresses;
+	}
+
+	private static String toDottedQuad(long address) {
+		return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+	}
+}
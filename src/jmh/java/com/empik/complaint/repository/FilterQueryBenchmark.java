@@ -0,0 +1,83 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ComplaintCursor;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the {@code findByFilters} query, and mapping it to the Mongo document the way the template does before sending it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterQueryBenchmark {
+
+	private final LocalDateTime fromDate = LocalDateTime.of(2025, 1, 1, 0, 0);
+	private final LocalDateTime toDate = LocalDateTime.of(2025, 4, 1, 0, 0);
+	private final ComplaintCursor cursor = new ComplaintCursor(LocalDateTime.of(2025, 2, 1, 0, 0), "663e71f9a1a34d4a99a6c458");
+
+	private QueryMapper queryMapper;
+	private MongoPersistentEntity<?> entity;
+
+	@Setup
+	public void setUp() {
+		MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+		MongoMappingContext mappingContext = new MongoMappingContext();
+		mappingContext.setInitialEntitySet(Set.of(Complaint.class));
+		mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		mappingContext.initialize();
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		queryMapper = new QueryMapper(converter);
+		entity = mappingContext.getRequiredPersistentEntity(Complaint.class);
+	}
+
+	@Benchmark
+	public Query buildNoFilters() {
+		return query(null, null, null, null, null);
+	}
+
+	@Benchmark
+	public Query buildAllFilters() {
+		return query("31f871b0-321f-4063-88b2-b4aeca45adf0", "2a0863a2-563f-4a6c-abd3-5305bbfa6436", fromDate, toDate, null);
+	}
+
+	@Benchmark
+	public Document buildAndMapAllFiltersWithCursor() {
+		Query query = query("31f871b0-321f-4063-88b2-b4aeca45adf0", "2a0863a2-563f-4a6c-abd3-5305bbfa6436", fromDate, toDate, cursor);
+		return queryMapper.getMappedObject(query.getQueryObject(), entity);
+	}
+
+	private static Query query(String productId, String complainantId, LocalDateTime fromDate, LocalDateTime toDate,
+							   ComplaintCursor cursor) {
+		return Query.query(ComplaintRepositoryImpl.filterCriteria(productId, complainantId, fromDate, toDate, cursor))
+				.with(ComplaintRepositoryImpl.CURSOR_ORDER)
+				.limit(10);
+	}
+}
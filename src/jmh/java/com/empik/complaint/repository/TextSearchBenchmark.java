@@ -0,0 +1,124 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.Complaint;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of {@code searchByText} against a MongoDB container seeded with generated complaints,
+ * for a rare and a common term, with and without a product filter. Seeding the larger sizes takes minutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TextSearchBenchmark {
+
+	private static final int PRODUCTS = 1000;
+	private static final int INSERT_BATCH = 10_000;
+	private static final String[] COMMON_WORDS = {"broken", "late", "delivery", "screen", "battery", "refund",
+			"cracked", "missing", "damaged", "package", "charger", "cable", "return", "wrong", "colour", "size"};
+	private static final String RARE_WORD = "overheating";
+
+	@Param({"100000", "1000000"})
+	int complaints;
+
+	private MongoDBContainer mongoDBContainer;
+	private MongoClient mongoClient;
+	private ComplaintRepositoryImpl repository;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"));
+		mongoDBContainer.start();
+		mongoClient = MongoClients.create(mongoDBContainer.getReplicaSetUrl());
+		ReactiveMongoTemplate mongoTemplate = new ReactiveMongoTemplate(mongoClient, "complaints");
+		repository = new ComplaintRepositoryImpl(mongoTemplate, new ComplaintArchive(mongoTemplate));
+
+		SplittableRandom random = new SplittableRandom(42);
+		LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+		Flux.range(0, complaints)
+				.map(i -> Complaint.builder()
+						.productId("product-" + random.nextInt(PRODUCTS))
+						.complainantId("customer-" + i)
+						.content(content(random, i))
+						.creationDate(start.plusMinutes(i))
+						.country("Poland")
+						.build())
+				.buffer(INSERT_BATCH)
+				.concatMap(batch -> mongoTemplate.insertAll(batch).then())
+				.blockLast();
+
+		new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+				.resolveIndexFor(Complaint.class)
+				.forEach(definition -> mongoTemplate.indexOps(Complaint.class).ensureIndex(definition).block());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mongoClient.close();
+		mongoDBContainer.stop();
+	}
+
+	@Benchmark
+	public List<Complaint> rareTerm() {
+		return search(RARE_WORD, null);
+	}
+
+	@Benchmark
+	public List<Complaint> commonTerm() {
+		return search("broken", null);
+	}
+
+	@Benchmark
+	public List<Complaint> commonTermWithProduct() {
+		return search("broken", "product-7");
+	}
+
+	@Benchmark
+	public List<Complaint> phrase() {
+		return search("\"cracked screen\"", null);
+	}
+
+	private List<Complaint> search(String text, String productId) {
+		return repository.searchByText(text, productId, null, null, null, 0, 20).collectList().block();
+	}
+
+	private static String content(SplittableRandom random, int i) {
+		StringBuilder content = new StringBuilder();
+		int words = 5 + random.nextInt(15);
+		for (int w = 0; w < words; w++) {
+			content.append(COMMON_WORDS[random.nextInt(COMMON_WORDS.length)]).append(' ');
+		}
+		// roughly one complaint in ten thousand mentions the rare word
+		if (i % 10_000 == 0) {
+			content.append(RARE_WORD);
+		}
+		return content.toString().trim();
+	}
+}
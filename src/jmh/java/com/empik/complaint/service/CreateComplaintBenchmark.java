@@ -0,0 +1,77 @@
+package com.empik.complaint.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.client.GeoLocationClient;
+import com.empik.complaint.model.Complaint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ComplaintService#createComplaint} end to end against an in-memory repository and a constant
+ * geolocation client: the cost of the service itself, without I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateComplaintBenchmark {
+
+	private static final String IP_ADDRESS = "83.24.17.5";
+
+	private final InMemoryComplaintRepository repository = new InMemoryComplaintRepository();
+	private final ComplaintCreateRequest duplicate =
+			new ComplaintCreateRequest("31f871b0-321f-4063-88b2-b4aeca45adf0", "This product broke after two days.", "complainant");
+
+	private ComplaintService complaintService;
+	private long nextProduct;
+
+	@Setup
+	public void setUp() {
+		// the per-complaint INFO line would otherwise measure the console appender rather than the service
+		((Logger) LoggerFactory.getLogger(ComplaintService.class)).setLevel(Level.WARN);
+		GeoLocationClient geoLocationClient = ipAddress -> Mono.just("Poland");
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		ComplaintCache noCache = new ComplaintCache(meterRegistry, false, 0, 0, 0, ComplaintCache.ExpirationPolicy.WRITE);
+		CountryEnrichmentPipeline pipeline =
+				new CountryEnrichmentPipeline(repository.proxy(), geoLocationClient, noCache, meterRegistry);
+		ComplaintStatsService noStats = new ComplaintStatsService(null, repository.proxy(), null, meterRegistry);
+		CounterAggregator noAggregation = new CounterAggregator(repository.proxy(), noStats, meterRegistry);
+		complaintService = new ComplaintService(repository.proxy(), geoLocationClient, pipeline, noCache, noAggregation,
+				noStats, meterRegistry);
+	}
+
+	@Setup(org.openjdk.jmh.annotations.Level.Iteration)
+	public void clearRepository() {
+		repository.clear();
+		complaintService.createComplaint(duplicate, IP_ADDRESS).block();
+	}
+
+	@Benchmark
+	public Complaint createNew() {
+		ComplaintCreateRequest request =
+				new ComplaintCreateRequest("product-" + nextProduct++, "This product broke after two days.", "complainant");
+		return complaintService.createComplaint(request, IP_ADDRESS).block();
+	}
+
+	@Benchmark
+	public Complaint createDuplicate() {
+		return complaintService.createComplaint(duplicate, IP_ADDRESS).block();
+	}
+}
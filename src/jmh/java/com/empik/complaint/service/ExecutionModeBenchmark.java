@@ -0,0 +1,161 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.ComplaintApplication;
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.repository.ComplaintIndexInitializer;
+import com.empik.complaint.repository.ComplaintRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * The reactive and the virtual-thread execution mode side by side: the whole application against a MongoDB
+ * container and a geolocation stub answering after 10 ms, driven through {@link ComplaintOperations} like the API
+ * drives it. Each operation is a wave of {@code inFlight} concurrent requests, so the sampled time is the latency of
+ * a wave (throughput is {@code inFlight} divided by it) and {@code gc.alloc.rate.norm} divided by {@code inFlight}
+ * is the memory allocated per in-flight request, virtual thread stacks included. Needs Docker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+	private static final long PROVIDER_LATENCY_MS = 10;
+	private static final int SEEDED = 10_000;
+	private static final String CONTENT = "This product broke after two days.";
+
+	@Param({"reactive", "virtual-threads"})
+	String mode;
+
+	@Param({"1", "64", "512"})
+	int inFlight;
+
+	private MongoDBContainer mongoDBContainer;
+	private HttpServer server;
+	private ConfigurableApplicationContext context;
+	private ComplaintOperations complaintOperations;
+	private List<Complaint> seeded;
+	private final AtomicLong nextProduct = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"));
+		mongoDBContainer.start();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/json/", exchange -> {
+			try {
+				Thread.sleep(PROVIDER_LATENCY_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = "{\"status\":\"success\",\"country\":\"Poland\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.start();
+
+		context = new SpringApplicationBuilder(ComplaintApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(Map.of(
+						"spring.data.mongodb.uri", mongoDBContainer.getReplicaSetUrl(),
+						"application.execution.mode", mode,
+						"application.geolocation.base-url", "http://127.0.0.1:" + server.getAddress().getPort(),
+						// every new complaint pays for a lookup, as most do in production
+						"application.geolocation.cache.enabled", "false",
+						"logging.level.root", "WARN"))
+				.run();
+		context.getBean(ComplaintIndexInitializer.class).ensureIndexes().block();
+		seeded = context.getBean(ComplaintRepository.class)
+				.saveAll(Flux.range(0, SEEDED).map(i -> Complaint.builder()
+						.productId("seeded-" + i % 100)
+						.complainantId("customer-" + i)
+						.content(CONTENT)
+						.country("Poland")
+						.build()))
+				.collectList()
+				.block();
+		complaintOperations = context.getBean(ComplaintOperations.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+		server.stop(0);
+		mongoDBContainer.stop();
+	}
+
+	@Benchmark
+	public List<Complaint> createNew() {
+		return wave(i -> complaintOperations.createComplaint(
+				new ComplaintCreateRequest("product-" + nextProduct.incrementAndGet(), CONTENT, "customer"), ipAddress()));
+	}
+
+	@Benchmark
+	public List<Complaint> createDuplicate() {
+		return wave(i -> {
+			Complaint complaint = randomSeeded();
+			return complaintOperations.createComplaint(
+					new ComplaintCreateRequest(complaint.getProductId(), CONTENT, complaint.getComplainantId()), ipAddress());
+		});
+	}
+
+	@Benchmark
+	public List<Complaint> getById() {
+		return wave(i -> complaintOperations.getComplaintById(randomSeeded().getId()));
+	}
+
+	private List<Complaint> wave(IntFunction<Mono<Complaint>> request) {
+		return Flux.range(0, inFlight)
+				.flatMap(request::apply, inFlight)
+				.collectList()
+				.block();
+	}
+
+	private Complaint randomSeeded() {
+		return seeded.get(ThreadLocalRandom.current().nextInt(seeded.size()));
+	}
+
+	private static String ipAddress() {
+		int address = ThreadLocalRandom.current().nextInt();
+		return (address >>> 24) + "." + (address >>> 16 & 0xFF) + "." + (address >>> 8 & 0xFF) + "." + (address & 0xFF);
+	}
+}
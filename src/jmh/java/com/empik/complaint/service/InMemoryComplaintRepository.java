@@ -0,0 +1,53 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.repository.ComplaintRepository;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ComplaintRepository} stand-in backed by a map, implementing only the calls made by the create path,
+ * so the benchmark measures the service and Reactor overhead without a database round trip.
+ */
+final class InMemoryComplaintRepository {
+
+	private final Map<String, Complaint> complaints = new ConcurrentHashMap<>();
+
+	ComplaintRepository proxy() {
+		return (ComplaintRepository) Proxy.newProxyInstance(ComplaintRepository.class.getClassLoader(),
+				new Class<?>[]{ComplaintRepository.class},
+				(proxy, method, args) -> switch (method.getName()) {
+					case "incrementCounter" -> incrementCounter((String) args[0], (String) args[1]);
+					case "upsertComplaint" -> upsertComplaint((Complaint) args[0]);
+					default -> throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	void clear() {
+		complaints.clear();
+	}
+
+	private Mono<Complaint> incrementCounter(String productId, String complainantId) {
+		return Mono.justOrEmpty(complaints.computeIfPresent(key(productId, complainantId), (key, existing) -> {
+			existing.setCounter(existing.getCounter() + 1);
+			return existing;
+		}));
+	}
+
+	private Mono<Complaint> upsertComplaint(Complaint complaint) {
+		complaint.setId(new ObjectId().toHexString());
+		return Mono.just(complaints.merge(key(complaint.getProductId(), complaint.getComplainantId()), complaint,
+				(existing, inserted) -> {
+					existing.setCounter(existing.getCounter() + 1);
+					return existing;
+				}));
+	}
+
+	private static String key(String productId, String complainantId) {
+		return productId + '\u0000' + complainantId;
+	}
+}
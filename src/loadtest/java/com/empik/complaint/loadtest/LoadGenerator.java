@@ -0,0 +1,192 @@
+package com.empik.complaint.loadtest;
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.model.Complaint;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends a seeded, reproducible mix of requests at a fixed rate (an open model: a slow response does not delay the
+ * next request). Latency is measured from when a request was due, not from when it was sent, so a stalled
+ * application shows up in the percentiles instead of quietly lowering the offered load.
+ * <p>
+ * Requests are drawn from the seeded complaints the way real traffic is skewed: duplicates and listings favour a
+ * small set of popular products and pairs, content updates are spread evenly, and creates add new pairs.
+ */
+final class LoadGenerator {
+
+	enum Operation {
+		CREATE, DUPLICATE, UPDATE, LIST
+	}
+
+	/**
+	 * What was measured for one operation after the warm-up.
+	 */
+	record Measurement(Histogram latencies, long errors, long dropped) {
+	}
+
+	private static final String COMPLAINTS_PATH = "/complaint/api/v1/complaints";
+	private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final WebClient webClient;
+	private final List<Complaint> seeded;
+	private final List<String> productIds;
+	private final Operation[] operations;
+	private final int[] cumulativeWeights;
+	private final int ipPool;
+	private final int maxInFlight;
+	private final SplittableRandom random;
+	private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> dropped = new EnumMap<>(Operation.class);
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private long sequence;
+
+	LoadGenerator(WebClient webClient, List<Complaint> seeded, List<String> productIds, Map<Operation, Integer> mix,
+				  int ipPool, int maxInFlight, long seed) {
+		this.webClient = webClient;
+		this.seeded = seeded;
+		this.productIds = productIds;
+		this.operations = mix.keySet().toArray(Operation[]::new);
+		this.cumulativeWeights = new int[operations.length];
+		int total = 0;
+		for (int i = 0; i < operations.length; i++) {
+			total += mix.get(operations[i]);
+			cumulativeWeights[i] = total;
+		}
+		this.ipPool = ipPool;
+		this.maxInFlight = maxInFlight;
+		this.random = new SplittableRandom(seed);
+		for (Operation operation : operations) {
+			recorders.put(operation, new Recorder(HIGHEST_LATENCY_MICROS, 3));
+			errors.put(operation, new LongAdder());
+			dropped.put(operation, new LongAdder());
+		}
+	}
+
+	/**
+	 * Offers {@code rate} requests per second for {@code warmup} plus {@code duration}, waits for the outstanding
+	 * ones and returns what was measured after the warm-up.
+	 */
+	Map<Operation, Measurement> run(double rate, Duration warmup, Duration duration) {
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long start = System.nanoTime();
+		long measureFrom = start + warmup.toNanos();
+		long total = (warmup.toNanos() + duration.toNanos()) / intervalNanos;
+		long[] issued = {0};
+
+		// a tick every millisecond sends everything that became due since the last one
+		Flux.interval(Duration.ofMillis(1), Schedulers.single())
+				.takeUntil(tick -> issued[0] >= total)
+				.doOnNext(tick -> {
+					long due = Math.min(total, (System.nanoTime() - start) / intervalNanos + 1);
+					for (; issued[0] < due; issued[0]++) {
+						long intendedStart = start + issued[0] * intervalNanos;
+						issue(intendedStart, intendedStart >= measureFrom);
+					}
+				})
+				.blockLast();
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+
+		Map<Operation, Measurement> measurements = new EnumMap<>(Operation.class);
+		for (Operation operation : operations) {
+			measurements.put(operation, new Measurement(recorders.get(operation).getIntervalHistogram(),
+					errors.get(operation).sum(), dropped.get(operation).sum()));
+		}
+		return measurements;
+	}
+
+	private void issue(long intendedStart, boolean measured) {
+		Operation operation = nextOperation();
+		WebClient.RequestHeadersSpec<?> request = request(operation);
+		if (inFlight.get() >= maxInFlight) {
+			if (measured) {
+				dropped.get(operation).increment();
+			}
+			return;
+		}
+		inFlight.incrementAndGet();
+		request.exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().is2xxSuccessful()))
+				.onErrorReturn(false)
+				.doFinally(signal -> inFlight.decrementAndGet())
+				.subscribe(successful -> {
+					if (!measured) {
+						return;
+					}
+					long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+					recorders.get(operation).recordValue(Math.min(latencyMicros, HIGHEST_LATENCY_MICROS));
+					if (!successful) {
+						errors.get(operation).increment();
+					}
+				});
+	}
+
+	private Operation nextOperation() {
+		int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		int i = 0;
+		while (pick >= cumulativeWeights[i]) {
+			i++;
+		}
+		return operations[i];
+	}
+
+	private WebClient.RequestHeadersSpec<?> request(Operation operation) {
+		long id = ++sequence;
+		return switch (operation) {
+			case CREATE -> create(new ComplaintCreateRequest(popular(productIds), "Complaint " + id, uuid().toString()));
+			case DUPLICATE -> {
+				Complaint complaint = popular(seeded);
+				yield create(new ComplaintCreateRequest(complaint.getProductId(), "Complaint " + id, complaint.getComplainantId()));
+			}
+			case UPDATE -> webClient.put()
+					.uri(COMPLAINTS_PATH + "/{id}/content?content={content}",
+							seeded.get(random.nextInt(seeded.size())).getId(), "Updated " + id)
+					.header("X-Forwarded-For", ipAddress());
+			case LIST -> webClient.get()
+					.uri(COMPLAINTS_PATH + "?productId={productId}&size=20", popular(productIds))
+					.accept(MediaType.APPLICATION_JSON);
+		};
+	}
+
+	private WebClient.RequestHeadersSpec<?> create(ComplaintCreateRequest body) {
+		return webClient.post()
+				.uri(COMPLAINTS_PATH)
+				.header("X-Forwarded-For", ipAddress())
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+				.bodyValue(body);
+	}
+
+	/** Picks with a strong bias towards the head of the list, which holds the popular entries. */
+	private <T> T popular(List<T> values) {
+		double skewed = Math.pow(random.nextDouble(), 3);
+		return values.get((int) (skewed * values.size()));
+	}
+
+	private String ipAddress() {
+		int host = random.nextInt(ipPool);
+		return "10." + (host >>> 16 & 0xFF) + "." + (host >>> 8 & 0xFF) + "." + (host & 0xFF);
+	}
+
+	private UUID uuid() {
+		return new UUID(random.nextLong(), random.nextLong());
+	}
+}
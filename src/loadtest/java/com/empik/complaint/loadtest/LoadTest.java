@@ -0,0 +1,170 @@
+package com.empik.complaint.loadtest;
+
+import com.empik.complaint.ComplaintApplication;
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.repository.ComplaintIndexInitializer;
+import com.empik.complaint.repository.ComplaintRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * End-to-end load test: boots the application against a Mongo container and a {@link StubGeoLocationServer},
+ * seeds complaints, drives a {@link LoadGenerator} mix at a fixed rate and reports throughput and latency
+ * percentiles. Exits with 1 when a limit of the baseline is broken, or when there is no baseline recorded for the
+ * scenario to check the run against. Everything random is derived from
+ * {@code seed}, so two runs with the same arguments send the same requests.
+ * <p>
+ * Run with {@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="rate=500 duration=120"}; see
+ * {@link LoadTestOptions} for the arguments.
+ */
+public final class LoadTest {
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestOptions options = LoadTestOptions.parse(args);
+		boolean passed;
+		MongoDBContainer mongo = isNull(options.mongoUri())
+				? new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
+				: null;
+		try (StubGeoLocationServer geoServer = new StubGeoLocationServer(options.geoLatencyMs(), options.geoJitterMs(),
+				options.geoErrorRate(), options.seed())) {
+			if (nonNull(mongo)) {
+				mongo.start();
+			}
+			String mongoUri = nonNull(mongo) ? mongo.getReplicaSetUrl("loadtest") : options.mongoUri();
+			try (ConfigurableApplicationContext context = start(options, mongoUri, geoServer.baseUrl())) {
+				passed = run(options, context, geoServer);
+			}
+		} finally {
+			if (nonNull(mongo)) {
+				mongo.stop();
+			}
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static ConfigurableApplicationContext start(LoadTestOptions options, String mongoUri, String geoBaseUrl) {
+		Map<String, Object> properties = new LinkedHashMap<>();
+		properties.put("server.port", 0);
+		properties.put("spring.data.mongodb.uri", mongoUri);
+		properties.put("application.geolocation.provider", "http");
+		properties.put("application.geolocation.base-url", geoBaseUrl);
+		// the generator runs on this host and reports the simulated clients in X-Forwarded-For
+		properties.put("application.client-ip.trusted-proxies", "127.0.0.1,::1");
+		properties.put("logging.level.root", "WARN");
+		properties.putAll(options.applicationProperties());
+		return new SpringApplicationBuilder(ComplaintApplication.class)
+				.properties(properties)
+				.run();
+	}
+
+	private static boolean run(LoadTestOptions options, ConfigurableApplicationContext context,
+							   StubGeoLocationServer geoServer) throws Exception {
+		context.getBean(ComplaintIndexInitializer.class).ensureIndexes().block();
+		ComplaintRepository complaintRepository = context.getBean(ComplaintRepository.class);
+		complaintRepository.deleteAll().block();
+
+		SplittableRandom random = new SplittableRandom(options.seed());
+		List<String> productIds = new ArrayList<>(options.products());
+		for (int i = 0; i < options.products(); i++) {
+			productIds.add(new UUID(random.nextLong(), random.nextLong()).toString());
+		}
+		List<Complaint> seeded = complaintRepository.saveAll(seed(options, productIds, random)).collectList().block();
+		System.out.printf("Seeded %d complaints for %d products%n", seeded.size(), productIds.size());
+
+		int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+		ConnectionProvider connectionProvider = ConnectionProvider.builder("loadtest")
+				.maxConnections(options.maxInFlight())
+				.pendingAcquireMaxCount(-1)
+				.build();
+		try {
+			WebClient webClient = WebClient.builder()
+					.baseUrl("http://127.0.0.1:" + port)
+					.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+					.build();
+			LoadGenerator generator = new LoadGenerator(webClient, seeded, productIds, options.mix(), options.ipPool(),
+					options.maxInFlight(), random.nextLong());
+			Duration duration = Duration.ofSeconds(options.durationSeconds());
+			System.out.printf("Offering %.0f requests/s for %d s after a %d s warm-up%n",
+					options.rate(), options.durationSeconds(), options.warmupSeconds());
+			Map<LoadGenerator.Operation, LoadGenerator.Measurement> measurements =
+					generator.run(options.rate(), Duration.ofSeconds(options.warmupSeconds()), duration);
+
+			LoadTestReport report = LoadTestReport.of(options.scenario(), measurements, duration);
+			report.print(System.out);
+			System.out.printf("Geolocation stub: %d requests, %d failed%n", geoServer.requests(), geoServer.failures());
+			report.write(Path.of(options.report()));
+			if (nonNull(options.recordBaseline())) {
+				report.writeBaseline(Path.of(options.recordBaseline()), options.tolerance());
+				System.out.println("Recorded baseline " + options.recordBaseline());
+			}
+			return check(options, report);
+		} finally {
+			connectionProvider.dispose();
+		}
+	}
+
+	private static List<Complaint> seed(LoadTestOptions options, List<String> productIds, SplittableRandom random) {
+		LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+		List<Complaint> complaints = new ArrayList<>(options.seedComplaints());
+		for (int i = 0; i < options.seedComplaints(); i++) {
+			complaints.add(Complaint.builder()
+					.productId(productIds.get((int) (Math.pow(random.nextDouble(), 3) * productIds.size())))
+					.complainantId(new UUID(random.nextLong(), random.nextLong()).toString())
+					.content("Seeded complaint " + i)
+					.creationDate(now.minusMinutes(random.nextInt(60 * 24 * 180)))
+					.country("Poland")
+					.counter(1)
+					.build());
+		}
+		return complaints;
+	}
+
+	/**
+	 * Checks the run against its baseline. A missing baseline or one recorded for a different scenario fails the
+	 * run as well, since the run could not be checked; pass {@code check-baseline=false} for exploratory runs.
+	 */
+	private static boolean check(LoadTestOptions options, LoadTestReport report) throws Exception {
+		if (!options.checkBaseline() || nonNull(options.recordBaseline())) {
+			return true;
+		}
+		Properties baseline = LoadTestReport.loadBaseline(options.baseline());
+		if (baseline.isEmpty()) {
+			System.out.println("No baseline " + options.baseline() + "; record one on the reference machine with record-baseline=<file>");
+			return false;
+		}
+		List<String> regressions = report.regressions(baseline);
+		if (isNull(regressions)) {
+			System.out.println("Baseline " + options.baseline() + " was recorded for a different scenario");
+			System.out.println("  baseline: " + baseline.getProperty(LoadTestReport.SCENARIO));
+			System.out.println("  this run: " + options.scenario());
+			return false;
+		}
+		regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+		System.out.println(regressions.isEmpty() ? "Within baseline " + options.baseline() : "Baseline broken");
+		return regressions.isEmpty();
+	}
+}
@@ -0,0 +1,138 @@
+package com.empik.complaint.loadtest;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code key=value} arguments of a load test run. Keys starting with {@code application.}, {@code spring.} or
+ * {@code logging.} are passed to the application under test, so a run can switch its features on.
+ */
+final class LoadTestOptions {
+
+	private static final String[] APPLICATION_PREFIXES = {"application.", "spring.", "logging."};
+
+	private final Map<String, String> values;
+
+	private LoadTestOptions(Map<String, String> values) {
+		this.values = values;
+	}
+
+	static LoadTestOptions parse(String[] args) {
+		Map<String, String> values = new LinkedHashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 1) {
+				throw new IllegalArgumentException("Expected key=value, got: " + arg);
+			}
+			values.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		return new LoadTestOptions(values);
+	}
+
+	/** Target request rate per second, kept regardless of how fast responses come back. */
+	double rate() {
+		return Double.parseDouble(values.getOrDefault("rate", "300"));
+	}
+
+	long warmupSeconds() {
+		return Long.parseLong(values.getOrDefault("warmup", "15"));
+	}
+
+	long durationSeconds() {
+		return Long.parseLong(values.getOrDefault("duration", "60"));
+	}
+
+	/** Requests beyond this many outstanding ones are not sent and count as errors. */
+	int maxInFlight() {
+		return Integer.parseInt(values.getOrDefault("max-in-flight", "2000"));
+	}
+
+	long seed() {
+		return Long.parseLong(values.getOrDefault("seed", "42"));
+	}
+
+	int products() {
+		return Integer.parseInt(values.getOrDefault("products", "1000"));
+	}
+
+	int seedComplaints() {
+		return Integer.parseInt(values.getOrDefault("seed-complaints", "10000"));
+	}
+
+	int ipPool() {
+		return Integer.parseInt(values.getOrDefault("ip-pool", "5000"));
+	}
+
+	/** Relative weights of the operations, e.g. {@code create:30,duplicate:40,update:10,list:20}. */
+	Map<LoadGenerator.Operation, Integer> mix() {
+		Map<LoadGenerator.Operation, Integer> mix = new EnumMap<>(LoadGenerator.Operation.class);
+		for (String entry : values.getOrDefault("mix", "create:30,duplicate:40,update:10,list:20").split(",")) {
+			String[] weight = entry.split(":");
+			mix.put(LoadGenerator.Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+		}
+		return mix;
+	}
+
+	long geoLatencyMs() {
+		return Long.parseLong(values.getOrDefault("geo-latency-ms", "20"));
+	}
+
+	long geoJitterMs() {
+		return Long.parseLong(values.getOrDefault("geo-jitter-ms", "10"));
+	}
+
+	double geoErrorRate() {
+		return Double.parseDouble(values.getOrDefault("geo-error-rate", "0.01"));
+	}
+
+	/** An existing Mongo to run against instead of a fresh container. */
+	String mongoUri() {
+		return values.get("mongo-uri");
+	}
+
+	/** Baseline file, or a classpath resource when no such file exists. */
+	String baseline() {
+		return values.getOrDefault("baseline", "loadtest-baseline.properties");
+	}
+
+	boolean checkBaseline() {
+		return Boolean.parseBoolean(values.getOrDefault("check-baseline", "true"));
+	}
+
+	/** File to write this run's results into as a new baseline, loosened by {@link #tolerance()}. */
+	String recordBaseline() {
+		return values.get("record-baseline");
+	}
+
+	double tolerance() {
+		return Double.parseDouble(values.getOrDefault("tolerance", "0.25"));
+	}
+
+	String report() {
+		return values.getOrDefault("report", "target/loadtest-report.json");
+	}
+
+	/**
+	 * What a baseline is only comparable under: the offered load and the behaviour of the geolocation provider.
+	 */
+	String scenario() {
+		StringBuilder mix = new StringBuilder();
+		mix().forEach((operation, weight) -> mix.append(mix.isEmpty() ? "" : ",")
+				.append(operation.name().toLowerCase()).append(':').append(weight));
+		return "rate=" + rate() + " mix=" + mix + " geo-latency-ms=" + geoLatencyMs() + " geo-error-rate=" + geoErrorRate()
+				+ " " + applicationProperties();
+	}
+
+	Map<String, String> applicationProperties() {
+		Map<String, String> properties = new LinkedHashMap<>();
+		values.forEach((key, value) -> {
+			for (String prefix : APPLICATION_PREFIXES) {
+				if (key.startsWith(prefix)) {
+					properties.put(key, value);
+				}
+			}
+		});
+		return properties;
+	}
+}
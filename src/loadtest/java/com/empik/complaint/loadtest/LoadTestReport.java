@@ -0,0 +1,177 @@
+package com.empik.complaint.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Throughput and latency percentiles of a run per operation and over all of them, and their comparison with a
+ * baseline. A baseline holds {@code <operation>.min-throughput}, {@code <operation>.max-error-rate},
+ * {@code <operation>.max-p99-ms} and {@code <operation>.max-p999-ms} limits, where the operation is one of
+ * {@code create}, {@code duplicate}, {@code update}, {@code list} or {@code all}, plus the {@code scenario} it
+ * was recorded under; it is only checked against runs of the same scenario.
+ */
+final class LoadTestReport {
+
+	static final String ALL = "all";
+
+	static final String SCENARIO = "scenario";
+
+	record OperationResult(String operation, long requests, long errors, double throughput, double errorRate,
+						   double p50Ms, double p99Ms, double p999Ms, double maxMs) {
+	}
+
+	private final String scenario;
+	private final List<OperationResult> results;
+
+	private LoadTestReport(String scenario, List<OperationResult> results) {
+		this.scenario = scenario;
+		this.results = results;
+	}
+
+	static LoadTestReport of(String scenario, Map<LoadGenerator.Operation, LoadGenerator.Measurement> measurements,
+							 Duration duration) {
+		List<OperationResult> results = new ArrayList<>();
+		Histogram all = new Histogram(3);
+		long allErrors = 0;
+		long allDropped = 0;
+		for (Map.Entry<LoadGenerator.Operation, LoadGenerator.Measurement> entry : measurements.entrySet()) {
+			LoadGenerator.Measurement measurement = entry.getValue();
+			results.add(result(entry.getKey().name().toLowerCase(), measurement.latencies(), measurement.errors(),
+					measurement.dropped(), duration));
+			all.add(measurement.latencies());
+			allErrors += measurement.errors();
+			allDropped += measurement.dropped();
+		}
+		results.add(result(ALL, all, allErrors, allDropped, duration));
+		return new LoadTestReport(scenario, results);
+	}
+
+	void print(PrintStream out) {
+		out.println();
+		out.println("Scenario: " + scenario);
+		out.printf(Locale.ROOT, "%-10s %10s %8s %12s %10s %10s %10s %10s%n",
+				"operation", "requests", "errors", "throughput", "p50 ms", "p99 ms", "p999 ms", "max ms");
+		for (OperationResult result : results) {
+			out.printf(Locale.ROOT, "%-10s %10d %8d %10.1f/s %10.2f %10.2f %10.2f %10.2f%n",
+					result.operation(), result.requests(), result.errors(), result.throughput(),
+					result.p50Ms(), result.p99Ms(), result.p999Ms(), result.maxMs());
+		}
+	}
+
+	void write(Path path) throws IOException {
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put(SCENARIO, scenario);
+		report.put("results", results);
+		new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(path.toFile(), report);
+	}
+
+	/**
+	 * Describes every limit of the baseline this run broke, or returns {@code null} when the baseline was recorded
+	 * under a different scenario.
+	 */
+	List<String> regressions(Properties baseline) {
+		if (!scenario.equals(baseline.getProperty(SCENARIO))) {
+			return null;
+		}
+		List<String> regressions = new ArrayList<>();
+		for (OperationResult result : results) {
+			String prefix = result.operation() + ".";
+			atLeast(regressions, baseline, prefix + "min-throughput", result.throughput());
+			atMost(regressions, baseline, prefix + "max-error-rate", result.errorRate());
+			atMost(regressions, baseline, prefix + "max-p99-ms", result.p99Ms());
+			atMost(regressions, baseline, prefix + "max-p999-ms", result.p999Ms());
+		}
+		return regressions;
+	}
+
+	/**
+	 * Writes this run's results as a baseline, loosened by {@code tolerance} so that ordinary run-to-run noise
+	 * passes.
+	 */
+	void writeBaseline(Path path, double tolerance) throws IOException {
+		Properties baseline = new Properties();
+		baseline.setProperty(SCENARIO, scenario);
+		for (OperationResult result : results) {
+			String prefix = result.operation() + ".";
+			baseline.setProperty(prefix + "min-throughput", format(result.throughput() * (1 - tolerance)));
+			baseline.setProperty(prefix + "max-error-rate", format(Math.max(result.errorRate() * (1 + tolerance), 0.001)));
+			baseline.setProperty(prefix + "max-p99-ms", format(result.p99Ms() * (1 + tolerance)));
+			baseline.setProperty(prefix + "max-p999-ms", format(result.p999Ms() * (1 + tolerance)));
+		}
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		try (Writer writer = Files.newBufferedWriter(path)) {
+			baseline.store(writer, "Recorded by the load test with tolerance " + tolerance);
+		}
+	}
+
+	/**
+	 * Loads the baseline from a file or, when there is no such file, from the classpath; empty when neither exists.
+	 */
+	static Properties loadBaseline(String location) throws IOException {
+		Properties baseline = new Properties();
+		Path path = Path.of(location);
+		if (Files.isRegularFile(path)) {
+			try (InputStream in = Files.newInputStream(path)) {
+				baseline.load(in);
+			}
+			return baseline;
+		}
+		try (InputStream in = LoadTestReport.class.getClassLoader().getResourceAsStream(location)) {
+			if (nonNull(in)) {
+				baseline.load(in);
+			}
+		}
+		return baseline;
+	}
+
+	private static OperationResult result(String operation, Histogram latencies, long errors, long dropped,
+										  Duration duration) {
+		// dropped requests never got a response, so they count as errors but have no latency
+		long requests = latencies.getTotalCount() + dropped;
+		long failed = errors + dropped;
+		double seconds = duration.toMillis() / 1000.0;
+		return new OperationResult(operation, requests, failed, (requests - failed) / seconds,
+				requests == 0 ? 0 : (double) failed / requests,
+				millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+				millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+	}
+
+	private static void atLeast(List<String> regressions, Properties baseline, String key, double value) {
+		String limit = baseline.getProperty(key);
+		if (nonNull(limit) && value < Double.parseDouble(limit)) {
+			regressions.add(String.format(Locale.ROOT, "%s: %.3f is below %s", key, value, limit));
+		}
+	}
+
+	private static void atMost(List<String> regressions, Properties baseline, String key, double value) {
+		String limit = baseline.getProperty(key);
+		if (nonNull(limit) && value > Double.parseDouble(limit)) {
+			regressions.add(String.format(Locale.ROOT, "%s: %.3f is above %s", key, value, limit));
+		}
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
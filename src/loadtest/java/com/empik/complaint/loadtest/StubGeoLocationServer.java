@@ -0,0 +1,104 @@
+package com.empik.complaint.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for the geolocation provider: answers {@code GET /json/{ip}} and {@code POST /batch} after
+ * {@code latency ± jitter} milliseconds, and with 503 for the given share of requests. The country depends only on
+ * the address, so repeated runs resolve the same addresses to the same countries.
+ */
+final class StubGeoLocationServer implements AutoCloseable {
+
+	private static final String[] COUNTRIES = {"Poland", "Germany", "Czechia", "Slovakia", "Lithuania"};
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private final HttpServer server;
+	private final long latencyMs;
+	private final long jitterMs;
+	private final double errorRate;
+	private final SplittableRandom random;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	StubGeoLocationServer(long latencyMs, long jitterMs, double errorRate, long seed) throws IOException {
+		this.latencyMs = latencyMs;
+		this.jitterMs = jitterMs;
+		this.errorRate = errorRate;
+		this.random = new SplittableRandom(seed);
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/json/", exchange -> respond(exchange,
+				() -> lookup(exchange.getRequestURI().getPath().substring("/json/".length()))));
+		server.createContext("/batch", exchange -> {
+			List<String> ipAddresses = OBJECT_MAPPER.readValue(exchange.getRequestBody(), new TypeReference<>() {});
+			respond(exchange, () -> {
+				List<Map<String, String>> results = new ArrayList<>(ipAddresses.size());
+				ipAddresses.forEach(ipAddress -> results.add(lookup(ipAddress)));
+				return results;
+			});
+		});
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.start();
+	}
+
+	String baseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	long requests() {
+		return requests.get();
+	}
+
+	long failures() {
+		return failures.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	private void respond(HttpExchange exchange, Supplier<?> responseBody) throws IOException {
+		requests.incrementAndGet();
+		long delayMs;
+		boolean fail;
+		synchronized (random) {
+			delayMs = Math.max(0, latencyMs + (jitterMs > 0 ? random.nextLong(-jitterMs, jitterMs + 1) : 0));
+			fail = random.nextDouble() < errorRate;
+		}
+		try {
+			Thread.sleep(delayMs);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (fail) {
+			failures.incrementAndGet();
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+			return;
+		}
+		byte[] body = OBJECT_MAPPER.writeValueAsBytes(responseBody.get());
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static Map<String, String> lookup(String ipAddress) {
+		return Map.of("status", "success", "country", COUNTRIES[Math.floorMod(ipAddress.hashCode(), COUNTRIES.length)]);
+	}
+}
@@ -0,0 +1,124 @@
+package com.empik.complaint.api;
+
+import io.netty.util.NetUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Resolves the IP address of the client behind a request.
+ * <p>
+ * {@code X-Forwarded-For} is only honoured when the request comes from one of the trusted proxies
+ * ({@code application.client-ip.trusted-proxies}, addresses or CIDR ranges): the header is then read from the
+ * right, skipping further trusted proxies, and the first other address is the client. Any client can send the
+ * header, so without trusted proxies it is ignored and the client is the remote address of the connection.
+ */
+@Component
+@Slf4j
+public class ClientIpResolver {
+
+	static final String FORWARDED_FOR = "X-Forwarded-For";
+
+	private final List<Subnet> trustedProxies;
+
+	public ClientIpResolver(@Value("${application.client-ip.trusted-proxies:}") List<String> trustedProxies) {
+		this.trustedProxies = trustedProxies.stream()
+				.filter(proxy -> !proxy.isBlank())
+				.map(Subnet::parse)
+				.toList();
+	}
+
+	public String resolve(ServerWebExchange exchange) {
+		InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+		InetAddress remote = isNull(remoteAddress) ? null : remoteAddress.getAddress();
+		String forwardedFor = exchange.getRequest().getHeaders().getFirst(FORWARDED_FOR);
+
+		String ipAddress = !isNull(forwardedFor) && isTrusted(remote)
+				? clientOf(forwardedFor)
+				: isNull(remote) ? null : remote.getHostAddress();
+
+		log.debug("Request from IP: {}", ipAddress);
+		return ipAddress;
+	}
+
+	private String clientOf(String forwardedFor) {
+		String[] hops = forwardedFor.split(",");
+		for (int i = hops.length - 1; i > 0; i--) {
+			String hop = hops[i].trim();
+			if (!isTrusted(parse(hop))) {
+				return hop;
+			}
+		}
+		return hops[0].trim();
+	}
+
+	private boolean isTrusted(InetAddress address) {
+		if (isNull(address)) {
+			return false;
+		}
+		for (Subnet proxy : trustedProxies) {
+			if (proxy.contains(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static InetAddress parse(String hop) {
+		// only literals are parsed, a host name in the header must not trigger a DNS lookup
+		byte[] address = NetUtil.createByteArrayFromIpAddressString(hop);
+		if (isNull(address)) {
+			return null;
+		}
+		try {
+			return InetAddress.getByAddress(address);
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+
+	private record Subnet(byte[] network, int prefix) {
+
+		static Subnet parse(String proxy) {
+			int slash = proxy.indexOf('/');
+			String address = (slash < 0 ? proxy : proxy.substring(0, slash)).trim();
+			InetAddress network = ClientIpResolver.parse(address);
+			if (isNull(network)) {
+				throw new IllegalArgumentException("Invalid trusted proxy: " + proxy);
+			}
+			int bits = network.getAddress().length * 8;
+			int prefix = slash < 0 ? bits : Integer.parseInt(proxy.substring(slash + 1).trim());
+			if (prefix < 0 || prefix > bits) {
+				throw new IllegalArgumentException("Invalid trusted proxy: " + proxy);
+			}
+			return new Subnet(network.getAddress(), prefix);
+		}
+
+		boolean contains(InetAddress address) {
+			byte[] bytes = address.getAddress();
+			if (bytes.length != network.length) {
+				return false;
+			}
+			int fullBytes = prefix / 8;
+			for (int i = 0; i < fullBytes; i++) {
+				if (bytes[i] != network[i]) {
+					return false;
+				}
+			}
+			int remainingBits = prefix % 8;
+			if (remainingBits == 0) {
+				return true;
+			}
+			int mask = 0xFF << (8 - remainingBits);
+			return (bytes[fullBytes] & mask) == (network[fullBytes] & mask);
+		}
+	}
+}
@@ -1,8 +1,18 @@
 package com.empik.complaint.api;
 
+import com.empik.complaint.api.dto.BulkComplaintResponse;
+import com.empik.complaint.api.dto.ComplaintEventResponse;
 import com.empik.complaint.api.dto.ComplaintFullResponse;
 import com.empik.complaint.api.dto.ComplaintResponse;
+import com.empik.complaint.api.dto.ComplaintStatsResponse;
+import com.empik.complaint.api.dto.ProductStatsResponse;
+import com.empik.complaint.api.dto.StatsBucket;
+import com.empik.complaint.api.dto.StatsDimension;
 import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ProductStats;
+import com.empik.complaint.repository.ComplaintEvent;
+import com.empik.complaint.repository.ComplaintStats;
+import com.empik.complaint.service.BulkItemResult;
 
 public interface ComplaintMapper {
 
@@ -29,4 +39,61 @@ public interface ComplaintMapper {
 				.counter(complaint.getCounter())
 				.build();
 	}
+
+	static BulkComplaintResponse toBulkResponse(BulkItemResult result) {
+		return BulkComplaintResponse.builder()
+				.index(result.index())
+				.productId(result.productId())
+				.complainantId(result.complainantId())
+				.id(result.id())
+				.status(result.status().name())
+				.error(result.error())
+				.build();
+	}
+
+	static ComplaintStatsResponse toStatsResponse(ComplaintStats stats) {
+		return ComplaintStatsResponse.builder()
+				.productId(stats.productId())
+				.country(stats.country())
+				.bucket(stats.bucket())
+				.complaints(stats.complaints())
+				.counter(stats.counter())
+				.build();
+	}
+
+	static ComplaintStats.Dimension toDimension(StatsDimension dimension) {
+		return switch (dimension) {
+			case PRODUCT -> ComplaintStats.Dimension.PRODUCT;
+			case COUNTRY -> ComplaintStats.Dimension.COUNTRY;
+		};
+	}
+
+	static ComplaintStats.Bucket toBucket(StatsBucket bucket) {
+		if (bucket == null) {
+			return null;
+		}
+		return switch (bucket) {
+			case HOUR -> ComplaintStats.Bucket.HOUR;
+			case DAY -> ComplaintStats.Bucket.DAY;
+			case WEEK -> ComplaintStats.Bucket.WEEK;
+			case MONTH -> ComplaintStats.Bucket.MONTH;
+		};
+	}
+
+	static ProductStatsResponse toProductStatsResponse(ProductStats stats) {
+		return ProductStatsResponse.builder()
+				.productId(stats.getProductId())
+				.complaints(stats.getComplaints())
+				.counter(stats.getCounter())
+				.build();
+	}
+
+	static ComplaintEventResponse toEventResponse(ComplaintEvent event) {
+		return ComplaintEventResponse.builder()
+				.type(event.type().name())
+				.complaintId(event.complaintId())
+				.complaint(event.complaint() == null ? null : toFullResponse(event.complaint()))
+				.resumeToken(event.resumeToken())
+				.build();
+	}
 }
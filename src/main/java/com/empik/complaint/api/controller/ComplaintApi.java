@@ -1,37 +1,70 @@
 package com.empik.complaint.api.controller;
 
+import com.empik.complaint.api.dto.BulkComplaintResponse;
 import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.api.dto.ComplaintEventResponse;
 import com.empik.complaint.api.dto.ComplaintFullResponse;
 import com.empik.complaint.api.dto.ComplaintResponse;
+import com.empik.complaint.api.dto.ComplaintStatsResponse;
+import com.empik.complaint.api.dto.ProductStatsResponse;
+import com.empik.complaint.api.dto.StatsBucket;
+import com.empik.complaint.api.dto.StatsDimension;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Tag(name = "Complaints", description = "API for managing complaints")
 @RequestMapping("/api/v1/complaints")
 public interface ComplaintApi {
 
-	@Operation(summary = "Create a new complaint")
+	String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+	String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+	@Operation(summary = "Create a new complaint",
+			description = "A retry sent with the same " + IDEMPOTENCY_KEY_HEADER + " header as the original request "
+					+ "gets the original response, marked by the " + IDEMPOTENT_REPLAYED_HEADER + " header, instead of "
+					+ "incrementing the counter again (application.idempotency.enabled). Reusing a key for a different "
+					+ "request responds 422, a retry while the original is still in progress on another node may respond 409.")
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
 	Mono<ComplaintResponse> createComplaint(
 			@Valid @RequestBody ComplaintCreateRequest request,
+			@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+			ServerWebExchange exchange);
+
+	@Operation(summary = "Create complaints in bulk",
+			description = "Accepts a JSON array or newline-delimited JSON of complaints and returns one result per "
+					+ "submitted complaint, in submission order.")
+	@PostMapping(value = "/bulk",
+			consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+			produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	@ResponseStatus(HttpStatus.OK)
+	Flux<BulkComplaintResponse> createComplaints(
+			@RequestBody Flux<ComplaintCreateRequest> requests,
 			ServerWebExchange exchange);
 
-	@Operation(summary = "Update complaint content by ID")
+	@Operation(summary = "Update complaint content by ID",
+			description = "Accepts an " + IDEMPOTENCY_KEY_HEADER + " header like complaint creation.")
 	@PutMapping("/{id}/content")
 	@ResponseStatus(HttpStatus.OK)
 	Mono<ComplaintResponse> updateComplaintContent(
 			@PathVariable String id,
 			@RequestParam String content,
+			@RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
 			ServerWebExchange exchange);
 
 	@Operation(summary = "Get a complaint by ID")
@@ -39,14 +72,76 @@ public interface ComplaintApi {
 	@ResponseStatus(HttpStatus.OK)
 	Mono<ComplaintResponse> getComplaintById(@PathVariable String id);
 
-	@Operation(summary = "List complaints with optional filters and pagination")
+	@Operation(summary = "List complaints with optional filters and pagination",
+			description = "Complaints are ordered by creation date. A full page carries an opaque token in the "
+					+ NEXT_CURSOR_HEADER + " header; pass it back as 'cursor' to fetch the next page. "
+					+ "When 'cursor' is given, 'page' is ignored.")
 	@GetMapping
 	@ResponseStatus(HttpStatus.OK)
-	Flux<ComplaintFullResponse> getComplaints(
+	Mono<ResponseEntity<List<ComplaintFullResponse>>> getComplaints(
+			@RequestParam(required = false) String productId,
+			@RequestParam(required = false) String complainantId,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "10") int size);
+
+	@Operation(summary = "Search complaints by content",
+			description = "Full-text search over complaint content, most relevant first. Matches any of the words; "
+					+ "quoted phrases must match and words prefixed with '-' exclude. Combines with the list filters. "
+					+ "Responds 503 while the text index is still being built after startup.")
+	@GetMapping("/search")
+	@ResponseStatus(HttpStatus.OK)
+	Flux<ComplaintFullResponse> searchComplaints(
+			@RequestParam String q,
 			@RequestParam(required = false) String productId,
 			@RequestParam(required = false) String complainantId,
 			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
 			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
 			@RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "10") int size);
+
+	@Operation(summary = "Export all complaints matching the filters",
+			description = "Streams the whole result set as newline-delimited JSON or server-sent events, "
+					+ "depending on the Accept header.")
+	@GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+	@ResponseStatus(HttpStatus.OK)
+	Flux<ComplaintFullResponse> exportComplaints(
+			@RequestParam(required = false) String productId,
+			@RequestParam(required = false) String complainantId,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate);
+
+	@Operation(summary = "Aggregate complaints matching the filters",
+			description = "Counts complaints and sums their counters per group, computed in the database. "
+					+ "Groups by any combination of 'groupBy' dimensions and, when 'bucket' is given, by creation "
+					+ "date truncated to it. Without either, a single total is returned.")
+	@GetMapping(value = "/stats", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	@ResponseStatus(HttpStatus.OK)
+	Flux<ComplaintStatsResponse> getComplaintStats(
+			@RequestParam(required = false) String productId,
+			@RequestParam(required = false) String complainantId,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+			@RequestParam(defaultValue = "") List<StatsDimension> groupBy,
+			@RequestParam(required = false) StatsBucket bucket);
+
+	@Operation(summary = "Get the products with the most complaints",
+			description = "Read from the incrementally maintained statistics (application.complaint-stats.enabled), "
+					+ "ordered by number of complaints.")
+	@GetMapping("/stats/top-products")
+	@ResponseStatus(HttpStatus.OK)
+	Flux<ProductStatsResponse> getTopProducts(@RequestParam(defaultValue = "10") int limit);
+
+	@Operation(summary = "Subscribe to complaint changes",
+			description = "Streams create, update, increment, delete, archive and restore events as server-sent events. Each event id "
+					+ "is a resume token; reconnecting with it in the " + LAST_EVENT_ID_HEADER + " header or the "
+					+ "'resumeAfter' parameter continues right after that event. Subscribers that fall too far "
+					+ "behind are disconnected and should reconnect the same way.")
+	@GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	@ResponseStatus(HttpStatus.OK)
+	Flux<ServerSentEvent<ComplaintEventResponse>> streamEvents(
+			@RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId,
+			@RequestParam(required = false) String resumeAfter);
 }
@@ -1,21 +1,40 @@
 package com.empik.complaint.api.controller;
 
+import com.empik.complaint.api.ClientIpResolver;
 import com.empik.complaint.api.ComplaintMapper;
+import com.empik.complaint.api.dto.BulkComplaintResponse;
 import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.api.dto.ComplaintEventResponse;
 import com.empik.complaint.api.dto.ComplaintFullResponse;
 import com.empik.complaint.api.dto.ComplaintResponse;
+import com.empik.complaint.api.dto.ComplaintStatsResponse;
+import com.empik.complaint.api.dto.ProductStatsResponse;
+import com.empik.complaint.api.dto.StatsBucket;
+import com.empik.complaint.api.dto.StatsDimension;
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ComplaintCursor;
+import com.empik.complaint.repository.ComplaintStats;
+import com.empik.complaint.service.ComplaintBulkService;
+import com.empik.complaint.service.ComplaintEventFeed;
+import com.empik.complaint.service.ComplaintOperations;
 import com.empik.complaint.service.ComplaintService;
+import com.empik.complaint.service.ComplaintStatsService;
+import com.empik.complaint.service.IdempotentRequests;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
 
 import static java.util.Objects.nonNull;
-import static java.util.Objects.requireNonNull;
 
 @RestController
 @RequiredArgsConstructor
@@ -23,54 +42,130 @@ import static java.util.Objects.requireNonNull;
 public class ComplaintController implements ComplaintApi {
 
 	private final ComplaintService complaintService;
+	private final ComplaintOperations complaintOperations;
+	private final ComplaintBulkService complaintBulkService;
+	private final ComplaintStatsService complaintStatsService;
+	private final ComplaintEventFeed complaintEventFeed;
+	private final IdempotentRequests idempotentRequests;
+	private final ClientIpResolver clientIpResolver;
+
+	@Value("${application.events.heartbeat-ms:15000}")
+	private long eventsHeartbeatMs;
 
 	@Override
 	public Mono<ComplaintResponse> createComplaint(
 			ComplaintCreateRequest request,
+			String idempotencyKey,
 			ServerWebExchange exchange) {
 
-		String ipAddress = resolveIpAddress(exchange);
+		String ipAddress = clientIpResolver.resolve(exchange);
+		String fingerprint = String.join("\u0000", "create", request.productId(), request.complainantId(), request.content());
 
-		return complaintService.createComplaint(request, ipAddress)
-				.map(ComplaintMapper::toComplaintResponse);
+		return idempotentRequests.execute(idempotencyKey, fingerprint, ComplaintResponse.class,
+						() -> complaintOperations.createComplaint(request, ipAddress).map(ComplaintMapper::toComplaintResponse))
+				.map(result -> markReplayed(result, exchange));
+	}
+
+	@Override
+	public Flux<BulkComplaintResponse> createComplaints(
+			Flux<ComplaintCreateRequest> requests,
+			ServerWebExchange exchange) {
+
+		String ipAddress = clientIpResolver.resolve(exchange);
+
+		return complaintBulkService.createComplaints(requests, ipAddress)
+				.map(ComplaintMapper::toBulkResponse);
 	}
 
 	@Override
 	public Mono<ComplaintResponse> updateComplaintContent(
 			String id,
 			String content,
+			String idempotencyKey,
 			ServerWebExchange exchange) {
 
-		String ipAddress = resolveIpAddress(exchange);
+		String ipAddress = clientIpResolver.resolve(exchange);
+		String fingerprint = String.join("\u0000", "update", id, content);
 
-		return complaintService.updateComplaintContent(id, content, ipAddress)
-				.map(ComplaintMapper::toComplaintResponse);
+		return idempotentRequests.execute(idempotencyKey, fingerprint, ComplaintResponse.class,
+						() -> complaintOperations.updateComplaintContent(id, content, ipAddress).map(ComplaintMapper::toComplaintResponse))
+				.map(result -> markReplayed(result, exchange));
 	}
 
 	@Override
 	public Mono<ComplaintResponse> getComplaintById(@PathVariable String id) {
-		return complaintService.getComplaintById(id)
+		return complaintOperations.getComplaintById(id)
 				.map(ComplaintMapper::toComplaintResponse);
 	}
 
 	@Override
-	public Flux<ComplaintFullResponse> getComplaints(String productId, String complainantId,
-													 LocalDateTime fromDate, LocalDateTime toDate,
-													 int page, int size) {
-		return complaintService.getComplaints(productId, complainantId, fromDate, toDate, page, size)
+	public Mono<ResponseEntity<List<ComplaintFullResponse>>> getComplaints(String productId, String complainantId,
+																		   LocalDateTime fromDate, LocalDateTime toDate,
+																		   String cursor, int page, int size) {
+		Flux<Complaint> complaints = nonNull(cursor)
+				? complaintService.getComplaintsAfter(productId, complainantId, fromDate, toDate, cursor, size)
+				: complaintService.getComplaints(productId, complainantId, fromDate, toDate, page, size);
+
+		return complaints.collectList()
+				.map(found -> {
+					ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+					if (!found.isEmpty() && found.size() == size) {
+						response.header(NEXT_CURSOR_HEADER, ComplaintCursor.of(found.getLast()).encode());
+					}
+					return response.body(found.stream().map(ComplaintMapper::toFullResponse).toList());
+				});
+	}
+
+	@Override
+	public Flux<ComplaintFullResponse> searchComplaints(String q, String productId, String complainantId,
+														LocalDateTime fromDate, LocalDateTime toDate,
+														int page, int size) {
+		return complaintService.searchComplaints(q, productId, complainantId, fromDate, toDate, page, size)
 				.map(ComplaintMapper::toFullResponse);
 	}
 
-	private static String resolveIpAddress(ServerWebExchange exchange) {
-		String forwardedFor = exchange.getRequest()
-				.getHeaders()
-				.getFirst("X-Forwarded-For");
+	@Override
+	public Flux<ComplaintFullResponse> exportComplaints(String productId, String complainantId,
+														LocalDateTime fromDate, LocalDateTime toDate) {
+		return complaintService.exportComplaints(productId, complainantId, fromDate, toDate)
+				.map(ComplaintMapper::toFullResponse);
+	}
+
+	@Override
+	public Flux<ComplaintStatsResponse> getComplaintStats(String productId, String complainantId,
+														  LocalDateTime fromDate, LocalDateTime toDate,
+														  List<StatsDimension> groupBy, StatsBucket bucket) {
+		List<ComplaintStats.Dimension> dimensions = groupBy.stream()
+				.map(ComplaintMapper::toDimension)
+				.toList();
+		return complaintService.getStatistics(productId, complainantId, fromDate, toDate, dimensions, ComplaintMapper.toBucket(bucket))
+				.map(ComplaintMapper::toStatsResponse);
+	}
 
-		String ipAddress = nonNull(forwardedFor)
-				? forwardedFor
-				: requireNonNull(exchange.getRequest().getRemoteAddress()).getAddress().getHostAddress();
+	@Override
+	public Flux<ProductStatsResponse> getTopProducts(int limit) {
+		return complaintStatsService.getTopProducts(limit)
+				.map(ComplaintMapper::toProductStatsResponse);
+	}
+
+	@Override
+	public Flux<ServerSentEvent<ComplaintEventResponse>> streamEvents(String lastEventId, String resumeAfter) {
+		Flux<ServerSentEvent<ComplaintEventResponse>> events = complaintEventFeed
+				.events(nonNull(lastEventId) ? lastEventId : resumeAfter)
+				.map(event -> ServerSentEvent.builder(ComplaintMapper.toEventResponse(event))
+						.id(event.resumeToken())
+						.build());
+		// keeps idle connections from being closed by proxies
+		Flux<ServerSentEvent<ComplaintEventResponse>> heartbeats = Flux.interval(Duration.ofMillis(eventsHeartbeatMs))
+				.map(tick -> ServerSentEvent.<ComplaintEventResponse>builder().comment("heartbeat").build());
+
+		return Flux.merge(events, heartbeats);
+	}
 
-		log.debug("Request from IP: {}", ipAddress);
-		return ipAddress;
+	private static <T> T markReplayed(IdempotentRequests.Result<T> result, ServerWebExchange exchange) {
+		if (result.replayed()) {
+			exchange.getResponse().getHeaders().set(IDEMPOTENT_REPLAYED_HEADER, "true");
+		}
+		return result.response();
 	}
 }
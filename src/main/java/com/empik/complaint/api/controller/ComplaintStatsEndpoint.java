@@ -0,0 +1,30 @@
+package com.empik.complaint.api.controller;
+
+import com.empik.complaint.service.ComplaintStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Operator endpoint that rebuilds the complaint statistics: {@code POST /actuator/complaintstats} responds 202 once
+ * the rebuild started in the background, or 409 when one is already running on this instance.
+ * <p>
+ * Like every actuator endpoint it is only served when listed in {@code management.endpoints.web.exposure.include},
+ * which it is not by default; expose it with {@code management.server.port} set to a port clients cannot reach.
+ */
+@Component
+@WebEndpoint(id = "complaintstats")
+@RequiredArgsConstructor
+public class ComplaintStatsEndpoint {
+
+	private final ComplaintStatsService complaintStatsService;
+
+	@WriteOperation
+	public WebEndpointResponse<Void> rebuild() {
+		HttpStatus status = complaintStatsService.startRebuild() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+		return new WebEndpointResponse<>(status.value());
+	}
+}
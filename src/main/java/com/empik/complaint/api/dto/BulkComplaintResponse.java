@@ -0,0 +1,16 @@
+package com.empik.complaint.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+@Builder
+@Schema(description = "Result of a single complaint of a bulk submission")
+public record BulkComplaintResponse(
+		@Schema(description = "Position of the complaint in the submitted batch", example = "0") long index,
+		@Schema(description = "Product ID", example = "31f871b0-321f-4063-88b2-b4aeca45adf0") String productId,
+		@Schema(description = "Complainant ID", example = "2a0863a2-563f-4a6c-abd3-5305bbfa6436") String complainantId,
+		@Schema(description = "Complaint ID, when known", example = "663e71f9a1a34d4a99a6c458") String id,
+		@Schema(description = "Outcome", allowableValues = {"CREATED", "INCREMENTED", "REJECTED"}) String status,
+		@Schema(description = "Reason the complaint was rejected", example = "Content is required") String error
+) {
+}
@@ -0,0 +1,14 @@
+package com.empik.complaint.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+@Builder
+@Schema(description = "Change of a complaint")
+public record ComplaintEventResponse(
+		@Schema(description = "Kind of change", allowableValues = {"CREATED", "UPDATED", "INCREMENTED", "DELETED", "ARCHIVED", "RESTORED"}) String type,
+		@Schema(description = "Complaint ID", example = "663e71f9a1a34d4a99a6c458") String complaintId,
+		@Schema(description = "Complaint after the change; absent for deletions") ComplaintFullResponse complaint,
+		@Schema(description = "Token to resume the feed right after this event") String resumeToken
+) {
+}
@@ -0,0 +1,17 @@
+package com.empik.complaint.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+@Builder
+@Schema(description = "Aggregated complaints of one group; dimensions not grouped by are null")
+public record ComplaintStatsResponse(
+		@Schema(description = "Product ID", example = "31f871b0-321f-4063-88b2-b4aeca45adf0") String productId,
+		@Schema(description = "Detected country", example = "Poland") String country,
+		@Schema(description = "Start of the time bucket") LocalDateTime bucket,
+		@Schema(description = "Number of complaints in the group", example = "12") long complaints,
+		@Schema(description = "Sum of the counters of those complaints", example = "30") long counter
+) {
+}
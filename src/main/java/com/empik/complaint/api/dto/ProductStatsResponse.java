@@ -0,0 +1,13 @@
+package com.empik.complaint.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+@Builder
+@Schema(description = "Complaint totals of a product")
+public record ProductStatsResponse(
+		@Schema(description = "Product ID", example = "31f871b0-321f-4063-88b2-b4aeca45adf0") String productId,
+		@Schema(description = "Number of complaints about the product", example = "12") long complaints,
+		@Schema(description = "Sum of the counters of those complaints", example = "30") long counter
+) {
+}
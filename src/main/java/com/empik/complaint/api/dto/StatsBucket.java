@@ -0,0 +1,11 @@
+package com.empik.complaint.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Time bucket the creation dates of complaint statistics are truncated to")
+public enum StatsBucket {
+	HOUR,
+	DAY,
+	WEEK,
+	MONTH
+}
@@ -0,0 +1,9 @@
+package com.empik.complaint.api.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Dimension complaint statistics can be grouped by")
+public enum StatsDimension {
+	PRODUCT,
+	COUNTRY
+}
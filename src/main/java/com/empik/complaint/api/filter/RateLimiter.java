@@ -0,0 +1,64 @@
+package com.empik.complaint.api.filter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Token buckets per key, implemented as the generic cell rate algorithm: a bucket is a single {@link AtomicLong}
+ * holding the theoretical arrival time of the next request, so acquiring a permit is one read and one CAS,
+ * without locks. Buckets of keys that have refilled completely carry no state and are dropped by {@link #evictIdle()}.
+ */
+class RateLimiter {
+
+	private final long emissionIntervalNanos;
+	private final long burstToleranceNanos;
+	private final LongSupplier nanoClock;
+	private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+	RateLimiter(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+		this.emissionIntervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+		this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Takes a permit for the key. Returns 0 when one was available, otherwise the nanoseconds until one will be.
+	 */
+	long tryAcquire(String key) {
+		AtomicLong bucket = buckets.get(key);
+		if (isNull(bucket)) {
+			bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+		}
+		long now = nanoClock.getAsLong();
+		while (true) {
+			long arrival = bucket.get();
+			long base = Math.max(arrival, now);
+			long waitNanos = base - now - burstToleranceNanos;
+			if (waitNanos > 0) {
+				return waitNanos;
+			}
+			if (bucket.compareAndSet(arrival, base + emissionIntervalNanos)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Drops the buckets that are full again. A permit taken concurrently from a dropped bucket is forgotten,
+	 * which can only let that key through once more.
+	 */
+	int evictIdle() {
+		long now = nanoClock.getAsLong();
+		int before = buckets.size();
+		buckets.values().removeIf(bucket -> bucket.get() <= now);
+		return before - buckets.size();
+	}
+
+	int size() {
+		return buckets.size();
+	}
+}
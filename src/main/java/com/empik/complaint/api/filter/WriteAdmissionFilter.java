@@ -0,0 +1,151 @@
+package com.empik.complaint.api.filter;
+
+import com.empik.complaint.api.ClientIpResolver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Admission control for the complaint write endpoints, applied before the request body is read.
+ * <p>
+ * Each client IP gets a token bucket; requests beyond it are rejected with 429 and a {@code Retry-After} hint.
+ * Admitted writes also count against a global in-flight limit, so a burst spread over many IPs cannot pile up
+ * on Mongo and the geolocation provider either. A bulk submission counts as one request.
+ */
+@Component
+@Slf4j
+public class WriteAdmissionFilter implements WebFilter {
+
+	private static final List<WriteEndpoint> WRITE_ENDPOINTS = List.of(
+			new WriteEndpoint(HttpMethod.POST, "/api/v1/complaints"),
+			new WriteEndpoint(HttpMethod.POST, "/api/v1/complaints/bulk"),
+			new WriteEndpoint(HttpMethod.PUT, "/api/v1/complaints/{id}/content"));
+
+	private final boolean enabled;
+	private final int maxInFlight;
+	private final RateLimiter rateLimiter;
+	private final ClientIpResolver clientIpResolver;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final Counter rateLimited;
+	private final Counter overloaded;
+	private final Disposable eviction;
+
+	public WriteAdmissionFilter(MeterRegistry meterRegistry,
+								ClientIpResolver clientIpResolver,
+								@Value("${application.rate-limit.enabled:false}") boolean enabled,
+								@Value("${application.rate-limit.requests-per-second:20}") double requestsPerSecond,
+								@Value("${application.rate-limit.burst:40}") int burst,
+								@Value("${application.rate-limit.max-in-flight-writes:512}") int maxInFlight,
+								@Value("${application.rate-limit.idle-eviction-ms:60000}") long idleEvictionMs) {
+		this.enabled = enabled;
+		this.maxInFlight = maxInFlight;
+		this.rateLimiter = new RateLimiter(requestsPerSecond, burst, System::nanoTime);
+		this.clientIpResolver = clientIpResolver;
+		this.rateLimited = rejectedCounter(meterRegistry, "rate");
+		this.overloaded = rejectedCounter(meterRegistry, "concurrency");
+		if (!enabled) {
+			this.eviction = null;
+			return;
+		}
+		Gauge.builder("complaint.admission.in.flight", inFlight, AtomicInteger::get)
+				.description("Complaint writes currently being processed")
+				.register(meterRegistry);
+		Gauge.builder("complaint.admission.buckets", rateLimiter, RateLimiter::size)
+				.description("Client IPs with a partially used rate limit")
+				.register(meterRegistry);
+		this.eviction = Flux.interval(Duration.ofMillis(idleEvictionMs))
+				.subscribe(tick -> {
+					int evicted = rateLimiter.evictIdle();
+					log.debug("Evicted {} idle rate limit buckets", evicted);
+				});
+
+		log.info("Write admission control enabled ({} requests/s per IP, burst {}, max {} in-flight writes)",
+				requestsPerSecond, burst, maxInFlight);
+	}
+
+	@PreDestroy
+	void stop() {
+		if (nonNull(eviction)) {
+			eviction.dispose();
+		}
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (!enabled || !isWrite(exchange.getRequest())) {
+			return chain.filter(exchange);
+		}
+
+		long waitNanos = rateLimiter.tryAcquire(clientIpResolver.resolve(exchange));
+		if (waitNanos > 0) {
+			rateLimited.increment();
+			return reject(exchange, waitNanos);
+		}
+		if (inFlight.incrementAndGet() > maxInFlight) {
+			inFlight.decrementAndGet();
+			overloaded.increment();
+			return reject(exchange, 0);
+		}
+		return chain.filter(exchange)
+				.doFinally(signal -> inFlight.decrementAndGet());
+	}
+
+	private static boolean isWrite(ServerHttpRequest request) {
+		for (WriteEndpoint endpoint : WRITE_ENDPOINTS) {
+			if (endpoint.matches(request)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Mono<Void> reject(ServerWebExchange exchange, long waitNanos) {
+		ServerHttpResponse response = exchange.getResponse();
+		response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+		response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+				String.valueOf(Math.max(1, Math.ceilDiv(waitNanos, TimeUnit.SECONDS.toNanos(1)))));
+		return response.setComplete();
+	}
+
+	private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+		return Counter.builder("complaint.admission.rejected")
+				.description("Complaint writes rejected with 429 by reason: per-IP rate or global concurrency")
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+
+	private record WriteEndpoint(HttpMethod method, PathPattern path) {
+
+		WriteEndpoint(HttpMethod method, String path) {
+			this(method, PathPatternParser.defaultInstance.parse(path));
+		}
+
+		boolean matches(ServerHttpRequest request) {
+			return method.equals(request.getMethod()) && path.matches(request.getPath().pathWithinApplication());
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.empik.complaint.client;
+
+/**
+ * Country lookups of the virtual-thread execution mode, which block the calling thread instead of emitting.
+ */
+public interface BlockingGeoLocationClient {
+
+	/**
+	 * Resolves the country of the given IP address. Never throws; returns {@link GeoLocationClient#UNKNOWN_COUNTRY}
+	 * when the country cannot be determined.
+	 */
+	String resolveCountry(String ipAddress);
+}
@@ -0,0 +1,225 @@
+package com.empik.complaint.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.empik.complaint.client.GeoLocationClient.UNKNOWN_COUNTRY;
+import static java.util.Objects.nonNull;
+
+/**
+ * Resolves countries through the remote geolocation API with the JDK HTTP client, blocking the calling virtual
+ * thread for the duration of the call. Shares the cache, circuit breaker, retry settings and metrics of
+ * {@link HttpGeoLocationClient}; lookups are never batched, and the connection pool settings of the reactive
+ * client do not apply.
+ */
+@Component
+@Slf4j
+@ConditionalOnExpression("'${application.execution.mode:reactive}' == 'virtual-threads' "
+		+ "and '${application.geolocation.provider:http}' == 'http'")
+public class BlockingHttpGeoLocationClient implements BlockingGeoLocationClient {
+
+	private static final String FIELD_COUNTRY = "country";
+	private static final String REQUESTS_METRIC = "geolocation.requests";
+	private static final TypeReference<Map<String, Object>> RESPONSE_TYPE = new TypeReference<>() {};
+
+	private final GeoLocationCache geoLocationCache;
+	private final GeoLocationCircuitBreaker circuitBreaker;
+	private final ObjectMapper objectMapper;
+	private final HttpClient httpClient;
+	private final Timer resolvedTimer;
+	private final Timer notFoundTimer;
+	private final Timer fallbackTimer;
+	private final Counter retries;
+	private final Counter httpErrorFallbacks;
+	private final Counter unexpectedErrorFallbacks;
+	private final Counter circuitOpenFallbacks;
+
+	@Value("${application.geolocation.retry.max-attempts:3}")
+	private int maxAttempts;
+
+	@Value("${application.geolocation.retry.backoff-ms:1000}")
+	private long backoffMs;
+
+	@Value("${application.geolocation.base-url}")
+	private String geoLocationBaseUrl;
+
+	public BlockingHttpGeoLocationClient(GeoLocationCache geoLocationCache, GeoLocationCircuitBreaker circuitBreaker,
+										 ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+		this.geoLocationCache = geoLocationCache;
+		this.circuitBreaker = circuitBreaker;
+		this.objectMapper = objectMapper;
+		// the outer bound of the per-call adaptive timeout, as for the reactive client
+		this.httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(5000))
+				.build();
+		// the same meters as the reactive client, so both modes report alike
+		this.resolvedTimer = requestTimer(meterRegistry, "resolved");
+		this.notFoundTimer = requestTimer(meterRegistry, "not_found");
+		this.fallbackTimer = requestTimer(meterRegistry, "fallback");
+		this.retries = Counter.builder("geolocation.retries")
+				.description("Geolocation requests retried after a connection error or timeout")
+				.register(meterRegistry);
+		this.httpErrorFallbacks = fallbackCounter(meterRegistry, "http_error");
+		this.unexpectedErrorFallbacks = fallbackCounter(meterRegistry, "unexpected_error");
+		this.circuitOpenFallbacks = fallbackCounter(meterRegistry, "circuit_open");
+	}
+
+	@Override
+	public String resolveCountry(String ipAddress) {
+		return geoLocationCache.getBlocking(ipAddress, this::fetchCountry);
+	}
+
+	private String fetchCountry(String ipAddress) {
+		Timer.Sample sample = Timer.start();
+		circuitBreaker.onRequest();
+		try {
+			String country = extractCountry(ipAddress, requestCountry(ipAddress));
+			sample.stop(UNKNOWN_COUNTRY.equals(country) ? notFoundTimer : resolvedTimer);
+			return country;
+		} catch (CircuitOpenException e) {
+			sample.stop(fallbackTimer);
+			circuitOpenFallbacks.increment();
+			log.debug("Geolocation circuit open, skipping lookup for IP {}", ipAddress);
+			return UNKNOWN_COUNTRY;
+		} catch (HttpStatusException e) {
+			sample.stop(fallbackTimer);
+			httpErrorFallbacks.increment();
+			log.error("Error getting country for IP {}: {}", ipAddress, e.getMessage());
+			return UNKNOWN_COUNTRY;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sample.stop(fallbackTimer);
+			unexpectedErrorFallbacks.increment();
+			return UNKNOWN_COUNTRY;
+		} catch (IOException | RuntimeException e) {
+			sample.stop(fallbackTimer);
+			unexpectedErrorFallbacks.increment();
+			log.error("Unexpected error getting country for IP {}: {}", ipAddress, e.getMessage());
+			return UNKNOWN_COUNTRY;
+		}
+	}
+
+	private Map<String, Object> requestCountry(String ipAddress) throws IOException, InterruptedException {
+		for (int retry = 0; ; retry++) {
+			byte[] body;
+			try {
+				body = attempt(ipAddress);
+			} catch (IOException e) {
+				// connection errors and timeouts, like the reactive client's retry filter
+				if (retry >= maxAttempts || !circuitBreaker.tryAcquireRetry()) {
+					throw e;
+				}
+				retries.increment();
+				Thread.sleep(backoff(retry));
+				continue;
+			}
+			return objectMapper.readValue(body, RESPONSE_TYPE);
+		}
+	}
+
+	private byte[] attempt(String ipAddress) throws IOException, InterruptedException {
+		if (!circuitBreaker.tryAcquirePermission()) {
+			throw new CircuitOpenException();
+		}
+		log.debug("Getting country for IP: {}", ipAddress);
+
+		URI uri = UriComponentsBuilder.fromUriString(geoLocationBaseUrl + "/json/{ip}").buildAndExpand(ipAddress).encode().toUri();
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.header("Accept", MediaType.APPLICATION_JSON_VALUE)
+				.timeout(circuitBreaker.timeout())
+				.GET()
+				.build();
+		long start = System.nanoTime();
+		HttpResponse<byte[]> response;
+		try {
+			response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+		} catch (HttpTimeoutException e) {
+			circuitBreaker.onTimeout(System.nanoTime() - start);
+			throw e;
+		} catch (IOException e) {
+			circuitBreaker.onFailure(System.nanoTime() - start);
+			throw e;
+		} catch (InterruptedException e) {
+			circuitBreaker.releasePermission();
+			throw e;
+		}
+		int status = response.statusCode();
+		if (status >= 400) {
+			// only a provider in trouble counts against the circuit, not a proper answer such as a 404
+			if (status >= 500 || status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+				circuitBreaker.onFailure(System.nanoTime() - start);
+			} else {
+				circuitBreaker.onSuccess(System.nanoTime() - start);
+			}
+			throw new HttpStatusException(status);
+		}
+		circuitBreaker.onSuccess(System.nanoTime() - start);
+		return response.body();
+	}
+
+	private long backoff(int retry) {
+		// exponential with 50 % jitter, like Retry.backoff
+		long delay = backoffMs << retry;
+		long jitter = delay / 2;
+		return delay + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+	}
+
+	private String extractCountry(String ipAddress, Map<String, Object> response) {
+		if (nonNull(response) && nonNull(response.get(FIELD_COUNTRY))) {
+			String country = (String) response.get(FIELD_COUNTRY);
+			log.debug("Country found for IP {}: {}", ipAddress, country);
+			return country;
+		}
+		log.warn("Country not found for IP: {}", ipAddress);
+		return UNKNOWN_COUNTRY;
+	}
+
+	private static Timer requestTimer(MeterRegistry meterRegistry, String outcome) {
+		return Timer.builder(REQUESTS_METRIC)
+				.description("Geolocation lookups that missed the cache, including retries")
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	private static Counter fallbackCounter(MeterRegistry meterRegistry, String reason) {
+		return Counter.builder("geolocation.fallbacks")
+				.description("Geolocation lookups that fell back to the Unknown country")
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+
+	private static class HttpStatusException extends RuntimeException {
+
+		HttpStatusException(int status) {
+			super("HTTP " + status, null, false, false);
+		}
+	}
+
+	private static class CircuitOpenException extends RuntimeException {
+
+		CircuitOpenException() {
+			super("Geolocation circuit is open", null, false, false);
+		}
+	}
+}
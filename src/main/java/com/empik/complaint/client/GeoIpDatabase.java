@@ -0,0 +1,192 @@
+package com.empik.complaint.client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Immutable in-memory IPv4 range table loaded from a CSV file of {@code <cidr>,<country>} lines
+ * (blank lines and lines starting with {@code #} are ignored), e.g. {@code 83.0.0.0/11,Poland}.
+ * <p>
+ * Ranges are kept in parallel primitive arrays sorted by range start and looked up with a binary
+ * search, so {@link #lookup(CharSequence)} does not allocate. CIDR blocks either nest or do not overlap; nested
+ * ones are flattened on load so that an address takes the country of the most specific block covering it, and the
+ * same block listed twice is rejected. IPv6 addresses are not supported and resolve to {@code null}.
+ */
+public final class GeoIpDatabase {
+
+	private static final long NOT_AN_IPV4 = -1;
+
+	private final long[] starts;
+	private final long[] ends;
+	private final int[] countryIndexes;
+	private final String[] countries;
+
+	private GeoIpDatabase(long[] starts, long[] ends, int[] countryIndexes, String[] countries) {
+		this.starts = starts;
+		this.ends = ends;
+		this.countryIndexes = countryIndexes;
+		this.countries = countries;
+	}
+
+	public static GeoIpDatabase load(Path file) throws IOException {
+		List<Range> ranges = new ArrayList<>();
+		Map<String, Integer> countryIds = new HashMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.strip();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				ranges.add(parseRange(line, lineNumber, countryIds));
+			}
+		}
+		// enclosing blocks before the blocks they contain
+		ranges.sort(Comparator.comparingLong(Range::start).thenComparing(Comparator.comparingLong(Range::end).reversed()));
+		ranges = flatten(ranges);
+
+		long[] starts = new long[ranges.size()];
+		long[] ends = new long[ranges.size()];
+		int[] countryIndexes = new int[ranges.size()];
+		for (int i = 0; i < ranges.size(); i++) {
+			Range range = ranges.get(i);
+			starts[i] = range.start();
+			ends[i] = range.end();
+			countryIndexes[i] = range.countryIndex();
+		}
+		String[] countries = new String[countryIds.size()];
+		countryIds.forEach((country, index) -> countries[index] = country);
+
+		return new GeoIpDatabase(starts, ends, countryIndexes, countries);
+	}
+
+	/**
+	 * Returns the country for the given dotted-quad IPv4 address, or {@code null} if it is not covered by any range.
+	 */
+	public String lookup(CharSequence ipAddress) {
+		long address = parseIpv4(ipAddress, 0, ipAddress.length());
+		if (address == NOT_AN_IPV4) {
+			return null;
+		}
+
+		int low = 0;
+		int high = starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= address) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high >= 0 && address <= ends[high] ? countries[countryIndexes[high]] : null;
+	}
+
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 * Splits the sorted blocks into non-overlapping ranges, each covered by the most specific block.
+	 */
+	private static List<Range> flatten(List<Range> blocks) throws IOException {
+		List<Range> flat = new ArrayList<>(blocks.size());
+		Deque<Range> enclosing = new ArrayDeque<>();
+		long next = 0;
+		for (Range block : blocks) {
+			while (!enclosing.isEmpty() && enclosing.peek().end() < block.start()) {
+				next = addRest(flat, enclosing.pop(), next);
+			}
+			Range parent = enclosing.peek();
+			if (nonNull(parent) && parent.start() == block.start() && parent.end() == block.end()) {
+				throw new IOException("Duplicate GeoIP entry at line " + block.lineNumber()
+						+ ", the same range is listed at line " + parent.lineNumber());
+			}
+			if (nonNull(parent) && next < block.start()) {
+				flat.add(new Range(next, block.start() - 1, parent.countryIndex(), parent.lineNumber()));
+			}
+			next = block.start();
+			enclosing.push(block);
+		}
+		while (!enclosing.isEmpty()) {
+			next = addRest(flat, enclosing.pop(), next);
+		}
+		return flat;
+	}
+
+	private static long addRest(List<Range> flat, Range block, long next) {
+		if (next <= block.end()) {
+			flat.add(new Range(next, block.end(), block.countryIndex(), block.lineNumber()));
+		}
+		return Math.max(next, block.end() + 1);
+	}
+
+	private static Range parseRange(String line, int lineNumber, Map<String, Integer> countryIds) throws IOException {
+		int slash = line.indexOf('/');
+		int comma = line.indexOf(',');
+		if (slash < 0 || comma < slash) {
+			throw new IOException("Invalid GeoIP entry at line " + lineNumber + ": " + line);
+		}
+		long network = parseIpv4(line, 0, slash);
+		int prefix;
+		try {
+			prefix = Integer.parseInt(line, slash + 1, comma, 10);
+		} catch (NumberFormatException e) {
+			prefix = -1;
+		}
+		String country = line.substring(comma + 1).strip();
+		if (network == NOT_AN_IPV4 || prefix < 0 || prefix > 32 || country.isEmpty()) {
+			throw new IOException("Invalid GeoIP entry at line " + lineNumber + ": " + line);
+		}
+
+		long hostMask = 0xFFFFFFFFL >>> prefix;
+		long start = network & ~hostMask;
+		int countryIndex = countryIds.computeIfAbsent(country, c -> countryIds.size());
+		return new Range(start, start | hostMask, countryIndex, lineNumber);
+	}
+
+	private static long parseIpv4(CharSequence text, int from, int to) {
+		long address = 0;
+		int octet = 0;
+		int digits = 0;
+		int dots = 0;
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = octet * 10 + (c - '0');
+				if (++digits > 3 || octet > 255) {
+					return NOT_AN_IPV4;
+				}
+			} else if (c == '.' && digits > 0 && dots < 3) {
+				address = (address << 8) | octet;
+				octet = 0;
+				digits = 0;
+				dots++;
+			} else {
+				return NOT_AN_IPV4;
+			}
+		}
+		if (dots != 3 || digits == 0) {
+			return NOT_AN_IPV4;
+		}
+		return (address << 8) | octet;
+	}
+
+	private record Range(long start, long end, int countryIndex, int lineNumber) {
+	}
+}
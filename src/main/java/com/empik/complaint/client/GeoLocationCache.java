@@ -0,0 +1,104 @@
+package com.empik.complaint.client;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static com.empik.complaint.client.GeoLocationClient.UNKNOWN_COUNTRY;
+import static java.util.Objects.isNull;
+
+/**
+ * Bounded, expiring cache of resolved countries keyed by IP address.
+ * <p>
+ * Concurrent lookups of the same IP share one in-flight load. "Unknown" results are kept only for
+ * the short negative TTL, so a transient provider failure does not pin an IP to "Unknown".
+ */
+@Component
+@Slf4j
+public class GeoLocationCache {
+
+	private static final String CACHE_NAME = "geolocation";
+
+	private final AsyncCache<String, String> cache;
+
+	public GeoLocationCache(MeterRegistry meterRegistry,
+							@Value("${application.geolocation.cache.enabled:true}") boolean enabled,
+							@Value("${application.geolocation.cache.max-size:10000}") long maxSize,
+							@Value("${application.geolocation.cache.ttl-ms:3600000}") long ttlMs,
+							@Value("${application.geolocation.cache.negative-ttl-ms:60000}") long negativeTtlMs) {
+		if (!enabled) {
+			this.cache = null;
+			return;
+		}
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfter(new CountryExpiry(Duration.ofMillis(ttlMs), Duration.ofMillis(negativeTtlMs)))
+				.recordStats()
+				.buildAsync();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+
+		log.info("Geolocation cache enabled (max size: {}, ttl: {} ms, negative ttl: {} ms)", maxSize, ttlMs, negativeTtlMs);
+	}
+
+	public Mono<String> get(String ipAddress, Function<String, Mono<String>> loader) {
+		if (isNull(cache)) {
+			return loader.apply(ipAddress);
+		}
+		// suppressCancel: one caller cancelling must not abort a lookup shared with other callers
+		return Mono.fromFuture(() -> cache.get(ipAddress, (ip, executor) -> loader.apply(ip).toFuture()), true);
+	}
+
+	/**
+	 * Blocking variant of {@link #get} for callers on virtual threads: a missing country is loaded on the calling
+	 * thread, and concurrent callers of the same IP wait for that load. The cache only holds the caller's future,
+	 * so no load runs on a pool of its own.
+	 */
+	public String getBlocking(String ipAddress, UnaryOperator<String> loader) {
+		if (isNull(cache)) {
+			return loader.apply(ipAddress);
+		}
+		CompletableFuture<String> loading = new CompletableFuture<>();
+		CompletableFuture<String> country = cache.get(ipAddress, (ip, executor) -> loading);
+		if (country != loading) {
+			return country.join();
+		}
+		try {
+			String loaded = loader.apply(ipAddress);
+			loading.complete(loaded);
+			return loaded;
+		} catch (RuntimeException | Error e) {
+			// a failed future is dropped from the cache, so the next caller loads again
+			loading.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private record CountryExpiry(Duration ttl, Duration negativeTtl) implements Expiry<String, String> {
+
+		@Override
+		public long expireAfterCreate(String ipAddress, String country, long currentTime) {
+			return (UNKNOWN_COUNTRY.equals(country) ? negativeTtl : ttl).toNanos();
+		}
+
+		@Override
+		public long expireAfterUpdate(String ipAddress, String country, long currentTime, long currentDuration) {
+			return expireAfterCreate(ipAddress, country, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(String ipAddress, String country, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
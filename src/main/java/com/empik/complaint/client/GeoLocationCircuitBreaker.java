@@ -0,0 +1,305 @@
+package com.empik.complaint.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Guards calls to the geolocation provider so that a degraded provider costs callers a fast fallback
+ * instead of a pile-up of requests waiting for timeouts and retries.
+ * <ul>
+ * <li>Circuit breaker: outcomes of the last {@code window-size} calls are kept; once the share of failed
+ * or slow calls crosses its threshold the circuit opens and calls are refused outright. After
+ * {@code open-ms} a few probe calls are let through (half-open): if they all succeed the circuit closes,
+ * any failure opens it again.</li>
+ * <li>Adaptive timeout: each call may take a multiple of the recent 99th percentile latency, kept between
+ * {@code min-ms} and {@code max-ms}, instead of the fixed 5 s of the HTTP client. A call that timed out counts
+ * with the time it was given, a lower bound of its latency, so the timeout grows again when the provider slows
+ * down. Half-open probes get {@code max-ms}, and the latencies are forgotten when the circuit closes, as they
+ * describe the provider from before it failed.</li>
+ * <li>Retry budget: every request earns a fraction of a retry, up to a cap, and every retry spends one,
+ * so retries stay a bounded share of the traffic instead of multiplying it while the provider struggles.</li>
+ * </ul>
+ * When disabled every call is permitted, the timeout is {@code max-ms} and retries are unlimited.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.geolocation.provider", havingValue = "http", matchIfMissing = true)
+public class GeoLocationCircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final byte FAILED = 1;
+	private static final byte SLOW = 2;
+	private static final int LATENCY_SAMPLES = 256;
+	private static final int TIMEOUT_RECOMPUTE_INTERVAL = 32;
+	private static final double LATENCY_PERCENTILE = 0.99;
+
+	private final boolean enabled;
+	private final LongSupplier nanoClock;
+
+	private final byte[] outcomes;
+	private final int minimumCalls;
+	private final double failureRateThreshold;
+	private final long slowCallNanos;
+	private final double slowCallRateThreshold;
+	private final long openNanos;
+	private final int halfOpenProbes;
+
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private final long minTimeoutNanos;
+	private final long maxTimeoutNanos;
+	private final double timeoutMultiplier;
+
+	private final double retryBudgetRatio;
+	private final double retryBudgetMax;
+
+	private final Counter rejectedCalls;
+	private final Counter deniedRetries;
+
+	// guarded by this
+	private State state = State.CLOSED;
+	private int outcomeIndex;
+	private int recordedCalls;
+	private int failedCalls;
+	private int slowCalls;
+	private long openedAt;
+	private int probesIssued;
+	private int probesSucceeded;
+	private int latencyIndex;
+	private int recordedLatencies;
+	private double retryBalance;
+
+	private volatile long timeoutNanos;
+
+	@Autowired
+	public GeoLocationCircuitBreaker(MeterRegistry meterRegistry,
+									 @Value("${application.geolocation.circuit-breaker.enabled:true}") boolean enabled,
+									 @Value("${application.geolocation.circuit-breaker.window-size:50}") int windowSize,
+									 @Value("${application.geolocation.circuit-breaker.minimum-calls:20}") int minimumCalls,
+									 @Value("${application.geolocation.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+									 @Value("${application.geolocation.circuit-breaker.slow-call-ms:2000}") long slowCallMs,
+									 @Value("${application.geolocation.circuit-breaker.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+									 @Value("${application.geolocation.circuit-breaker.open-ms:10000}") long openMs,
+									 @Value("${application.geolocation.circuit-breaker.half-open-probes:3}") int halfOpenProbes,
+									 @Value("${application.geolocation.timeout.min-ms:250}") long minTimeoutMs,
+									 @Value("${application.geolocation.timeout.max-ms:5000}") long maxTimeoutMs,
+									 @Value("${application.geolocation.timeout.multiplier:3}") double timeoutMultiplier,
+									 @Value("${application.geolocation.retry.budget-ratio:0.1}") double retryBudgetRatio,
+									 @Value("${application.geolocation.retry.budget-max:10}") double retryBudgetMax) {
+		this(meterRegistry, enabled, windowSize, minimumCalls, failureRateThreshold, slowCallMs, slowCallRateThreshold,
+				openMs, halfOpenProbes, minTimeoutMs, maxTimeoutMs, timeoutMultiplier, retryBudgetRatio, retryBudgetMax,
+				System::nanoTime);
+	}
+
+	GeoLocationCircuitBreaker(MeterRegistry meterRegistry, boolean enabled, int windowSize, int minimumCalls,
+							  double failureRateThreshold, long slowCallMs, double slowCallRateThreshold, long openMs,
+							  int halfOpenProbes, long minTimeoutMs, long maxTimeoutMs, double timeoutMultiplier,
+							  double retryBudgetRatio, double retryBudgetMax, LongSupplier nanoClock) {
+		this.enabled = enabled;
+		this.nanoClock = nanoClock;
+		this.outcomes = new byte[windowSize];
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+		this.halfOpenProbes = halfOpenProbes;
+		this.minTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(minTimeoutMs);
+		this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxTimeoutMs);
+		this.timeoutMultiplier = timeoutMultiplier;
+		this.retryBudgetRatio = retryBudgetRatio;
+		this.retryBudgetMax = retryBudgetMax;
+		this.retryBalance = retryBudgetMax;
+		this.timeoutNanos = maxTimeoutNanos;
+
+		this.rejectedCalls = Counter.builder("geolocation.circuit.rejected")
+				.description("Geolocation calls refused while the circuit was open")
+				.register(meterRegistry);
+		this.deniedRetries = Counter.builder("geolocation.retries.denied")
+				.description("Geolocation retries skipped because the retry budget was spent")
+				.register(meterRegistry);
+		Gauge.builder("geolocation.circuit.state", this, breaker -> breaker.state().ordinal())
+				.description("Geolocation circuit state: 0 closed, 1 open, 2 half-open")
+				.register(meterRegistry);
+		TimeGauge.builder("geolocation.timeout", this, TimeUnit.NANOSECONDS, breaker -> breaker.timeoutNanos)
+				.description("Current adaptive timeout of a geolocation call")
+				.register(meterRegistry);
+
+		if (enabled) {
+			log.info("Geolocation circuit breaker enabled (window: {}, failure rate: {}, open: {} ms, timeout: {}-{} ms)",
+					windowSize, failureRateThreshold, openMs, minTimeoutMs, maxTimeoutMs);
+		}
+	}
+
+	/**
+	 * Takes a permission for one call. Every permitted call must be followed by {@link #onSuccess(long)},
+	 * {@link #onFailure(long)}, {@link #onTimeout(long)} or, when it is cancelled, {@link #releasePermission()}.
+	 */
+	public synchronized boolean tryAcquirePermission() {
+		if (!enabled) {
+			return true;
+		}
+		if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openNanos) {
+			transitionTo(State.HALF_OPEN);
+		}
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.HALF_OPEN && probesIssued < halfOpenProbes) {
+			probesIssued++;
+			return true;
+		}
+		rejectedCalls.increment();
+		return false;
+	}
+
+	public synchronized void releasePermission() {
+		if (enabled && state == State.HALF_OPEN && probesIssued > 0) {
+			probesIssued--;
+		}
+	}
+
+	public synchronized void onSuccess(long durationNanos) {
+		if (!enabled) {
+			return;
+		}
+		recordLatency(durationNanos);
+		boolean slow = durationNanos > slowCallNanos;
+		if (state == State.HALF_OPEN) {
+			if (slow) {
+				transitionTo(State.OPEN);
+			} else if (++probesSucceeded >= halfOpenProbes) {
+				transitionTo(State.CLOSED);
+			}
+		} else if (state == State.CLOSED) {
+			record(slow ? SLOW : 0);
+		}
+	}
+
+	public synchronized void onFailure(long durationNanos) {
+		if (!enabled) {
+			return;
+		}
+		recordFailure(durationNanos);
+	}
+
+	/**
+	 * Records a call that did not answer within its {@link #timeout()}: a failure whose duration still counts
+	 * towards the latency percentile.
+	 */
+	public synchronized void onTimeout(long durationNanos) {
+		if (!enabled) {
+			return;
+		}
+		recordLatency(durationNanos);
+		recordFailure(durationNanos);
+	}
+
+	private void recordFailure(long durationNanos) {
+		if (state == State.HALF_OPEN) {
+			transitionTo(State.OPEN);
+		} else if (state == State.CLOSED) {
+			record((byte) (FAILED | (durationNanos > slowCallNanos ? SLOW : 0)));
+		}
+	}
+
+	/**
+	 * Credits the retry budget with one request.
+	 */
+	public synchronized void onRequest() {
+		retryBalance = Math.min(retryBudgetMax, retryBalance + retryBudgetRatio);
+	}
+
+	/**
+	 * Spends one retry from the budget, if there is one left.
+	 */
+	public synchronized boolean tryAcquireRetry() {
+		if (!enabled) {
+			return true;
+		}
+		if (retryBalance >= 1) {
+			retryBalance -= 1;
+			return true;
+		}
+		deniedRetries.increment();
+		return false;
+	}
+
+	/**
+	 * Time a call permitted just now may take; probes of a half-open circuit get the maximum.
+	 */
+	public synchronized Duration timeout() {
+		return Duration.ofNanos(state == State.HALF_OPEN ? maxTimeoutNanos : timeoutNanos);
+	}
+
+	public synchronized State state() {
+		return state;
+	}
+
+	private void record(byte outcome) {
+		if (recordedCalls == outcomes.length) {
+			byte evicted = outcomes[outcomeIndex];
+			failedCalls -= evicted & FAILED;
+			slowCalls -= (evicted & SLOW) >> 1;
+		} else {
+			recordedCalls++;
+		}
+		outcomes[outcomeIndex] = outcome;
+		outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+		failedCalls += outcome & FAILED;
+		slowCalls += (outcome & SLOW) >> 1;
+
+		if (recordedCalls >= minimumCalls
+				&& (failedCalls >= failureRateThreshold * recordedCalls || slowCalls >= slowCallRateThreshold * recordedCalls)) {
+			log.warn("Geolocation circuit opening: {} failed and {} slow of the last {} calls",
+					failedCalls, slowCalls, recordedCalls);
+			transitionTo(State.OPEN);
+		}
+	}
+
+	private void transitionTo(State next) {
+		log.info("Geolocation circuit {} -> {}", state, next);
+		state = next;
+		probesIssued = 0;
+		probesSucceeded = 0;
+		if (next == State.OPEN) {
+			openedAt = nanoClock.getAsLong();
+		}
+		if (next == State.CLOSED) {
+			Arrays.fill(outcomes, (byte) 0);
+			outcomeIndex = 0;
+			recordedCalls = 0;
+			failedCalls = 0;
+			slowCalls = 0;
+			latencyIndex = 0;
+			recordedLatencies = 0;
+			timeoutNanos = maxTimeoutNanos;
+		}
+	}
+
+	private void recordLatency(long durationNanos) {
+		latencies[latencyIndex] = durationNanos;
+		latencyIndex = (latencyIndex + 1) % latencies.length;
+		recordedLatencies = Math.min(recordedLatencies + 1, latencies.length);
+		if (recordedLatencies >= TIMEOUT_RECOMPUTE_INTERVAL && latencyIndex % TIMEOUT_RECOMPUTE_INTERVAL == 0) {
+			long[] sorted = Arrays.copyOf(latencies, recordedLatencies);
+			Arrays.sort(sorted);
+			long percentile = sorted[(int) Math.ceil(LATENCY_PERCENTILE * sorted.length) - 1];
+			timeoutNanos = Math.clamp((long) (percentile * timeoutMultiplier), minTimeoutNanos, maxTimeoutNanos);
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package com.empik.complaint.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Resolves countries through the remote geolocation API, one {@code GET /json/{ip}} per lookup.
+ * <p>
+ * With batching enabled, lookups that miss the cache are queued instead and sent together as one
+ * {@code POST /batch} once {@code max-size} (at most the provider's 100) are waiting or the oldest has waited
+ * {@code max-wait-ms}; the results are fanned back out to the waiting callers. A batch is one call to the circuit
+ * breaker: it takes one permission, gets the adaptive timeout and records its outcome. If the batch request fails
+ * or the circuit is open, its lookups fall back to "Unknown" rather than to single calls, which would multiply the
+ * load on a struggling provider; only a lookup that finds the queue full is sent on its own.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.geolocation.provider", havingValue = "http", matchIfMissing = true)
+public class HttpGeoLocationClient implements GeoLocationClient {
+
+	private static final String FIELD_COUNTRY = "country";
+	private static final String REQUESTS_METRIC = "geolocation.requests";
+	private static final int PROVIDER_BATCH_LIMIT = 100;
+	private static final String PENDING_LIMIT_MESSAGE = "Pending acquire queue has reached its maximum size";
+
+	private final WebClient geoLocationWebClient;
+	private final GeoLocationCache geoLocationCache;
+	private final GeoLocationCircuitBreaker circuitBreaker;
+	private final MeterRegistry meterRegistry;
+	private final Timer resolvedTimer;
+	private final Timer notFoundTimer;
+	private final Timer fallbackTimer;
+	private final Counter retries;
+	private final Counter httpErrorFallbacks;
+	private final Counter unexpectedErrorFallbacks;
+	private final Counter circuitOpenFallbacks;
+	private final Counter poolExhaustedFallbacks;
+
+	@Value("${application.geolocation.retry.max-attempts:3}")
+	private int maxAttempts;
+
+	@Value("${application.geolocation.retry.backoff-ms:1000}")
+	private long backoffMs;
+
+	@Value("${application.geolocation.base-url}")
+	private String geoLocationBaseUrl;
+
+	@Value("${application.geolocation.batch.enabled:false}")
+	private boolean batchEnabled;
+
+	@Value("${application.geolocation.batch.max-size:100}")
+	private int batchMaxSize;
+
+	@Value("${application.geolocation.batch.max-wait-ms:5}")
+	private long batchMaxWaitMs;
+
+	@Value("${application.geolocation.batch.concurrency:4}")
+	private int batchConcurrency;
+
+	@Value("${application.geolocation.batch.queue-capacity:10000}")
+	private int batchQueueCapacity;
+
+	private Sinks.Many<PendingLookup> pendingLookups;
+	private Disposable batchSubscription;
+	private DistributionSummary batchSizes;
+	private Counter batchFallbacks;
+
+	public HttpGeoLocationClient(WebClient geoLocationWebClient, GeoLocationCache geoLocationCache,
+								 GeoLocationCircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+		this.geoLocationWebClient = geoLocationWebClient;
+		this.geoLocationCache = geoLocationCache;
+		this.circuitBreaker = circuitBreaker;
+		this.meterRegistry = meterRegistry;
+		this.resolvedTimer = requestTimer(meterRegistry, "resolved");
+		this.notFoundTimer = requestTimer(meterRegistry, "not_found");
+		this.fallbackTimer = requestTimer(meterRegistry, "fallback");
+		this.retries = Counter.builder("geolocation.retries")
+				.description("Geolocation requests retried after a connection error or timeout")
+				.register(meterRegistry);
+		this.httpErrorFallbacks = fallbackCounter(meterRegistry, "http_error");
+		this.unexpectedErrorFallbacks = fallbackCounter(meterRegistry, "unexpected_error");
+		this.circuitOpenFallbacks = fallbackCounter(meterRegistry, "circuit_open");
+		this.poolExhaustedFallbacks = fallbackCounter(meterRegistry, "pool_exhausted");
+	}
+
+	@PostConstruct
+	void start() {
+		if (!batchEnabled) {
+			return;
+		}
+		batchSizes = DistributionSummary.builder("geolocation.batch.size")
+				.description("Lookups sent in one batch request")
+				.register(meterRegistry);
+		batchFallbacks = Counter.builder("geolocation.batch.fallbacks")
+				.description("Batches whose lookups fell back to Unknown because the batch request failed or the circuit was open")
+				.register(meterRegistry);
+
+		int maxSize = Math.min(batchMaxSize, PROVIDER_BATCH_LIMIT);
+		if (maxSize < batchMaxSize) {
+			log.warn("Geolocation batch max size {} is above the provider's limit, using {}", batchMaxSize, maxSize);
+		}
+		pendingLookups = Sinks.many().unicast().onBackpressureBuffer(Queues.<PendingLookup>get(batchQueueCapacity).get());
+		batchSubscription = pendingLookups.asFlux()
+				.bufferTimeout(maxSize, Duration.ofMillis(batchMaxWaitMs), true)
+				// lookups still queued or buffered when the pipeline is disposed
+				.doOnDiscard(PendingLookup.class, PendingLookup::abandon)
+				.flatMap(this::processBatch, batchConcurrency)
+				.subscribe();
+
+		log.info("Geolocation batching enabled (max size: {}, max wait: {} ms)", maxSize, batchMaxWaitMs);
+	}
+
+	@PreDestroy
+	void stop() {
+		if (nonNull(batchSubscription)) {
+			batchSubscription.dispose();
+		}
+	}
+
+	@Override
+	public Mono<String> getCountryFromIp(String ipAddress) {
+		return geoLocationCache.get(ipAddress, this::fetchCountry);
+	}
+
+	private Mono<String> fetchCountry(String ipAddress) {
+		return Mono.defer(() -> {
+			Timer.Sample sample = Timer.start();
+			circuitBreaker.onRequest();
+			return (batchEnabled ? enqueue(ipAddress) : requestCountry(ipAddress))
+					.doOnNext(country -> sample.stop(UNKNOWN_COUNTRY.equals(country) ? notFoundTimer : resolvedTimer))
+					.onErrorResume(CircuitOpenException.class, e -> {
+						sample.stop(fallbackTimer);
+						circuitOpenFallbacks.increment();
+						log.debug("Geolocation circuit open, skipping lookup for IP {}", ipAddress);
+						return Mono.just(UNKNOWN_COUNTRY);
+					})
+					.onErrorResume(HttpGeoLocationClient::isPoolExhausted, e -> {
+						sample.stop(fallbackTimer);
+						poolExhaustedFallbacks.increment();
+						log.warn("No geolocation connection free for IP {}: {}", ipAddress, e.getMessage());
+						return Mono.just(UNKNOWN_COUNTRY);
+					})
+					.onErrorResume(WebClientResponseException.class, e -> {
+						sample.stop(fallbackTimer);
+						return handleHttpError(ipAddress, e);
+					})
+					.onErrorResume(e -> {
+						sample.stop(fallbackTimer);
+						return handleUnexpectedError(ipAddress, e);
+					});
+		});
+	}
+
+	private Mono<String> requestCountry(String ipAddress) {
+		return Mono.defer(() -> attempt(ipAddress))
+				.map(response -> extractCountry(ipAddress, response))
+				.retryWhen(retrySpec());
+	}
+
+	private Mono<Map<String, Object>> attempt(String ipAddress) {
+		if (!circuitBreaker.tryAcquirePermission()) {
+			return Mono.error(new CircuitOpenException());
+		}
+		log.debug("Getting country for IP: {}", ipAddress);
+
+		return guarded(geoLocationWebClient.get()
+				.uri(geoLocationBaseUrl + "/json/{ip}", ipAddress)
+				.accept(MediaType.APPLICATION_JSON)
+				.retrieve()
+				.bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}));
+	}
+
+	/**
+	 * Applies the adaptive timeout to a provider call whose permission was taken and records its outcome.
+	 */
+	private <T> Mono<T> guarded(Mono<T> call) {
+		long start = System.nanoTime();
+		return call
+				.timeout(circuitBreaker.timeout())
+				.doOnSuccess(response -> circuitBreaker.onSuccess(System.nanoTime() - start))
+				.doOnError(e -> {
+					if (isPoolExhausted(e)) {
+						// refused by the local pool before the provider saw the call
+						circuitBreaker.releasePermission();
+					} else if (e instanceof TimeoutException) {
+						circuitBreaker.onTimeout(System.nanoTime() - start);
+					} else if (isProviderFailure(e)) {
+						circuitBreaker.onFailure(System.nanoTime() - start);
+					} else {
+						circuitBreaker.onSuccess(System.nanoTime() - start);
+					}
+				})
+				.doOnCancel(circuitBreaker::releasePermission);
+	}
+
+	private Mono<String> enqueue(String ipAddress) {
+		PendingLookup lookup = new PendingLookup(ipAddress, Sinks.one());
+
+		Sinks.EmitResult result;
+		do {
+			result = pendingLookups.tryEmitNext(lookup);
+		} while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+
+		if (result.isFailure()) {
+			log.debug("Geolocation batch queue full, looking up IP {} on its own", ipAddress);
+			return requestCountry(ipAddress);
+		}
+		return lookup.country().asMono();
+	}
+
+	private Mono<Void> processBatch(List<PendingLookup> batch) {
+		batchSizes.record(batch.size());
+		if (!circuitBreaker.tryAcquirePermission()) {
+			batchFallbacks.increment();
+			fail(batch, new CircuitOpenException());
+			return Mono.empty();
+		}
+
+		return requestCountries(batch)
+				.doOnNext(countries -> {
+					for (int i = 0; i < batch.size(); i++) {
+						batch.get(i).country().tryEmitValue(countries.get(i));
+					}
+				})
+				.then()
+				.onErrorResume(e -> {
+					batchFallbacks.increment();
+					log.warn("Geolocation batch of {} lookups failed, falling back to Unknown: {}", batch.size(), e.getMessage());
+					fail(batch, e);
+					return Mono.empty();
+				})
+				.doOnCancel(() -> batch.forEach(PendingLookup::abandon));
+	}
+
+	private Mono<List<String>> requestCountries(List<PendingLookup> batch) {
+		List<String> ipAddresses = batch.stream().map(PendingLookup::ipAddress).toList();
+		log.debug("Getting countries for {} IPs in one batch", ipAddresses.size());
+
+		return guarded(geoLocationWebClient.post()
+						.uri(geoLocationBaseUrl + "/batch")
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON)
+						.bodyValue(ipAddresses)
+						.retrieve()
+						.bodyToMono(new ParameterizedTypeReference<List<Map<String, Object>>>() {}))
+				.map(responses -> {
+					// the provider answers in request order
+					if (responses.size() != ipAddresses.size()) {
+						throw new IllegalStateException("Batch response has " + responses.size() + " results for "
+								+ ipAddresses.size() + " IPs");
+					}
+					List<String> countries = new ArrayList<>(responses.size());
+					for (int i = 0; i < responses.size(); i++) {
+						countries.add(extractCountry(ipAddresses.get(i), responses.get(i)));
+					}
+					return countries;
+				});
+	}
+
+	/**
+	 * Fails the lookups of a batch, which their callers turn into the fallback matching the error.
+	 */
+	private static void fail(List<PendingLookup> batch, Throwable error) {
+		batch.forEach(lookup -> lookup.country().tryEmitError(error));
+	}
+
+	private String extractCountry(String ipAddress, Map<String, Object> response) {
+		if (nonNull(response) && nonNull(response.get(FIELD_COUNTRY))) {
+			String country = (String) response.get(FIELD_COUNTRY);
+			log.debug("Country found for IP {}: {}", ipAddress, country);
+			return country;
+		}
+		log.warn("Country not found for IP: {}", ipAddress);
+		return UNKNOWN_COUNTRY;
+	}
+
+	private RetryBackoffSpec retrySpec() {
+		return Retry.backoff(maxAttempts, Duration.ofMillis(backoffMs))
+				.filter(e -> isRetryable(e) && circuitBreaker.tryAcquireRetry())
+				.doBeforeRetry(signal -> retries.increment())
+				.onRetryExhaustedThrow((spec, signal) -> signal.failure());
+	}
+
+	private Mono<String> handleHttpError(String ipAddress, WebClientResponseException e) {
+		httpErrorFallbacks.increment();
+		log.error("Error getting country for IP {}: {} - {}", ipAddress, e.getStatusCode(), e.getMessage());
+		return Mono.just(UNKNOWN_COUNTRY);
+	}
+
+	private Mono<String> handleUnexpectedError(String ipAddress, Throwable e) {
+		unexpectedErrorFallbacks.increment();
+		log.error("Unexpected error getting country for IP {}: {}", ipAddress, e.getMessage());
+		return Mono.just(UNKNOWN_COUNTRY);
+	}
+
+	private boolean isRetryable(Throwable throwable) {
+		return throwable instanceof WebClientRequestException && !isPoolExhausted(throwable)
+				|| throwable instanceof TimeoutException;
+	}
+
+	/**
+	 * Whether the connection pool refused the call: its pending-acquire queue was full or no connection was freed
+	 * within the pending-acquire timeout. The pool's own exceptions are internal to Reactor Netty, so they are told
+	 * apart by their public supertypes, and by message for the pending limit, whose supertype changed over versions.
+	 */
+	private static boolean isPoolExhausted(Throwable throwable) {
+		if (!(throwable instanceof WebClientRequestException)) {
+			return false;
+		}
+		Throwable cause = throwable.getCause();
+		return cause instanceof TimeoutException
+				|| cause instanceof NoSuchElementException
+				|| nonNull(cause) && nonNull(cause.getMessage()) && cause.getMessage().startsWith(PENDING_LIMIT_MESSAGE);
+	}
+
+	/**
+	 * Whether the error says the provider is unhealthy, as opposed to answering properly, e.g. with a 404.
+	 */
+	private static boolean isProviderFailure(Throwable throwable) {
+		if (throwable instanceof WebClientResponseException e) {
+			return e.getStatusCode().is5xxServerError() || e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+		}
+		return true;
+	}
+
+	private static Timer requestTimer(MeterRegistry meterRegistry, String outcome) {
+		return Timer.builder(REQUESTS_METRIC)
+				.description("Geolocation lookups that missed the cache, including retries")
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	private static Counter fallbackCounter(MeterRegistry meterRegistry, String reason) {
+		return Counter.builder("geolocation.fallbacks")
+				.description("Geolocation lookups that fell back to the Unknown country")
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+
+	private record PendingLookup(String ipAddress, Sinks.One<String> country) {
+
+		/**
+		 * Answers a lookup the stopped pipeline will not resolve any more.
+		 */
+		void abandon() {
+			country.tryEmitValue(UNKNOWN_COUNTRY);
+		}
+	}
+
+	private static class CircuitOpenException extends RuntimeException {
+
+		CircuitOpenException() {
+			super("Geolocation circuit is open", null, false, false);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.empik.complaint.client;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Resolves countries from a local {@link GeoIpDatabase} file instead of the remote geolocation API.
+ * The file is polled for modifications and reloaded in the background; lookups keep using the
+ * previous snapshot until the new one is fully loaded, and a failed reload keeps the old one.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.geolocation.provider", havingValue = "local")
+public class LocalGeoLocationClient implements GeoLocationClient, BlockingGeoLocationClient {
+
+	private final Path databaseFile;
+	private final long reloadIntervalMs;
+
+	private volatile GeoIpDatabase database;
+	private volatile FileTime loadedModificationTime;
+	private ScheduledExecutorService reloadExecutor;
+
+	public LocalGeoLocationClient(@Value("${application.geolocation.local.database-file}") Path databaseFile,
+								  @Value("${application.geolocation.local.reload-interval-ms:30000}") long reloadIntervalMs) {
+		this.databaseFile = databaseFile;
+		this.reloadIntervalMs = reloadIntervalMs;
+	}
+
+	@PostConstruct
+	void start() {
+		try {
+			load();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot load GeoIP database from " + databaseFile, e);
+		}
+		if (reloadIntervalMs > 0) {
+			reloadExecutor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+					.name("geoip-reload")
+					.daemon(true)
+					.factory());
+			reloadExecutor.scheduleWithFixedDelay(this::reloadIfModified, reloadIntervalMs, reloadIntervalMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	void stop() {
+		if (nonNull(reloadExecutor)) {
+			reloadExecutor.shutdownNow();
+		}
+	}
+
+	@Override
+	public Mono<String> getCountryFromIp(String ipAddress) {
+		return Mono.just(resolveCountry(ipAddress));
+	}
+
+	@Override
+	public String resolveCountry(String ipAddress) {
+		String country = database.lookup(ipAddress);
+		if (nonNull(country)) {
+			log.debug("Country found for IP {}: {}", ipAddress, country);
+			return country;
+		}
+		log.debug("Country not found for IP: {}", ipAddress);
+		return UNKNOWN_COUNTRY;
+	}
+
+	void reloadIfModified() {
+		try {
+			if (!Files.getLastModifiedTime(databaseFile).equals(loadedModificationTime)) {
+				load();
+			}
+		} catch (IOException | RuntimeException e) {
+			log.error("Failed to reload GeoIP database from {}, keeping the previous one: {}", databaseFile, e.getMessage());
+		}
+	}
+
+	private void load() throws IOException {
+		FileTime modificationTime = Files.getLastModifiedTime(databaseFile);
+		GeoIpDatabase loaded = GeoIpDatabase.load(databaseFile);
+		database = loaded;
+		loadedModificationTime = modificationTime;
+		log.info("Loaded GeoIP database from {} ({} ranges)", databaseFile, loaded.size());
+	}
+}
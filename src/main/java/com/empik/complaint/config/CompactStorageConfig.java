@@ -0,0 +1,50 @@
+package com.empik.complaint.config;
+
+import com.empik.complaint.model.CompactFieldNamingStrategy;
+import com.empik.complaint.model.CompactIdConverter;
+import com.empik.complaint.model.Complaint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoManagedTypes;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Compact persistence format of complaints: one-letter field names ({@link CompactFieldNamingStrategy}) and
+ * binary UUIDs for UUID-shaped product and complainant IDs ({@link CompactIdConverter}). Replaces Boot's
+ * mapping context and custom conversions with equivalent ones that carry both. Existing documents are rewritten
+ * by {@link com.empik.complaint.repository.ComplaintStorageMigration}.
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "application.storage.compact", havingValue = "true")
+public class CompactStorageConfig {
+
+	@Bean
+	public MongoCustomConversions mongoCustomConversions() {
+		return MongoCustomConversions.create(adapter -> adapter.configurePropertyConversions(registrar -> registrar
+				.registerConverter(Complaint.class, "productId", new CompactIdConverter())
+				.registerConverter(Complaint.class, "complainantId", new CompactIdConverter())));
+	}
+
+	@Bean
+	public MongoMappingContext mongoMappingContext(MongoProperties properties,
+												   MongoCustomConversions mongoCustomConversions,
+												   MongoManagedTypes mongoManagedTypes) {
+		log.info("Storing complaints in the compact format");
+
+		MongoMappingContext context = new MongoMappingContext();
+		if (nonNull(properties.isAutoIndexCreation())) {
+			context.setAutoIndexCreation(properties.isAutoIndexCreation());
+		}
+		context.setManagedTypes(mongoManagedTypes);
+		context.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+		context.setSimpleTypeHolder(mongoCustomConversions.getSimpleTypeHolder());
+		return context;
+	}
+}
@@ -0,0 +1,70 @@
+package com.empik.complaint.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientFactory;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.autoconfigure.mongo.MongoConnectionDetails;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Infrastructure of the virtual-thread execution mode ({@code application.execution.mode: virtual-threads}):
+ * a scheduler that runs every task on a new virtual thread, and a synchronous Mongo client and template next to
+ * the reactive ones. The template shares the reactive mapping converter, so documents are read and written in the
+ * same format, compact storage included. The client is configured exactly like the reactive one and publishes the
+ * same driver metrics; its pool bounds how many virtual threads talk to Mongo at once.
+ */
+@Configuration
+@Slf4j
+@ConditionalOnProperty(name = "application.execution.mode", havingValue = "virtual-threads")
+public class VirtualThreadExecutionConfig {
+
+	@Bean(destroyMethod = "dispose")
+	public Scheduler virtualThreadScheduler() {
+		log.info("Running complaint creates, content updates and reads on virtual threads");
+		return Schedulers.fromExecutorService(Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+				.name("complaint-vt-", 0)
+				.factory()), "complaint-vt");
+	}
+
+	/**
+	 * Built like Boot's clients: from the {@link MongoClientSettings} bean with every
+	 * {@link MongoClientSettingsBuilderCustomizer} applied, so connection details, SSL bundles, UUID representation
+	 * and the driver metrics listeners are the reactive client's.
+	 */
+	@Bean(destroyMethod = "close")
+	public MongoClient blockingMongoClient(ObjectProvider<MongoClientSettingsBuilderCustomizer> builderCustomizers,
+										   MongoClientSettings settings) {
+		return new MongoClientFactory(builderCustomizers.orderedStream().toList()).createMongoClient(settings);
+	}
+
+	@Bean
+	public MongoDatabaseFactory blockingMongoDatabaseFactory(MongoClient blockingMongoClient, MongoProperties properties,
+															 MongoConnectionDetails connectionDetails) {
+		String database = properties.getDatabase();
+		if (isNull(database)) {
+			database = connectionDetails.getConnectionString().getDatabase();
+		}
+		return new SimpleMongoClientDatabaseFactory(blockingMongoClient, database);
+	}
+
+	@Bean
+	public MongoTemplate blockingMongoTemplate(MongoDatabaseFactory blockingMongoDatabaseFactory, MongoConverter mongoConverter) {
+		return new MongoTemplate(blockingMongoDatabaseFactory, mongoConverter);
+	}
+}
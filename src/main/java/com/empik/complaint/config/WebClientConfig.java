@@ -3,34 +3,84 @@ package com.empik.complaint.config;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
+@Slf4j
+@ConditionalOnProperty(name = "application.geolocation.provider", havingValue = "http", matchIfMissing = true)
 public class WebClientConfig {
 
+	private static final String GEOLOCATION_POOL = "geolocation";
+
 	@Value("${application.geolocation.base-url}")
 	private String geoLocationBaseUrl;
 
+	/**
+	 * Dedicated connection pool of the geolocation client, so its saturation is bounded and visible on its own:
+	 * with {@code metrics} on, Reactor Netty publishes {@code reactor.netty.connection.provider.*} gauges
+	 * (active, idle, pending connections) tagged {@code name=geolocation}. Callers beyond {@code max-connections}
+	 * wait in a bounded queue and fail after {@code pending-acquire-timeout-ms}; the client falls back to
+	 * "Unknown" for them without a retry and without counting them against the provider's circuit.
+	 */
+	@Bean(destroyMethod = "dispose")
+	public ConnectionProvider geoLocationConnectionProvider(
+			@Value("${application.geolocation.pool.max-connections:100}") int maxConnections,
+			@Value("${application.geolocation.pool.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+			@Value("${application.geolocation.pool.pending-acquire-timeout-ms:2000}") long pendingAcquireTimeoutMs,
+			@Value("${application.geolocation.pool.max-idle-time-ms:30000}") long maxIdleTimeMs,
+			@Value("${application.geolocation.pool.max-life-time-ms:300000}") long maxLifeTimeMs,
+			@Value("${application.geolocation.pool.evict-in-background-ms:60000}") long evictInBackgroundMs,
+			@Value("${application.geolocation.pool.metrics:true}") boolean metrics) {
+		log.info("Geolocation connection pool: max {} connections, max {} pending acquires",
+				maxConnections, pendingAcquireMaxCount);
+
+		return ConnectionProvider.builder(GEOLOCATION_POOL)
+				.maxConnections(maxConnections)
+				.pendingAcquireMaxCount(pendingAcquireMaxCount)
+				.pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+				.maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+				.maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+				.evictInBackground(Duration.ofMillis(evictInBackgroundMs))
+				.metrics(metrics)
+				.build();
+	}
+
 	@Bean
-	public WebClient geoLocationWebClient() {
-		HttpClient httpClient = HttpClient.create()
+	public WebClient geoLocationWebClient(WebClient.Builder webClientBuilder,
+										  ConnectionProvider geoLocationConnectionProvider,
+										  @Value("${application.geolocation.pool.protocols:HTTP11}") HttpProtocol[] protocols) {
+		// Boot's builder carries the observation filter: http.client.requests timings and trace header propagation
+		return webClientBuilder
+				.baseUrl(geoLocationBaseUrl)
+				.clientConnector(new ReactorClientHttpConnector(geoLocationHttpClient(geoLocationConnectionProvider, protocols)))
+				.build();
+	}
+
+	/**
+	 * HTTP client of the geolocation provider on the given pool, with keep-alive and 5 s connect, read and write
+	 * timeouts as the outer bound of the per-call adaptive timeout. {@code H2C} lets a cleartext provider that speaks
+	 * HTTP/2 multiplex lookups over a few connections.
+	 */
+	public static HttpClient geoLocationHttpClient(ConnectionProvider connectionProvider, HttpProtocol... protocols) {
+		return HttpClient.create(connectionProvider)
+				.protocol(protocols)
+				.keepAlive(true)
 				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
 				.responseTimeout(Duration.ofMillis(5000))
 				.doOnConnected(conn ->
 						conn.addHandlerLast(new ReadTimeoutHandler(5000, TimeUnit.MILLISECONDS))
 								.addHandlerLast(new WriteTimeoutHandler(5000, TimeUnit.MILLISECONDS)));
-
-		return WebClient.builder()
-				.baseUrl(geoLocationBaseUrl)
-				.clientConnector(new ReactorClientHttpConnector(httpClient))
-				.build();
 	}
-}
\ No newline at end of file
+}
@@ -26,6 +26,62 @@ public class GlobalExceptionHandler {
 		return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
 	}
 
+	@ExceptionHandler(InvalidCursorException.class)
+	public ResponseEntity<ErrorResponse> handleInvalidCursorException(InvalidCursorException ex, ServerWebExchange exchange) {
+		ErrorResponse errorResponse = new ErrorResponse(
+				LocalDateTime.now(),
+				HttpStatus.BAD_REQUEST.value(),
+				HttpStatus.BAD_REQUEST.getReasonPhrase(),
+				ex.getMessage(),
+				exchange.getRequest().getPath().value(),
+				ex.getClass().getSimpleName()
+		);
+
+		return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+	}
+
+	@ExceptionHandler(IdempotencyKeyConflictException.class)
+	public ResponseEntity<ErrorResponse> handleIdempotencyKeyConflictException(IdempotencyKeyConflictException ex, ServerWebExchange exchange) {
+		ErrorResponse errorResponse = new ErrorResponse(
+				LocalDateTime.now(),
+				HttpStatus.CONFLICT.value(),
+				HttpStatus.CONFLICT.getReasonPhrase(),
+				ex.getMessage(),
+				exchange.getRequest().getPath().value(),
+				ex.getClass().getSimpleName()
+		);
+
+		return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+	}
+
+	@ExceptionHandler(IdempotencyKeyMismatchException.class)
+	public ResponseEntity<ErrorResponse> handleIdempotencyKeyMismatchException(IdempotencyKeyMismatchException ex, ServerWebExchange exchange) {
+		ErrorResponse errorResponse = new ErrorResponse(
+				LocalDateTime.now(),
+				HttpStatus.UNPROCESSABLE_ENTITY.value(),
+				HttpStatus.UNPROCESSABLE_ENTITY.getReasonPhrase(),
+				ex.getMessage(),
+				exchange.getRequest().getPath().value(),
+				ex.getClass().getSimpleName()
+		);
+
+		return new ResponseEntity<>(errorResponse, HttpStatus.UNPROCESSABLE_ENTITY);
+	}
+
+	@ExceptionHandler(SearchUnavailableException.class)
+	public ResponseEntity<ErrorResponse> handleSearchUnavailableException(SearchUnavailableException ex, ServerWebExchange exchange) {
+		ErrorResponse errorResponse = new ErrorResponse(
+				LocalDateTime.now(),
+				HttpStatus.SERVICE_UNAVAILABLE.value(),
+				HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase(),
+				ex.getMessage(),
+				exchange.getRequest().getPath().value(),
+				ex.getClass().getSimpleName()
+		);
+
+		return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
 	@ExceptionHandler(Exception.class)
 	public ResponseEntity<ErrorResponse> handleGeneralException(Exception ex, ServerWebExchange exchange) {
 		ErrorResponse errorResponse = new ErrorResponse(
@@ -0,0 +1,7 @@
+package com.empik.complaint.exception;
+
+public class SearchUnavailableException extends RuntimeException {
+	public SearchUnavailableException(String message) {
+		super(message);
+	}
+}
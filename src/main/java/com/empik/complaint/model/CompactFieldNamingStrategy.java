@@ -0,0 +1,39 @@
+package com.empik.complaint.model;
+
+import org.springframework.data.mapping.PersistentProperty;
+import org.springframework.data.mapping.model.FieldNamingStrategy;
+import org.springframework.data.mapping.model.PropertyNameFieldNamingStrategy;
+
+import java.util.Map;
+
+/**
+ * Stores {@link Complaint} properties under one-letter field names; properties of other entities keep their names.
+ * Queries, updates, sorts and indexes built from property names are mapped by Spring Data; raw documents
+ * have to resolve field names through the mapping context.
+ */
+public class CompactFieldNamingStrategy implements FieldNamingStrategy {
+
+	/**
+	 * Field name of each {@link Complaint} property in the compact format.
+	 */
+	public static final Map<String, String> COMPLAINT_FIELDS = Map.of(
+			"productId", "p",
+			"complainantId", "c",
+			"content", "t",
+			"creationDate", "d",
+			"updateDate", "u",
+			"lastActivityDate", "a",
+			"country", "g",
+			"pendingIpAddress", "i",
+			"counter", "n");
+
+	private static final FieldNamingStrategy DEFAULT = PropertyNameFieldNamingStrategy.INSTANCE;
+
+	@Override
+	public String getFieldName(PersistentProperty<?> property) {
+		if (property.getOwner().getType() == Complaint.class) {
+			return COMPLAINT_FIELDS.getOrDefault(property.getName(), DEFAULT.getFieldName(property));
+		}
+		return DEFAULT.getFieldName(property);
+	}
+}
@@ -0,0 +1,53 @@
+package com.empik.complaint.model;
+
+import org.bson.BsonBinarySubType;
+import org.bson.types.Binary;
+import org.springframework.data.mongodb.core.convert.MongoConversionContext;
+import org.springframework.data.mongodb.core.convert.MongoValueConverter;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Stores string IDs in canonical (lower-case) UUID form as 16-byte binary UUIDs (subtype 4) instead of
+ * 36-character strings; any other ID is stored as it is, so every ID reads back exactly as it was written.
+ * Reads accept both forms. Query values go through the same conversion, so lookups by ID match either form.
+ */
+public class CompactIdConverter implements MongoValueConverter<String, Object> {
+
+	private static final Pattern UUID_PATTERN =
+			Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+	@Override
+	public String read(Object value, MongoConversionContext context) {
+		return toId(value);
+	}
+
+	@Override
+	public Object write(String value, MongoConversionContext context) {
+		return toStored(value);
+	}
+
+	public static Object toStored(String id) {
+		if (isNull(id) || !UUID_PATTERN.matcher(id).matches()) {
+			return id;
+		}
+		UUID uuid = UUID.fromString(id);
+		byte[] bytes = ByteBuffer.allocate(16)
+				.putLong(uuid.getMostSignificantBits())
+				.putLong(uuid.getLeastSignificantBits())
+				.array();
+		return new Binary(BsonBinarySubType.UUID_STANDARD, bytes);
+	}
+
+	public static String toId(Object stored) {
+		if (stored instanceof Binary binary && binary.getType() == BsonBinarySubType.UUID_STANDARD.getValue()) {
+			ByteBuffer bytes = ByteBuffer.wrap(binary.getData());
+			return new UUID(bytes.getLong(), bytes.getLong()).toString();
+		}
+		return (String) stored;
+	}
+}
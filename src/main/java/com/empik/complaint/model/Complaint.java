@@ -6,6 +6,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import jakarta.validation.constraints.NotBlank;
@@ -13,11 +16,16 @@ import jakarta.validation.constraints.NotBlank;
 import java.time.LocalDateTime;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "complaints")
-@CompoundIndex(name = "idx_product_complainant", def = "{'productId': 1, 'complainantId': 1}", unique = true)
+@CompoundIndexes({
+		@CompoundIndex(name = "idx_product_complainant", def = "{'productId': 1, 'complainantId': 1}", unique = true),
+		@CompoundIndex(name = "idx_product_creation", def = "{'productId': 1, 'creationDate': 1, '_id': 1}"),
+		@CompoundIndex(name = "idx_complainant_creation", def = "{'complainantId': 1, 'creationDate': 1, '_id': 1}"),
+		@CompoundIndex(name = "idx_creation", def = "{'creationDate': 1, '_id': 1}")
+})
 public class Complaint {
 
 	@Id
@@ -27,6 +35,7 @@ public class Complaint {
 	private String productId;
 
 	@NotBlank(message = "Content is required")
+	@TextIndexed
 	private String content;
 
 	@Builder.Default
@@ -34,11 +43,18 @@ public class Complaint {
 
 	private LocalDateTime updateDate;
 
+	// last write of any kind, content update or counter increment; not exposed, archiving goes by it
+	private LocalDateTime lastActivityDate;
+
 	@NotBlank(message = "Complainant ID is required")
 	private String complainantId;
 
 	private String country;
 
+	// client address of a complaint whose country is still pending, removed once it is resolved; not exposed
+	@Indexed(name = "idx_pending_ip", sparse = true)
+	private String pendingIpAddress;
+
 	@Builder.Default
 	private int counter = 1;
 }
@@ -0,0 +1,39 @@
+package com.empik.complaint.model;
+
+import com.empik.complaint.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of a complaint in the stable {@code (creationDate, id)} ordering used for keyset pagination.
+ * Clients only ever see it as an opaque token.
+ */
+public record ComplaintCursor(LocalDateTime creationDate, String id) {
+
+	private static final char SEPARATOR = '|';
+
+	public static ComplaintCursor of(Complaint complaint) {
+		return new ComplaintCursor(complaint.getCreationDate(), complaint.getId());
+	}
+
+	public static ComplaintCursor decode(String token) {
+		try {
+			String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int separator = decoded.indexOf(SEPARATOR);
+			if (separator <= 0 || separator == decoded.length() - 1) {
+				throw new InvalidCursorException("Invalid cursor: " + token);
+			}
+			return new ComplaintCursor(LocalDateTime.parse(decoded.substring(0, separator)), decoded.substring(separator + 1));
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			throw new InvalidCursorException("Invalid cursor: " + token);
+		}
+	}
+
+	public String encode() {
+		String raw = creationDate.toString() + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,36 @@
+package com.empik.complaint.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Outcome of a write sent with an {@code Idempotency-Key}, shared by all nodes when the Mongo store is used.
+ * The ID and fingerprint are hashes of the key and of the request. A record without a response belongs to a write
+ * still in progress on the node holding it until {@code lockedUntil}; records are removed once they expire.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+	@Id
+	private String id;
+
+	private String fingerprint;
+
+	private org.bson.Document response;
+
+	private Instant lockedUntil;
+
+	@Indexed(name = "idx_expires_at", expireAfter = "0s")
+	private Instant expiresAt;
+}
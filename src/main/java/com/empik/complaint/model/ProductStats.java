@@ -0,0 +1,44 @@
+package com.empik.complaint.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+
+/**
+ * Complaint totals of a product, maintained incrementally as complaints are written. {@link Scope#PRODUCT}
+ * entries cover all complaints of the product; {@link Scope#DAY} entries those of one country created on one day.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "complaint_stats")
+@CompoundIndex(name = "idx_scope_complaints", def = "{'scope': 1, 'complaints': -1}")
+public class ProductStats {
+
+	@Id
+	private String id;
+
+	private Scope scope;
+
+	private String productId;
+
+	private String country;
+
+	private LocalDate day;
+
+	private long complaints;
+
+	private long counter;
+
+	public enum Scope {
+		PRODUCT,
+		DAY
+	}
+}
@@ -0,0 +1,104 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.Complaint;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.RETURN_NEW;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.UPSERT_RETURN_NEW;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.byId;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.byProductAndComplainant;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.contentUpdate;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.counterIncrement;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.countryUpdate;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.insertOrIncrement;
+import static com.empik.complaint.repository.ComplaintRepositoryImpl.withUnresolvedCountry;
+import static java.util.Objects.nonNull;
+
+/**
+ * The complaint reads and writes of the virtual-thread execution mode, on the synchronous driver. Each method
+ * issues the same command as its counterpart in {@link ComplaintRepositoryImpl} and returns {@code null} where that
+ * one completes empty. The archive is only reached through {@link ComplaintArchive}, which stays reactive and is
+ * awaited.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "application.execution.mode", havingValue = "virtual-threads")
+public class BlockingComplaintRepository {
+
+	private final MongoTemplate blockingMongoTemplate;
+	private final ComplaintArchive complaintArchive;
+
+	public Complaint findById(String id) {
+		return blockingMongoTemplate.findById(id, Complaint.class);
+	}
+
+	/**
+	 * Like {@link ComplaintRepositoryCustom#findSummaryById}: without the fields the API response leaves out, and
+	 * from the archive when no longer live.
+	 */
+	public Complaint findSummaryById(String id) {
+		Query query = Query.query(Criteria.where("id").is(id));
+		query.fields().exclude("complainantId", "counter");
+
+		Complaint complaint = blockingMongoTemplate.findOne(query, Complaint.class);
+		return nonNull(complaint) ? complaint : findArchivedById(id);
+	}
+
+	public Complaint findIncludingArchived(String id) {
+		Complaint complaint = findById(id);
+		return nonNull(complaint) ? complaint : findArchivedById(id);
+	}
+
+	public Complaint findArchivedById(String id) {
+		return complaintArchive.isActive() ? complaintArchive.findById(id).block() : null;
+	}
+
+	public Complaint restoreArchivedById(String id) {
+		return complaintArchive.isActive() ? complaintArchive.restoreById(id).block() : null;
+	}
+
+	public Complaint incrementCounter(String productId, String complainantId) {
+		Complaint updated = blockingMongoTemplate.findAndModify(
+				byProductAndComplainant(productId, complainantId),
+				counterIncrement(1),
+				RETURN_NEW,
+				Complaint.class);
+		if (nonNull(updated) || !complaintArchive.isActive()) {
+			return updated;
+		}
+		// a pair is recorded as archived before its live complaint goes, so a live miss finds it here
+		return complaintArchive.restoreByPair(productId, complainantId, 1).block();
+	}
+
+	public Complaint upsertComplaint(Complaint complaint) {
+		try {
+			return upsert(complaint);
+		} catch (DuplicateKeyException e) {
+			// lost the race on the unique index to a concurrent upsert of the same pair, whose document now matches
+			return upsert(complaint);
+		}
+	}
+
+	public Complaint updateContent(String id, String content, String country, Collection<String> unresolvedCountries) {
+		if (nonNull(country)) {
+			blockingMongoTemplate.updateFirst(withUnresolvedCountry(id, unresolvedCountries), countryUpdate(country), Complaint.class);
+		}
+		return blockingMongoTemplate.findAndModify(byId(id), contentUpdate(content), RETURN_NEW, Complaint.class);
+	}
+
+	private Complaint upsert(Complaint complaint) {
+		return blockingMongoTemplate.findAndModify(
+				byProductAndComplainant(complaint.getProductId(), complaint.getComplainantId()),
+				insertOrIncrement(complaint, 1),
+				UPSERT_RETURN_NEW,
+				Complaint.class);
+	}
+}
@@ -0,0 +1,13 @@
+package com.empik.complaint.repository;
+
+import java.util.Map;
+
+/**
+ * Outcome of a bulk upsert, keyed by the position of the complaint in the submitted list.
+ * Positions present in neither map matched an existing complaint and had its counter incremented.
+ *
+ * @param insertedIds ids of complaints that were inserted
+ * @param errors      write errors of complaints that could not be written
+ */
+public record BulkUpsertResult(Map<Integer, String> insertedIds, Map<Integer, String> errors) {
+}
@@ -0,0 +1,439 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.Complaint;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.DefaultReactiveIndexOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Per-month archive partitions of the complaints collection.
+ * <p>
+ * Archived complaints live in {@code complaints_archive_YYYY_MM} collections, by the month of their creation date,
+ * with the same mapping and indexes as live complaints except for the text index. A move copies a chunk of live
+ * complaints into their partitions, records each archived {@code (productId, complainantId)} pair in
+ * {@value #KEYS_COLLECTION}, then deletes the live documents only if they are unchanged since they were read;
+ * complaints that were written to in between are taken out of the archive again and stay live.
+ * <p>
+ * The pair records keep deduplication working: a create, update or counter increment that misses the live
+ * collection restores the archived complaint into it first. A restore claims the pair record for
+ * {@code restore-claim-ms}, writes the live complaint, deletes the archived copy and only then deletes the record;
+ * every step can be repeated, so a restore that failed half way is finished by the next one to claim the record
+ * once the claim expired. Restores of a claimed pair wait for the claim to go. A restore that inserts the live
+ * complaint marks it with {@value #RESTORED_FIELD}, so the change stream can tell restores from creates, and
+ * {@link #wasArchived} tells moves from deletions.
+ * <p>
+ * Each instance knows the existing partitions from a periodic listing of the collections, so a partition
+ * created by another instance is queried at most {@code partition-refresh-ms} after it appeared. Partitions
+ * dropped by hand are only forgotten on restart.
+ */
+@Repository
+@Slf4j
+@RequiredArgsConstructor
+public class ComplaintArchive {
+
+	public static final String PARTITION_PREFIX = "complaints_archive_";
+	public static final String KEYS_COLLECTION = "complaint_archive_keys";
+	/**
+	 * Set on the live complaint a restore inserts; not mapped, so a later move drops it again.
+	 */
+	public static final String RESTORED_FIELD = "restoredAt";
+
+	private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+	private static final Sort ARCHIVE_ORDER = Sort.by("creationDate", "id");
+	private static final FindAndModifyOptions UPSERT_RETURN_NEW = FindAndModifyOptions.options().returnNew(true).upsert(true);
+	private static final String ID_FIELD = "_id";
+	private static final String COMPLAINT_ID_FIELD = "complaintId";
+	private static final String PARTITION_FIELD = "partition";
+	private static final String RESTORING_BY_FIELD = "restoringBy";
+	private static final String RESTORE_EXPIRES_FIELD = "restoreExpiresAt";
+	private static final Duration RESTORE_POLL_INTERVAL = Duration.ofMillis(20);
+	private static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	private final NavigableSet<YearMonth> partitions = new ConcurrentSkipListSet<>();
+
+	@Value("${application.archive.enabled:false}")
+	private boolean enabled;
+
+	@Value("${application.archive.partition-refresh-ms:30000}")
+	private long partitionRefreshMs;
+
+	@Value("${application.archive.restore-claim-ms:30000}")
+	private long restoreClaimMs;
+
+	private Disposable refresh;
+	private volatile boolean keysIndexed;
+
+	@EventListener(ApplicationReadyEvent.class)
+	void onApplicationReady() {
+		refresh = Flux.interval(Duration.ZERO, Duration.ofMillis(partitionRefreshMs))
+				.onBackpressureDrop()
+				.concatMap(tick -> refreshPartitions()
+						.onErrorResume(e -> {
+							log.warn("Failed to list archive partitions: {}", e.getMessage());
+							return Mono.empty();
+						}))
+				.subscribe();
+	}
+
+	@PreDestroy
+	void stop() {
+		if (nonNull(refresh)) {
+			refresh.dispose();
+		}
+	}
+
+	/**
+	 * Whether live misses have to be looked up in the archive: archiving is enabled here, or another instance
+	 * has archived complaints already.
+	 */
+	public boolean isActive() {
+		return enabled || !partitions.isEmpty();
+	}
+
+	public int partitionCount() {
+		return partitions.size();
+	}
+
+	/**
+	 * Names of the existing partitions that may hold complaints created between the given dates, either of which
+	 * may be null for an open range, oldest first.
+	 */
+	public List<String> partitionsOverlapping(LocalDateTime fromDate, LocalDateTime toDate) {
+		if (partitions.isEmpty()) {
+			return List.of();
+		}
+		YearMonth from = isNull(fromDate) ? partitions.first() : YearMonth.from(fromDate);
+		YearMonth to = isNull(toDate) ? partitions.last() : YearMonth.from(toDate);
+		if (from.isAfter(to)) {
+			return List.of();
+		}
+		return partitions.subSet(from, true, to, true).stream()
+				.map(ComplaintArchive::partitionName)
+				.toList();
+	}
+
+	public Mono<Void> refreshPartitions() {
+		return mongoTemplate.getCollectionNames()
+				.filter(name -> name.startsWith(PARTITION_PREFIX))
+				.mapNotNull(ComplaintArchive::partitionMonth)
+				// a partition created here may be missing from a listing that started earlier, so none are forgotten
+				.doOnNext(partitions::add)
+				.then();
+	}
+
+	/**
+	 * Moves up to {@code batchSize} of the oldest live complaints created and last written to, content update or
+	 * counter increment, before {@code cutoff} into their partitions. Emits how many were moved; fewer than were
+	 * eligible when some were written to during the move.
+	 */
+	public Mono<Integer> archiveBatch(LocalDateTime cutoff, int batchSize) {
+		// complaints written before the activity date existed only carry the update date of their content
+		Query eligible = Query.query(Criteria.where("creationDate").lt(cutoff)
+						.orOperator(Criteria.where("lastActivityDate").lt(cutoff),
+								Criteria.where("lastActivityDate").is(null).orOperator(
+										Criteria.where("updateDate").is(null), Criteria.where("updateDate").lt(cutoff))))
+				.with(ARCHIVE_ORDER)
+				.limit(batchSize);
+
+		return mongoTemplate.find(eligible, Complaint.class)
+				.collectList()
+				.flatMap(batch -> batch.isEmpty() ? Mono.just(0) : move(batch));
+	}
+
+	/**
+	 * Finds an archived complaint by ID.
+	 */
+	public Mono<Complaint> findById(String id) {
+		return mongoTemplate.findOne(Query.query(Criteria.where(COMPLAINT_ID_FIELD).is(id)), Document.class, KEYS_COLLECTION)
+				.flatMap(key -> mongoTemplate.findById(id, Complaint.class, key.getString(PARTITION_FIELD)));
+	}
+
+	/**
+	 * Whether the deletion of the live complaint with the given ID was a move into the archive: the complaint is
+	 * archived, or it is live again because it was restored since.
+	 */
+	public Mono<Boolean> wasArchived(String id) {
+		return mongoTemplate.exists(Query.query(Criteria.where(COMPLAINT_ID_FIELD).is(id)), KEYS_COLLECTION)
+				.flatMap(archived -> archived ? Mono.just(true)
+						: mongoTemplate.exists(Query.query(Criteria.where("id").is(id)), Complaint.class));
+	}
+
+	/**
+	 * Moves the archived complaint with the given ID back into the live collection.
+	 * Emits the live complaint, or completes empty when no such complaint is archived.
+	 */
+	public Mono<Complaint> restoreById(String id) {
+		return restore(Criteria.where(COMPLAINT_ID_FIELD).is(id), 0)
+				// a concurrent restore this one waited for may have finished it
+				.switchIfEmpty(Mono.defer(() -> mongoTemplate.findById(id, Complaint.class)));
+	}
+
+	/**
+	 * Moves the archived complaint of the given pair back into the live collection with its counter raised by
+	 * {@code increment}. Emits the live complaint, or completes empty when the pair is not archived.
+	 */
+	public Mono<Complaint> restoreByPair(String productId, String complainantId, int increment) {
+		return restore(Criteria.where(ID_FIELD).is(pairKey(productId, complainantId)), increment);
+	}
+
+	/**
+	 * Moves the archived complaints of any of the given pairs back into the live collection, unchanged.
+	 */
+	public Mono<Void> restorePairs(Collection<Complaint> complaints) {
+		List<String> keys = complaints.stream()
+				.map(complaint -> pairKey(complaint.getProductId(), complaint.getComplainantId()))
+				.toList();
+		Query archived = Query.query(Criteria.where(ID_FIELD).in(keys));
+		archived.fields().include(ID_FIELD);
+
+		return mongoTemplate.find(archived, Document.class, KEYS_COLLECTION)
+				.concatMap(key -> restore(Criteria.where(ID_FIELD).is(key.getString(ID_FIELD)), 0))
+				.then();
+	}
+
+	public static String partitionName(YearMonth month) {
+		return PARTITION_PREFIX + month.format(PARTITION_MONTH);
+	}
+
+	private static YearMonth partitionMonth(String collection) {
+		try {
+			return YearMonth.parse(collection.substring(PARTITION_PREFIX.length()), PARTITION_MONTH);
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	private Mono<Integer> move(List<Complaint> batch) {
+		Map<YearMonth, List<Complaint>> byMonth = batch.stream()
+				.collect(Collectors.groupingBy(complaint -> YearMonth.from(complaint.getCreationDate()),
+						LinkedHashMap::new, Collectors.toList()));
+
+		return Flux.fromIterable(byMonth.entrySet())
+				.concatMap(month -> ensurePartition(month.getKey()).then(copy(partitionName(month.getKey()), month.getValue())))
+				.then(ensureKeysIndex())
+				.then(recordKeys(batch))
+				.then(removeLive(batch))
+				.flatMap(removed -> removed == batch.size() ? Mono.just(removed) : rollBackChanged(batch).thenReturn(removed))
+				.doOnNext(moved -> log.debug("Archived {} of {} complaints", moved, batch.size()));
+	}
+
+	private Mono<Void> ensurePartition(YearMonth month) {
+		if (partitions.contains(month)) {
+			return Mono.empty();
+		}
+		String partition = partitionName(month);
+		// live queries and restores run against the partition too, so it gets the live indexes before any document
+		return ensureIndexes(partition)
+				.then(Mono.fromRunnable(() -> {
+					partitions.add(month);
+					log.info("Created archive partition {}", partition);
+				}));
+	}
+
+	/**
+	 * Creates the indexes of live complaints, except for the text index, on the given partition.
+	 */
+	Mono<Void> ensureIndexes(String partition) {
+		DefaultReactiveIndexOperations indexOperations = new DefaultReactiveIndexOperations(mongoTemplate, partition,
+				new QueryMapper(mongoTemplate.getConverter()), Complaint.class);
+
+		return Flux.fromIterable(new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+						.resolveIndexFor(Complaint.class))
+				.filter(definition -> !(definition instanceof TextIndexDefinition))
+				.concatMap(indexOperations::ensureIndex)
+				.then();
+	}
+
+	private Mono<Void> ensureKeysIndex() {
+		if (keysIndexed) {
+			return Mono.empty();
+		}
+		return mongoTemplate.indexOps(KEYS_COLLECTION)
+				.ensureIndex(new Index(COMPLAINT_ID_FIELD, Direction.ASC).named("idx_complaint_id"))
+				.doOnNext(name -> keysIndexed = true)
+				.then();
+	}
+
+	private Mono<Void> copy(String partition, List<Complaint> complaints) {
+		ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Complaint.class, partition);
+		// replacing by ID makes copying again after an interrupted move a no-op
+		complaints.forEach(complaint -> bulkOperations.replaceOne(Query.query(Criteria.where("id").is(complaint.getId())),
+				complaint, FindAndReplaceOptions.options().upsert()));
+		return bulkOperations.execute().then();
+	}
+
+	private Mono<Void> recordKeys(List<Complaint> complaints) {
+		ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, KEYS_COLLECTION);
+		complaints.forEach(complaint -> bulkOperations.upsert(
+				Query.query(Criteria.where(ID_FIELD).is(pairKey(complaint.getProductId(), complaint.getComplainantId()))),
+				Update.update(COMPLAINT_ID_FIELD, complaint.getId())
+						.set(PARTITION_FIELD, partitionName(YearMonth.from(complaint.getCreationDate())))));
+		return bulkOperations.execute().then();
+	}
+
+	private Mono<Integer> removeLive(List<Complaint> complaints) {
+		ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Complaint.class);
+		// counter, activity date and country are what live writes change, so a complaint written to since it was read stays
+		complaints.forEach(complaint -> bulkOperations.remove(Query.query(Criteria.where("id").is(complaint.getId())
+				.and("counter").is(complaint.getCounter())
+				.and("lastActivityDate").is(complaint.getLastActivityDate())
+				.and("country").is(complaint.getCountry()))));
+		return bulkOperations.execute()
+				.map(BulkWriteResult::getDeletedCount);
+	}
+
+	private Mono<Void> rollBackChanged(List<Complaint> batch) {
+		Map<String, Complaint> byId = batch.stream()
+				.collect(Collectors.toMap(Complaint::getId, complaint -> complaint));
+		Query stillLive = Query.query(Criteria.where("id").in(byId.keySet()));
+		stillLive.fields().include("id");
+
+		return mongoTemplate.find(stillLive, Complaint.class)
+				.map(live -> byId.get(live.getId()))
+				.collectList()
+				.flatMap(changed -> {
+					log.debug("Keeping {} complaints written to while they were archived", changed.size());
+					List<String> ids = changed.stream().map(Complaint::getId).toList();
+					return mongoTemplate.remove(Query.query(Criteria.where(COMPLAINT_ID_FIELD).in(ids)), KEYS_COLLECTION)
+							.thenMany(Flux.fromIterable(changed.stream()
+									.collect(Collectors.groupingBy(complaint -> partitionName(YearMonth.from(complaint.getCreationDate()))))
+									.entrySet()))
+							.concatMap(partition -> mongoTemplate.remove(Query.query(Criteria.where("id")
+									.in(partition.getValue().stream().map(Complaint::getId).toList())), Complaint.class, partition.getKey()))
+							.then();
+				});
+	}
+
+	private Mono<Complaint> restore(Criteria key, int increment) {
+		String owner = UUID.randomUUID().toString();
+		// polls for as long as the claim of another restore can last, so an abandoned claim is taken over
+		return Mono.defer(() -> claim(key, owner))
+				.retryWhen(Retry.fixedDelay(restoreClaimMs / RESTORE_POLL_INTERVAL.toMillis() + 1, RESTORE_POLL_INTERVAL)
+						.filter(RestoreInProgressException.class::isInstance)
+						.onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+				.flatMap(claimed -> restoreClaimed(claimed, owner, increment));
+	}
+
+	/**
+	 * Claims the pair record for one restore. Completes empty when there is no such record, and fails with
+	 * {@link RestoreInProgressException} while another restore holds an unexpired claim on it.
+	 */
+	private Mono<Document> claim(Criteria key, String owner) {
+		LocalDateTime now = LocalDateTime.now();
+		Query claimable = Query.query(new Criteria().andOperator(key, new Criteria().orOperator(
+				Criteria.where(RESTORE_EXPIRES_FIELD).is(null),
+				Criteria.where(RESTORE_EXPIRES_FIELD).lt(now))));
+
+		return mongoTemplate.findAndModify(claimable,
+						Update.update(RESTORING_BY_FIELD, owner).set(RESTORE_EXPIRES_FIELD, now.plus(Duration.ofMillis(restoreClaimMs))),
+						RETURN_NEW, Document.class, KEYS_COLLECTION)
+				.switchIfEmpty(Mono.defer(() -> mongoTemplate.exists(Query.query(key), KEYS_COLLECTION)
+						.flatMap(claimedElsewhere -> claimedElsewhere ? Mono.error(new RestoreInProgressException()) : Mono.empty())));
+	}
+
+	private Mono<Complaint> restoreClaimed(Document key, String owner, int increment) {
+		String id = key.getString(COMPLAINT_ID_FIELD);
+		String partition = key.getString(PARTITION_FIELD);
+		Query byId = Query.query(Criteria.where("id").is(id));
+
+		return mongoTemplate.findById(id, Complaint.class, partition)
+				.flatMap(archived -> writeLive(archived, increment)
+						.flatMap(restored -> mongoTemplate.remove(byId, Complaint.class, partition).thenReturn(restored)))
+				// an earlier restore got as far as deleting the archived copy
+				.switchIfEmpty(Mono.defer(() -> mongoTemplate.findAndModify(byId,
+						ComplaintRepositoryImpl.counterIncrement(increment), RETURN_NEW, Complaint.class)))
+				.flatMap(restored -> mongoTemplate.remove(Query.query(Criteria.where(ID_FIELD).is(key.get(ID_FIELD))
+								.and(RESTORING_BY_FIELD).is(owner)), KEYS_COLLECTION)
+						.thenReturn(restored))
+				.doOnNext(restored -> log.debug("Restored archived complaint {} from {}", restored.getId(), partition));
+	}
+
+	private Mono<Complaint> writeLive(Complaint archived, int increment) {
+		// an earlier restore of the same record may have written the live complaint already
+		return mongoTemplate.findAndModify(Query.query(Criteria.where("id").is(archived.getId())),
+						ComplaintRepositoryImpl.counterIncrement(increment), RETURN_NEW, Complaint.class)
+				.switchIfEmpty(Mono.defer(() -> mongoTemplate.findAndModify(
+								Query.query(Criteria.where("productId").is(archived.getProductId())
+										.and("complainantId").is(archived.getComplainantId())),
+								restoreOrMerge(archived, increment),
+								UPSERT_RETURN_NEW,
+								Complaint.class)
+						// like a create, an insert that lost the race on the unique pair index merges on the retry
+						.retryWhen(Retry.max(1).filter(DuplicateKeyException.class::isInstance))));
+	}
+
+	private static Update restoreOrMerge(Complaint archived, int increment) {
+		// a live complaint of the same pair that appeared in the meantime keeps its own fields and takes over the counter;
+		// a restore is always for a write, which dates the activity like any other write
+		Update update = ComplaintRepositoryImpl.counterIncrement(archived.getCounter() + increment)
+				.setOnInsert("id", archived.getId())
+				.setOnInsert("content", archived.getContent())
+				.setOnInsert("creationDate", archived.getCreationDate())
+				.setOnInsert("country", archived.getCountry())
+				.setOnInsert(RESTORED_FIELD, LocalDateTime.now());
+		if (nonNull(archived.getUpdateDate())) {
+			update.setOnInsert("updateDate", archived.getUpdateDate());
+		}
+		if (nonNull(archived.getPendingIpAddress())) {
+			update.setOnInsert("pendingIpAddress", archived.getPendingIpAddress());
+		}
+		return update;
+	}
+
+	private static String pairKey(String productId, String complainantId) {
+		return productId + KEY_SEPARATOR + complainantId;
+	}
+
+	private static class RestoreInProgressException extends RuntimeException {
+
+		RestoreInProgressException() {
+			super("Archived complaint is being restored", null, false, false);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.Complaint;
+
+/**
+ * Change of a complaint read from the change stream of the complaints collection. Moves into the archive and
+ * restores from it are {@link Type#ARCHIVED} and {@link Type#RESTORED} rather than deletions and inserts.
+ *
+ * @param complaint   the complaint after the change, {@code null} for deletions or when it is already gone
+ * @param resumeToken opaque position in the change stream right after this event
+ */
+public record ComplaintEvent(Type type, String complaintId, Complaint complaint, String resumeToken) {
+
+	public enum Type {
+		CREATED,
+		UPDATED,
+		INCREMENTED,
+		DELETED,
+		ARCHIVED,
+		RESTORED
+	}
+
+	ComplaintEvent withType(Type type) {
+		return new ComplaintEvent(type, complaintId, complaint, resumeToken);
+	}
+}
@@ -0,0 +1,154 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.IdempotencyRecord;
+import com.empik.complaint.model.ProductStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Creates the indexes declared on {@link Complaint}, {@link ProductStats} and {@link IdempotencyRecord} on startup.
+ * <p>
+ * The unique product/complainant index that deduplicating creates rely on is built before the web server starts,
+ * and startup fails if it cannot be built within {@code application.indexes.required-timeout-ms}. The other
+ * indexes are built in the background, so a large collection does not delay startup: search is unavailable
+ * until the text index is in place (see {@link #isSearchReady()}), other queries are served with whatever indexes
+ * already exist. Creating an index that already exists is a no-op.
+ * <p>
+ * With compact storage, complaint indexes are named with a {@value #COMPACT_SUFFIX} suffix and the unique one only
+ * covers compact documents, so they can be built next to the indexes of the original format while
+ * {@link ComplaintStorageMigration} rewrites the collection; the migration runs first on startup.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ComplaintIndexInitializer implements SmartInitializingSingleton {
+
+	static final String COMPACT_SUFFIX = "_compact";
+
+	private static final List<Class<?>> INDEXED_ENTITIES = List.of(Complaint.class, ProductStats.class, IdempotencyRecord.class);
+
+	private final ReactiveMongoTemplate mongoTemplate;
+	private final MongoMappingContext mappingContext;
+	private final ObjectProvider<ComplaintStorageMigration> storageMigration;
+
+	@Value("${application.indexes.ensure-on-startup:true}")
+	private boolean ensureOnStartup;
+
+	@Value("${application.indexes.required-timeout-ms:60000}")
+	private long requiredTimeoutMs;
+
+	@Value("${application.storage.compact:false}")
+	private boolean compactStorage;
+
+	private volatile boolean searchReady;
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		storageMigration.ifAvailable(ComplaintStorageMigration::migrateOnStartup);
+		if (!ensureOnStartup) {
+			// the indexes are someone else's to build, so the text index is taken to be there
+			searchReady = true;
+			return;
+		}
+		try {
+			ensureIndexes(ComplaintIndexInitializer::isUnique).block(Duration.ofMillis(requiredTimeoutMs));
+		} catch (RuntimeException e) {
+			throw new IllegalStateException("Cannot ensure the required complaint indexes", e);
+		}
+		log.info("Required complaint indexes are in place");
+
+		ensureIndexes(ComplaintIndexInitializer::isText).subscribe(
+				null,
+				e -> log.error("Failed to ensure the complaint text index, search stays unavailable: {}", e.getMessage()),
+				() -> log.info("Complaint text index is in place"));
+		ensureIndexes(definition -> !isUnique(definition) && !isText(definition)).subscribe(
+				null,
+				e -> log.error("Failed to ensure complaint indexes: {}", e.getMessage()),
+				() -> log.info("Complaint indexes are in place"));
+	}
+
+	/**
+	 * Whether the text index that search needs has been built, or is not built by this instance.
+	 */
+	public boolean isSearchReady() {
+		return searchReady;
+	}
+
+	public Mono<Void> ensureIndexes() {
+		return ensureIndexes(definition -> true);
+	}
+
+	private Mono<Void> ensureIndexes(Predicate<IndexDefinition> filter) {
+		return Flux.fromIterable(INDEXED_ENTITIES)
+				.concatMap(entity -> ensureIndexes(entity, filter))
+				.then();
+	}
+
+	Flux<String> ensureIndexes(Class<?> entity, Predicate<IndexDefinition> filter) {
+		Iterable<? extends IndexDefinition> definitions = new MongoPersistentEntityIndexResolver(mappingContext)
+				.resolveIndexFor(entity);
+
+		return Flux.fromIterable(definitions)
+				.map(definition -> compactStorage && entity == Complaint.class ? compact(definition) : definition)
+				.filter(filter)
+				.concatMap(definition -> mongoTemplate.indexOps(entity).ensureIndex(definition)
+						.doOnNext(name -> {
+							log.debug("Ensured index {}", name);
+							if (isText(definition)) {
+								searchReady = true;
+							}
+						}));
+	}
+
+	private IndexDefinition compact(IndexDefinition definition) {
+		Document options = new Document(definition.getIndexOptions());
+		if (options.containsKey("name")) {
+			options.put("name", options.getString("name") + COMPACT_SUFFIX);
+		}
+		if (Boolean.TRUE.equals(options.get("unique"))) {
+			// documents still in the original format have no compact fields, and would all collide on null
+			String productIdField = mappingContext.getRequiredPersistentEntity(Complaint.class)
+					.getRequiredPersistentProperty("productId")
+					.getFieldName();
+			options.put("partialFilterExpression", new Document(productIdField, new Document("$exists", true)));
+		}
+		return new CompactIndexDefinition(definition.getIndexKeys(), options);
+	}
+
+	static boolean isUnique(IndexDefinition definition) {
+		return Boolean.TRUE.equals(definition.getIndexOptions().get("unique"));
+	}
+
+	static boolean isText(IndexDefinition definition) {
+		return definition.getIndexKeys().containsValue("text");
+	}
+
+	private record CompactIndexDefinition(Document keys, Document options) implements IndexDefinition {
+
+		@Override
+		public Document getIndexKeys() {
+			return keys;
+		}
+
+		@Override
+		public Document getIndexOptions() {
+			return options;
+		}
+	}
+}
@@ -1,12 +1,131 @@
 package com.empik.complaint.repository;
 
 import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ComplaintCursor;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Queries by filters also read the archive partitions (see {@link ComplaintArchive}) that overlap the date range.
+ */
 public interface ComplaintRepositoryCustom {
 	Flux<Complaint> findByFilters(String productId, String complainantId,
 								  LocalDateTime fromDate, LocalDateTime toDate,
 								  int page, int size);
-}
\ No newline at end of file
+
+	/**
+	 * Returns up to {@code size} complaints matching the filters that come after {@code after}
+	 * in {@code (creationDate, id)} order, or from the beginning when {@code after} is null.
+	 */
+	Flux<Complaint> findByFiltersAfter(String productId, String complainantId,
+									   LocalDateTime fromDate, LocalDateTime toDate,
+									   ComplaintCursor after, int size);
+
+	/**
+	 * Returns a page of the complaints whose content matches {@code text} and the filters, most relevant first.
+	 * {@code text} follows Mongo text search syntax: any of the words matches, quoted phrases must match and
+	 * {@code -word} excludes. Archived complaints are not searched.
+	 */
+	Flux<Complaint> searchByText(String text, String productId, String complainantId,
+								 LocalDateTime fromDate, LocalDateTime toDate,
+								 int page, int size);
+
+	/**
+	 * Finds a complaint without the fields {@code ComplaintResponse} leaves out: complainant and counter.
+	 */
+	Mono<Complaint> findSummaryById(String id);
+
+	/**
+	 * Finds a complaint that was moved to the archive.
+	 */
+	Mono<Complaint> findArchivedById(String id);
+
+	/**
+	 * Moves an archived complaint back into the live collection, so it can be written to.
+	 * Emits the live complaint, or completes empty when no such complaint is archived.
+	 */
+	Mono<Complaint> restoreArchivedById(String id);
+
+	/**
+	 * Streams every complaint matching the filters in {@code (creationDate, id)} order from a single cursor,
+	 * fetching {@code batchSize} documents per round trip as downstream demand allows. When {@code fields}
+	 * are given, only those properties (and the ID) are loaded.
+	 */
+	Flux<Complaint> streamByFilters(String productId, String complainantId,
+									LocalDateTime fromDate, LocalDateTime toDate,
+									int batchSize, String... fields);
+
+	/**
+	 * Counts the complaints matching the filters and sums their counters in a single aggregation, grouped by
+	 * the given dimensions and, when {@code bucket} is not null, by the creation date truncated to it.
+	 * Groups are emitted in key order; without dimensions and bucket a single total is emitted, if anything matched.
+	 */
+	Flux<ComplaintStats> aggregateByFilters(String productId, String complainantId,
+											LocalDateTime fromDate, LocalDateTime toDate,
+											Set<ComplaintStats.Dimension> groupBy, ComplaintStats.Bucket bucket);
+
+	/**
+	 * Watches inserts, updates, replacements and deletions of complaints, starting now or right after
+	 * the event with the given resume token.
+	 */
+	Flux<ComplaintEvent> watchChanges(String resumeToken);
+
+	/**
+	 * Atomically increments the counter of an existing complaint, restoring it from the archive first if it was
+	 * moved there.
+	 * Emits the updated complaint, or completes empty when no complaint exists for the given pair.
+	 */
+	Mono<Complaint> incrementCounter(String productId, String complainantId);
+
+	/**
+	 * Atomically sets the content and update date of a live complaint and, when {@code country} is given, its country,
+	 * provided it is still one of {@code unresolvedCountries}. Other fields are left as stored, so increments written
+	 * in the meantime are kept. Emits the updated complaint, or completes empty when no live complaint has the ID.
+	 */
+	Mono<Complaint> updateContent(String id, String content, String country, Collection<String> unresolvedCountries);
+
+	/**
+	 * Atomically inserts the complaint or, if one already exists for the same product and complainant,
+	 * increments its counter. Fields other than the counter are only written on insert.
+	 */
+	Mono<Complaint> upsertComplaint(Complaint complaint);
+
+	/**
+	 * Upserts all complaints in a single unordered bulk write, after restoring archived complaints of the same pairs.
+	 * Each complaint's counter is the amount to increment an existing complaint by, or the initial counter of an
+	 * inserted one. Like {@link #upsertComplaint(Complaint)}, a complaint that loses the insert race to a concurrent
+	 * create of the same pair is retried once, as an increment.
+	 */
+	Mono<BulkUpsertResult> bulkUpsertComplaints(List<Complaint> complaints);
+
+	/**
+	 * Applies all counter increments in a single unordered bulk write. Increments of complaints that were archived
+	 * since restore them, with the increment applied; those of complaints that do not exist are no-ops. Emits the
+	 * write errors keyed by the position of the increment in the submitted list.
+	 */
+	Mono<Map<Integer, String>> incrementCounters(List<CounterIncrement> increments);
+
+	/**
+	 * Finds the complaints the given increments apply to, with only their product, complainant, country
+	 * and creation date loaded.
+	 */
+	Flux<Complaint> findIncremented(List<CounterIncrement> increments);
+
+	/**
+	 * Sets the country of the given complaints, skipping those whose country is no longer {@code expectedCountry}.
+	 * Emits the number of modified complaints.
+	 */
+	Mono<Long> updateCountry(Collection<String> ids, String expectedCountry, String country);
+
+	/**
+	 * Finds up to {@code limit} complaints created before the given date whose country is still
+	 * {@code pendingCountry}, with only their ID and the client address to resolve it from.
+	 */
+	Flux<Complaint> findPendingCountry(String pendingCountry, LocalDateTime createdBefore, int limit);
+}
@@ -1,41 +1,547 @@
 package com.empik.complaint.repository;
 
+import com.empik.complaint.model.CompactIdConverter;
 import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ComplaintCursor;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.mongodb.client.result.UpdateResult;
 import lombok.RequiredArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
 
 @Repository
 @RequiredArgsConstructor
 public class ComplaintRepositoryImpl implements ComplaintRepositoryCustom {
 
+	static final Sort CURSOR_ORDER = Sort.by("creationDate", "id");
+	// the order of CURSOR_ORDER: hex ObjectIds compare like the ObjectIds themselves
+	private static final Comparator<Complaint> MERGE_ORDER = Comparator.comparing(Complaint::getCreationDate)
+			.thenComparing(Complaint::getId);
+	static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+	static final FindAndModifyOptions UPSERT_RETURN_NEW = FindAndModifyOptions.options().returnNew(true).upsert(true);
+	private static final AggregationOptions STATS_OPTIONS = AggregationOptions.builder().allowDiskUse(true).build();
+	private static final String BUCKET_FIELD = "bucket";
+	private static final List<String> WATCHED_OPERATIONS = List.of("insert", "update", "replace", "delete");
+	private static final String RESUME_TOKEN_DATA = "_data";
+
 	private final ReactiveMongoTemplate mongoTemplate;
+	private final ComplaintArchive complaintArchive;
 
 	@Override
 	public Flux<Complaint> findByFilters(String productId, String complainantId,
 										 LocalDateTime fromDate, LocalDateTime toDate,
 										 int page, int size) {
+		Query query = Query.query(filterCriteria(productId, complainantId, fromDate, toDate, null))
+				.with(CURSOR_ORDER);
+		List<String> partitions = complaintArchive.partitionsOverlapping(fromDate, toDate);
+		if (partitions.isEmpty()) {
+			return mongoTemplate.find(query.skip((long) page * size).limit(size), Complaint.class);
+		}
+		// each collection can hold the whole page, so all of them are read up to its end and merged
+		return findMerged(query.limit((page + 1) * size), partitions)
+				.skip((long) page * size)
+				.take(size);
+	}
+
+	@Override
+	public Flux<Complaint> findByFiltersAfter(String productId, String complainantId,
+											  LocalDateTime fromDate, LocalDateTime toDate,
+											  ComplaintCursor after, int size) {
+		Query query = Query.query(filterCriteria(productId, complainantId, fromDate, toDate, after))
+				.with(CURSOR_ORDER)
+				.limit(size);
+		LocalDateTime from = nonNull(after) && (isNull(fromDate) || after.creationDate().isAfter(fromDate))
+				? after.creationDate()
+				: fromDate;
+
+		return findMerged(query, complaintArchive.partitionsOverlapping(from, toDate))
+				.take(size);
+	}
+
+	@Override
+	public Flux<Complaint> searchByText(String text, String productId, String complainantId,
+										LocalDateTime fromDate, LocalDateTime toDate,
+										int page, int size) {
+		Query query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text))
+				.sortByScore()
+				.with(Sort.by("id"))
+				.skip((long) page * size)
+				.limit(size);
+		Criteria filters = filterCriteria(productId, complainantId, fromDate, toDate, null);
+		if (!filters.getCriteriaObject().isEmpty()) {
+			query.addCriteria(filters);
+		}
+
+		return mongoTemplate.find(query, Complaint.class);
+	}
+
+	@Override
+	public Mono<Complaint> findSummaryById(String id) {
+		Query query = Query.query(Criteria.where("id").is(id));
+		query.fields().exclude("complainantId", "counter");
+
+		return mongoTemplate.findOne(query, Complaint.class)
+				.switchIfEmpty(Mono.defer(() -> findArchivedById(id)));
+	}
+
+	@Override
+	public Mono<Complaint> findArchivedById(String id) {
+		return complaintArchive.isActive() ? complaintArchive.findById(id) : Mono.empty();
+	}
+
+	@Override
+	public Mono<Complaint> restoreArchivedById(String id) {
+		return complaintArchive.isActive() ? complaintArchive.restoreById(id) : Mono.empty();
+	}
+
+	@Override
+	public Flux<Complaint> streamByFilters(String productId, String complainantId,
+										   LocalDateTime fromDate, LocalDateTime toDate,
+										   int batchSize, String... fields) {
+		Query query = Query.query(filterCriteria(productId, complainantId, fromDate, toDate, null))
+				.with(CURSOR_ORDER)
+				.cursorBatchSize(batchSize);
+		query.fields().include(fields);
+		List<String> partitions = complaintArchive.partitionsOverlapping(fromDate, toDate);
+		if (!partitions.isEmpty() && fields.length > 0) {
+			// the merge orders by creation date
+			query.fields().include("creationDate");
+		}
+
+		return findMerged(query, partitions);
+	}
+
+	@Override
+	public Flux<ComplaintStats> aggregateByFilters(String productId, String complainantId,
+												   LocalDateTime fromDate, LocalDateTime toDate,
+												   Set<ComplaintStats.Dimension> groupBy, ComplaintStats.Bucket bucket) {
+		Criteria filters = filterCriteria(productId, complainantId, fromDate, toDate, null);
+		List<AggregationOperation> stages = new ArrayList<>();
+		// the filter goes first so it is served by the same indexes as findByFilters
+		stages.add(Aggregation.match(filters));
+		List<String> partitions = complaintArchive.partitionsOverlapping(fromDate, toDate);
+		if (!partitions.isEmpty()) {
+			Document mappedFilters = new QueryMapper(mongoTemplate.getConverter()).getMappedObject(
+					filters.getCriteriaObject(), mongoTemplate.getConverter().getMappingContext().getPersistentEntity(Complaint.class));
+			partitions.forEach(partition -> stages.add(context -> new Document("$unionWith", new Document("coll", partition)
+					.append("pipeline", List.of(new Document("$match", mappedFilters))))));
+		}
+		stages.add(context -> new Document("$group", new Document("_id", groupKey(groupBy, bucket))
+				.append("complaints", new Document("$sum", 1))
+				.append("counter", new Document("$sum", "$" + fieldName("counter")))));
+		stages.add(context -> new Document("$sort", new Document("_id", 1)));
+		Aggregation aggregation = Aggregation.newAggregation(stages).withOptions(STATS_OPTIONS);
+
+		return mongoTemplate.aggregate(aggregation, Complaint.class, Document.class)
+				.map(ComplaintRepositoryImpl::toComplaintStats);
+	}
+
+	@Override
+	public Flux<ComplaintEvent> watchChanges(String resumeToken) {
+		ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+				.filter(Aggregation.newAggregation(Aggregation.match(Criteria.where("operationType").in(WATCHED_OPERATIONS))))
+				.fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+		if (nonNull(resumeToken)) {
+			options.resumeAfter(new BsonDocument(RESUME_TOKEN_DATA, new BsonString(resumeToken)));
+		}
+
+		String counterField = fieldName("counter");
+		Set<String> incrementFields = Set.of(counterField, fieldName("lastActivityDate"));
+		return mongoTemplate.changeStream(mongoTemplate.getCollectionName(Complaint.class), options.build(), Complaint.class)
+				.map(event -> toComplaintEvent(event, counterField, incrementFields))
+				.concatMap(this::markArchived);
+	}
+
+	@Override
+	public Mono<Complaint> incrementCounter(String productId, String complainantId) {
+		return mongoTemplate.findAndModify(
+						byProductAndComplainant(productId, complainantId),
+						counterIncrement(1),
+						RETURN_NEW,
+						Complaint.class)
+				// a pair is recorded as archived before its live complaint goes, so a live miss finds it here
+				.switchIfEmpty(Mono.defer(() -> complaintArchive.isActive()
+						? complaintArchive.restoreByPair(productId, complainantId, 1)
+						: Mono.empty()));
+	}
+
+	@Override
+	public Mono<Complaint> updateContent(String id, String content, String country, Collection<String> unresolvedCountries) {
+		// the country goes first, so the complaint emitted by the content update has it
+		Mono<UpdateResult> enrich = nonNull(country)
+				? mongoTemplate.updateFirst(withUnresolvedCountry(id, unresolvedCountries), countryUpdate(country), Complaint.class)
+				: Mono.empty();
+
+		return enrich.then(Mono.defer(() -> mongoTemplate.findAndModify(byId(id), contentUpdate(content), RETURN_NEW, Complaint.class)));
+	}
+
+	@Override
+	public Mono<Complaint> upsertComplaint(Complaint complaint) {
+		// Two concurrent upserts of the same pair can both miss and race on the unique index;
+		// the loser is retried once, at which point it matches the winner's document and increments it.
+		return mongoTemplate.findAndModify(
+						byProductAndComplainant(complaint.getProductId(), complaint.getComplainantId()),
+						insertOrIncrement(complaint, 1),
+						UPSERT_RETURN_NEW,
+						Complaint.class)
+				.retryWhen(Retry.max(1).filter(DuplicateKeyException.class::isInstance));
+	}
+
+	@Override
+	public Mono<BulkUpsertResult> bulkUpsertComplaints(List<Complaint> complaints) {
+		if (complaints.isEmpty()) {
+			return Mono.just(new BulkUpsertResult(Map.of(), Map.of()));
+		}
+		Mono<Void> restoreArchived = complaintArchive.isActive() ? complaintArchive.restorePairs(complaints) : Mono.empty();
+
+		return restoreArchived.then(Mono.defer(() -> upsertAll(complaints, true)));
+	}
+
+	private Mono<BulkUpsertResult> upsertAll(List<Complaint> complaints, boolean retryDuplicateKeys) {
+		ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Complaint.class);
+		complaints.forEach(complaint -> bulkOperations.upsert(
+				byProductAndComplainant(complaint.getProductId(), complaint.getComplainantId()),
+				insertOrIncrement(complaint, complaint.getCounter())));
+
+		return bulkOperations.execute()
+				.map(result -> Tuples.of(result, List.<BulkWriteError>of()))
+				.onErrorResume(BulkOperationException.class, e -> Mono.just(Tuples.of(e.getResult(), e.getErrors())))
+				.onErrorResume(MongoBulkWriteException.class, e -> Mono.just(Tuples.of(e.getWriteResult(), e.getWriteErrors())))
+				.flatMap(outcome -> {
+					BulkUpsertResult result = toBulkUpsertResult(outcome.getT1(), outcome.getT2());
+					List<Integer> lostRaces = outcome.getT2().stream()
+							.filter(error -> error.getCategory() == ErrorCategory.DUPLICATE_KEY)
+							.map(BulkWriteError::getIndex)
+							.toList();
+					if (!retryDuplicateKeys || lostRaces.isEmpty()) {
+						return Mono.just(result);
+					}
+					// as with single creates, an upsert that lost the insert race to a concurrent one is retried once,
+					// at which point it matches the winner's document and increments it
+					return upsertAll(lostRaces.stream().map(complaints::get).toList(), false)
+							.map(retried -> mergeRetried(result, lostRaces, retried));
+				});
+	}
+
+	private static BulkUpsertResult mergeRetried(BulkUpsertResult result, List<Integer> positions, BulkUpsertResult retried) {
+		Map<Integer, String> insertedIds = new HashMap<>(result.insertedIds());
+		Map<Integer, String> errors = new HashMap<>(result.errors());
+		for (int i = 0; i < positions.size(); i++) {
+			int position = positions.get(i);
+			errors.remove(position);
+			if (retried.insertedIds().containsKey(i)) {
+				insertedIds.put(position, retried.insertedIds().get(i));
+			}
+			if (retried.errors().containsKey(i)) {
+				errors.put(position, retried.errors().get(i));
+			}
+		}
+		return new BulkUpsertResult(insertedIds, errors);
+	}
+
+	@Override
+	public Mono<Map<Integer, String>> incrementCounters(List<CounterIncrement> increments) {
+		if (increments.isEmpty()) {
+			return Mono.just(Map.of());
+		}
+		ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Complaint.class);
+		increments.forEach(increment -> bulkOperations.updateOne(
+				byProductAndComplainant(increment.productId(), increment.complainantId()),
+				counterIncrement(increment.delta())));
+
+		return bulkOperations.execute()
+				.map(result -> Tuples.of(result, List.<BulkWriteError>of()))
+				.onErrorResume(BulkOperationException.class, e -> Mono.just(Tuples.of(e.getResult(), e.getErrors())))
+				.onErrorResume(MongoBulkWriteException.class, e -> Mono.just(Tuples.of(e.getWriteResult(), e.getWriteErrors())))
+				.flatMap(outcome -> {
+					Map<Integer, String> errors = toWriteErrors(outcome.getT2());
+					if (!complaintArchive.isActive() || outcome.getT1().getMatchedCount() + errors.size() >= increments.size()) {
+						return Mono.just(errors);
+					}
+					List<CounterIncrement> applied = new ArrayList<>(increments.size() - errors.size());
+					for (int i = 0; i < increments.size(); i++) {
+						if (!errors.containsKey(i)) {
+							applied.add(increments.get(i));
+						}
+					}
+					return restoreUnmatched(applied).thenReturn(errors);
+				});
+	}
+
+	/**
+	 * Restores the archived complaints of increments that matched no live complaint, with the increment applied.
+	 */
+	private Mono<Void> restoreUnmatched(List<CounterIncrement> increments) {
+		return findIncremented(increments)
+				.map(complaint -> List.of(complaint.getProductId(), complaint.getComplainantId()))
+				.collect(Collectors.toSet())
+				.flatMapMany(livePairs -> Flux.fromIterable(increments)
+						.filter(increment -> !livePairs.contains(List.of(increment.productId(), increment.complainantId()))))
+				.concatMap(increment -> complaintArchive.restoreByPair(increment.productId(), increment.complainantId(), increment.delta())
+						// restored by someone else in the meantime
+						.switchIfEmpty(Mono.defer(() -> mongoTemplate.findAndModify(
+								byProductAndComplainant(increment.productId(), increment.complainantId()),
+								counterIncrement(increment.delta()),
+								RETURN_NEW,
+								Complaint.class))))
+				.then();
+	}
+
+	@Override
+	public Flux<Complaint> findIncremented(List<CounterIncrement> increments) {
+		if (increments.isEmpty()) {
+			return Flux.empty();
+		}
+		Criteria[] pairs = increments.stream()
+				.map(increment -> Criteria.where("productId").is(increment.productId())
+						.and("complainantId").is(increment.complainantId()))
+				.toArray(Criteria[]::new);
+		Query query = Query.query(new Criteria().orOperator(pairs));
+		query.fields().include("productId", "complainantId", "country", "creationDate");
+
+		return mongoTemplate.find(query, Complaint.class);
+	}
+
+	@Override
+	public Mono<Long> updateCountry(Collection<String> ids, String expectedCountry, String country) {
+		Query query = Query.query(Criteria.where("id").in(ids).and("country").is(expectedCountry));
+
+		return mongoTemplate.updateMulti(query, countryUpdate(country), Complaint.class)
+				.map(UpdateResult::getModifiedCount);
+	}
+
+	@Override
+	public Flux<Complaint> findPendingCountry(String pendingCountry, LocalDateTime createdBefore, int limit) {
+		Query query = Query.query(Criteria.where("pendingIpAddress").exists(true)
+						.and("country").is(pendingCountry)
+						.and("creationDate").lt(createdBefore))
+				.limit(limit);
+		query.fields().include("id", "pendingIpAddress");
+
+		return mongoTemplate.find(query, Complaint.class);
+	}
+
+	static Criteria filterCriteria(String productId, String complainantId,
+										   LocalDateTime fromDate, LocalDateTime toDate,
+										   ComplaintCursor after) {
 		List<Criteria> criteriaList = new ArrayList<>();
 
 		if (nonNull(productId)) criteriaList.add(Criteria.where("productId").is(productId));
 		if (nonNull(complainantId)) criteriaList.add(Criteria.where("complainantId").is(complainantId));
 		if (nonNull(fromDate)) criteriaList.add(Criteria.where("creationDate").gte(fromDate));
 		if (nonNull(toDate)) criteriaList.add(Criteria.where("creationDate").lte(toDate));
+		if (nonNull(after)) criteriaList.add(new Criteria().orOperator(
+				Criteria.where("creationDate").gt(after.creationDate()),
+				Criteria.where("creationDate").is(after.creationDate()).and("id").gt(after.id())));
 
-		Criteria criteria = criteriaList.isEmpty() ? new Criteria() : new Criteria().andOperator(criteriaList.toArray(new Criteria[0]));
-		Query query = Query.query(criteria)
-				.skip((long) page * size)
-				.limit(size);
+		return criteriaList.isEmpty() ? new Criteria() : new Criteria().andOperator(criteriaList.toArray(new Criteria[0]));
+	}
 
-		return mongoTemplate.find(query, Complaint.class);
+	/**
+	 * Runs the query against the live collection and the given archive partitions, merging the results in
+	 * {@code (creationDate, id)} order, which the query must sort by.
+	 */
+	@SuppressWarnings("unchecked")
+	private Flux<Complaint> findMerged(Query query, List<String> partitions) {
+		if (partitions.isEmpty()) {
+			return mongoTemplate.find(query, Complaint.class);
+		}
+		List<Flux<Complaint>> sources = new ArrayList<>(partitions.size() + 1);
+		sources.add(mongoTemplate.find(query, Complaint.class));
+		partitions.forEach(partition -> sources.add(mongoTemplate.find(query, Complaint.class, partition)));
+
+		// a restore that failed before deleting the archived copy leaves the complaint in both, next to each other
+		return Flux.mergeComparing(MERGE_ORDER, sources.toArray(new Flux[0]))
+				.distinctUntilChanged(Complaint::getId);
+	}
+
+	/**
+	 * Field name a {@link Complaint} property is stored under, for raw documents that Spring Data does not map.
+	 */
+	private String fieldName(String property) {
+		return mongoTemplate.getConverter().getMappingContext()
+				.getRequiredPersistentEntity(Complaint.class)
+				.getRequiredPersistentProperty(property)
+				.getFieldName();
+	}
+
+	private Document groupKey(Set<ComplaintStats.Dimension> groupBy, ComplaintStats.Bucket bucket) {
+		if (groupBy.isEmpty() && isNull(bucket)) {
+			return null;
+		}
+		Document key = new Document();
+		groupBy.forEach(dimension -> key.append(dimension.field(), "$" + fieldName(dimension.field())));
+		if (nonNull(bucket)) {
+			// creation dates are stored as instants of the local date-time in the default zone, so truncate in that zone
+			Document truncate = new Document("date", "$" + fieldName("creationDate"))
+					.append("unit", bucket.name().toLowerCase(Locale.ROOT))
+					.append("timezone", ZoneId.systemDefault().getId());
+			if (bucket == ComplaintStats.Bucket.WEEK) {
+				truncate.append("startOfWeek", "monday");
+			}
+			key.append(BUCKET_FIELD, new Document("$dateTrunc", truncate));
+		}
+		return key;
+	}
+
+	private static ComplaintStats toComplaintStats(Document group) {
+		Document key = group.get("_id") instanceof Document document ? document : new Document();
+		Date bucket = key.getDate(BUCKET_FIELD);
+		return new ComplaintStats(
+				CompactIdConverter.toId(key.get(ComplaintStats.Dimension.PRODUCT.field())),
+				key.getString(ComplaintStats.Dimension.COUNTRY.field()),
+				nonNull(bucket) ? LocalDateTime.ofInstant(bucket.toInstant(), ZoneId.systemDefault()) : null,
+				group.get("complaints", Number.class).longValue(),
+				group.get("counter", Number.class).longValue());
+	}
+
+	private static ComplaintEvent toComplaintEvent(ChangeStreamEvent<Complaint> event, String counterField, Set<String> incrementFields) {
+		ChangeStreamDocument<Document> raw = requireNonNull(event.getRaw());
+		ComplaintEvent.Type type = switch (raw.getOperationType()) {
+			case INSERT -> isRestore(raw.getFullDocument()) ? ComplaintEvent.Type.RESTORED : ComplaintEvent.Type.CREATED;
+			case DELETE -> ComplaintEvent.Type.DELETED;
+			case UPDATE -> isCounterOnly(raw.getUpdateDescription(), counterField, incrementFields) ? ComplaintEvent.Type.INCREMENTED : ComplaintEvent.Type.UPDATED;
+			default -> ComplaintEvent.Type.UPDATED;
+		};
+		String resumeToken = requireNonNull(event.getResumeToken()).asDocument().getString(RESUME_TOKEN_DATA).getValue();
+
+		return new ComplaintEvent(type, toIdString(raw.getDocumentKey().get("_id")), event.getBody(), resumeToken);
+	}
+
+	/**
+	 * Deletions only carry the ID, so whether one was a move into the archive is looked up when it is read.
+	 */
+	private Mono<ComplaintEvent> markArchived(ComplaintEvent event) {
+		if (event.type() != ComplaintEvent.Type.DELETED || !complaintArchive.isActive()) {
+			return Mono.just(event);
+		}
+		return complaintArchive.wasArchived(event.complaintId())
+				.map(archived -> archived ? event.withType(ComplaintEvent.Type.ARCHIVED) : event);
+	}
+
+	private static boolean isRestore(Document inserted) {
+		return nonNull(inserted) && inserted.containsKey(ComplaintArchive.RESTORED_FIELD);
+	}
+
+	/**
+	 * Whether an update only raised the counter, along with the activity date every increment sets.
+	 */
+	private static boolean isCounterOnly(UpdateDescription description, String counterField, Set<String> incrementFields) {
+		return nonNull(description)
+				&& nonNull(description.getUpdatedFields())
+				&& description.getUpdatedFields().containsKey(counterField)
+				&& incrementFields.containsAll(description.getUpdatedFields().keySet())
+				&& (isNull(description.getRemovedFields()) || description.getRemovedFields().isEmpty());
+	}
+
+	static Update insertOrIncrement(Complaint complaint, int increment) {
+		Update update = counterIncrement(increment)
+				.setOnInsert("content", complaint.getContent())
+				.setOnInsert("creationDate", complaint.getCreationDate())
+				.setOnInsert("country", complaint.getCountry());
+		if (nonNull(complaint.getPendingIpAddress())) {
+			update.setOnInsert("pendingIpAddress", complaint.getPendingIpAddress());
+		}
+		return update;
+	}
+
+	private static BulkUpsertResult toBulkUpsertResult(BulkWriteResult result, List<BulkWriteError> writeErrors) {
+		Map<Integer, String> insertedIds = new HashMap<>();
+		result.getUpserts().forEach(upsert -> insertedIds.put(upsert.getIndex(), toIdString(upsert.getId())));
+
+		return new BulkUpsertResult(insertedIds, toWriteErrors(writeErrors));
+	}
+
+	private static Map<Integer, String> toWriteErrors(List<BulkWriteError> writeErrors) {
+		Map<Integer, String> errors = new HashMap<>();
+		writeErrors.forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+		return errors;
+	}
+
+	private static String toIdString(BsonValue id) {
+		return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+	}
+
+	/**
+	 * Raises the counter and dates the activity, so a complaint that keeps being incremented is not archived;
+	 * the update date stays that of the content.
+	 */
+	static Update counterIncrement(int increment) {
+		return new Update()
+				.inc("counter", increment)
+				.set("lastActivityDate", LocalDateTime.now());
+	}
+
+	static Update contentUpdate(String content) {
+		LocalDateTime now = LocalDateTime.now();
+		return Update.update("content", content)
+				.set("updateDate", now)
+				.set("lastActivityDate", now);
+	}
+
+	static Update countryUpdate(String country) {
+		// the address is only kept to resolve the country
+		return Update.update("country", country).unset("pendingIpAddress");
+	}
+
+	static Query byId(String id) {
+		return Query.query(Criteria.where("id").is(id));
+	}
+
+	static Query withUnresolvedCountry(String id, Collection<String> unresolvedCountries) {
+		return Query.query(Criteria.where("id").is(id).and("country").in(unresolvedCountries));
+	}
+
+	static Query byProductAndComplainant(String productId, String complainantId) {
+		return Query.query(Criteria.where("productId").is(productId)
+				.and("complainantId").is(complainantId));
 	}
 }
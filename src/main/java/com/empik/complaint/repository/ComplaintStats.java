@@ -0,0 +1,35 @@
+package com.empik.complaint.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregated complaints of one group. Fields of dimensions the results were not grouped by are {@code null}.
+ *
+ * @param bucket     start of the time bucket, in the application time zone
+ * @param complaints number of distinct complaints in the group
+ * @param counter    sum of the counters of those complaints
+ */
+public record ComplaintStats(String productId, String country, LocalDateTime bucket, long complaints, long counter) {
+
+	public enum Dimension {
+		PRODUCT("productId"),
+		COUNTRY("country");
+
+		private final String field;
+
+		Dimension(String field) {
+			this.field = field;
+		}
+
+		public String field() {
+			return field;
+		}
+	}
+
+	public enum Bucket {
+		HOUR,
+		DAY,
+		WEEK,
+		MONTH
+	}
+}
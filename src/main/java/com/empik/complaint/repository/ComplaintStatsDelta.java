@@ -0,0 +1,19 @@
+package com.empik.complaint.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Change of the statistics of complaints of one product and country created on one day.
+ *
+ * @param complaints number of complaints added
+ * @param counter    amount added to the sum of their counters
+ */
+public record ComplaintStatsDelta(String productId, String country, LocalDate day, long complaints, long counter) {
+
+	/**
+	 * Returns this delta with the complaints and counter of {@code other} added, keeping the keys of this one.
+	 */
+	public ComplaintStatsDelta plus(ComplaintStatsDelta other) {
+		return new ComplaintStatsDelta(productId, country, day, complaints + other.complaints(), counter + other.counter());
+	}
+}
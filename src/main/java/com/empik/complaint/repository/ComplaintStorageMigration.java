@@ -0,0 +1,201 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.CompactFieldNamingStrategy;
+import com.empik.complaint.model.CompactIdConverter;
+import com.empik.complaint.model.Complaint;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Rewrites complaints stored in the original format into the compact one (see
+ * {@link com.empik.complaint.config.CompactStorageConfig}).
+ * <p>
+ * Runs on startup when compact storage is on, from {@link ComplaintIndexInitializer} before the web server starts,
+ * so the instance serves no traffic until it is done; {@code application.storage.migrate-on-startup: false} skips it.
+ * The live collection is migrated first, then every archive partition (see {@link ComplaintArchive}). The original
+ * documents are streamed raw from a single cursor and replaced in chunks of one unordered bulk write each; only
+ * documents still carrying the original field names are touched, so an interrupted run picks up where it stopped.
+ * <p>
+ * The compact indexes, unique one included, are built under their own names before the rewrite. The unique index
+ * of the original format cannot stay, since rewritten documents would all collide on its missing fields, so a
+ * partial one covering only original documents takes its place; it and every other index of the original format
+ * are dropped once the rewrite is done, and the compact text index is built then, as a collection has only one.
+ * Partitions are only read and written by instances serving traffic, so their original indexes are dropped before
+ * the rewrite and the compact ones built after it.
+ * <p>
+ * A compact instance cannot see complaints in the original format and an original one cannot see compact ones,
+ * so either would write duplicates of pairs stored in the other format. Switching to compact storage therefore
+ * needs downtime of the whole fleet: stop every instance, start a single compact one and let it migrate, then
+ * start the rest.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.storage.compact", havingValue = "true")
+public class ComplaintStorageMigration {
+
+	private static final String ID_FIELD = "_id";
+	// present on every document in the original format, absent from compact ones
+	private static final String ORIGINAL_MARKER = "productId";
+	private static final Set<String> ID_PROPERTIES = Set.of("productId", "complainantId");
+	private static final String ORIGINAL_PAIR_INDEX = "idx_product_complainant";
+	private static final String MIGRATION_PAIR_INDEX = "idx_migration_complainant_product";
+
+	private final ReactiveMongoTemplate mongoTemplate;
+	private final ComplaintIndexInitializer complaintIndexInitializer;
+	private final ComplaintArchive complaintArchive;
+	private final boolean migrateOnStartup;
+	private final int batchSize;
+
+	public ComplaintStorageMigration(ReactiveMongoTemplate mongoTemplate,
+									 ComplaintIndexInitializer complaintIndexInitializer,
+									 ComplaintArchive complaintArchive,
+									 @Value("${application.storage.migrate-on-startup:true}") boolean migrateOnStartup,
+									 @Value("${application.storage.migration-batch-size:1000}") int batchSize) {
+		this.mongoTemplate = mongoTemplate;
+		this.complaintIndexInitializer = complaintIndexInitializer;
+		this.complaintArchive = complaintArchive;
+		this.migrateOnStartup = migrateOnStartup;
+		this.batchSize = batchSize;
+	}
+
+	void migrateOnStartup() {
+		if (migrateOnStartup) {
+			migrate().block();
+		}
+	}
+
+	/**
+	 * Migrates all complaints still in the original format, live and archived. Emits how many were rewritten.
+	 */
+	public Mono<Long> migrate() {
+		return migrateLive()
+				.flatMap(live -> migratePartitions().map(archived -> live + archived))
+				.doOnNext(migrated -> {
+					if (migrated > 0) {
+						log.info("Migrated {} complaints to the compact format", migrated);
+					}
+				});
+	}
+
+	private Mono<Long> migrateLive() {
+		String collection = mongoTemplate.getCollectionName(Complaint.class);
+
+		return mongoTemplate.exists(originalDocuments(), collection)
+				.flatMap(found -> {
+					if (!found) {
+						log.debug("No complaints in the original format left");
+						return Mono.just(0L);
+					}
+					log.info("Migrating complaints to the compact format in chunks of {}", batchSize);
+					ReactiveIndexOperations indexOperations = mongoTemplate.indexOps(collection);
+					return complaintIndexInitializer.ensureIndexes(Complaint.class, definition -> !ComplaintIndexInitializer.isText(definition))
+							.then(indexOperations.ensureIndex(originalPairIndex()))
+							.then(dropIndexes(indexOperations, index -> ORIGINAL_PAIR_INDEX.equals(index.getName())))
+							.then(rewrite(collection))
+							.flatMap(migrated -> dropIndexes(indexOperations, ComplaintStorageMigration::isOriginal)
+									.then(complaintIndexInitializer.ensureIndexes())
+									.thenReturn(migrated));
+				});
+	}
+
+	private Mono<Long> migratePartitions() {
+		return mongoTemplate.getCollectionNames()
+				.filter(name -> name.startsWith(ComplaintArchive.PARTITION_PREFIX))
+				.concatMap(this::migratePartition)
+				.reduce(0L, Long::sum);
+	}
+
+	private Mono<Long> migratePartition(String partition) {
+		ReactiveIndexOperations indexOperations = mongoTemplate.indexOps(partition);
+
+		// the compact indexes take the names of the original ones, which have to go first
+		return dropIndexes(indexOperations, ComplaintStorageMigration::isOriginal)
+				.then(rewrite(partition))
+				.flatMap(migrated -> complaintArchive.ensureIndexes(partition).thenReturn(migrated))
+				.doOnNext(migrated -> {
+					if (migrated > 0) {
+						log.info("Migrated {} archived complaints in {}", migrated, partition);
+					}
+				});
+	}
+
+	private Mono<Long> rewrite(String collection) {
+		AtomicLong migrated = new AtomicLong();
+
+		return mongoTemplate.find(originalDocuments().cursorBatchSize(batchSize), Document.class, collection)
+				.map(ComplaintStorageMigration::toCompact)
+				.buffer(batchSize)
+				.concatMap(chunk -> replace(collection, chunk))
+				.doOnNext(result -> migrated.addAndGet(result.getModifiedCount()))
+				.then(Mono.fromSupplier(migrated::get));
+	}
+
+	private Mono<BulkWriteResult> replace(String collection, List<Document> chunk) {
+		ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+		// the marker condition makes replacing a document twice a no-op
+		chunk.forEach(document -> bulkOperations.replaceOne(
+				Query.query(Criteria.where(ID_FIELD).is(document.get(ID_FIELD)).and(ORIGINAL_MARKER).exists(true)),
+				document));
+		return bulkOperations.execute();
+	}
+
+	private static Index originalPairIndex() {
+		// a different key order than the original unique index, as Mongo allows only one index per key pattern
+		return new Index()
+				.on("complainantId", Direction.ASC)
+				.on(ORIGINAL_MARKER, Direction.ASC)
+				.unique()
+				.partial(PartialIndexFilter.of(Criteria.where(ORIGINAL_MARKER).exists(true)))
+				.named(MIGRATION_PAIR_INDEX);
+	}
+
+	private static Mono<Void> dropIndexes(ReactiveIndexOperations indexOperations, Predicate<IndexInfo> filter) {
+		return indexOperations.getIndexInfo()
+				.filter(filter)
+				.concatMap(index -> indexOperations.dropIndex(index.getName()))
+				.then();
+	}
+
+	private static boolean isOriginal(IndexInfo index) {
+		return index.getIndexFields().stream()
+				.anyMatch(field -> CompactFieldNamingStrategy.COMPLAINT_FIELDS.containsKey(field.getKey()));
+	}
+
+	private static Query originalDocuments() {
+		return Query.query(Criteria.where(ORIGINAL_MARKER).exists(true));
+	}
+
+	static Document toCompact(Document original) {
+		Document compact = new Document();
+		for (Map.Entry<String, Object> field : original.entrySet()) {
+			String name = field.getKey();
+			Object value = field.getValue();
+			if (ID_PROPERTIES.contains(name) && value instanceof String id) {
+				value = CompactIdConverter.toStored(id);
+			}
+			compact.append(CompactFieldNamingStrategy.COMPLAINT_FIELDS.getOrDefault(name, name), value);
+		}
+		return compact;
+	}
+}
@@ -0,0 +1,7 @@
+package com.empik.complaint.repository;
+
+/**
+ * Amount to add to the counter of the complaint identified by product and complainant.
+ */
+public record CounterIncrement(String productId, String complainantId, int delta) {
+}
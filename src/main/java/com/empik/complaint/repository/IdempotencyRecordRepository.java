@@ -0,0 +1,73 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.IdempotencyRecord;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * Idempotency records shared by all nodes, in the {@code idempotency_keys} collection. Claiming a key is a single
+ * insert racing on the ID, so exactly one node runs the write for a key at a time.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyRecordRepository {
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	/**
+	 * Claims the key for running its write, or takes over a claim whose lock has run out without a response.
+	 * Emits whether the key is now held by the caller.
+	 */
+	public Mono<Boolean> claim(String id, String fingerprint, Instant lockedUntil, Instant expiresAt) {
+		IdempotencyRecord record = IdempotencyRecord.builder()
+				.id(id)
+				.fingerprint(fingerprint)
+				.lockedUntil(lockedUntil)
+				.expiresAt(expiresAt)
+				.build();
+
+		return mongoTemplate.insert(record)
+				.thenReturn(true)
+				.onErrorResume(DuplicateKeyException.class, e -> takeOver(record));
+	}
+
+	public Mono<IdempotencyRecord> find(String id) {
+		return mongoTemplate.findById(id, IdempotencyRecord.class);
+	}
+
+	public Mono<Void> complete(String id, Document response) {
+		return mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)),
+						Update.update("response", response).unset("lockedUntil"), IdempotencyRecord.class)
+				.then();
+	}
+
+	/**
+	 * Drops a claim whose write failed, so a retry with the same key runs the write again.
+	 */
+	public Mono<Void> release(String id) {
+		return mongoTemplate.remove(Query.query(Criteria.where("id").is(id).and("response").is(null)), IdempotencyRecord.class)
+				.then();
+	}
+
+	private Mono<Boolean> takeOver(IdempotencyRecord record) {
+		// the node holding the claim stopped before responding, so the write may be run again
+		Query abandoned = Query.query(Criteria.where("id").is(record.getId())
+				.and("fingerprint").is(record.getFingerprint())
+				.and("response").is(null)
+				.and("lockedUntil").lt(Instant.now()));
+
+		return mongoTemplate.updateFirst(abandoned,
+						Update.update("lockedUntil", record.getLockedUntil()).set("expiresAt", record.getExpiresAt()),
+						IdempotencyRecord.class)
+				.map(result -> result.getModifiedCount() > 0);
+	}
+}
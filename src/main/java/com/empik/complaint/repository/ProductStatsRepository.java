@@ -0,0 +1,129 @@
+package com.empik.complaint.repository;
+
+import com.empik.complaint.model.ProductStats;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the {@code complaint_stats} collection with upserting {@code $inc} writes, one bulk write per call.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductStatsRepository {
+
+	static final String COLLECTION = "complaint_stats";
+	private static final String REBUILD_COLLECTION = COLLECTION + "_rebuild";
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	public Mono<Void> increment(Collection<ComplaintStatsDelta> deltas) {
+		return increment(deltas, COLLECTION);
+	}
+
+	/**
+	 * Writes deltas into the scratch collection of a running {@link #rebuild(Flux) rebuild}, for increments the
+	 * rebuild cannot see any more.
+	 */
+	public Mono<Void> incrementRebuild(Collection<ComplaintStatsDelta> deltas) {
+		return increment(deltas, REBUILD_COLLECTION);
+	}
+
+	/**
+	 * Returns the products with the most complaints, read from an index in descending order.
+	 */
+	public Flux<ProductStats> findTopProducts(int limit) {
+		Query query = Query.query(Criteria.where("scope").is(ProductStats.Scope.PRODUCT))
+				.with(Sort.by(Sort.Direction.DESC, "complaints"))
+				.limit(limit);
+
+		return mongoTemplate.find(query, ProductStats.class);
+	}
+
+	/**
+	 * Writes all deltas into a scratch collection and then atomically replaces the statistics with it,
+	 * so readers keep seeing the previous statistics until the rebuild completes.
+	 * Increments written only through {@link #increment(Collection)} while the rebuild runs are replaced with the
+	 * rest; callers write those the chunks do not cover through {@link #incrementRebuild(Collection)} as well.
+	 * Chunks are subscribed to only after the scratch collection of an earlier rebuild is dropped.
+	 */
+	public Mono<Void> rebuild(Flux<List<ComplaintStatsDelta>> chunks) {
+		return mongoTemplate.dropCollection(REBUILD_COLLECTION)
+				.thenMany(chunks)
+				.filter(chunk -> !chunk.isEmpty())
+				.concatMap(chunk -> increment(chunk, REBUILD_COLLECTION))
+				.then(mongoTemplate.collectionExists(REBUILD_COLLECTION))
+				.flatMap(written -> written ? replaceWithRebuilt() : mongoTemplate.dropCollection(COLLECTION));
+	}
+
+	private Mono<Void> increment(Collection<ComplaintStatsDelta> deltas, String collection) {
+		if (deltas.isEmpty()) {
+			return Mono.empty();
+		}
+		Map<String, ComplaintStatsDelta> products = new LinkedHashMap<>();
+		Map<String, ComplaintStatsDelta> days = new LinkedHashMap<>();
+		deltas.forEach(delta -> {
+			products.merge(delta.productId(), delta, ComplaintStatsDelta::plus);
+			days.merge(dayKey(delta), delta, ComplaintStatsDelta::plus);
+		});
+
+		ReactiveBulkOperations bulkOperations =
+				mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductStats.class, collection);
+		products.forEach((id, delta) -> bulkOperations.upsert(byId(id), productUpdate(delta)));
+		days.forEach((id, delta) -> bulkOperations.upsert(byId(id), dayUpdate(delta)));
+
+		return bulkOperations.execute().then();
+	}
+
+	private Mono<Void> replaceWithRebuilt() {
+		return mongoTemplate.getCollection(REBUILD_COLLECTION)
+				.flatMap(collection -> Mono.from(collection.renameCollection(
+						new MongoNamespace(collection.getNamespace().getDatabaseName(), COLLECTION),
+						new RenameCollectionOptions().dropTarget(true))))
+				.then();
+	}
+
+	private static Update productUpdate(ComplaintStatsDelta delta) {
+		return increments(delta)
+				.setOnInsert("scope", ProductStats.Scope.PRODUCT)
+				.setOnInsert("productId", delta.productId());
+	}
+
+	private static Update dayUpdate(ComplaintStatsDelta delta) {
+		return increments(delta)
+				.setOnInsert("scope", ProductStats.Scope.DAY)
+				.setOnInsert("productId", delta.productId())
+				.setOnInsert("country", delta.country())
+				.setOnInsert("day", delta.day());
+	}
+
+	private static Update increments(ComplaintStatsDelta delta) {
+		return new Update()
+				.inc("complaints", delta.complaints())
+				.inc("counter", delta.counter());
+	}
+
+	private static Query byId(String id) {
+		return Query.query(Criteria.where("id").is(id));
+	}
+
+	private static String dayKey(ComplaintStatsDelta delta) {
+		return delta.productId() + KEY_SEPARATOR + delta.country() + KEY_SEPARATOR + delta.day();
+	}
+}
@@ -0,0 +1,17 @@
+package com.empik.complaint.service;
+
+/**
+ * Result of a single item of a bulk complaint submission.
+ *
+ * @param index position of the item in the submitted batch
+ * @param id    id of the complaint, when known
+ * @param error reason the item was rejected, {@code null} otherwise
+ */
+public record BulkItemResult(long index, String productId, String complainantId, String id, Status status, String error) {
+
+	public enum Status {
+		CREATED,
+		INCREMENTED,
+		REJECTED
+	}
+}
@@ -0,0 +1,107 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.repository.ComplaintArchive;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Moves complaints created and last written to, content update or counter increment, more than
+ * {@code max-age-days} ago into the monthly archive partitions, when enabled.
+ * <p>
+ * Every {@code interval-ms} the oldest eligible complaints are moved in chunks of {@code batch-size}, pausing
+ * {@code batch-delay-ms} between chunks so the move never competes with live traffic for long. A run stops early
+ * at a chunk of complaints that were all written to while being moved; the next run picks them up again.
+ * Runs on several instances are safe but redundant.
+ */
+@Component
+@Slf4j
+public class ComplaintArchiver {
+
+	private final ComplaintArchive complaintArchive;
+	private final Counter movedCounter;
+
+	@Value("${application.archive.enabled:false}")
+	private boolean enabled;
+
+	@Value("${application.archive.max-age-days:365}")
+	private long maxAgeDays;
+
+	@Value("${application.archive.batch-size:500}")
+	private int batchSize;
+
+	@Value("${application.archive.batch-delay-ms:200}")
+	private long batchDelayMs;
+
+	@Value("${application.archive.interval-ms:3600000}")
+	private long intervalMs;
+
+	private Disposable schedule;
+
+	public ComplaintArchiver(ComplaintArchive complaintArchive, MeterRegistry meterRegistry) {
+		this.complaintArchive = complaintArchive;
+		this.movedCounter = Counter.builder("complaint.archive.moved")
+				.description("Complaints moved into the archive partitions")
+				.register(meterRegistry);
+		Gauge.builder("complaint.archive.partitions", complaintArchive, ComplaintArchive::partitionCount)
+				.description("Monthly archive partitions known to this instance")
+				.register(meterRegistry);
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	void onApplicationReady() {
+		if (!enabled) {
+			return;
+		}
+		log.info("Archiving complaints older than {} days every {} ms in chunks of {}", maxAgeDays, intervalMs, batchSize);
+		schedule = Flux.interval(Duration.ZERO, Duration.ofMillis(intervalMs))
+				.onBackpressureDrop()
+				.concatMap(tick -> archive()
+						.onErrorResume(e -> {
+							log.error("Failed to archive complaints: {}", e.getMessage());
+							return Mono.empty();
+						}))
+				.subscribe();
+	}
+
+	@PreDestroy
+	void stop() {
+		if (nonNull(schedule)) {
+			schedule.dispose();
+		}
+	}
+
+	/**
+	 * Archives every complaint that is old enough now. Emits how many were moved.
+	 */
+	public Mono<Long> archive() {
+		return Mono.defer(() -> {
+			LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+			return complaintArchive.archiveBatch(cutoff, batchSize)
+					.expand(moved -> moved == 0
+							? Mono.empty()
+							: Mono.delay(Duration.ofMillis(batchDelayMs)).then(complaintArchive.archiveBatch(cutoff, batchSize)))
+					.doOnNext(movedCounter::increment)
+					.reduce(0L, Long::sum)
+					.doOnNext(moved -> {
+						if (moved > 0) {
+							log.info("Archived {} complaints created and updated before {}", moved, cutoff);
+						}
+					});
+		});
+	}
+}
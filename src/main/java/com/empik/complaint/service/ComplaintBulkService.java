@@ -0,0 +1,177 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.client.GeoLocationClient;
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.repository.BulkUpsertResult;
+import com.empik.complaint.repository.ComplaintRepository;
+import com.empik.complaint.repository.CounterIncrement;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.empik.complaint.service.CountryEnrichmentPipeline.PENDING_COUNTRY;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Ingests batches of complaints with one unordered bulk write per chunk, keeping the
+ * {@code (productId, complainantId)} deduplication and counter semantics of single creates.
+ * Duplicates within a chunk are folded into a single upsert incremented by their count.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ComplaintBulkService {
+
+	private final ComplaintRepository complaintRepository;
+	private final GeoLocationClient geoLocationClient;
+	private final CountryEnrichmentPipeline countryEnrichmentPipeline;
+	private final ComplaintCache complaintCache;
+	private final ComplaintStatsService complaintStatsService;
+	private final Validator validator;
+
+	@Value("${application.bulk.batch-size:500}")
+	private int batchSize;
+
+	public Flux<BulkItemResult> createComplaints(Flux<ComplaintCreateRequest> requests, String ipAddress) {
+		// all items of one submission come from the same client IP, so its country is resolved at most once
+		Mono<String> country = resolveCountry(ipAddress).cache();
+
+		return requests.index()
+				.buffer(batchSize)
+				.concatMap(batch -> processBatch(batch, country, ipAddress));
+	}
+
+	private Mono<String> resolveCountry(String ipAddress) {
+		return countryEnrichmentPipeline.isEnabled()
+				? Mono.just(PENDING_COUNTRY)
+				: Mono.defer(() -> geoLocationClient.getCountryFromIp(ipAddress));
+	}
+
+	private Flux<BulkItemResult> processBatch(List<Tuple2<Long, ComplaintCreateRequest>> batch,
+											  Mono<String> country, String ipAddress) {
+		List<BulkItemResult> rejected = new ArrayList<>();
+		Map<ComplaintKey, List<Tuple2<Long, ComplaintCreateRequest>>> itemsByKey = new LinkedHashMap<>();
+
+		for (Tuple2<Long, ComplaintCreateRequest> item : batch) {
+			String violations = validate(item.getT2());
+			if (isNull(violations)) {
+				ComplaintKey key = new ComplaintKey(item.getT2().productId(), item.getT2().complainantId());
+				itemsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+			} else {
+				rejected.add(rejected(item, violations));
+			}
+		}
+		if (itemsByKey.isEmpty()) {
+			return Flux.fromIterable(rejected);
+		}
+
+		List<List<Tuple2<Long, ComplaintCreateRequest>>> groups = new ArrayList<>(itemsByKey.values());
+		return country
+				.map(resolvedCountry -> groups.stream().map(group -> toComplaint(group, resolvedCountry, ipAddress)).toList())
+				.flatMap(complaints -> complaintRepository.bulkUpsertComplaints(complaints)
+						.flatMap(result -> recordStats(complaints, result).thenReturn(result)))
+				.doOnNext(result -> log.debug("Bulk upserted {} complaints ({} new, {} failed)",
+						groups.size(), result.insertedIds().size(), result.errors().size()))
+				.flatMapIterable(result -> {
+					List<BulkItemResult> results = new ArrayList<>(rejected);
+					for (int i = 0; i < groups.size(); i++) {
+						results.addAll(toResults(groups.get(i), i, result, ipAddress));
+					}
+					results.sort(Comparator.comparingLong(BulkItemResult::index));
+					return results;
+				});
+	}
+
+	private List<BulkItemResult> toResults(List<Tuple2<Long, ComplaintCreateRequest>> group, int position,
+										   BulkUpsertResult result, String ipAddress) {
+		String error = result.errors().get(position);
+		if (nonNull(error)) {
+			return group.stream().map(item -> rejected(item, error)).toList();
+		}
+
+		String insertedId = result.insertedIds().get(position);
+		if (isNull(insertedId)) {
+			ComplaintCreateRequest first = group.getFirst().getT2();
+			complaintCache.invalidate(first.productId(), first.complainantId());
+		} else if (countryEnrichmentPipeline.isEnabled()) {
+			countryEnrichmentPipeline.submit(insertedId, ipAddress);
+		}
+
+		List<BulkItemResult> results = new ArrayList<>(group.size());
+		for (int i = 0; i < group.size(); i++) {
+			Tuple2<Long, ComplaintCreateRequest> item = group.get(i);
+			BulkItemResult.Status status = i == 0 && nonNull(insertedId)
+					? BulkItemResult.Status.CREATED
+					: BulkItemResult.Status.INCREMENTED;
+			results.add(new BulkItemResult(item.getT1(), item.getT2().productId(), item.getT2().complainantId(),
+					insertedId, status, null));
+		}
+		return results;
+	}
+
+	private Mono<Void> recordStats(List<Complaint> complaints, BulkUpsertResult result) {
+		if (!complaintStatsService.isEnabled()) {
+			return Mono.empty();
+		}
+		List<Complaint> inserted = new ArrayList<>();
+		List<CounterIncrement> incremented = new ArrayList<>();
+		for (int i = 0; i < complaints.size(); i++) {
+			Complaint complaint = complaints.get(i);
+			if (result.insertedIds().containsKey(i)) {
+				inserted.add(complaint);
+			} else if (!result.errors().containsKey(i)) {
+				incremented.add(new CounterIncrement(complaint.getProductId(), complaint.getComplainantId(), complaint.getCounter()));
+			}
+		}
+		return complaintStatsService.recordInserted(inserted)
+				.then(complaintStatsService.recordIncrements(incremented));
+	}
+
+	private String validate(ComplaintCreateRequest request) {
+		if (isNull(request)) {
+			return "Request is empty";
+		}
+		var violations = validator.validate(request);
+		return violations.isEmpty()
+				? null
+				: violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", "));
+	}
+
+	private static Complaint toComplaint(List<Tuple2<Long, ComplaintCreateRequest>> group, String country, String ipAddress) {
+		ComplaintCreateRequest first = group.getFirst().getT2();
+		return Complaint.builder()
+				.productId(first.productId())
+				.content(first.content())
+				.complainantId(first.complainantId())
+				.country(country)
+				.pendingIpAddress(PENDING_COUNTRY.equals(country) ? ipAddress : null)
+				.counter(group.size())
+				.build();
+	}
+
+	private static BulkItemResult rejected(Tuple2<Long, ComplaintCreateRequest> item, String error) {
+		ComplaintCreateRequest request = item.getT2();
+		return new BulkItemResult(item.getT1(),
+				isNull(request) ? null : request.productId(),
+				isNull(request) ? null : request.complainantId(),
+				null, BulkItemResult.Status.REJECTED, error);
+	}
+
+	private record ComplaintKey(String productId, String complainantId) {
+	}
+}
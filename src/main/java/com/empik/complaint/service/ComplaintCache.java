@@ -0,0 +1,208 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.model.Complaint;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Optional read-through cache of complaints by ID, bounded by the estimated memory footprint of its entries.
+ * <p>
+ * Writes made on this node are put into the cache as they complete, so reads after a write are not stale
+ * here; a put with a lower counter or an older update date than the cached complaint is ignored, as it comes from
+ * a write that completed late. Writes made on other nodes become visible after the TTL at the latest. Lookups of
+ * IDs that do not exist are cached as well, for the short negative TTL. Cached complaints are shared and must not
+ * be modified.
+ */
+@Component
+@Slf4j
+public class ComplaintCache {
+
+	private static final String CACHE_NAME = "complaints";
+
+	private final AsyncCache<String, Optional<Complaint>> cache;
+	// (productId, complainantId) -> ID of the cached complaint, for writes that only know the pair
+	private final Map<String, String> idsByPair = new ConcurrentHashMap<>();
+
+	public ComplaintCache(MeterRegistry meterRegistry,
+						  @Value("${application.complaint-cache.enabled:false}") boolean enabled,
+						  @Value("${application.complaint-cache.max-weight-bytes:67108864}") long maxWeightBytes,
+						  @Value("${application.complaint-cache.ttl-ms:30000}") long ttlMs,
+						  @Value("${application.complaint-cache.negative-ttl-ms:2000}") long negativeTtlMs,
+						  @Value("${application.complaint-cache.expire-after:WRITE}") ExpirationPolicy expirationPolicy) {
+		if (!enabled) {
+			this.cache = null;
+			return;
+		}
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxWeightBytes)
+				.weigher((String id, Optional<Complaint> complaint) -> estimateBytes(id, complaint))
+				.expireAfter(new ComplaintExpiry(Duration.ofMillis(ttlMs), Duration.ofMillis(negativeTtlMs), expirationPolicy))
+				.evictionListener(this::onEviction)
+				.recordStats()
+				.buildAsync();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+		Gauge.builder("complaint.cache.weight", cache, c -> c.synchronous().policy().eviction().orElseThrow().weightedSize().orElse(0))
+				.description("Estimated memory footprint of the cached complaints")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		Gauge.builder("complaint.cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+				.description("Share of complaint lookups served from the cache")
+				.register(meterRegistry);
+
+		log.info("Complaint cache enabled (max weight: {} bytes, ttl: {} ms, negative ttl: {} ms, expire after: {})",
+				maxWeightBytes, ttlMs, negativeTtlMs, expirationPolicy);
+	}
+
+	public boolean isEnabled() {
+		return !isNull(cache);
+	}
+
+	public Mono<Complaint> get(String id, Function<String, Mono<Complaint>> loader) {
+		if (isNull(cache)) {
+			return loader.apply(id);
+		}
+		// suppressCancel: one caller cancelling must not abort a load shared with other callers
+		return Mono.fromFuture(() -> cache.get(id, (key, executor) -> loader.apply(key)
+						.doOnNext(this::indexPair)
+						.map(Optional::of)
+						.defaultIfEmpty(Optional.empty())
+						.toFuture()), true)
+				.flatMap(Mono::justOrEmpty);
+	}
+
+	public void put(Complaint complaint) {
+		if (isNull(cache) || isNull(complaint.getId())) {
+			return;
+		}
+		// responses can complete out of order, so a late one must not replace what a newer write already put
+		cache.asMap().merge(complaint.getId(), CompletableFuture.completedFuture(Optional.of(complaint)),
+				(cached, written) -> isOlder(complaint, cached) ? cached : written);
+		indexPair(complaint);
+	}
+
+	public void invalidate(String id) {
+		if (isNull(cache)) {
+			return;
+		}
+		Optional<Complaint> removed = cache.synchronous().asMap().remove(id);
+		if (!isNull(removed)) {
+			removed.ifPresent(complaint -> unindexPair(id, complaint));
+		}
+	}
+
+	public void invalidate(String productId, String complainantId) {
+		if (isNull(cache)) {
+			return;
+		}
+		String id = idsByPair.remove(pairKey(productId, complainantId));
+		if (!isNull(id)) {
+			cache.synchronous().invalidate(id);
+		}
+	}
+
+	private static boolean isOlder(Complaint complaint, CompletableFuture<Optional<Complaint>> cached) {
+		if (!cached.isDone() || cached.isCompletedExceptionally()) {
+			return false;
+		}
+		return cached.join()
+				.map(current -> complaint.getCounter() < current.getCounter()
+						|| isBefore(complaint.getUpdateDate(), current.getUpdateDate()))
+				.orElse(false);
+	}
+
+	private static boolean isBefore(LocalDateTime date, LocalDateTime other) {
+		return !isNull(other) && (isNull(date) || date.isBefore(other));
+	}
+
+	private void indexPair(Complaint complaint) {
+		idsByPair.put(pairKey(complaint.getProductId(), complaint.getComplainantId()), complaint.getId());
+	}
+
+	private void unindexPair(String id, Complaint complaint) {
+		idsByPair.remove(pairKey(complaint.getProductId(), complaint.getComplainantId()), id);
+	}
+
+	private void onEviction(String id, Optional<Complaint> complaint, RemovalCause cause) {
+		if (!isNull(complaint)) {
+			complaint.ifPresent(c -> unindexPair(id, c));
+		}
+	}
+
+	private static String pairKey(String productId, String complainantId) {
+		return productId + '\u0000' + complainantId;
+	}
+
+	/**
+	 * Rough retained size of an entry: the cache node, the key and the complaint with its strings and dates.
+	 */
+	static int estimateBytes(String id, Optional<Complaint> complaint) {
+		int bytes = 96 + stringBytes(id);
+		if (complaint.isEmpty()) {
+			return bytes;
+		}
+		Complaint c = complaint.get();
+		return bytes + 48
+				+ stringBytes(c.getId())
+				+ stringBytes(c.getProductId())
+				+ stringBytes(c.getContent())
+				+ stringBytes(c.getComplainantId())
+				+ stringBytes(c.getCountry())
+				+ dateBytes(c.getCreationDate())
+				+ dateBytes(c.getUpdateDate())
+				+ dateBytes(c.getLastActivityDate());
+	}
+
+	private static int stringBytes(String value) {
+		// String object and byte[] headers; Latin-1 content is stored one byte per character
+		return isNull(value) ? 0 : 40 + value.length();
+	}
+
+	private static int dateBytes(LocalDateTime value) {
+		return isNull(value) ? 0 : 72;
+	}
+
+	public enum ExpirationPolicy {
+		/** Entries expire a fixed TTL after they were loaded or written. */
+		WRITE,
+		/** Entries expire a TTL after they were last read; frequently polled complaints stay cached. */
+		ACCESS
+	}
+
+	private record ComplaintExpiry(Duration ttl, Duration negativeTtl, ExpirationPolicy policy)
+			implements Expiry<String, Optional<Complaint>> {
+
+		@Override
+		public long expireAfterCreate(String id, Optional<Complaint> complaint, long currentTime) {
+			return (complaint.isPresent() ? ttl : negativeTtl).toNanos();
+		}
+
+		@Override
+		public long expireAfterUpdate(String id, Optional<Complaint> complaint, long currentTime, long currentDuration) {
+			return expireAfterCreate(id, complaint, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(String id, Optional<Complaint> complaint, long currentTime, long currentDuration) {
+			return policy == ExpirationPolicy.ACCESS && complaint.isPresent() ? ttl.toNanos() : currentDuration;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.exception.InvalidCursorException;
+import com.empik.complaint.repository.ComplaintEvent;
+import com.empik.complaint.repository.ComplaintRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Live feed of complaint changes for any number of subscribers.
+ * <p>
+ * Subscribers share a single change stream, opened with the first subscriber and closed with the last;
+ * if it fails it is reopened after the last event it delivered, so subscribers see no gap. The shared stream
+ * retains its most recent events, so subscribers resuming after one of them are served from it as well. Only a
+ * subscriber resuming after an older event gets a change stream of its own, until that catches up with the
+ * retained events. Every subscriber has a bounded buffer: one that falls further behind is disconnected,
+ * without slowing down the others, and can reconnect from its last event.
+ */
+@Component
+@Slf4j
+public class ComplaintEventFeed {
+
+	private static final Pattern RESUME_TOKEN = Pattern.compile("[0-9A-Fa-f]+");
+
+	private final ComplaintRepository complaintRepository;
+	private final int bufferSize;
+	private final int replaySize;
+	private final AtomicReference<String> lastResumeToken = new AtomicReference<>();
+	private final AtomicInteger subscribers = new AtomicInteger();
+	private final Counter overflowCounter;
+	private final Counter catchUpCounter;
+	// resume token -> sequence of the retained events, oldest first
+	private final Map<String, Long> retained = new LinkedHashMap<>();
+	private long lastSequence;
+	private final Flux<SequencedEvent> sharedEvents;
+
+	public ComplaintEventFeed(ComplaintRepository complaintRepository,
+							  MeterRegistry meterRegistry,
+							  @Value("${application.events.buffer-size:256}") int bufferSize,
+							  @Value("${application.events.replay-size:1024}") int replaySize,
+							  @Value("${application.events.retry-backoff-ms:1000}") long retryBackoffMs) {
+		this.complaintRepository = complaintRepository;
+		this.bufferSize = bufferSize;
+		this.replaySize = replaySize;
+		this.overflowCounter = Counter.builder("complaint.events.overflows")
+				.description("Event subscribers disconnected for falling too far behind")
+				.register(meterRegistry);
+		this.catchUpCounter = Counter.builder("complaint.events.catch-ups")
+				.description("Resuming subscribers that needed a change stream of their own")
+				.register(meterRegistry);
+		meterRegistry.gauge("complaint.events.subscribers", subscribers);
+
+		this.sharedEvents = Flux.defer(() -> complaintRepository.watchChanges(lastResumeToken.get()))
+				.doOnNext(event -> lastResumeToken.set(event.resumeToken()))
+				.retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(retryBackoffMs))
+						.maxBackoff(Duration.ofSeconds(30))
+						.doBeforeRetry(signal -> log.warn("Complaint change stream failed, reopening: {}",
+								signal.failure().getMessage())))
+				.map(this::retain)
+				// the next first subscriber starts from now rather than replaying what nobody was listening to
+				.doOnCancel(() -> {
+					lastResumeToken.set(null);
+					forgetRetained();
+				})
+				.replay(replaySize)
+				.refCount();
+	}
+
+	/**
+	 * Streams complaint changes from now on, or from right after the event with the given resume token.
+	 */
+	public Flux<ComplaintEvent> events(String resumeAfter) {
+		if (!isNull(resumeAfter) && !RESUME_TOKEN.matcher(resumeAfter).matches()) {
+			return Flux.error(new InvalidCursorException("Invalid resume token: " + resumeAfter));
+		}
+		Flux<ComplaintEvent> events = isNull(resumeAfter) ? liveEvents() : eventsAfter(resumeAfter);
+
+		return events
+				.onBackpressureBuffer(bufferSize, dropped -> {
+					overflowCounter.increment();
+					log.warn("Event subscriber fell more than {} events behind, disconnecting", bufferSize);
+				})
+				.doOnSubscribe(subscription -> subscribers.incrementAndGet())
+				.doFinally(signal -> subscribers.decrementAndGet());
+	}
+
+	private Flux<ComplaintEvent> liveEvents() {
+		return Flux.defer(() -> {
+			long subscribedAfter = lastSequence();
+			// the shared stream replays the retained events to every subscriber, a live one only wants newer ones
+			return sharedEvents
+					.filter(event -> event.sequence() > subscribedAfter)
+					.map(SequencedEvent::event);
+		});
+	}
+
+	private Flux<ComplaintEvent> eventsAfter(String resumeToken) {
+		return Flux.defer(() -> {
+			Long sequence = retainedSequence(resumeToken);
+			if (isNull(sequence)) {
+				return catchUp(resumeToken);
+			}
+			AtomicBoolean first = new AtomicBoolean(true);
+			return sharedEvents
+					.skipWhile(event -> event.sequence() <= sequence)
+					.<ComplaintEvent>handle((event, sink) -> {
+						if (first.getAndSet(false) && event.sequence() != sequence + 1) {
+							// the events right after the token were evicted before this subscriber got to them
+							sink.error(new EvictedException());
+							return;
+						}
+						sink.next(event.event());
+					})
+					.onErrorResume(EvictedException.class, e -> catchUp(resumeToken));
+		});
+	}
+
+	private Flux<ComplaintEvent> catchUp(String resumeToken) {
+		catchUpCounter.increment();
+		log.debug("Resume token {} is older than the retained events, catching up with a change stream of its own", resumeToken);
+		AtomicReference<String> caughtUpTo = new AtomicReference<>(resumeToken);
+		// keeps the shared stream open meanwhile, so that there are retained events to catch up with
+		return Flux.using(() -> sharedEvents.subscribe(),
+				keepOpen -> complaintRepository.watchChanges(resumeToken)
+						.doOnNext(event -> caughtUpTo.set(event.resumeToken()))
+						.takeUntil(event -> !isNull(retainedSequence(event.resumeToken())))
+						.concatWith(Flux.defer(() -> eventsAfter(caughtUpTo.get()))),
+				Disposable::dispose);
+	}
+
+	private SequencedEvent retain(ComplaintEvent event) {
+		synchronized (retained) {
+			long sequence = ++lastSequence;
+			retained.put(event.resumeToken(), sequence);
+			if (retained.size() > replaySize) {
+				retained.remove(retained.keySet().iterator().next());
+			}
+			return new SequencedEvent(sequence, event);
+		}
+	}
+
+	private Long retainedSequence(String resumeToken) {
+		synchronized (retained) {
+			return retained.get(resumeToken);
+		}
+	}
+
+	private long lastSequence() {
+		synchronized (retained) {
+			return lastSequence;
+		}
+	}
+
+	private void forgetRetained() {
+		synchronized (retained) {
+			retained.clear();
+		}
+	}
+
+	private record SequencedEvent(long sequence, ComplaintEvent event) {
+	}
+
+	private static final class EvictedException extends RuntimeException {
+
+		EvictedException() {
+			super(null, null, false, false);
+		}
+	}
+}
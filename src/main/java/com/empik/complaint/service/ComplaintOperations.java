@@ -0,0 +1,19 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.model.Complaint;
+import reactor.core.publisher.Mono;
+
+/**
+ * The single-complaint operations behind the create, content update and get-by-ID endpoints, run by the mode
+ * selected with {@code application.execution.mode}: {@link ComplaintService} on the reactive stack, or
+ * {@link VirtualThreadComplaintService} as blocking code on virtual threads.
+ */
+public interface ComplaintOperations {
+
+	Mono<Complaint> createComplaint(ComplaintCreateRequest request, String ipAddress);
+
+	Mono<Complaint> updateComplaintContent(String id, String content, String ipAddress);
+
+	Mono<Complaint> getComplaintById(String id);
+}
@@ -2,50 +2,84 @@ package com.empik.complaint.service;
 
 import com.empik.complaint.api.dto.ComplaintCreateRequest;
 import com.empik.complaint.client.GeoLocationClient;
-import com.empik.complaint.exception.ComplaintNotFoundException;
+import com.empik.complaint.exception.SearchUnavailableException;
 import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ComplaintCursor;
+import com.empik.complaint.repository.ComplaintIndexInitializer;
 import com.empik.complaint.repository.ComplaintRepository;
-import com.mongodb.DuplicateKeyException;
-import lombok.RequiredArgsConstructor;
+import com.empik.complaint.repository.ComplaintStats;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+
+import static com.empik.complaint.service.ComplaintWorkflow.UNRESOLVED_COUNTRIES;
+import static com.empik.complaint.service.CountryEnrichmentPipeline.PENDING_COUNTRY;
+import static java.util.Objects.nonNull;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
-public class ComplaintService {
-
-	private static final String UNKNOWN_COUNTRY = "Unknown";
+public class ComplaintService implements ComplaintOperations {
 
 	private final ComplaintRepository complaintRepository;
 	private final GeoLocationClient geoLocationClient;
+	private final ComplaintCache complaintCache;
+	private final ComplaintStatsService complaintStatsService;
+	private final ComplaintIndexInitializer complaintIndexInitializer;
+	private final ComplaintWorkflow workflow;
+
+	@Value("${application.export.batch-size:500}")
+	private int exportBatchSize;
+
+	public ComplaintService(ComplaintRepository complaintRepository,
+							GeoLocationClient geoLocationClient,
+							CountryEnrichmentPipeline countryEnrichmentPipeline,
+							ComplaintCache complaintCache,
+							CounterAggregator counterAggregator,
+							ComplaintStatsService complaintStatsService,
+							ComplaintIndexInitializer complaintIndexInitializer,
+							MeterRegistry meterRegistry) {
+		this.complaintRepository = complaintRepository;
+		this.geoLocationClient = geoLocationClient;
+		this.complaintCache = complaintCache;
+		this.complaintStatsService = complaintStatsService;
+		this.complaintIndexInitializer = complaintIndexInitializer;
+		this.workflow = new ComplaintWorkflow(countryEnrichmentPipeline, complaintCache, counterAggregator, meterRegistry);
+	}
 
+	@Override
 	public Mono<Complaint> createComplaint(ComplaintCreateRequest request, String ipAddress) {
 		log.debug("Creating complaint for product ID: {} from complainant ID: {}",
 				request.productId(), request.complainantId());
 
-		return complaintRepository.findByProductIdAndComplainantId(request.productId(), request.complainantId())
-				.flatMap(this::incrementComplaintCounter)
+		return incrementComplaintCounter(request)
 				.switchIfEmpty(Mono.defer(() -> handleNewComplaint(request, ipAddress)));
 	}
 
+	@Override
 	public Mono<Complaint> updateComplaintContent(String id, String content, String ipAddress) {
 		log.debug("Updating content for complaint ID: {}", id);
 
 		return complaintRepository.findById(id)
+				.switchIfEmpty(Mono.defer(() -> complaintRepository.restoreArchivedById(id)))
 				.flatMap(complaint -> enrichAndApplyContentUpdate(complaint, content, ipAddress))
-				.doOnNext(updated -> log.debug("Updated complaint ID: {}", updated.getId()))
 				.switchIfEmpty(complaintNotFound(id));
 	}
 
+	@Override
 	public Mono<Complaint> getComplaintById(String id) {
 		log.debug("Getting complaint by ID: {}", id);
-		return complaintRepository.findById(id)
-				.switchIfEmpty(complaintNotFound(id));
+		// cached complaints are shared with every reader, so only uncached reads leave out what the response does not show
+		Mono<Complaint> complaint = complaintCache.isEnabled()
+				? complaintCache.get(id, this::findIncludingArchived)
+				: complaintRepository.findSummaryById(id);
+		return complaint.switchIfEmpty(complaintNotFound(id));
 	}
 
 	public Flux<Complaint> getComplaints(String productId, String complainantId,
@@ -54,60 +88,85 @@ public class ComplaintService {
 		return complaintRepository.findByFilters(productId, complainantId, fromDate, toDate, page, size);
 	}
 
-	private Mono<Complaint> incrementComplaintCounter(Complaint existingComplaint) {
-		log.debug("Complaint already exists, incrementing counter");
-		existingComplaint.setCounter(existingComplaint.getCounter() + 1);
-		return complaintRepository.save(existingComplaint);
+	public Flux<Complaint> getComplaintsAfter(String productId, String complainantId,
+											  LocalDateTime fromDate, LocalDateTime toDate,
+											  String cursor, int size) {
+		return Mono.fromCallable(() -> ComplaintCursor.decode(cursor))
+				.flatMapMany(after -> complaintRepository.findByFiltersAfter(productId, complainantId, fromDate, toDate, after, size));
 	}
 
-	private Mono<Complaint> enrichAndApplyContentUpdate(Complaint complaint, String content, String ipAddress) {
-		return enrichCountryIfUnknown(complaint, ipAddress)
-				.flatMap(enrichedComplaint -> applyContentUpdate(enrichedComplaint, content));
+	public Flux<Complaint> searchComplaints(String text, String productId, String complainantId,
+											LocalDateTime fromDate, LocalDateTime toDate,
+											int page, int size) {
+		log.debug("Searching complaints for: {}", text);
+		if (!complaintIndexInitializer.isSearchReady()) {
+			return Flux.error(new SearchUnavailableException("Search is unavailable until the text index is built"));
+		}
+		return complaintRepository.searchByText(text, productId, complainantId, fromDate, toDate, page, size);
 	}
 
-	private Mono<Complaint> applyContentUpdate(Complaint complaint, String content) {
-		complaint.setContent(content);
-		complaint.setUpdateDate(LocalDateTime.now());
-		return complaintRepository.save(complaint);
+	public Flux<Complaint> exportComplaints(String productId, String complainantId,
+											LocalDateTime fromDate, LocalDateTime toDate) {
+		log.debug("Exporting complaints with batch size: {}", exportBatchSize);
+		return complaintRepository.streamByFilters(productId, complainantId, fromDate, toDate, exportBatchSize);
 	}
 
-	private Mono<Complaint> enrichCountryIfUnknown(Complaint complaint, String ipAddress) {
-		if (!UNKNOWN_COUNTRY.equalsIgnoreCase(complaint.getCountry())) {
-			return Mono.just(complaint);
+	public Flux<ComplaintStats> getStatistics(String productId, String complainantId,
+											  LocalDateTime fromDate, LocalDateTime toDate,
+											  Collection<ComplaintStats.Dimension> groupBy, ComplaintStats.Bucket bucket) {
+		log.debug("Aggregating complaints by {} per {}", groupBy, bucket);
+		EnumSet<ComplaintStats.Dimension> dimensions = EnumSet.noneOf(ComplaintStats.Dimension.class);
+		dimensions.addAll(groupBy);
+		return complaintRepository.aggregateByFilters(productId, complainantId, fromDate, toDate, dimensions, bucket);
+	}
+
+	private Mono<Complaint> findIncludingArchived(String id) {
+		return complaintRepository.findById(id)
+				.switchIfEmpty(Mono.defer(() -> complaintRepository.findArchivedById(id)));
+	}
+
+	private Mono<Complaint> incrementComplaintCounter(ComplaintCreateRequest request) {
+		return Mono.defer(() -> {
+					CounterAggregator.PendingIncrements coalesced = workflow.coalesce(request);
+					return nonNull(coalesced)
+							? complaintCache.get(coalesced.complaintId(), this::findIncludingArchived).map(coalesced::applyTo)
+							: complaintRepository.incrementCounter(request.productId(), request.complainantId())
+									.doOnNext(workflow::onStoredIncrement)
+									.flatMap(updated -> complaintStatsService.recordIncremented(updated, 1).thenReturn(updated));
+				})
+				.doOnNext(workflow::onIncremented);
+	}
+
+	private Mono<Complaint> enrichAndApplyContentUpdate(Complaint complaint, String content, String ipAddress) {
+		if (!workflow.needsCountry(complaint)) {
+			return applyContentUpdate(complaint, content, null);
 		}
 		return geoLocationClient.getCountryFromIp(ipAddress)
-				.map(country -> {
-					if (!UNKNOWN_COUNTRY.equalsIgnoreCase(country)) {
-						log.debug("Enriching complaint {} with country: {}", complaint.getId(), country);
-						complaint.setCountry(country);
-					}
-					return complaint;
-				});
+				.flatMap(country -> applyContentUpdate(complaint, content, country));
+	}
+
+	private Mono<Complaint> applyContentUpdate(Complaint complaint, String content, String country) {
+		// only the updated fields are written, so increments since the complaint was read are kept
+		return complaintRepository.updateContent(complaint.getId(), content, workflow.enrichment(complaint, country), UNRESOLVED_COUNTRIES)
+				.doOnNext(workflow::onContentUpdated);
 	}
 
 	private Mono<Complaint> handleNewComplaint(ComplaintCreateRequest request, String ipAddress) {
+		if (workflow.defersCountry()) {
+			return saveNewComplaint(request, PENDING_COUNTRY, ipAddress)
+					.doOnNext(saved -> workflow.enrichLater(saved, ipAddress));
+		}
 		return geoLocationClient.getCountryFromIp(ipAddress)
-				.flatMap(country -> saveNewComplaint(request, country));
+				.flatMap(country -> saveNewComplaint(request, country, ipAddress));
 	}
 
-	private Mono<Complaint> saveNewComplaint(ComplaintCreateRequest request, String country) {
-		Complaint newComplaint = Complaint.builder()
-				.productId(request.productId())
-				.content(request.content())
-				.complainantId(request.complainantId())
-				.country(country)
-				.build();
-
-		return complaintRepository.save(newComplaint)
-				.doOnSuccess(saved -> log.info("New complaint saved with ID: {}", saved.getId()))
-				.onErrorResume(DuplicateKeyException.class, e -> {
-					log.debug("DuplicateKeyException caught, complaint already exists, incrementing counter");
-					return complaintRepository.findByProductIdAndComplainantId(request.productId(), request.complainantId())
-							.flatMap(this::incrementComplaintCounter);
-				});
+	private Mono<Complaint> saveNewComplaint(ComplaintCreateRequest request, String country, String ipAddress) {
+		return complaintRepository.upsertComplaint(workflow.newComplaint(request, country, ipAddress))
+				.doOnSuccess(workflow::onSaved)
+				.flatMap(saved -> complaintStatsService.recordSaved(saved).thenReturn(saved));
 	}
 
 	private Mono<Complaint> complaintNotFound(String id) {
-		return Mono.error(new ComplaintNotFoundException("Complaint not found with ID: " + id));
+		return Mono.error(() -> ComplaintWorkflow.complaintNotFound(id));
 	}
 }
@@ -0,0 +1,202 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.model.ProductStats;
+import com.empik.complaint.repository.ComplaintIndexInitializer;
+import com.empik.complaint.repository.ComplaintRepository;
+import com.empik.complaint.repository.ComplaintStatsDelta;
+import com.empik.complaint.repository.CounterIncrement;
+import com.empik.complaint.repository.ProductStatsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.util.Objects.isNull;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Keeps the per-product complaint statistics in step with complaint writes, when enabled.
+ * <p>
+ * Statistics are best effort: a failed update is logged and counted but does not fail the write it belongs to,
+ * and a complaint is filed under the country it had when it was written, which for asynchronously enriched
+ * complaints is the pending placeholder. A rebuild recomputes everything from the complaints collection; while it
+ * runs, updates of complaints its scan has already read are written into the rebuilt statistics too, so they are
+ * not lost when those replace the current ones. That covers updates made through this instance only; those other
+ * instances make while a rebuild runs are still replaced.
+ */
+@Service
+@Slf4j
+public class ComplaintStatsService {
+
+	// all a rebuild reads of each complaint; leaving out the content keeps the scan cheap
+	private static final String[] DELTA_FIELDS = {"productId", "country", "creationDate", "counter"};
+
+	private final ProductStatsRepository productStatsRepository;
+	private final ComplaintRepository complaintRepository;
+	private final ComplaintIndexInitializer complaintIndexInitializer;
+	private final Counter failedCounter;
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+	// last complaint read by a running rebuild, null when none runs
+	private volatile ScanPosition rebuildPosition;
+
+	@Value("${application.complaint-stats.enabled:false}")
+	private boolean enabled;
+
+	@Value("${application.complaint-stats.rebuild-batch-size:1000}")
+	private int rebuildBatchSize;
+
+	public ComplaintStatsService(ProductStatsRepository productStatsRepository,
+								 ComplaintRepository complaintRepository,
+								 ComplaintIndexInitializer complaintIndexInitializer,
+								 MeterRegistry meterRegistry) {
+		this.productStatsRepository = productStatsRepository;
+		this.complaintRepository = complaintRepository;
+		this.complaintIndexInitializer = complaintIndexInitializer;
+		this.failedCounter = Counter.builder("complaint.stats.failed")
+				.description("Statistics updates that could not be written")
+				.register(meterRegistry);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records a complaint returned by an upsert: a new complaint when its counter is 1, otherwise one increment.
+	 */
+	public Mono<Void> recordSaved(Complaint saved) {
+		return saved.getCounter() == 1 ? recordInserted(List.of(saved)) : recordIncremented(saved, 1);
+	}
+
+	public Mono<Void> recordInserted(Collection<Complaint> inserted) {
+		return record(inserted, complaint -> delta(complaint, 1, complaint.getCounter()));
+	}
+
+	public Mono<Void> recordIncremented(Complaint updated, int delta) {
+		return record(List.of(updated), complaint -> delta(complaint, 0, delta));
+	}
+
+	/**
+	 * Records increments of complaints that are not at hand; their country and creation date are looked up first.
+	 */
+	public Mono<Void> recordIncrements(List<CounterIncrement> increments) {
+		if (!enabled || increments.isEmpty()) {
+			return Mono.empty();
+		}
+		Map<String, Integer> deltas = increments.stream()
+				.collect(toMap(increment -> pairKey(increment.productId(), increment.complainantId()),
+						CounterIncrement::delta, Integer::sum));
+
+		return complaintRepository.findIncremented(increments)
+				.collectList()
+				.flatMap(complaints -> write(complaints,
+						complaint -> delta(complaint, 0, deltas.get(pairKey(complaint.getProductId(), complaint.getComplainantId())))))
+				.onErrorResume(this::recordFailure);
+	}
+
+	public Flux<ProductStats> getTopProducts(int limit) {
+		return productStatsRepository.findTopProducts(limit);
+	}
+
+	/**
+	 * Starts recomputing the statistics from all complaints in the background.
+	 * Returns {@code false} when a rebuild is already running.
+	 */
+	public boolean startRebuild() {
+		if (!rebuilding.compareAndSet(false, true)) {
+			return false;
+		}
+		rebuild()
+				.doFinally(signal -> rebuilding.set(false))
+				.subscribe(
+						null,
+						e -> log.error("Failed to rebuild complaint statistics: {}", e.getMessage()));
+		return true;
+	}
+
+	Mono<Void> rebuild() {
+		AtomicLong complaints = new AtomicLong();
+		log.info("Rebuilding complaint statistics in chunks of {}", rebuildBatchSize);
+
+		// the position moves as soon as a chunk is read, since later updates of its complaints are not in it
+		Flux<List<ComplaintStatsDelta>> chunks = complaintRepository
+				.streamByFilters(null, null, null, null, rebuildBatchSize, DELTA_FIELDS)
+				.buffer(rebuildBatchSize)
+				.doOnNext(chunk -> {
+					complaints.addAndGet(chunk.size());
+					rebuildPosition = ScanPosition.of(chunk.get(chunk.size() - 1));
+				})
+				.doOnComplete(() -> rebuildPosition = ScanPosition.END)
+				.map(chunk -> chunk.stream().map(complaint -> delta(complaint, 1, complaint.getCounter())).toList());
+
+		return productStatsRepository.rebuild(chunks)
+				.doFinally(signal -> rebuildPosition = null)
+				.then(complaintIndexInitializer.ensureIndexes())
+				.doOnSuccess(ignored -> log.info("Rebuilt complaint statistics from {} complaints", complaints.get()));
+	}
+
+	private Mono<Void> record(Collection<Complaint> complaints, Function<Complaint, ComplaintStatsDelta> delta) {
+		if (!enabled) {
+			return Mono.empty();
+		}
+		return Mono.defer(() -> write(complaints, delta))
+				.onErrorResume(this::recordFailure);
+	}
+
+	private Mono<Void> write(Collection<Complaint> complaints, Function<Complaint, ComplaintStatsDelta> delta) {
+		Mono<Void> written = productStatsRepository.increment(complaints.stream().map(delta).toList());
+		ScanPosition position = rebuildPosition;
+		if (isNull(position)) {
+			return written;
+		}
+		List<ComplaintStatsDelta> passed = complaints.stream()
+				.filter(position::hasPassed)
+				.map(delta)
+				.toList();
+		return passed.isEmpty() ? written : written.then(productStatsRepository.incrementRebuild(passed));
+	}
+
+	private Mono<Void> recordFailure(Throwable e) {
+		failedCounter.increment();
+		log.warn("Failed to update complaint statistics: {}", e.getMessage());
+		return Mono.empty();
+	}
+
+	private static ComplaintStatsDelta delta(Complaint complaint, long complaints, long counter) {
+		return new ComplaintStatsDelta(complaint.getProductId(), complaint.getCountry(),
+				complaint.getCreationDate().toLocalDate(), complaints, counter);
+	}
+
+	private static String pairKey(String productId, String complainantId) {
+		return productId + '\u0000' + complainantId;
+	}
+
+	/**
+	 * Position of a rebuild in the {@code (creationDate, id)} order it reads complaints in.
+	 */
+	private record ScanPosition(LocalDateTime creationDate, String id) {
+
+		static final ScanPosition END = new ScanPosition(LocalDateTime.MAX, "");
+
+		static ScanPosition of(Complaint complaint) {
+			return new ScanPosition(complaint.getCreationDate(), complaint.getId());
+		}
+
+		boolean hasPassed(Complaint complaint) {
+			int order = complaint.getCreationDate().compareTo(creationDate);
+			return order < 0 || order == 0 && complaint.getId().compareTo(id) <= 0;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.exception.ComplaintNotFoundException;
+import com.empik.complaint.model.Complaint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+import static com.empik.complaint.service.CountryEnrichmentPipeline.PENDING_COUNTRY;
+import static java.util.Objects.isNull;
+
+/**
+ * The decisions of complaint create, content update and get-by-ID, shared by {@link ComplaintService} and
+ * {@link VirtualThreadComplaintService}: which country a new complaint starts with, what a save or an increment
+ * updates (cache, counter aggregation, enrichment, metrics) and which country a content update sets. The
+ * services only do the I/O in between, reactively or blocking, so both execution modes behave the same.
+ */
+@Slf4j
+final class ComplaintWorkflow {
+
+	static final String UNKNOWN_COUNTRY = "Unknown";
+	static final List<String> UNRESOLVED_COUNTRIES = List.of(UNKNOWN_COUNTRY, PENDING_COUNTRY);
+	private static final String CREATES_METRIC = "complaint.creates";
+
+	private final CountryEnrichmentPipeline countryEnrichmentPipeline;
+	private final ComplaintCache complaintCache;
+	private final CounterAggregator counterAggregator;
+	private final Counter newComplaints;
+	private final Counter incrementedComplaints;
+
+	ComplaintWorkflow(CountryEnrichmentPipeline countryEnrichmentPipeline,
+					  ComplaintCache complaintCache,
+					  CounterAggregator counterAggregator,
+					  MeterRegistry meterRegistry) {
+		this.countryEnrichmentPipeline = countryEnrichmentPipeline;
+		this.complaintCache = complaintCache;
+		this.counterAggregator = counterAggregator;
+		this.newComplaints = createdCounter(meterRegistry, "new");
+		this.incrementedComplaints = createdCounter(meterRegistry, "incremented");
+	}
+
+	/**
+	 * Counts a duplicate in memory when counter aggregation holds its pair; {@code null} when it has to be stored.
+	 * The aggregator only holds counters, so the rest of the result comes from the current complaint and is not
+	 * cached, since its counter is ahead of the stored one.
+	 */
+	CounterAggregator.PendingIncrements coalesce(ComplaintCreateRequest request) {
+		return counterAggregator.increment(request.productId(), request.complainantId());
+	}
+
+	void onStoredIncrement(Complaint updated) {
+		counterAggregator.track(updated);
+		complaintCache.put(updated);
+	}
+
+	void onIncremented(Complaint updated) {
+		incrementedComplaints.increment();
+		log.debug("Complaint already exists, counter incremented to {}", updated.getCounter());
+	}
+
+	/**
+	 * Whether new complaints are saved with {@link CountryEnrichmentPipeline#PENDING_COUNTRY} and resolved later,
+	 * instead of resolving the country before the save.
+	 */
+	boolean defersCountry() {
+		return countryEnrichmentPipeline.isEnabled();
+	}
+
+	/**
+	 * A complaint saved with {@link CountryEnrichmentPipeline#PENDING_COUNTRY} keeps the client address, so the
+	 * pipeline can resolve its country again if the queued task is lost.
+	 */
+	Complaint newComplaint(ComplaintCreateRequest request, String country, String ipAddress) {
+		return Complaint.builder()
+				.productId(request.productId())
+				.content(request.content())
+				.complainantId(request.complainantId())
+				.country(country)
+				.pendingIpAddress(PENDING_COUNTRY.equals(country) ? ipAddress : null)
+				.build();
+	}
+
+	void onSaved(Complaint saved) {
+		complaintCache.put(saved);
+		counterAggregator.track(saved);
+		// a concurrent create of the same pair can win the race, then the upsert only increments its counter
+		if (saved.getCounter() > 1) {
+			onIncremented(saved);
+			return;
+		}
+		newComplaints.increment();
+		log.info("New complaint saved with ID: {}", saved.getId());
+	}
+
+	void enrichLater(Complaint saved, String ipAddress) {
+		if (PENDING_COUNTRY.equals(saved.getCountry())) {
+			countryEnrichmentPipeline.submit(saved.getId(), ipAddress);
+		}
+	}
+
+	boolean needsCountry(Complaint complaint) {
+		return isCountryUnresolved(complaint.getCountry());
+	}
+
+	/**
+	 * The country a content update sets along with the content, or {@code null} to leave it: the resolved country,
+	 * unless the lookup found none. The update only sets it while the stored one is still one of
+	 * {@link #UNRESOLVED_COUNTRIES}, so a country the enrichment pipeline resolved in the meantime is kept.
+	 */
+	String enrichment(Complaint complaint, String country) {
+		if (isNull(country) || UNKNOWN_COUNTRY.equalsIgnoreCase(country)) {
+			return null;
+		}
+		log.debug("Enriching complaint {} with country: {}", complaint.getId(), country);
+		return country;
+	}
+
+	void onContentUpdated(Complaint updated) {
+		complaintCache.put(updated);
+		log.debug("Updated complaint ID: {}", updated.getId());
+	}
+
+	static boolean isCountryUnresolved(String country) {
+		return UNKNOWN_COUNTRY.equalsIgnoreCase(country) || PENDING_COUNTRY.equals(country);
+	}
+
+	static ComplaintNotFoundException complaintNotFound(String id) {
+		return new ComplaintNotFoundException("Complaint not found with ID: " + id);
+	}
+
+	private static Counter createdCounter(MeterRegistry meterRegistry, String result) {
+		return Counter.builder(CREATES_METRIC)
+				.description("Complaint create requests by whether they inserted a new complaint or incremented an existing one")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+}
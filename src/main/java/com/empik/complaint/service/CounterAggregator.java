@@ -0,0 +1,359 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.repository.ComplaintRepository;
+import com.empik.complaint.repository.CounterIncrement;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Coalesces duplicate creates of hot {@code (productId, complainantId)} pairs into periodic counter writes.
+ * <p>
+ * Once a pair has been written through the repository it is tracked here: further duplicates only bump an
+ * in-memory pending count. Only counters are held, never complaints: the caller answers a coalesced duplicate with
+ * the current complaint, cached or read, with the increments not yet written on top. Pending counts are flushed as one unordered bulk {@code $inc} per pair every flush interval,
+ * early when a pair reaches the pending threshold, and on shutdown. Pairs without new duplicates in an
+ * interval stop being tracked, so the next duplicate reads the stored counter again.
+ * <p>
+ * Increments not yet flushed are lost if the process dies; the flush interval bounds that window. Statistics of
+ * flushed increments are recorded off the flush thread, one flush at a time from a bounded queue, so slow
+ * statistics writes do not hold up counter flushes; flushes that do not fit into the queue get no statistics.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class CounterAggregator {
+
+	private final ComplaintRepository complaintRepository;
+	private final ComplaintStatsService complaintStatsService;
+	private final MeterRegistry meterRegistry;
+
+	private final Map<ComplaintKey, PendingIncrements> pending = new ConcurrentHashMap<>();
+
+	@Value("${application.counter-aggregation.enabled:false}")
+	private boolean enabled;
+
+	@Value("${application.counter-aggregation.flush-interval-ms:100}")
+	private long flushIntervalMs;
+
+	@Value("${application.counter-aggregation.max-pending-per-key:1000}")
+	private long maxPendingPerKey;
+
+	@Value("${application.counter-aggregation.max-keys:100000}")
+	private int maxKeys;
+
+	@Value("${application.counter-aggregation.flush-timeout-ms:5000}")
+	private long flushTimeoutMs;
+
+	@Value("${application.counter-aggregation.retry-failed-flush:true}")
+	private boolean retryFailedFlush;
+
+	@Value("${application.counter-aggregation.stats-queue-capacity:64}")
+	private int statsQueueCapacity;
+
+	private ScheduledExecutorService flushExecutor;
+	private Counter coalescedCounter;
+	private Counter flushedCounter;
+	private Counter failedCounter;
+	private Counter statsDroppedCounter;
+	private Timer flushTimer;
+	private Sinks.Many<List<CounterIncrement>> statsUpdates;
+	private Mono<Void> statsRecorded;
+
+	@PostConstruct
+	void start() {
+		if (!enabled) {
+			return;
+		}
+		coalescedCounter = Counter.builder("complaint.aggregation.coalesced")
+				.description("Duplicate creates absorbed in memory instead of written individually")
+				.register(meterRegistry);
+		flushedCounter = Counter.builder("complaint.aggregation.flushed")
+				.description("Pair increments written by flushes")
+				.register(meterRegistry);
+		failedCounter = Counter.builder("complaint.aggregation.failed")
+				.description("Pair increments whose flush failed")
+				.register(meterRegistry);
+		statsDroppedCounter = Counter.builder("complaint.aggregation.stats.dropped")
+				.description("Flushes whose statistics were not recorded because the statistics queue was full")
+				.register(meterRegistry);
+		flushTimer = Timer.builder("complaint.aggregation.flush")
+				.description("Duration of one bulk counter flush")
+				.register(meterRegistry);
+		meterRegistry.gaugeMapSize("complaint.aggregation.keys", List.of(), pending);
+
+		statsUpdates = Sinks.many().unicast().onBackpressureBuffer(Queues.<List<CounterIncrement>>get(statsQueueCapacity).get());
+		statsRecorded = statsUpdates.asFlux()
+				.concatMap(complaintStatsService::recordIncrements)
+				.then()
+				.cache();
+		statsRecorded.subscribe();
+
+		flushExecutor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+				.name("counter-flush")
+				.daemon(true)
+				.factory());
+		flushExecutor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+
+		log.info("Counter aggregation enabled (flush interval: {} ms, max pending per key: {}, max keys: {})",
+				flushIntervalMs, maxPendingPerKey, maxKeys);
+	}
+
+	@PreDestroy
+	void stop() throws InterruptedException {
+		if (isNull(flushExecutor)) {
+			return;
+		}
+		flushExecutor.shutdown();
+		if (!flushExecutor.awaitTermination(flushTimeoutMs, TimeUnit.MILLISECONDS)) {
+			// a flush is still writing; draining again next to it could write the same increments twice
+			log.warn("Counter flush did not finish within {} ms, {} pairs are not flushed", flushTimeoutMs, pending.size());
+		} else {
+			flush();
+		}
+		statsUpdates.tryEmitComplete();
+		try {
+			statsRecorded.block(Duration.ofMillis(flushTimeoutMs));
+		} catch (IllegalStateException e) {
+			log.warn("Statistics of flushed counters were not recorded within {} ms", flushTimeoutMs);
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records one more duplicate of a tracked pair and returns its pending increments, to be applied to the current
+	 * complaint, or returns {@code null} when the pair is not tracked and the increment has to be written directly.
+	 */
+	public PendingIncrements increment(String productId, String complainantId) {
+		if (!enabled) {
+			return null;
+		}
+		ComplaintKey key = new ComplaintKey(productId, complainantId);
+		PendingIncrements increments = pending.get(key);
+		while (!isNull(increments)) {
+			if (increments.add()) {
+				coalescedCounter.increment();
+				if (increments.pendingCount() >= maxPendingPerKey) {
+					requestFlush();
+				}
+				return increments;
+			}
+			// sealed by a concurrent flush as idle. Only the flush removes the pair, since the seal can be taken back
+			// when another add raced it; look again in case it was, or the pair was tracked again since
+			PendingIncrements current = pending.get(key);
+			if (current == increments && increments.isSealed()) {
+				return null;
+			}
+			increments = current;
+		}
+		return null;
+	}
+
+	/**
+	 * Starts coalescing duplicates of the pair of a complaint just written through the repository.
+	 */
+	public void track(Complaint complaint) {
+		if (!enabled || isNull(complaint.getId()) || pending.size() >= maxKeys) {
+			return;
+		}
+		pending.putIfAbsent(new ComplaintKey(complaint.getProductId(), complaint.getComplainantId()),
+				new PendingIncrements(complaint));
+	}
+
+	private void requestFlush() {
+		try {
+			flushExecutor.execute(this::flushSafely);
+		} catch (RejectedExecutionException e) {
+			log.debug("Counter flush not scheduled, aggregator is shutting down");
+		}
+	}
+
+	private void flushSafely() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("Counter flush failed: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes all pending increments. Runs on the flush thread only, or once after it has terminated.
+	 */
+	void flush() {
+		List<CounterIncrement> increments = new ArrayList<>();
+		List<PendingIncrements> flushed = new ArrayList<>();
+		pending.forEach((key, entry) -> {
+			long delta = entry.drain();
+			if (delta != 0) {
+				increments.add(new CounterIncrement(key.productId(), key.complainantId(), Math.toIntExact(delta)));
+				flushed.add(entry);
+			} else if (entry.sealIfIdle()) {
+				pending.remove(key, entry);
+			}
+		});
+		if (increments.isEmpty()) {
+			return;
+		}
+
+		Map<Integer, String> errors;
+		Timer.Sample sample = Timer.start();
+		try {
+			errors = complaintRepository.incrementCounters(increments).block(Duration.ofMillis(flushTimeoutMs));
+		} catch (RuntimeException e) {
+			log.error("Failed to flush {} counter increments: {}", increments.size(), e.getMessage());
+			errors = failAll(increments.size(), e);
+		} finally {
+			sample.stop(flushTimer);
+		}
+
+		flushedCounter.increment(increments.size() - errors.size());
+		recordStats(increments, errors);
+		errors.forEach((position, error) -> {
+			failedCounter.increment();
+			CounterIncrement increment = increments.get(position);
+			log.warn("Failed to flush counter of product {} / complainant {} (+{}): {}",
+					increment.productId(), increment.complainantId(), increment.delta(), error);
+			if (retryFailedFlush) {
+				flushed.get(position).restore(increment.delta());
+			} else {
+				flushed.get(position).discard(increment.delta());
+			}
+		});
+	}
+
+	private void recordStats(List<CounterIncrement> increments, Map<Integer, String> errors) {
+		if (!complaintStatsService.isEnabled()) {
+			return;
+		}
+		List<CounterIncrement> written = new ArrayList<>();
+		for (int i = 0; i < increments.size(); i++) {
+			if (!errors.containsKey(i)) {
+				written.add(increments.get(i));
+			}
+		}
+		// only the flush thread emits, so emissions are never concurrent
+		if (!written.isEmpty() && statsUpdates.tryEmitNext(written).isFailure()) {
+			statsDroppedCounter.increment();
+			log.warn("Statistics queue full, statistics of {} flushed counters are not recorded", written.size());
+		}
+	}
+
+	private static Map<Integer, String> failAll(int size, RuntimeException e) {
+		Map<Integer, String> errors = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			errors.put(i, String.valueOf(e.getMessage()));
+		}
+		return errors;
+	}
+
+	private record ComplaintKey(String productId, String complainantId) {
+	}
+
+	/**
+	 * Pending count of one pair, striped so that duplicates of a hot pair do not contend on one word. A pair is
+	 * removed only after it is sealed with a zero count: an increment adds first and then checks the seal, and takes
+	 * its add back when it sees one, so it either lands in a live count or is written directly.
+	 */
+	public static final class PendingIncrements {
+
+		private final String complaintId;
+		private final LongAdder pendingCount = new LongAdder();
+		// stored counter as far as this node knows: the tracked one plus what its flushes have written since
+		private volatile long written;
+		private volatile boolean sealed;
+
+		PendingIncrements(Complaint complaint) {
+			this.complaintId = complaint.getId();
+			this.written = complaint.getCounter();
+		}
+
+		public String complaintId() {
+			return complaintId;
+		}
+
+		/**
+		 * The given complaint with the increments seen by this node on top. The complaint may have been read before
+		 * the last flush of this node was written, so the counter is never lower than what this node has written.
+		 */
+		public Complaint applyTo(Complaint current) {
+			long counter = Math.max(current.getCounter(), written) + pendingCount.sum();
+			return current.toBuilder()
+					.counter(Math.toIntExact(counter))
+					.build();
+		}
+
+		boolean add() {
+			pendingCount.increment();
+			if (sealed) {
+				pendingCount.decrement();
+				return false;
+			}
+			return true;
+		}
+
+		long pendingCount() {
+			return pendingCount.sum();
+		}
+
+		boolean isSealed() {
+			return sealed;
+		}
+
+		long drain() {
+			if (sealed) {
+				return 0;
+			}
+			// an add taken back right after this drain leaves a negative count, which the next flush writes back
+			long delta = pendingCount.sumThenReset();
+			written += delta;
+			return delta;
+		}
+
+		void restore(long delta) {
+			// only the flush thread seals, and it restores before sealing again, so the count is live here
+			written -= delta;
+			pendingCount.add(delta);
+		}
+
+		void discard(long delta) {
+			written -= delta;
+		}
+
+		boolean sealIfIdle() {
+			sealed = true;
+			if (pendingCount.sum() == 0) {
+				return true;
+			}
+			// an add raced the seal and did not see it, so the pair stays live
+			sealed = false;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.client.GeoLocationClient;
+import com.empik.complaint.repository.ComplaintRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Resolves countries of freshly saved complaints in the background, so that the create path
+ * does not wait for the geolocation provider.
+ * <p>
+ * Tasks are held in a bounded queue; when it is full new tasks are dropped. Pending complaints keep the client
+ * address, so every {@code requeue-interval-ms} the ones still pending {@code requeue-after-ms} after their creation
+ * are queued again, as far as the queue has room: tasks dropped here or lost on another instance are retried, and
+ * resolving a country twice is harmless since only a pending one is overwritten. On shutdown the queue is closed and
+ * the tasks already in it are finished, for up to {@code shutdown-timeout-ms}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class CountryEnrichmentPipeline {
+
+	public static final String PENDING_COUNTRY = "Pending";
+
+	private final ComplaintRepository complaintRepository;
+	private final GeoLocationClient geoLocationClient;
+	private final ComplaintCache complaintCache;
+	private final MeterRegistry meterRegistry;
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final CountDownLatch drained = new CountDownLatch(1);
+
+	@Value("${application.geolocation.enrichment.async:false}")
+	private boolean enabled;
+
+	@Value("${application.geolocation.enrichment.queue-capacity:10000}")
+	private int queueCapacity;
+
+	@Value("${application.geolocation.enrichment.batch-size:100}")
+	private int batchSize;
+
+	@Value("${application.geolocation.enrichment.batch-max-wait-ms:200}")
+	private long batchMaxWaitMs;
+
+	@Value("${application.geolocation.enrichment.concurrency:4}")
+	private int concurrency;
+
+	@Value("${application.geolocation.enrichment.requeue-interval-ms:60000}")
+	private long requeueIntervalMs;
+
+	@Value("${application.geolocation.enrichment.requeue-after-ms:60000}")
+	private long requeueAfterMs;
+
+	@Value("${application.geolocation.enrichment.shutdown-timeout-ms:10000}")
+	private long shutdownTimeoutMs;
+
+	private Sinks.Many<EnrichmentTask> tasks;
+	private Disposable subscription;
+	private Disposable requeue;
+	private Counter droppedCounter;
+	private Counter requeuedCounter;
+	private Counter enrichedCounter;
+	private Counter failedCounter;
+	private Timer lagTimer;
+
+	@PostConstruct
+	void start() {
+		if (!enabled) {
+			return;
+		}
+		droppedCounter = meterRegistry.counter("complaint.enrichment.dropped");
+		requeuedCounter = Counter.builder("complaint.enrichment.requeued")
+				.description("Complaints still pending a country that were queued for enrichment again")
+				.register(meterRegistry);
+		enrichedCounter = meterRegistry.counter("complaint.enrichment.enriched");
+		failedCounter = meterRegistry.counter("complaint.enrichment.failed");
+		lagTimer = Timer.builder("complaint.enrichment.lag")
+				.description("Time from saving a complaint to patching in its country")
+				.publishPercentiles(0.5, 0.99)
+				.register(meterRegistry);
+		meterRegistry.gauge("complaint.enrichment.queue.depth", queueDepth);
+
+		tasks = Sinks.many().unicast().onBackpressureBuffer(Queues.<EnrichmentTask>get(queueCapacity).get());
+		subscription = tasks.asFlux()
+				.bufferTimeout(batchSize, Duration.ofMillis(batchMaxWaitMs), true)
+				.flatMap(this::processBatch, concurrency)
+				.doFinally(signal -> drained.countDown())
+				.subscribe();
+
+		log.info("Asynchronous country enrichment enabled (queue capacity: {}, batch size: {})", queueCapacity, batchSize);
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	void onApplicationReady() {
+		if (!enabled) {
+			return;
+		}
+		requeue = Flux.interval(Duration.ZERO, Duration.ofMillis(requeueIntervalMs))
+				.onBackpressureDrop()
+				.concatMap(tick -> requeuePending()
+						.onErrorResume(e -> {
+							log.warn("Failed to requeue complaints pending a country: {}", e.getMessage());
+							return Mono.empty();
+						}))
+				.subscribe();
+	}
+
+	@PreDestroy
+	void stop() throws InterruptedException {
+		if (nonNull(requeue)) {
+			requeue.dispose();
+		}
+		if (subscription == null) {
+			return;
+		}
+		tasks.tryEmitComplete();
+		if (!drained.await(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+			log.warn("Enrichment queue not drained within {} ms, {} complaints stay '{}' until requeued",
+					shutdownTimeoutMs, queueDepth.get(), PENDING_COUNTRY);
+			subscription.dispose();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void submit(String complaintId, String ipAddress) {
+		if (!tryQueue(complaintId, ipAddress)) {
+			droppedCounter.increment();
+			log.warn("Enrichment queue full, complaint {} keeps country '{}' until requeued", complaintId, PENDING_COUNTRY);
+		}
+	}
+
+	/**
+	 * Queues the complaints created at least {@code requeue-after-ms} ago that are still pending, up to the room
+	 * left in the queue. Emits how many were queued.
+	 */
+	Mono<Long> requeuePending() {
+		int room = queueCapacity - queueDepth.get();
+		if (room <= 0) {
+			return Mono.just(0L);
+		}
+		LocalDateTime createdBefore = LocalDateTime.now().minus(Duration.ofMillis(requeueAfterMs));
+
+		return complaintRepository.findPendingCountry(PENDING_COUNTRY, createdBefore, room)
+				.filter(complaint -> tryQueue(complaint.getId(), complaint.getPendingIpAddress()))
+				.count()
+				.doOnNext(requeued -> {
+					if (requeued > 0) {
+						requeuedCounter.increment(requeued);
+						log.info("Requeued {} complaints still pending a country", requeued);
+					}
+				});
+	}
+
+	private boolean tryQueue(String complaintId, String ipAddress) {
+		EnrichmentTask task = new EnrichmentTask(complaintId, ipAddress, System.nanoTime());
+		queueDepth.incrementAndGet();
+
+		Sinks.EmitResult result;
+		do {
+			result = tasks.tryEmitNext(task);
+		} while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+
+		if (result.isFailure()) {
+			queueDepth.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private Mono<Void> processBatch(List<EnrichmentTask> batch) {
+		queueDepth.addAndGet(-batch.size());
+
+		Map<String, List<EnrichmentTask>> tasksByIp = batch.stream()
+				.collect(groupingBy(EnrichmentTask::ipAddress));
+
+		return Flux.fromIterable(tasksByIp.entrySet())
+				.flatMap(entry -> geoLocationClient.getCountryFromIp(entry.getKey())
+						.map(country -> Map.entry(country, entry.getValue())), concurrency)
+				.collect(groupingBy(Map.Entry::getKey, mapping(Map.Entry::getValue, toList())))
+				.flatMapMany(tasksByCountry -> Flux.fromIterable(tasksByCountry.entrySet()))
+				.flatMap(entry -> applyCountry(entry.getKey(), entry.getValue().stream().flatMap(List::stream).toList()))
+				.then()
+				.onErrorResume(e -> {
+					failedCounter.increment(batch.size());
+					log.error("Failed to enrich batch of {} complaints: {}", batch.size(), e.getMessage());
+					return Mono.empty();
+				});
+	}
+
+	private Mono<Long> applyCountry(String country, List<EnrichmentTask> tasks) {
+		List<String> ids = tasks.stream().map(EnrichmentTask::complaintId).toList();
+
+		return complaintRepository.updateCountry(ids, PENDING_COUNTRY, country)
+				.doOnNext(updated -> {
+					ids.forEach(complaintCache::invalidate);
+					long now = System.nanoTime();
+					tasks.forEach(task -> lagTimer.record(now - task.enqueuedAtNanos(), TimeUnit.NANOSECONDS));
+					enrichedCounter.increment(tasks.size());
+					log.debug("Enriched {} complaints with country: {}", updated, country);
+				});
+	}
+
+	private record EnrichmentTask(String complaintId, String ipAddress, long enqueuedAtNanos) {
+	}
+}
@@ -0,0 +1,239 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.exception.IdempotencyKeyConflictException;
+import com.empik.complaint.exception.IdempotencyKeyMismatchException;
+import com.empik.complaint.repository.IdempotencyRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Runs writes sent with an {@code Idempotency-Key} at most once per key and answers repeats with the first response.
+ * <p>
+ * Keys live for {@code ttl-ms}. On this node, a bounded map of at most {@code max-keys} keys holds each write while
+ * it runs and its response afterwards: a repeat, including one arriving while the write still runs, waits for that
+ * write instead of running its own. With the {@code mongo} store the key is also claimed in a shared collection
+ * before the write runs, so other nodes replay the stored response or, while the write still runs elsewhere, poll
+ * for it up to {@code wait-ms} and then answer 409. A claim whose node stopped before responding can be taken over
+ * once {@code lock-ms} has passed. Failed writes are not remembered, so they can be retried with the same key.
+ * A key sent again with a different request is rejected with 422.
+ */
+@Component
+@Slf4j
+public class IdempotentRequests {
+
+	public enum Store {
+		MEMORY, MONGO
+	}
+
+	/**
+	 * The response of a write, and whether it was replayed instead of written by this request.
+	 */
+	public record Result<T>(T response, boolean replayed) {
+	}
+
+	private record Execution(String fingerprint, CompletableFuture<Outcome> outcome) {
+	}
+
+	private record Outcome(Object response, boolean replayed) {
+	}
+
+	private final IdempotencyRecordRepository recordRepository;
+	private final MongoConverter mongoConverter;
+	private final boolean enabled;
+	private final Store store;
+	private final Duration ttl;
+	private final Duration lock;
+	private final long waitNanos;
+	private final Duration pollInterval;
+	private final Cache<String, Execution> executions;
+	private final Counter replayedCounter;
+	private final Counter mismatchedCounter;
+	private final Counter inProgressCounter;
+
+	public IdempotentRequests(IdempotencyRecordRepository recordRepository,
+							  MongoConverter mongoConverter,
+							  MeterRegistry meterRegistry,
+							  @Value("${application.idempotency.enabled:false}") boolean enabled,
+							  @Value("${application.idempotency.store:MEMORY}") Store store,
+							  @Value("${application.idempotency.ttl-ms:86400000}") long ttlMs,
+							  @Value("${application.idempotency.max-keys:100000}") long maxKeys,
+							  @Value("${application.idempotency.lock-ms:30000}") long lockMs,
+							  @Value("${application.idempotency.wait-ms:5000}") long waitMs,
+							  @Value("${application.idempotency.poll-interval-ms:100}") long pollIntervalMs) {
+		this.recordRepository = recordRepository;
+		this.mongoConverter = mongoConverter;
+		this.enabled = enabled;
+		this.store = store;
+		this.ttl = Duration.ofMillis(ttlMs);
+		this.lock = Duration.ofMillis(lockMs);
+		this.waitNanos = Duration.ofMillis(waitMs).toNanos();
+		this.pollInterval = Duration.ofMillis(pollIntervalMs);
+		this.executions = Caffeine.newBuilder()
+				.maximumSize(maxKeys)
+				.expireAfterWrite(ttl)
+				.build();
+		this.replayedCounter = Counter.builder("complaint.idempotency.replayed")
+				.description("Writes answered with the response of an earlier request with the same idempotency key")
+				.register(meterRegistry);
+		this.mismatchedCounter = rejectedCounter(meterRegistry, "mismatch");
+		this.inProgressCounter = rejectedCounter(meterRegistry, "in_progress");
+		if (!enabled) {
+			return;
+		}
+		Gauge.builder("complaint.idempotency.keys", executions, Cache::estimatedSize)
+				.description("Idempotency keys remembered on this node")
+				.register(meterRegistry);
+
+		log.info("Idempotency keys enabled (store: {}, ttl: {} ms, max keys: {})", store, ttlMs, maxKeys);
+	}
+
+	/**
+	 * Runs {@code write} unless a request with the same key ran it already, in which case its response is emitted.
+	 * {@code fingerprint} identifies the request, so a key cannot be reused for a different one. Without a key
+	 * or when disabled, the write just runs.
+	 */
+	public <T> Mono<Result<T>> execute(String key, String fingerprint, Class<T> type, Supplier<Mono<T>> write) {
+		if (!enabled || isNull(key)) {
+			return write.get().map(response -> new Result<>(response, false));
+		}
+		return Mono.deferContextual(context -> {
+			String id = hash(key);
+			String requestHash = hash(fingerprint);
+			Execution execution = new Execution(requestHash, new CompletableFuture<>());
+			Execution running = executions.asMap().putIfAbsent(id, execution);
+			if (nonNull(running)) {
+				if (!running.fingerprint().equals(requestHash)) {
+					return Mono.error(mismatch());
+				}
+				replayedCounter.increment();
+				return Mono.fromFuture(running.outcome(), true)
+						.map(outcome -> new Result<>(type.cast(outcome.response()), true));
+			}
+
+			// the write runs detached from this request, so a client giving up does not fail the repeats waiting for it;
+			// it keeps the request's context, trace included
+			run(id, requestHash, type, write).contextWrite(context).subscribe(
+					execution.outcome()::complete,
+					error -> {
+						executions.asMap().remove(id, execution);
+						execution.outcome().completeExceptionally(error);
+					},
+					() -> {
+						if (!execution.outcome().isDone()) {
+							executions.asMap().remove(id, execution);
+							execution.outcome().complete(null);
+						}
+					});
+			return Mono.fromFuture(execution.outcome(), true)
+					.doOnNext(outcome -> {
+						if (outcome.replayed()) {
+							replayedCounter.increment();
+						}
+					})
+					.map(outcome -> new Result<>(type.cast(outcome.response()), outcome.replayed()));
+		});
+	}
+
+	private <T> Mono<Outcome> run(String id, String fingerprint, Class<T> type, Supplier<Mono<T>> write) {
+		if (store == Store.MEMORY) {
+			return write.get().map(response -> new Outcome(response, false));
+		}
+		return claimOrAwait(id, fingerprint, type, write, System.nanoTime() + waitNanos);
+	}
+
+	private <T> Mono<Outcome> claimOrAwait(String id, String fingerprint, Class<T> type, Supplier<Mono<T>> write,
+										   long deadlineNanos) {
+		Instant now = Instant.now();
+		return recordRepository.claim(id, fingerprint, now.plus(lock), now.plus(ttl))
+				.flatMap(claimed -> claimed
+						? runClaimed(id, write)
+						: awaitStored(id, fingerprint, type, write, deadlineNanos));
+	}
+
+	private <T> Mono<Outcome> runClaimed(String id, Supplier<Mono<T>> write) {
+		return write.get()
+				.onErrorResume(e -> recordRepository.release(id).then(Mono.error(e)))
+				.flatMap(response -> recordRepository.complete(id, toDocument(response))
+						// the write is done either way; without the record other nodes may run it again
+						.onErrorResume(e -> {
+							log.warn("Failed to store the response of idempotent write {}: {}", id, e.getMessage());
+							return Mono.empty();
+						})
+						.thenReturn(new Outcome(response, false)));
+	}
+
+	private <T> Mono<Outcome> awaitStored(String id, String fingerprint, Class<T> type, Supplier<Mono<T>> write,
+										  long deadlineNanos) {
+		return recordRepository.find(id)
+				.map(Optional::of)
+				.defaultIfEmpty(Optional.empty())
+				.flatMap(found -> {
+					if (found.isEmpty()) {
+						// released after a failure or expired in the meantime
+						return claimOrAwait(id, fingerprint, type, write, deadlineNanos);
+					}
+					if (!fingerprint.equals(found.get().getFingerprint())) {
+						return Mono.error(mismatch());
+					}
+					if (nonNull(found.get().getResponse())) {
+						return Mono.just(new Outcome(mongoConverter.read(type, found.get().getResponse()), true));
+					}
+					if (System.nanoTime() - deadlineNanos > 0) {
+						inProgressCounter.increment();
+						return Mono.error(new IdempotencyKeyConflictException(
+								"A request with this idempotency key is still in progress"));
+					}
+					return Mono.delay(pollInterval)
+							.then(Mono.defer(() -> claimOrAwait(id, fingerprint, type, write, deadlineNanos)));
+				});
+	}
+
+	private Document toDocument(Object response) {
+		Document document = new Document();
+		mongoConverter.write(response, document);
+		return document;
+	}
+
+	private IdempotencyKeyMismatchException mismatch() {
+		mismatchedCounter.increment();
+		return new IdempotencyKeyMismatchException("The idempotency key was already used for a different request");
+	}
+
+	private static String hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+		return Counter.builder("complaint.idempotency.rejected")
+				.description("Writes rejected by reason: key reused for a different request (422) or still in progress (409)")
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+}
@@ -0,0 +1,163 @@
+package com.empik.complaint.service;
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest;
+import com.empik.complaint.client.BlockingGeoLocationClient;
+import com.empik.complaint.model.Complaint;
+import com.empik.complaint.repository.BlockingComplaintRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Callable;
+
+import static com.empik.complaint.service.ComplaintWorkflow.UNRESOLVED_COUNTRIES;
+import static com.empik.complaint.service.ComplaintWorkflow.complaintNotFound;
+import static com.empik.complaint.service.CountryEnrichmentPipeline.PENDING_COUNTRY;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * {@link ComplaintService}'s create, content update and get-by-ID as plain blocking code, each request on its own
+ * virtual thread, when {@code application.execution.mode} is {@code virtual-threads}.
+ * <p>
+ * Complaints go through the synchronous driver ({@link BlockingComplaintRepository}) and countries through a
+ * {@link BlockingGeoLocationClient}, so a request is an ordinary call chain with an ordinary stack trace, and no
+ * operators are assembled for it. The decisions in between are {@link ComplaintWorkflow}'s, as in the reactive
+ * mode, so behaviour, caches and metrics match it. Opt-in features that only exist reactively (statistics, archive
+ * restores, the enrichment pipeline) are shared with it and awaited on the virtual thread. All other endpoints run
+ * reactively in either mode.
+ */
+@Service
+@Primary
+@Slf4j
+@ConditionalOnProperty(name = "application.execution.mode", havingValue = "virtual-threads")
+public class VirtualThreadComplaintService implements ComplaintOperations {
+
+	private final BlockingComplaintRepository complaintRepository;
+	private final BlockingGeoLocationClient geoLocationClient;
+	private final ComplaintCache complaintCache;
+	private final ComplaintStatsService complaintStatsService;
+	private final Scheduler virtualThreadScheduler;
+	private final ComplaintWorkflow workflow;
+
+	public VirtualThreadComplaintService(BlockingComplaintRepository complaintRepository,
+										 BlockingGeoLocationClient geoLocationClient,
+										 CountryEnrichmentPipeline countryEnrichmentPipeline,
+										 ComplaintCache complaintCache,
+										 CounterAggregator counterAggregator,
+										 ComplaintStatsService complaintStatsService,
+										 Scheduler virtualThreadScheduler,
+										 MeterRegistry meterRegistry) {
+		this.complaintRepository = complaintRepository;
+		this.geoLocationClient = geoLocationClient;
+		this.complaintCache = complaintCache;
+		this.complaintStatsService = complaintStatsService;
+		this.virtualThreadScheduler = virtualThreadScheduler;
+		this.workflow = new ComplaintWorkflow(countryEnrichmentPipeline, complaintCache, counterAggregator, meterRegistry);
+	}
+
+	@Override
+	public Mono<Complaint> createComplaint(ComplaintCreateRequest request, String ipAddress) {
+		return onVirtualThread(() -> create(request, ipAddress));
+	}
+
+	@Override
+	public Mono<Complaint> updateComplaintContent(String id, String content, String ipAddress) {
+		return onVirtualThread(() -> updateContent(id, content, ipAddress));
+	}
+
+	@Override
+	public Mono<Complaint> getComplaintById(String id) {
+		return onVirtualThread(() -> getById(id));
+	}
+
+	public Complaint create(ComplaintCreateRequest request, String ipAddress) {
+		log.debug("Creating complaint for product ID: {} from complainant ID: {}",
+				request.productId(), request.complainantId());
+
+		Complaint incremented = incrementComplaintCounter(request);
+		return nonNull(incremented) ? incremented : handleNewComplaint(request, ipAddress);
+	}
+
+	public Complaint updateContent(String id, String content, String ipAddress) {
+		log.debug("Updating content for complaint ID: {}", id);
+
+		Complaint complaint = complaintRepository.findById(id);
+		if (isNull(complaint)) {
+			complaint = complaintRepository.restoreArchivedById(id);
+		}
+		if (isNull(complaint)) {
+			throw complaintNotFound(id);
+		}
+		String country = workflow.needsCountry(complaint)
+				? workflow.enrichment(complaint, geoLocationClient.resolveCountry(ipAddress))
+				: null;
+		Complaint updated = complaintRepository.updateContent(id, content, country, UNRESOLVED_COUNTRIES);
+		if (isNull(updated)) {
+			throw complaintNotFound(id);
+		}
+		workflow.onContentUpdated(updated);
+		return updated;
+	}
+
+	public Complaint getById(String id) {
+		log.debug("Getting complaint by ID: {}", id);
+		// cached complaints are shared with every reader, so only uncached reads leave out what the response does not show
+		Complaint complaint = complaintCache.isEnabled()
+				? complaintCache.get(id, this::findIncludingArchived).block()
+				: complaintRepository.findSummaryById(id);
+		if (isNull(complaint)) {
+			throw complaintNotFound(id);
+		}
+		return complaint;
+	}
+
+	private Mono<Complaint> findIncludingArchived(String id) {
+		return Mono.fromCallable(() -> complaintRepository.findIncludingArchived(id));
+	}
+
+	private Complaint incrementComplaintCounter(ComplaintCreateRequest request) {
+		Complaint updated;
+		CounterAggregator.PendingIncrements coalesced = workflow.coalesce(request);
+		if (nonNull(coalesced)) {
+			Complaint current = complaintCache.get(coalesced.complaintId(), this::findIncludingArchived).block();
+			if (isNull(current)) {
+				return null;
+			}
+			updated = coalesced.applyTo(current);
+		} else {
+			updated = complaintRepository.incrementCounter(request.productId(), request.complainantId());
+			if (isNull(updated)) {
+				return null;
+			}
+			workflow.onStoredIncrement(updated);
+			complaintStatsService.recordIncremented(updated, 1).block();
+		}
+		workflow.onIncremented(updated);
+		return updated;
+	}
+
+	private Complaint handleNewComplaint(ComplaintCreateRequest request, String ipAddress) {
+		if (workflow.defersCountry()) {
+			Complaint saved = saveNewComplaint(request, PENDING_COUNTRY, ipAddress);
+			workflow.enrichLater(saved, ipAddress);
+			return saved;
+		}
+		return saveNewComplaint(request, geoLocationClient.resolveCountry(ipAddress), ipAddress);
+	}
+
+	private Complaint saveNewComplaint(ComplaintCreateRequest request, String country, String ipAddress) {
+		Complaint saved = complaintRepository.upsertComplaint(workflow.newComplaint(request, country, ipAddress));
+		workflow.onSaved(saved);
+		complaintStatsService.recordSaved(saved).block();
+		return saved;
+	}
+
+	private <T> Mono<T> onVirtualThread(Callable<T> work) {
+		return Mono.fromCallable(work).subscribeOn(virtualThreadScheduler);
+	}
+}
@@ -0,0 +1,74 @@
+package com.empik.complaint.api
+
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest
+import org.springframework.mock.web.server.MockServerWebExchange
+import spock.lang.Specification
+
+import java.net.InetSocketAddress
+
+class ClientIpResolverTest extends Specification {
+
+    ClientIpResolver resolver = new ClientIpResolver(["10.0.0.0/8", "192.168.1.7", "fd00::/8"])
+
+    def "should resolve #expected from remote address #remote and X-Forwarded-For #forwardedFor"() {
+        given:
+        def request = MockServerHttpRequest.post("/api/v1/complaints")
+                .remoteAddress(new InetSocketAddress(remote, 54321))
+        if (forwardedFor) {
+            request.header("X-Forwarded-For", forwardedFor)
+        }
+
+        expect:
+        resolver.resolve(MockServerWebExchange.from(request)) == expected
+
+        where:
+        remote        | forwardedFor                          || expected
+        "83.24.17.5"  | null                                  || "83.24.17.5"
+        "83.24.17.5"  | "1.2.3.4"                             || "83.24.17.5"
+        "10.1.2.3"    | "83.24.17.5"                          || "83.24.17.5"
+        "192.168.1.7" | "83.24.17.5"                          || "83.24.17.5"
+        "192.168.1.8" | "83.24.17.5"                          || "192.168.1.8"
+        "fd00::1"     | "83.24.17.5"                          || "83.24.17.5"
+        "10.1.2.3"    | "1.2.3.4, 83.24.17.5, 10.9.9.9"       || "83.24.17.5"
+        "10.1.2.3"    | "10.0.0.5, 10.0.0.6"                  || "10.0.0.5"
+        "10.1.2.3"    | "1.2.3.4, evil.example.com, 10.0.0.6" || "evil.example.com"
+        "10.1.2.3"    | "1.2.3.4, cafe.bad, 10.0.0.6"         || "cafe.bad"
+    }
+
+    def "should parse only IP literals, never host names"() {
+        expect:
+        ClientIpResolver.parse(hop)?.hostAddress == expected
+
+        where:
+        hop               || expected
+        "10.0.0.6"        || "10.0.0.6"
+        "fd00::1"         || "fd00:0:0:0:0:0:0:1"
+        "::ffff:10.0.0.6" || "10.0.0.6"
+        "cafe.bad"        || null
+        "bad"             || null
+        "10.0.0.256"      || null
+        ""                || null
+    }
+
+    def "should ignore X-Forwarded-For when no proxy is trusted"() {
+        given:
+        def resolver = new ClientIpResolver([])
+        def request = MockServerHttpRequest.post("/api/v1/complaints")
+                .remoteAddress(new InetSocketAddress("10.1.2.3", 54321))
+                .header("X-Forwarded-For", "83.24.17.5")
+
+        expect:
+        resolver.resolve(MockServerWebExchange.from(request)) == "10.1.2.3"
+    }
+
+    def "should reject an invalid trusted proxy"() {
+        when:
+        new ClientIpResolver([proxy])
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        proxy << ["10.0.0.0/33", "proxy.internal", "cafe.bad", "10.0.0.0/x"]
+    }
+}
@@ -1,26 +1,39 @@
 package com.empik.complaint.api.controller
 
 import com.empik.complaint.api.dto.ComplaintCreateRequest
+import com.empik.complaint.api.dto.ComplaintEventResponse
 import com.empik.complaint.api.dto.ComplaintFullResponse
 import com.empik.complaint.api.dto.ComplaintResponse
+import com.empik.complaint.api.dto.ComplaintStatsResponse
+import com.empik.complaint.api.dto.ProductStatsResponse
 import com.empik.complaint.client.GeoLocationClient
 import com.empik.complaint.model.Complaint
+import com.empik.complaint.model.ProductStats
+import com.empik.complaint.repository.ComplaintIndexInitializer
 import com.empik.complaint.repository.ComplaintRepository
 import org.spockframework.spring.SpringBean
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient
 import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.core.ParameterizedTypeReference
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate
 import org.springframework.http.MediaType
+import org.springframework.http.codec.ServerSentEvent
 import org.springframework.test.context.DynamicPropertyRegistry
 import org.springframework.test.context.DynamicPropertySource
 import org.springframework.test.web.reactive.server.WebTestClient
+import org.springframework.test.web.reactive.server.WebTestClientConfigurer
+import org.springframework.web.server.WebFilter
 import org.testcontainers.containers.MongoDBContainer
 import org.testcontainers.junit.jupiter.Container
 import org.testcontainers.junit.jupiter.Testcontainers
 import org.testcontainers.utility.DockerImageName
+import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
 import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
 
+import java.time.Duration
 import java.time.LocalDateTime
 
 @SpringBootTest
@@ -32,6 +45,7 @@ class ComplaintControllerTest extends Specification {
     static MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
 
     private static final String TEST_IP_ADDRESS = "192.168.1.100"
+    private static final String PROXY_ADDRESS = "10.0.0.1"
 
     @DynamicPropertySource
     static void setProperties(DynamicPropertyRegistry registry) {
@@ -41,6 +55,9 @@ class ComplaintControllerTest extends Specification {
             }
             return mongoDBContainer.getReplicaSetUrl()
         })
+        registry.add("application.complaint-stats.enabled", () -> "true")
+        registry.add("application.client-ip.trusted-proxies", () -> "10.0.0.0/8")
+        registry.add("management.endpoints.web.exposure.include", () -> "health,complaintstats")
     }
 
     @Autowired
@@ -49,11 +66,19 @@ class ComplaintControllerTest extends Specification {
     @Autowired
     ComplaintRepository complaintRepository
 
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate
+
+    @Autowired
+    ComplaintIndexInitializer complaintIndexInitializer
+
     @SpringBean
     GeoLocationClient geoLocationClient = Stub(GeoLocationClient)
 
     def setup() {
+        webTestClient = webTestClient.mutateWith(throughProxy())
         complaintRepository.deleteAll().block()
+        mongoTemplate.dropCollection(ProductStats).block()
         geoLocationClient.getCountryFromIp(_ as String) >> Mono.just("Poland")
     }
 
@@ -121,6 +146,51 @@ class ComplaintControllerTest extends Specification {
         updatedComplaint.counter == 2
     }
 
+    def "should create complaints in bulk from newline-delimited JSON"() {
+        given:
+        complaintRepository.save(Complaint.builder()
+                .productId("product-1")
+                .content("Original content")
+                .complainantId("customer-1")
+                .country("Poland")
+                .counter(1)
+                .build()).block()
+
+        def body = [
+                '{"productId":"product-1","content":"Again","complainantId":"customer-1"}',
+                '{"productId":"product-2","content":"Broken","complainantId":"customer-1"}',
+                '{"productId":"product-2","content":"Broken again","complainantId":"customer-1"}',
+                '{"productId":"product-3","content":"","complainantId":"customer-1"}'
+        ].join("\n")
+
+        when:
+        def response = webTestClient.post()
+                .uri("/api/v1/complaints/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .header("X-Forwarded-For", TEST_IP_ADDRESS)
+                .bodyValue(body)
+                .exchange()
+
+        then:
+        response.expectStatus().isOk()
+                .expectBody()
+                .jsonPath('$[0].status').isEqualTo("INCREMENTED")
+                .jsonPath('$[1].status').isEqualTo("CREATED")
+                .jsonPath('$[2].status').isEqualTo("INCREMENTED")
+                .jsonPath('$[3].status').isEqualTo("REJECTED")
+                .jsonPath('$[3].error').isEqualTo("Content is required")
+
+        and:
+        complaintRepository.findByProductIdAndComplainantId("product-1", "customer-1").block().counter == 2
+        with(complaintRepository.findByProductIdAndComplainantId("product-2", "customer-1").block()) {
+            counter == 2
+            content == "Broken"
+            country == "Poland"
+        }
+        complaintRepository.findByProductIdAndComplainantId("product-3", "customer-1").block() == null
+    }
+
     def "should update complaint content"() {
         given:
         def existingComplaint = Complaint.builder()
@@ -260,6 +330,339 @@ class ComplaintControllerTest extends Specification {
                 }
     }
 
+    def "should page through complaints with a continuation cursor"() {
+        given:
+        def now = LocalDateTime.now()
+        def complaints = (1..5).collect { i ->
+            Complaint.builder()
+                    .productId("product-123")
+                    .content("Content ${i}")
+                    .complainantId("customer-${i}")
+                    .creationDate(now.minusDays(10 - i))
+                    .country("Poland")
+                    .counter(1)
+                    .build()
+        }
+        complaintRepository.saveAll(complaints).blockLast()
+
+        when: "first page"
+        def firstPage = webTestClient.get()
+                .uri("/api/v1/complaints?productId=product-123&size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ComplaintFullResponse.class)
+                .returnResult()
+        def firstCursor = firstPage.responseHeaders.getFirst(ComplaintApi.NEXT_CURSOR_HEADER)
+
+        then:
+        firstPage.responseBody*.content() == ["Content 1", "Content 2"]
+        firstCursor != null
+
+        when: "second page"
+        def secondPage = webTestClient.get()
+                .uri("/api/v1/complaints?productId=product-123&size=2&cursor=${firstCursor}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ComplaintFullResponse.class)
+                .returnResult()
+        def secondCursor = secondPage.responseHeaders.getFirst(ComplaintApi.NEXT_CURSOR_HEADER)
+
+        then:
+        secondPage.responseBody*.content() == ["Content 3", "Content 4"]
+
+        when: "last page"
+        def lastPage = webTestClient.get()
+                .uri("/api/v1/complaints?productId=product-123&size=2&cursor=${secondCursor}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ComplaintFullResponse.class)
+                .returnResult()
+
+        then:
+        lastPage.responseBody*.content() == ["Content 5"]
+        lastPage.responseHeaders.getFirst(ComplaintApi.NEXT_CURSOR_HEADER) == null
+    }
+
+    def "should reject an invalid cursor"() {
+        when:
+        def response = webTestClient.get()
+                .uri("/api/v1/complaints?cursor=not-a-cursor")
+                .exchange()
+
+        then:
+        response.expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath('$.exceptionType').isEqualTo("InvalidCursorException")
+    }
+
+    def "should search complaint content, most relevant first"() {
+        given:
+        complaintIndexInitializer.ensureIndexes().block()
+        def now = LocalDateTime.now()
+        def complaint = { String productId, String complainantId, String content, LocalDateTime creationDate ->
+            Complaint.builder()
+                    .productId(productId)
+                    .content(content)
+                    .complainantId(complainantId)
+                    .creationDate(creationDate)
+                    .country("Poland")
+                    .counter(1)
+                    .build()
+        }
+        complaintRepository.saveAll([
+                complaint("product-1", "customer-1", "The screen arrived cracked, a cracked screen on a new phone", now.minusDays(1)),
+                complaint("product-1", "customer-2", "Screen is too dim", now.minusDays(2)),
+                complaint("product-2", "customer-1", "Cracked case", now.minusDays(3)),
+                complaint("product-1", "customer-3", "Battery drains overnight", now.minusDays(4))
+        ]).blockLast()
+
+        when:
+        def ranked = search("q=cracked screen")
+
+        then:
+        ranked*.content().first() == "The screen arrived cracked, a cracked screen on a new phone"
+        ranked*.content() as Set == ["The screen arrived cracked, a cracked screen on a new phone",
+                                     "Screen is too dim", "Cracked case"] as Set
+
+        expect: "filters and pagination combine with the search"
+        search("q=cracked screen&productId=product-1")*.complainantId() == ["customer-1", "customer-2"]
+        search("q=cracked screen&productId=product-1&page=1&size=1")*.complainantId() == ["customer-2"]
+        search("q=cracked&fromDate=${now.minusDays(2)}")*.complainantId() == ["customer-1"]
+        search("q=\"cracked case\"")*.productId() == ["product-2"]
+        search("q=screen -dim")*.complainantId() == ["customer-1"]
+    }
+
+    private List<ComplaintFullResponse> search(String query) {
+        webTestClient.get()
+                .uri("/api/v1/complaints/search?${query}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ComplaintFullResponse.class)
+                .returnResult()
+                .responseBody
+    }
+
+    def "should export all matching complaints as newline-delimited JSON"() {
+        given:
+        def complaints = (1..25).collect { i ->
+            Complaint.builder()
+                    .productId(i % 5 == 0 ? "product-456" : "product-123")
+                    .content("Content ${i}")
+                    .complainantId("customer-${i}")
+                    .creationDate(LocalDateTime.now().minusMinutes(100 - i))
+                    .country("Poland")
+                    .counter(1)
+                    .build()
+        }
+        complaintRepository.saveAll(complaints).blockLast()
+
+        when:
+        def response = webTestClient.get()
+                .uri("/api/v1/complaints/export?productId=product-123")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+
+        then:
+        response.expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(ComplaintFullResponse.class)
+                .responseBody
+                .collectList()
+                .block()
+                .with { exported ->
+                    assert exported.size() == 20
+                    assert exported.every { it.productId() == "product-123" }
+                    assert exported*.creationDate() == exported*.creationDate().sort(false)
+                }
+    }
+
+    def "should aggregate complaints per product and day"() {
+        given:
+        def today = LocalDateTime.now().toLocalDate().atTime(12, 0)
+        def complaint = { String productId, String complainantId, LocalDateTime creationDate, String country, int counter ->
+            Complaint.builder()
+                    .productId(productId)
+                    .content("Broken")
+                    .complainantId(complainantId)
+                    .creationDate(creationDate)
+                    .country(country)
+                    .counter(counter)
+                    .build()
+        }
+        complaintRepository.saveAll([
+                complaint("product-1", "customer-1", today, "Poland", 3),
+                complaint("product-1", "customer-2", today.plusMinutes(5), "Germany", 1),
+                complaint("product-1", "customer-3", today.minusDays(1), "Poland", 2),
+                complaint("product-2", "customer-1", today, "Poland", 4)
+        ]).blockLast()
+
+        when:
+        def stats = webTestClient.get()
+                .uri("/api/v1/complaints/stats?groupBy=PRODUCT&bucket=DAY")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ComplaintStatsResponse.class)
+                .returnResult()
+                .responseBody
+
+        then:
+        stats == [
+                new ComplaintStatsResponse("product-1", null, today.toLocalDate().minusDays(1).atStartOfDay(), 1, 2),
+                new ComplaintStatsResponse("product-1", null, today.toLocalDate().atStartOfDay(), 2, 4),
+                new ComplaintStatsResponse("product-2", null, today.toLocalDate().atStartOfDay(), 1, 4)
+        ]
+
+        when: "filtered by product and grouped by country"
+        def byCountry = webTestClient.get()
+                .uri("/api/v1/complaints/stats?productId=product-1&groupBy=COUNTRY")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ComplaintStatsResponse.class)
+                .responseBody
+                .collectList()
+                .block()
+
+        then:
+        byCountry == [
+                new ComplaintStatsResponse(null, "Germany", null, 1, 1),
+                new ComplaintStatsResponse(null, "Poland", null, 2, 5)
+        ]
+
+        when: "not grouped at all"
+        def total = webTestClient.get()
+                .uri("/api/v1/complaints/stats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ComplaintStatsResponse.class)
+                .returnResult()
+                .responseBody
+
+        then:
+        total == [new ComplaintStatsResponse(null, null, null, 4, 10)]
+    }
+
+    def "should maintain per-product statistics as complaints are created"() {
+        given:
+        def requests = [
+                new ComplaintCreateRequest("product-1", "Broken", "customer-1"),
+                new ComplaintCreateRequest("product-1", "Broken", "customer-1"),
+                new ComplaintCreateRequest("product-1", "Broken", "customer-2"),
+                new ComplaintCreateRequest("product-2", "Late", "customer-1")
+        ]
+
+        when:
+        requests.each { request ->
+            webTestClient.post()
+                    .uri("/api/v1/complaints")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header("X-Forwarded-For", TEST_IP_ADDRESS)
+                    .bodyValue(request)
+                    .exchange()
+                    .expectStatus().isCreated()
+        }
+
+        then:
+        topProducts(10) == [
+                new ProductStatsResponse("product-1", 2, 3),
+                new ProductStatsResponse("product-2", 1, 1)
+        ]
+        topProducts(1)*.productId() == ["product-1"]
+    }
+
+    def "should rebuild statistics from existing complaints"() {
+        given: "complaints written past the service"
+        complaintRepository.saveAll((1..30).collect { i ->
+            Complaint.builder()
+                    .productId("product-${i % 3}")
+                    .content("Content ${i}")
+                    .complainantId("customer-${i}")
+                    .country("Poland")
+                    .counter(2)
+                    .build()
+        }).blockLast()
+
+        when:
+        def response = webTestClient.post()
+                .uri("/actuator/complaintstats")
+                .exchange()
+
+        then:
+        response.expectStatus().isAccepted()
+        new PollingConditions(timeout: 10).eventually {
+            assert topProducts(10) as Set == (0..2).collect { new ProductStatsResponse("product-${it}", 10, 20) } as Set
+        }
+    }
+
+    private List<ProductStatsResponse> topProducts(int limit) {
+        webTestClient.get()
+                .uri("/api/v1/complaints/stats/top-products?limit=${limit}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ProductStatsResponse.class)
+                .returnResult()
+                .responseBody
+    }
+
+    def "should stream complaint changes and resume after a given event"() {
+        given:
+        def received = [].asSynchronized()
+        def subscription = events(null).subscribe { received << it }
+
+        and: "the change stream is open once a probe complaint shows up"
+        new PollingConditions(timeout: 10, delay: 0.2).eventually {
+            create(new ComplaintCreateRequest("probe-${UUID.randomUUID()}", "Probe", "customer-0"))
+            assert received.any { it.data().type() == "CREATED" }
+        }
+        def productEvents = { received.findAll { it.data().complaint()?.productId() == "product-1" } }
+
+        when:
+        create(new ComplaintCreateRequest("product-1", "Broken", "customer-1"))
+        create(new ComplaintCreateRequest("product-1", "Broken", "customer-1"))
+
+        then:
+        new PollingConditions(timeout: 10).eventually {
+            assert productEvents()*.data()*.type() == ["CREATED", "INCREMENTED"]
+        }
+        productEvents()[1].data().complaint().counter() == 2
+        productEvents()*.id() == productEvents()*.data()*.resumeToken()
+
+        when: "resuming after the first event"
+        def resumed = events(productEvents()[0].id()).take(1).collectList().block(Duration.ofSeconds(10))
+
+        then:
+        resumed*.data()*.type() == ["INCREMENTED"]
+        resumed[0].data().complaintId() == productEvents()[1].data().complaintId()
+
+        cleanup:
+        subscription?.dispose()
+    }
+
+    private void create(ComplaintCreateRequest request) {
+        webTestClient.post()
+                .uri("/api/v1/complaints")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Forwarded-For", TEST_IP_ADDRESS)
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isCreated()
+    }
+
+    private Flux<ServerSentEvent<ComplaintEventResponse>> events(String lastEventId) {
+        webTestClient.mutate()
+                .responseTimeout(Duration.ofSeconds(30))
+                .build()
+                .get()
+                .uri("/api/v1/complaints/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers { headers -> if (lastEventId != null) headers.set(ComplaintApi.LAST_EVENT_ID_HEADER, lastEventId) }
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<ComplaintEventResponse>>() {})
+                .responseBody
+                .filter { it.data() != null }
+    }
+
     def "should return error when complaint not found"() {
         when:
         def response = webTestClient.get()
@@ -274,4 +677,19 @@ class ComplaintControllerTest extends Specification {
                 .jsonPath('$.message').isEqualTo("Complaint not found with ID: non-existent-id")
                 .jsonPath('$.exceptionType').isEqualTo("ComplaintNotFoundException")
     }
-}
\ No newline at end of file
+
+    /**
+     * Requests arrive from a trusted proxy, which reports the client in X-Forwarded-For.
+     */
+    private static WebTestClientConfigurer throughProxy() {
+        return { builder, httpHandlerBuilder, connector ->
+            httpHandlerBuilder.filters { filters ->
+                filters.add(0, { exchange, chain ->
+                    chain.filter(exchange.mutate()
+                            .request { it.remoteAddress(new InetSocketAddress(PROXY_ADDRESS, 443)) }
+                            .build())
+                } as WebFilter)
+            }
+        } as WebTestClientConfigurer
+    }
+}
@@ -0,0 +1,61 @@
+package com.empik.complaint.api.filter
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class RateLimiterTest extends Specification {
+
+    long now = 0
+    RateLimiter rateLimiter = new RateLimiter(10, 3, { now })
+
+    def "should admit a burst and then one request per emission interval"() {
+        expect:
+        (1..3).every { rateLimiter.tryAcquire("10.0.0.1") == 0 }
+        rateLimiter.tryAcquire("10.0.0.1") == TimeUnit.MILLISECONDS.toNanos(100)
+
+        when:
+        now += TimeUnit.MILLISECONDS.toNanos(100)
+
+        then:
+        rateLimiter.tryAcquire("10.0.0.1") == 0
+        rateLimiter.tryAcquire("10.0.0.1") > 0
+    }
+
+    def "should keep a bucket per key"() {
+        given:
+        3.times { rateLimiter.tryAcquire("10.0.0.1") }
+
+        expect:
+        rateLimiter.tryAcquire("10.0.0.1") > 0
+        rateLimiter.tryAcquire("10.0.0.2") == 0
+    }
+
+    def "should evict only buckets that have refilled"() {
+        given:
+        rateLimiter.tryAcquire("10.0.0.1")
+        3.times { rateLimiter.tryAcquire("10.0.0.2") }
+
+        when:
+        now += TimeUnit.MILLISECONDS.toNanos(150)
+
+        then:
+        rateLimiter.evictIdle() == 1
+        rateLimiter.size() == 1
+
+        and: "an evicted key starts with a full bucket"
+        (1..3).every { rateLimiter.tryAcquire("10.0.0.1") == 0 }
+    }
+
+    def "should not admit more than the limit under concurrent use"() {
+        given:
+        def limiter = new RateLimiter(0.001, 1000, { 0L })
+        def admitted = Collections.synchronizedList([])
+
+        when:
+        (1..8).collect { Thread.start { 500.times { if (limiter.tryAcquire("10.0.0.1") == 0) admitted << it } } }*.join()
+
+        then:
+        admitted.size() == 1000
+    }
+}
@@ -0,0 +1,102 @@
+package com.empik.complaint.api.filter
+
+import com.empik.complaint.api.ClientIpResolver
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest
+import org.springframework.mock.web.server.MockServerWebExchange
+import org.springframework.web.server.WebFilterChain
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+
+import java.net.InetSocketAddress
+
+class WriteAdmissionFilterTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    WebFilterChain chain = Mock(WebFilterChain)
+
+    def "should reject writes over the per-IP rate with a Retry-After hint"() {
+        given:
+        def filter = filter(true, 1, 2, 10)
+        chain.filter(_) >> Mono.empty()
+
+        when:
+        def exchanges = (1..3).collect { write("10.0.0.1") }
+        exchanges.each { filter.filter(it, chain).block() }
+        def otherIp = write("10.0.0.2")
+        filter.filter(otherIp, chain).block()
+
+        then:
+        exchanges*.response*.statusCode == [null, null, HttpStatus.TOO_MANY_REQUESTS]
+        exchanges[2].response.headers.getFirst(HttpHeaders.RETRY_AFTER) == "1"
+        otherIp.response.statusCode == null
+        meterRegistry.get("complaint.admission.rejected").tag("reason", "rate").counter().count() == 1
+
+        cleanup:
+        filter.stop()
+    }
+
+    def "should reject writes over the in-flight limit until one completes"() {
+        given:
+        def filter = filter(true, 1000, 1000, 1)
+        def pending = Sinks.<Void> empty()
+        chain.filter(_) >>> [pending.asMono(), Mono.empty()]
+
+        when:
+        def first = filter.filter(write("10.0.0.1"), chain).subscribe()
+        def overloaded = write("10.0.0.2")
+        filter.filter(overloaded, chain).block()
+
+        then:
+        overloaded.response.statusCode == HttpStatus.TOO_MANY_REQUESTS
+        meterRegistry.get("complaint.admission.in.flight").gauge().value() == 1
+        meterRegistry.get("complaint.admission.rejected").tag("reason", "concurrency").counter().count() == 1
+
+        when:
+        pending.tryEmitEmpty()
+        def next = write("10.0.0.2")
+        filter.filter(next, chain).block()
+
+        then:
+        next.response.statusCode == null
+        meterRegistry.get("complaint.admission.in.flight").gauge().value() == 0
+
+        cleanup:
+        first?.dispose()
+        filter.stop()
+    }
+
+    def "should let reads and disabled admission control through"() {
+        given:
+        def filter = filter(enabled, 1, 1, 1)
+
+        when:
+        (1..3).each { filter.filter(exchange, chain).block() }
+
+        then:
+        3 * chain.filter(exchange) >> Mono.empty()
+
+        cleanup:
+        filter.stop()
+
+        where:
+        enabled | exchange
+        true    | MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/complaints/abc").remoteAddress(client("10.0.0.1")))
+        false   | write("10.0.0.1")
+    }
+
+    private WriteAdmissionFilter filter(boolean enabled, double requestsPerSecond, int burst, int maxInFlight) {
+        new WriteAdmissionFilter(meterRegistry, new ClientIpResolver([]), enabled, requestsPerSecond, burst, maxInFlight, 60_000)
+    }
+
+    private static MockServerWebExchange write(String ipAddress) {
+        MockServerWebExchange.from(MockServerHttpRequest.post("/api/v1/complaints").remoteAddress(client(ipAddress)))
+    }
+
+    private static InetSocketAddress client(String ipAddress) {
+        new InetSocketAddress(ipAddress, 54321)
+    }
+}
@@ -0,0 +1,143 @@
+package com.empik.complaint.client
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.sun.net.httpserver.HttpServer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class BlockingHttpGeoLocationClientTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    HttpServer server
+    AtomicInteger requests = new AtomicInteger()
+    volatile int status
+    volatile String body
+    volatile long delayMs
+    long now = 0
+
+    def cleanup() {
+        server?.stop(0)
+    }
+
+    def "should time resolved lookups"() {
+        given:
+        def client = clientFor(startServer(200, '{"status":"success","country":"Poland"}'))
+
+        when:
+        def country = client.resolveCountry("83.24.17.5")
+
+        then:
+        country == "Poland"
+        meterRegistry.get("geolocation.requests").tag("outcome", "resolved").timer().count() == 1
+        meterRegistry.get("geolocation.fallbacks").counters().every { it.count() == 0 }
+    }
+
+    def "should fall back to Unknown on HTTP errors without retrying"() {
+        given:
+        def client = clientFor(startServer(503, '{}'))
+
+        when:
+        def country = client.resolveCountry("83.24.17.5")
+
+        then:
+        country == GeoLocationClient.UNKNOWN_COUNTRY
+        requests.get() == 1
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "http_error").counter().count() == 1
+        meterRegistry.get("geolocation.requests").tag("outcome", "fallback").timer().count() == 1
+        meterRegistry.get("geolocation.retries").counter().count() == 0
+    }
+
+    def "should retry connection errors before falling back"() {
+        given:
+        def baseUrl = startServer(200, '{}')
+        server.stop(0)
+        def client = clientFor(baseUrl)
+
+        when:
+        def country = client.resolveCountry("83.24.17.5")
+
+        then:
+        country == GeoLocationClient.UNKNOWN_COUNTRY
+        meterRegistry.get("geolocation.retries").counter().count() == 2
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "unexpected_error").counter().count() == 1
+    }
+
+    def "should fail fast without calling the provider while the circuit is open"() {
+        given:
+        def client = clientFor(startServer(503, '{}'))
+
+        when:
+        4.times { client.resolveCountry("83.24.17.5") }
+        def countries = (1..3).collect { client.resolveCountry("83.24.17.5") }
+
+        then:
+        requests.get() == 4
+        countries.every { it == GeoLocationClient.UNKNOWN_COUNTRY }
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "circuit_open").counter().count() == 3
+    }
+
+    def "should give up on a slow provider after the timeout"() {
+        given:
+        def client = clientFor(startServer(200, '{"status":"success","country":"Poland"}'))
+        delayMs = 2000
+
+        when:
+        long start = System.nanoTime()
+        def country = client.resolveCountry("83.24.17.5")
+
+        then:
+        country == GeoLocationClient.UNKNOWN_COUNTRY
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000
+        meterRegistry.get("geolocation.retries").counter().count() == 2
+    }
+
+    def "should share one lookup per IP through the cache"() {
+        given:
+        def baseUrl = startServer(200, '{"status":"success","country":"Poland"}')
+        def client = clientFor(baseUrl, new GeoLocationCache(meterRegistry, true, 100, 60_000, 1_000))
+
+        when:
+        def countries = (1..3).collect { client.resolveCountry("83.24.17.5") }
+
+        then:
+        countries == ["Poland"] * 3
+        requests.get() == 1
+    }
+
+    private String startServer(int status, String body) {
+        this.status = status
+        this.body = body
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/json/") { exchange ->
+            requests.incrementAndGet()
+            if (delayMs > 0) {
+                Thread.sleep(delayMs)
+            }
+            def bytes = this.body.getBytes(StandardCharsets.UTF_8)
+            exchange.responseHeaders.add("Content-Type", "application/json")
+            exchange.sendResponseHeaders(this.status, bytes.length)
+            exchange.responseBody.withCloseable { it.write(bytes) }
+        }
+        server.executor = Executors.newCachedThreadPool()
+        server.start()
+        return "http://127.0.0.1:${server.address.port}"
+    }
+
+    private BlockingHttpGeoLocationClient clientFor(String baseUrl,
+                                                    GeoLocationCache cache = new GeoLocationCache(meterRegistry, false, 0, 0, 0)) {
+        // opens after 4 calls with half of them failed, at most 200 ms per call, two retries in the budget
+        def circuitBreaker = new GeoLocationCircuitBreaker(meterRegistry, true, 4, 4, 0.5, 2000, 0.8, 10_000, 3,
+                50, 200, 3, 0, 2, { now })
+        def client = new BlockingHttpGeoLocationClient(cache, circuitBreaker, new ObjectMapper(), meterRegistry)
+        ReflectionTestUtils.setField(client, "geoLocationBaseUrl", baseUrl)
+        ReflectionTestUtils.setField(client, "maxAttempts", 2)
+        ReflectionTestUtils.setField(client, "backoffMs", 10L)
+        return client
+    }
+}
@@ -0,0 +1,106 @@
+package com.empik.complaint.client
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class GeoIpDatabaseTest extends Specification {
+
+    @TempDir
+    Path tempDir
+
+    def "should resolve addresses to the country of the covering range"() {
+        given:
+        def database = GeoIpDatabase.load(databaseFile("""
+                # network,country
+                83.0.0.0/11,Poland
+                5.0.0.0/8,Germany
+
+                192.168.1.0/24,Local
+                0.0.0.0/32,Zero
+                255.255.255.255/32,Broadcast
+                """))
+
+        expect:
+        database.size() == 5
+        database.lookup(address) == country
+
+        where:
+        address           | country
+        "83.0.0.0"        | "Poland"
+        "83.31.255.255"   | "Poland"
+        "83.32.0.0"       | null
+        "5.1.2.3"         | "Germany"
+        "192.168.1.100"   | "Local"
+        "192.168.2.1"     | null
+        "0.0.0.0"         | "Zero"
+        "255.255.255.255" | "Broadcast"
+        "4.255.255.255"   | null
+        "2001:db8::1"     | null
+        "1.2.3"           | null
+        "1.2.3.256"       | null
+        "not-an-ip"       | null
+    }
+
+    def "should normalize networks that are not aligned to their prefix"() {
+        given:
+        def database = GeoIpDatabase.load(databaseFile("10.1.2.3/16,Somewhere"))
+
+        expect:
+        database.lookup("10.1.0.0") == "Somewhere"
+        database.lookup("10.1.255.255") == "Somewhere"
+    }
+
+    def "should resolve nested ranges to the most specific one"() {
+        given:
+        def database = GeoIpDatabase.load(databaseFile("""
+                10.0.0.0/8,Outer
+                10.1.2.0/24,Innermost
+                10.1.0.0/16,Inner
+                10.200.0.0/16,Sibling
+                """))
+
+        expect:
+        database.lookup(address) == country
+
+        where:
+        address          | country
+        "9.255.255.255"  | null
+        "10.0.0.1"       | "Outer"
+        "10.1.0.0"       | "Inner"
+        "10.1.2.5"       | "Innermost"
+        "10.1.3.0"       | "Inner"
+        "10.2.0.0"       | "Outer"
+        "10.200.3.3"     | "Sibling"
+        "10.255.255.255" | "Outer"
+        "11.0.0.0"       | null
+    }
+
+    def "should reject the same range listed twice"() {
+        when:
+        GeoIpDatabase.load(databaseFile("10.0.0.0/8,Poland\n10.1.0.0/8,Germany"))
+
+        then:
+        def e = thrown(IOException)
+        e.message.contains("line 2")
+    }
+
+    def "should reject malformed entries"() {
+        when:
+        GeoIpDatabase.load(databaseFile(line))
+
+        then:
+        thrown(IOException)
+
+        where:
+        line << ["10.0.0.0,Poland", "10.0.0.0/33,Poland", "10.0.0/8,Poland", "10.0.0.0/8,", "10.0.0.0/x,Poland"]
+    }
+
+    private Path databaseFile(String content) {
+        def file = tempDir.resolve("geoip.csv")
+        Files.writeString(file, content.stripIndent())
+        return file
+    }
+}
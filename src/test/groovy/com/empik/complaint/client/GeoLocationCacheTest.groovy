@@ -0,0 +1,134 @@
+package com.empik.complaint.client
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.UnaryOperator
+
+class GeoLocationCacheTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    def "should serve repeated lookups of the same IP from cache"() {
+        given:
+        def cache = new GeoLocationCache(meterRegistry, true, 100, 60_000, 60_000)
+        def calls = new AtomicInteger()
+        def loader = { String ip -> Mono.fromCallable { calls.incrementAndGet(); "Poland" } }
+
+        when:
+        def countries = (1..5).collect { cache.get("10.0.0.1", loader).block() }
+
+        then:
+        countries.every { it == "Poland" }
+        calls.get() == 1
+        meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count() == 4
+        meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count() == 1
+    }
+
+    def "should coalesce concurrent in-flight lookups of the same IP"() {
+        given:
+        def cache = new GeoLocationCache(meterRegistry, true, 100, 60_000, 60_000)
+        def calls = new AtomicInteger()
+        def response = Sinks.<String> one()
+        def loader = { String ip -> calls.incrementAndGet(); response.asMono() }
+
+        when:
+        def lookups = (1..10).collect { cache.get("10.0.0.1", loader) }
+        def results = Flux.merge(lookups).collectList().toFuture()
+        response.tryEmitValue("Poland")
+
+        then:
+        results.get().size() == 10
+        results.get().every { it == "Poland" }
+        calls.get() == 1
+    }
+
+    def "should expire unknown results after the negative ttl"() {
+        given:
+        def cache = new GeoLocationCache(meterRegistry, true, 100, 60_000, 50)
+        def calls = new AtomicInteger()
+        def loader = { String ip -> Mono.fromCallable { calls.incrementAndGet(); GeoLocationClient.UNKNOWN_COUNTRY } }
+
+        when:
+        cache.get("10.0.0.1", loader).block()
+        sleep(200)
+        cache.get("10.0.0.1", loader).block()
+
+        then:
+        calls.get() == 2
+    }
+
+    def "should load a blocking lookup on the calling thread and let concurrent callers wait for it"() {
+        given:
+        def cache = new GeoLocationCache(meterRegistry, true, 100, 60_000, 60_000)
+        def calls = new AtomicInteger()
+        def loaderThreads = [].asSynchronized()
+        def loading = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def loader = { String ip ->
+            calls.incrementAndGet()
+            loaderThreads << Thread.currentThread()
+            loading.countDown()
+            release.await()
+            "Poland"
+        } as UnaryOperator<String>
+
+        when:
+        def first = Thread.ofVirtual().start { assert cache.getBlocking("10.0.0.1", loader) == "Poland" }
+        loading.await()
+        def second = Thread.ofVirtual().start { assert cache.getBlocking("10.0.0.1", loader) == "Poland" }
+        sleep(50)
+        release.countDown()
+        first.join()
+        second.join()
+
+        then:
+        calls.get() == 1
+        loaderThreads == [first]
+        cache.getBlocking("10.0.0.1", loader) == "Poland"
+        calls.get() == 1
+    }
+
+    def "should load a blocking lookup again after it failed"() {
+        given:
+        def cache = new GeoLocationCache(meterRegistry, true, 100, 60_000, 60_000)
+        def calls = new AtomicInteger()
+        def loader = { String ip ->
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("provider down")
+            }
+            "Poland"
+        } as UnaryOperator<String>
+
+        when:
+        cache.getBlocking("10.0.0.1", loader)
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        def country = cache.getBlocking("10.0.0.1", loader)
+
+        then:
+        country == "Poland"
+        calls.get() == 2
+    }
+
+    def "should call the loader every time when disabled"() {
+        given:
+        def cache = new GeoLocationCache(meterRegistry, false, 100, 60_000, 60_000)
+        def calls = new AtomicInteger()
+        def loader = { String ip -> Mono.fromCallable { calls.incrementAndGet(); "Poland" } }
+
+        when:
+        3.times { cache.get("10.0.0.1", loader).block() }
+
+        then:
+        calls.get() == 3
+    }
+}
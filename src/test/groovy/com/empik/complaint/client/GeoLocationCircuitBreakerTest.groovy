@@ -0,0 +1,229 @@
+package com.empik.complaint.client
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+import static com.empik.complaint.client.GeoLocationCircuitBreaker.State.CLOSED
+import static com.empik.complaint.client.GeoLocationCircuitBreaker.State.HALF_OPEN
+import static com.empik.complaint.client.GeoLocationCircuitBreaker.State.OPEN
+
+class GeoLocationCircuitBreakerTest extends Specification {
+
+    static final long FAST = TimeUnit.MILLISECONDS.toNanos(20)
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(3000)
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    long now = 0
+    GeoLocationCircuitBreaker circuitBreaker = breaker(true)
+
+    def "should open once the failure rate over the window crosses the threshold"() {
+        when:
+        6.times { call { circuitBreaker.onSuccess(FAST) } }
+        3.times { call { circuitBreaker.onFailure(FAST) } }
+
+        then:
+        circuitBreaker.state() == CLOSED
+
+        when:
+        call { circuitBreaker.onFailure(FAST) }
+
+        then: "4 of the last 10 calls failed"
+        circuitBreaker.state() == OPEN
+        !circuitBreaker.tryAcquirePermission()
+        meterRegistry.get("geolocation.circuit.rejected").counter().count() == 1
+    }
+
+    def "should open when most calls are slow even if they succeed"() {
+        when:
+        5.times { call { circuitBreaker.onSuccess(SLOW) } }
+
+        then:
+        circuitBreaker.state() == OPEN
+    }
+
+    def "should not open before the minimum number of calls"() {
+        when:
+        4.times { call { circuitBreaker.onFailure(FAST) } }
+
+        then:
+        circuitBreaker.state() == CLOSED
+    }
+
+    def "should let a limited number of probes through after the open period"() {
+        given:
+        open()
+
+        when:
+        now += TimeUnit.SECONDS.toNanos(10)
+        def permits = (1..3).collect { circuitBreaker.tryAcquirePermission() }
+
+        then:
+        circuitBreaker.state() == HALF_OPEN
+        permits == [true, true, false]
+
+        when: "a cancelled probe gives its permit back"
+        circuitBreaker.releasePermission()
+
+        then:
+        circuitBreaker.tryAcquirePermission()
+    }
+
+    def "should close after successful probes and reopen after a failed one"() {
+        given:
+        open()
+        now += TimeUnit.SECONDS.toNanos(10)
+
+        when:
+        2.times { call { circuitBreaker.onSuccess(FAST) } }
+
+        then:
+        circuitBreaker.state() == CLOSED
+
+        when:
+        open()
+        now += TimeUnit.SECONDS.toNanos(10)
+        call { circuitBreaker.onFailure(FAST) }
+
+        then:
+        circuitBreaker.state() == OPEN
+        !circuitBreaker.tryAcquirePermission()
+    }
+
+    def "should derive the timeout from the recent latency percentile within bounds"() {
+        expect:
+        circuitBreaker.timeout() == Duration.ofSeconds(5)
+
+        when:
+        32.times { circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(it < 31 ? 100 : 400)) }
+
+        then: "3 x p99"
+        circuitBreaker.timeout() == Duration.ofMillis(1200)
+
+        when:
+        32.times { circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(1)) }
+
+        then: "p99 still covers the slow sample"
+        circuitBreaker.timeout() == Duration.ofMillis(1200)
+
+        when:
+        192.times { circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(1)) }
+        32.times { circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(1)) }
+
+        then: "the slow samples have left the window and the minimum applies"
+        circuitBreaker.timeout() == Duration.ofMillis(250)
+    }
+
+    def "should grow the timeout again from calls that timed out"() {
+        given:
+        def tolerant = breaker(true, 1.1)
+        32.times { tolerant.onSuccess(TimeUnit.MILLISECONDS.toNanos(100)) }
+
+        expect:
+        tolerant.timeout() == Duration.ofMillis(300)
+
+        when: "the provider now takes a second, so every call times out"
+        32.times { tolerant.onTimeout(TimeUnit.MILLISECONDS.toNanos(300)) }
+
+        then:
+        tolerant.timeout() == Duration.ofMillis(900)
+
+        when:
+        32.times { tolerant.onTimeout(TimeUnit.MILLISECONDS.toNanos(900)) }
+
+        then:
+        tolerant.timeout() == Duration.ofMillis(2700)
+    }
+
+    def "should recover from a latency step through probes with the maximum timeout"() {
+        given:
+        32.times { call { circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(100)) } }
+
+        expect:
+        circuitBreaker.timeout() == Duration.ofMillis(300)
+
+        when: "the provider now takes a second and calls time out"
+        4.times { call { circuitBreaker.onTimeout(TimeUnit.MILLISECONDS.toNanos(300)) } }
+
+        then:
+        circuitBreaker.state() == OPEN
+
+        when:
+        now += TimeUnit.SECONDS.toNanos(10)
+
+        then: "probes get the maximum timeout"
+        circuitBreaker.tryAcquirePermission()
+        circuitBreaker.state() == HALF_OPEN
+        circuitBreaker.timeout() == Duration.ofSeconds(5)
+
+        when: "the probes answer within it"
+        circuitBreaker.onSuccess(TimeUnit.SECONDS.toNanos(1))
+        call { circuitBreaker.onSuccess(TimeUnit.SECONDS.toNanos(1)) }
+
+        then: "the latencies from before the step are forgotten"
+        circuitBreaker.state() == CLOSED
+        circuitBreaker.timeout() == Duration.ofSeconds(5)
+
+        when:
+        32.times { call { circuitBreaker.onSuccess(TimeUnit.SECONDS.toNanos(1)) } }
+
+        then:
+        circuitBreaker.timeout() == Duration.ofSeconds(3)
+
+        when: "the provider is fast again"
+        256.times { call { circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(100)) } }
+
+        then:
+        circuitBreaker.state() == CLOSED
+        circuitBreaker.timeout() == Duration.ofMillis(300)
+    }
+
+    def "should allow retries only within the budget"() {
+        when:
+        def retries = (1..3).collect { circuitBreaker.tryAcquireRetry() }
+
+        then:
+        retries == [true, true, false]
+        meterRegistry.get("geolocation.retries.denied").counter().count() == 1
+
+        when:
+        4.times { circuitBreaker.onRequest() }
+
+        then:
+        circuitBreaker.tryAcquireRetry()
+        !circuitBreaker.tryAcquireRetry()
+    }
+
+    def "should permit everything when disabled"() {
+        given:
+        def disabled = breaker(false)
+
+        when:
+        20.times { disabled.tryAcquirePermission(); disabled.onFailure(SLOW) }
+
+        then:
+        disabled.state() == CLOSED
+        disabled.tryAcquirePermission()
+        (1..5).every { disabled.tryAcquireRetry() }
+        disabled.timeout() == Duration.ofSeconds(5)
+    }
+
+    private void call(Closure outcome) {
+        assert circuitBreaker.tryAcquirePermission()
+        outcome()
+    }
+
+    private void open() {
+        5.times { call { circuitBreaker.onFailure(FAST) } }
+        assert circuitBreaker.state() == OPEN
+    }
+
+    private GeoLocationCircuitBreaker breaker(boolean enabled, double failureRateThreshold = 0.4) {
+        // window 10, at least 5 calls, 40% failed or 80% slow (over 2 s) opens for 10 s, 2 probes,
+        // timeout 3 x p99 within 250 ms - 5 s, 2 retries in the budget and one earned back per 4 requests
+        new GeoLocationCircuitBreaker(meterRegistry, enabled, 10, 5, failureRateThreshold, 2000, 0.8, 10_000, 2,
+                250, 5000, 3, 0.25, 2, { now })
+    }
+}
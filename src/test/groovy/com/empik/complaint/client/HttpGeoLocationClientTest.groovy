@@ -0,0 +1,289 @@
+package com.empik.complaint.client
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.sun.net.httpserver.HttpServer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.test.util.ReflectionTestUtils
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Flux
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class HttpGeoLocationClientTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    HttpServer server
+    AtomicInteger requests = new AtomicInteger()
+    List<List<String>> batches = [].asSynchronized()
+    volatile int batchStatus = 200
+    volatile int status
+    volatile String body
+    volatile long delayMs
+    long now = 0
+
+    def cleanup() {
+        server?.stop(0)
+    }
+
+    def "should time resolved lookups"() {
+        given:
+        def client = clientFor(startServer(200, '{"status":"success","country":"Poland"}'))
+
+        when:
+        def country = client.getCountryFromIp("83.24.17.5").block()
+
+        then:
+        country == "Poland"
+        meterRegistry.get("geolocation.requests").tag("outcome", "resolved").timer().count() == 1
+        meterRegistry.get("geolocation.fallbacks").counters().every { it.count() == 0 }
+    }
+
+    def "should count fallbacks to Unknown on HTTP errors"() {
+        given:
+        def client = clientFor(startServer(503, '{}'))
+
+        when:
+        def country = client.getCountryFromIp("83.24.17.5").block()
+
+        then:
+        country == GeoLocationClient.UNKNOWN_COUNTRY
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "http_error").counter().count() == 1
+        meterRegistry.get("geolocation.requests").tag("outcome", "fallback").timer().count() == 1
+        meterRegistry.get("geolocation.retries").counter().count() == 0
+    }
+
+    def "should count retries of connection errors before falling back"() {
+        given:
+        def baseUrl = startServer(200, '{}')
+        server.stop(0)
+        def client = clientFor(baseUrl)
+
+        when:
+        def country = client.getCountryFromIp("83.24.17.5").block()
+
+        then:
+        country == GeoLocationClient.UNKNOWN_COUNTRY
+        meterRegistry.get("geolocation.retries").counter().count() == 2
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "unexpected_error").counter().count() == 1
+    }
+
+    def "should fail fast without calling the provider while the circuit is open"() {
+        given:
+        def client = clientFor(startServer(503, '{}'))
+
+        when:
+        4.times { client.getCountryFromIp("83.24.17.5").block() }
+        def countries = (1..3).collect { client.getCountryFromIp("83.24.17.5").block() }
+
+        then:
+        requests.get() == 4
+        countries.every { it == GeoLocationClient.UNKNOWN_COUNTRY }
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "circuit_open").counter().count() == 3
+        meterRegistry.get("geolocation.circuit.state").gauge().value() == GeoLocationCircuitBreaker.State.OPEN.ordinal()
+    }
+
+    def "should close the circuit once the recovered provider answers the probes"() {
+        given:
+        def client = clientFor(startServer(503, '{}'))
+        4.times { client.getCountryFromIp("83.24.17.5").block() }
+
+        when:
+        status = 200
+        body = '{"status":"success","country":"Poland"}'
+        now += TimeUnit.SECONDS.toNanos(10)
+        def countries = (1..3).collect { client.getCountryFromIp("83.24.17.5").block() }
+
+        then:
+        countries == ["Poland"] * 3
+        requests.get() == 7
+        meterRegistry.get("geolocation.circuit.state").gauge().value() == GeoLocationCircuitBreaker.State.CLOSED.ordinal()
+    }
+
+    def "should give up on a slow provider after the timeout and retry only within the budget"() {
+        given:
+        def client = clientFor(startServer(200, '{"status":"success","country":"Poland"}'))
+        delayMs = 2000
+
+        when:
+        long start = System.nanoTime()
+        def countries = (1..2).collect { client.getCountryFromIp("83.24.17.5").block() }
+
+        then:
+        countries == [GeoLocationClient.UNKNOWN_COUNTRY] * 2
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000
+        meterRegistry.get("geolocation.retries").counter().count() == 2
+        meterRegistry.get("geolocation.retries.denied").counter().count() == 1
+    }
+
+    def "should resolve concurrent lookups with one batch request"() {
+        given:
+        def client = clientFor(startServer(200, '{}'))
+        enableBatching(client, 50)
+
+        when:
+        def countries = Flux.merge(["83.24.17.5", "10.0.0.1", "5.9.1.1"].collect { client.getCountryFromIp(it) })
+                .collectList()
+                .block()
+
+        then:
+        batches.size() == 1
+        batches[0] as Set == ["83.24.17.5", "10.0.0.1", "5.9.1.1"] as Set
+        requests.get() == 0
+        countries as Set == ["Poland", "Unknown", "Germany"] as Set
+        meterRegistry.get("geolocation.batch.size").summary().max() == 3
+
+        cleanup:
+        client.stop()
+    }
+
+    def "should split lookups into batches of the maximum size"() {
+        given:
+        def client = clientFor(startServer(200, '{}'))
+        enableBatching(client, 1000, 2)
+
+        when:
+        def countries = Flux.merge((1..4).collect { client.getCountryFromIp("83.24.17.$it") }).collectList().block()
+
+        then:
+        countries == ["Poland"] * 4
+        batches*.size() == [2, 2]
+
+        cleanup:
+        client.stop()
+    }
+
+    def "should not send more lookups in one batch than the provider accepts"() {
+        given:
+        def client = clientFor(startServer(200, '{}'))
+        enableBatching(client, 200, 150)
+
+        when:
+        Flux.merge((1..150).collect { client.getCountryFromIp("83.24.${it.intdiv(100)}.${it % 100}") }).collectList().block()
+
+        then:
+        batches*.size().sort() == [50, 100]
+
+        cleanup:
+        client.stop()
+    }
+
+    def "should fall back to Unknown without single lookups when the batch request fails"() {
+        given:
+        def client = clientFor(startServer(200, '{"status":"success","country":"Poland"}'))
+        batchStatus = 500
+        enableBatching(client, 50)
+
+        when:
+        def countries = Flux.merge((1..2).collect { client.getCountryFromIp("83.24.17.$it") }).collectList().block()
+
+        then:
+        countries == [GeoLocationClient.UNKNOWN_COUNTRY] * 2
+        batches.size() == 1
+        requests.get() == 0
+        meterRegistry.get("geolocation.batch.fallbacks").counter().count() == 1
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "http_error").counter().count() == 2
+
+        cleanup:
+        client.stop()
+    }
+
+    def "should count failed batches against the circuit and skip batches while it is open"() {
+        given:
+        def client = clientFor(startServer(200, '{}'))
+        batchStatus = 503
+        enableBatching(client, 10)
+
+        when:
+        4.times { client.getCountryFromIp("83.24.17.$it").block() }
+
+        then:
+        meterRegistry.get("geolocation.circuit.state").gauge().value() == GeoLocationCircuitBreaker.State.OPEN.ordinal()
+
+        when:
+        def country = client.getCountryFromIp("83.24.17.9").block()
+
+        then:
+        country == GeoLocationClient.UNKNOWN_COUNTRY
+        batches.size() == 4
+        requests.get() == 0
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "circuit_open").counter().count() == 1
+
+        cleanup:
+        client.stop()
+    }
+
+    def "should answer lookups still waiting for a batch when stopped"() {
+        given:
+        def client = clientFor(startServer(200, '{}'))
+        enableBatching(client, 60_000)
+        def country = client.getCountryFromIp("83.24.17.5").toFuture()
+
+        when:
+        client.stop()
+
+        then:
+        country.get(1, TimeUnit.SECONDS) == GeoLocationClient.UNKNOWN_COUNTRY
+        batches.isEmpty()
+    }
+
+    private String startServer(int status, String body) {
+        this.status = status
+        this.body = body
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/json/") { exchange ->
+            requests.incrementAndGet()
+            if (delayMs > 0) {
+                Thread.sleep(delayMs)
+            }
+            def bytes = this.body.getBytes(StandardCharsets.UTF_8)
+            exchange.responseHeaders.add("Content-Type", "application/json")
+            exchange.sendResponseHeaders(this.status, bytes.length)
+            exchange.responseBody.withCloseable { it.write(bytes) }
+        }
+        server.createContext("/batch") { exchange ->
+            List<String> ipAddresses = new ObjectMapper().readValue(exchange.requestBody, List)
+            batches << ipAddresses
+            def bytes = new ObjectMapper().writeValueAsBytes(ipAddresses.collect { batchResult(it) })
+            exchange.responseHeaders.add("Content-Type", "application/json")
+            exchange.sendResponseHeaders(batchStatus, bytes.length)
+            exchange.responseBody.withCloseable { it.write(bytes) }
+        }
+        server.executor = Executors.newCachedThreadPool()
+        server.start()
+        return "http://127.0.0.1:${server.address.port}"
+    }
+
+    private static Map<String, String> batchResult(String ipAddress) {
+        switch (ipAddress) {
+            case ~/83\..*/: return [status: "success", country: "Poland", query: ipAddress]
+            case ~/5\..*/: return [status: "success", country: "Germany", query: ipAddress]
+            default: return [status: "fail", message: "private range", query: ipAddress]
+        }
+    }
+
+    private static void enableBatching(HttpGeoLocationClient client, long maxWaitMs, int maxSize = 100) {
+        ReflectionTestUtils.setField(client, "batchEnabled", true)
+        ReflectionTestUtils.setField(client, "batchMaxSize", maxSize)
+        ReflectionTestUtils.setField(client, "batchMaxWaitMs", maxWaitMs)
+        ReflectionTestUtils.setField(client, "batchConcurrency", 2)
+        ReflectionTestUtils.setField(client, "batchQueueCapacity", 100)
+        client.start()
+    }
+
+    private HttpGeoLocationClient clientFor(String baseUrl) {
+        def cache = new GeoLocationCache(meterRegistry, false, 0, 0, 0)
+        // opens after 4 calls with half of them failed, probes with 3 calls after 10 s, at most 200 ms per call,
+        // two retries in the budget and none earned back
+        def circuitBreaker = new GeoLocationCircuitBreaker(meterRegistry, true, 4, 4, 0.5, 2000, 0.8, 10_000, 3,
+                50, 200, 3, 0, 2, { now })
+        def client = new HttpGeoLocationClient(WebClient.builder().baseUrl(baseUrl).build(), cache, circuitBreaker, meterRegistry)
+        ReflectionTestUtils.setField(client, "geoLocationBaseUrl", baseUrl)
+        ReflectionTestUtils.setField(client, "maxAttempts", 2)
+        ReflectionTestUtils.setField(client, "backoffMs", 10L)
+        return client
+    }
+}
@@ -0,0 +1,95 @@
+package com.empik.complaint.client
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.time.Instant
+
+class LocalGeoLocationClientTest extends Specification {
+
+    @TempDir
+    Path tempDir
+
+    Path databaseFile
+    LocalGeoLocationClient client
+
+    def setup() {
+        databaseFile = tempDir.resolve("geoip.csv")
+        writeDatabase("83.0.0.0/11,Poland", Instant.parse("2024-01-01T00:00:00Z"))
+        // reloads are triggered by hand, not by the background poller
+        client = new LocalGeoLocationClient(databaseFile, 0)
+        client.start()
+    }
+
+    def cleanup() {
+        client.stop()
+    }
+
+    def "should serve the replacement once the database file changes"() {
+        given:
+        writeDatabase("83.0.0.0/11,Germany\n5.0.0.0/8,France", Instant.parse("2024-01-02T00:00:00Z"))
+
+        when:
+        client.reloadIfModified()
+
+        then:
+        client.resolveCountry("83.1.2.3") == "Germany"
+        client.resolveCountry("5.1.2.3") == "France"
+    }
+
+    def "should keep the loaded database while the file is unchanged"() {
+        given: "new content with the old modification time"
+        writeDatabase("83.0.0.0/11,Germany", Instant.parse("2024-01-01T00:00:00Z"))
+
+        when:
+        client.reloadIfModified()
+
+        then:
+        client.resolveCountry("83.1.2.3") == "Poland"
+    }
+
+    def "should keep the previous database when the replacement is corrupt"() {
+        given:
+        writeDatabase("83.0.0.0,Germany", Instant.parse("2024-01-02T00:00:00Z"))
+
+        when:
+        client.reloadIfModified()
+
+        then:
+        noExceptionThrown()
+        client.resolveCountry("83.1.2.3") == "Poland"
+
+        when: "the file is fixed afterwards"
+        writeDatabase("83.0.0.0/11,Germany", Instant.parse("2024-01-03T00:00:00Z"))
+        client.reloadIfModified()
+
+        then:
+        client.resolveCountry("83.1.2.3") == "Germany"
+    }
+
+    def "should keep the previous database when the file disappears"() {
+        given:
+        Files.delete(databaseFile)
+
+        when:
+        client.reloadIfModified()
+
+        then:
+        noExceptionThrown()
+        client.resolveCountry("83.1.2.3") == "Poland"
+    }
+
+    def "should resolve addresses outside every range to the unknown country"() {
+        expect:
+        client.resolveCountry("10.0.0.1") == GeoLocationClient.UNKNOWN_COUNTRY
+        client.getCountryFromIp("83.1.2.3").block() == "Poland"
+    }
+
+    private void writeDatabase(String content, Instant modified) {
+        Files.writeString(databaseFile, content)
+        Files.setLastModifiedTime(databaseFile, FileTime.from(modified))
+    }
+}
@@ -0,0 +1,93 @@
+package com.empik.complaint.config
+
+import com.empik.complaint.client.GeoLocationCache
+import com.empik.complaint.client.GeoLocationCircuitBreaker
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.client.HttpGeoLocationClient
+import com.sun.net.httpserver.HttpServer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.test.util.ReflectionTestUtils
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Flux
+import reactor.netty.http.HttpProtocol
+import reactor.netty.resources.ConnectionProvider
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class WebClientConfigTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    WebClientConfig config = new WebClientConfig()
+    HttpServer server
+    ConnectionProvider connectionProvider
+    AtomicInteger requests = new AtomicInteger()
+
+    def cleanup() {
+        connectionProvider?.dispose()
+        server?.stop(0)
+    }
+
+    def "should size the geolocation pool as configured"() {
+        when:
+        connectionProvider = pool(7, 3, 100)
+
+        then:
+        connectionProvider.maxConnections() == 7
+    }
+
+    def "should fall back without opening the circuit when no pooled connection is free"() {
+        given: "one connection, one caller allowed to wait for it for 100 ms and a provider taking 500 ms"
+        def baseUrl = startServer(500)
+        connectionProvider = pool(1, 1, 100)
+        // any failure opens the circuit
+        def circuitBreaker = new GeoLocationCircuitBreaker(meterRegistry, true, 1, 1, 0.5, 2000, 0.8, 10_000, 1,
+                50, 2000, 3, 0, 2, System::nanoTime)
+        def client = client(baseUrl, circuitBreaker)
+
+        when:
+        def countries = Flux.merge(["83.24.17.5", "83.24.17.6", "83.24.17.7"].collect { client.getCountryFromIp(it) })
+                .collectList()
+                .block()
+
+        then: "the waiting caller timed out and the one beyond the queue was refused"
+        countries.sort() == ["Poland", GeoLocationClient.UNKNOWN_COUNTRY, GeoLocationClient.UNKNOWN_COUNTRY].sort()
+        requests.get() == 1
+        meterRegistry.get("geolocation.fallbacks").tag("reason", "pool_exhausted").counter().count() == 2
+        meterRegistry.get("geolocation.retries").counter().count() == 0
+        circuitBreaker.state() == GeoLocationCircuitBreaker.State.CLOSED
+    }
+
+    private ConnectionProvider pool(int maxConnections, int pendingAcquireMaxCount, long pendingAcquireTimeoutMs) {
+        config.geoLocationConnectionProvider(maxConnections, pendingAcquireMaxCount, pendingAcquireTimeoutMs,
+                30_000, 300_000, 60_000, false)
+    }
+
+    private HttpGeoLocationClient client(String baseUrl, GeoLocationCircuitBreaker circuitBreaker) {
+        ReflectionTestUtils.setField(config, "geoLocationBaseUrl", baseUrl)
+        def webClient = config.geoLocationWebClient(WebClient.builder(), connectionProvider, [HttpProtocol.HTTP11] as HttpProtocol[])
+        def client = new HttpGeoLocationClient(webClient, new GeoLocationCache(meterRegistry, false, 0, 0, 0),
+                circuitBreaker, meterRegistry)
+        ReflectionTestUtils.setField(client, "geoLocationBaseUrl", baseUrl)
+        ReflectionTestUtils.setField(client, "maxAttempts", 2)
+        ReflectionTestUtils.setField(client, "backoffMs", 10L)
+        return client
+    }
+
+    private String startServer(long delayMs) {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/json/") { exchange ->
+            requests.incrementAndGet()
+            Thread.sleep(delayMs)
+            def bytes = '{"status":"success","country":"Poland"}'.getBytes(StandardCharsets.UTF_8)
+            exchange.responseHeaders.add("Content-Type", "application/json")
+            exchange.sendResponseHeaders(200, bytes.length)
+            exchange.responseBody.withCloseable { it.write(bytes) }
+        }
+        server.executor = Executors.newCachedThreadPool()
+        server.start()
+        return "http://127.0.0.1:${server.address.port}"
+    }
+}
@@ -0,0 +1,229 @@
+package com.empik.complaint.repository
+
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import org.bson.BsonBinarySubType
+import org.bson.Document
+import org.bson.types.Binary
+import org.bson.types.ObjectId
+import org.spockframework.spring.SpringBean
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.data.domain.Sort.Direction
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate
+import org.springframework.data.mongodb.core.index.Index
+import org.springframework.data.mongodb.core.index.TextIndexDefinition.TextIndexDefinitionBuilder
+import org.springframework.data.mongodb.core.query.Query
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import org.testcontainers.containers.MongoDBContainer
+import org.testcontainers.junit.jupiter.Container
+import org.testcontainers.junit.jupiter.Testcontainers
+import org.testcontainers.utility.DockerImageName
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.time.YearMonth
+import java.time.ZoneId
+
+@SpringBootTest(properties = ["application.storage.compact=true", "application.storage.migrate-on-startup=false"])
+@Testcontainers
+class CompactStorageTest extends Specification {
+
+    static final String PRODUCT_ID = "31f871b0-321f-4063-88b2-b4aeca45adf0"
+    static final String COMPLAINANT_ID = "2a0863a2-563f-4a6c-abd3-5305bbfa6436"
+    static final LocalDateTime CREATED = LocalDateTime.of(2025, 5, 10, 14, 30)
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> {
+            if (!mongoDBContainer.isRunning()) {
+                mongoDBContainer.start()
+            }
+            return mongoDBContainer.getReplicaSetUrl()
+        })
+    }
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate
+
+    @Autowired
+    ComplaintRepository complaintRepository
+
+    @Autowired
+    ComplaintIndexInitializer complaintIndexInitializer
+
+    @Autowired
+    ComplaintStorageMigration complaintStorageMigration
+
+    @SpringBean
+    GeoLocationClient geoLocationClient = Stub(GeoLocationClient)
+
+    def setup() {
+        complaintRepository.deleteAll().block()
+        mongoTemplate.indexOps("complaints").dropAllIndexes().block()
+        mongoTemplate.getCollectionNames()
+                .filter { it.startsWith(ComplaintArchive.PARTITION_PREFIX) }
+                .concatMap { mongoTemplate.dropCollection(it) }
+                .blockLast()
+        complaintIndexInitializer.ensureIndexes().block()
+    }
+
+    def "should store complaints with short field names and binary UUIDs"() {
+        when:
+        complaintRepository.upsertComplaint(complaint(PRODUCT_ID, COMPLAINANT_ID)).block()
+        complaintRepository.upsertComplaint(complaint(PRODUCT_ID, COMPLAINANT_ID)).block()
+        def stored = rawComplaints()[0]
+
+        then:
+        stored.keySet() - ["_id", "_class"] == ["p", "c", "t", "d", "g", "n", "a"] as Set
+        (stored.get("p") as Binary).type == BsonBinarySubType.UUID_STANDARD.value
+        stored.get("n") == 2
+
+        and:
+        def found = complaintRepository.findByFilters(PRODUCT_ID, null, null, null, 0, 10).collectList().block()
+        found*.productId == [PRODUCT_ID]
+        found*.complainantId == [COMPLAINANT_ID]
+        found*.counter == [2]
+    }
+
+    def "should keep IDs that are not UUIDs as strings"() {
+        when:
+        complaintRepository.upsertComplaint(complaint("product-1", COMPLAINANT_ID)).block()
+
+        then:
+        rawComplaints()[0].get("p") == "product-1"
+        complaintRepository.findByProductIdAndComplainantId("product-1", COMPLAINANT_ID).block().counter == 1
+    }
+
+    def "should map raw aggregation stages and projections to the compact fields"() {
+        given:
+        def saved = complaintRepository.upsertComplaint(complaint(PRODUCT_ID, COMPLAINANT_ID)).block()
+        complaintRepository.incrementCounters([new CounterIncrement(PRODUCT_ID, COMPLAINANT_ID, 4)]).block()
+
+        when:
+        def stats = complaintRepository.aggregateByFilters(null, null, null, null,
+                [ComplaintStats.Dimension.PRODUCT] as Set, ComplaintStats.Bucket.DAY).collectList().block()
+        def summary = complaintRepository.findSummaryById(saved.id).block()
+
+        then:
+        stats == [new ComplaintStats(PRODUCT_ID, null, CREATED.toLocalDate().atStartOfDay(), 1, 5)]
+        summary.productId == PRODUCT_ID
+        summary.content == "Broken"
+        summary.complainantId == null
+    }
+
+    def "should migrate complaints stored in the original format"() {
+        given:
+        def id = insertOriginal(PRODUCT_ID, "customer-1", 3)
+
+        when:
+        def migrated = complaintStorageMigration.migrate().block()
+        def again = complaintStorageMigration.migrate().block()
+
+        then:
+        migrated == 1
+        again == 0
+        rawComplaints()[0].keySet() == ["_id", "p", "t", "d", "c", "g", "n"] as Set
+        with(complaintRepository.findById(id.toHexString()).block()) {
+            productId == PRODUCT_ID
+            complainantId == "customer-1"
+            creationDate == CREATED
+            counter == 3
+        }
+        mongoTemplate.indexOps(Complaint).getIndexInfo().map { it.name }.collectList().block()
+                .contains("idx_product_complainant_compact")
+    }
+
+    def "should replace the original indexes only once the rewrite is done"() {
+        given: "a collection in the original format with its indexes"
+        def indexOperations = mongoTemplate.indexOps("complaints")
+        indexOperations.dropAllIndexes().block()
+        indexOperations.ensureIndex(new Index().on("productId", Direction.ASC).on("complainantId", Direction.ASC)
+                .unique().named("idx_product_complainant")).block()
+        indexOperations.ensureIndex(new Index().on("productId", Direction.ASC).on("creationDate", Direction.ASC)
+                .on("_id", Direction.ASC).named("idx_product_creation")).block()
+        indexOperations.ensureIndex(new TextIndexDefinitionBuilder().onField("content").build()).block()
+        insertOriginal("product-1", "customer-1", 1)
+        insertOriginal("product-2", "customer-1", 1)
+        insertOriginal("product-2", "customer-2", 1)
+
+        when:
+        def migrated = complaintStorageMigration.migrate().block()
+        def indexes = indexOperations.getIndexInfo().collectList().block()
+
+        then:
+        migrated == 3
+        indexes*.name.containsAll(["idx_product_complainant_compact", "idx_product_creation_compact"])
+        !indexes*.name.any { it in ["idx_product_complainant", "idx_product_creation", "idx_migration_complainant_product"] }
+        indexes.find { it.name == "idx_product_complainant_compact" }.unique
+        indexes.findAll { index -> index.indexFields.any { it.text } }.collectMany { it.indexFields*.key } == ["t"]
+
+        when: "a duplicate of a migrated pair comes in"
+        def duplicate = complaintRepository.upsertComplaint(complaint("product-2", "customer-1")).block()
+
+        then:
+        duplicate.counter == 2
+        rawComplaints().size() == 3
+    }
+
+    def "should migrate archive partitions stored in the original format"() {
+        given: "a partition in the original format with its unique index"
+        def partition = ComplaintArchive.partitionName(YearMonth.from(CREATED))
+        mongoTemplate.indexOps(partition).ensureIndex(new Index().on("productId", Direction.ASC).on("complainantId", Direction.ASC)
+                .unique().named("idx_product_complainant")).block()
+        def id = insertOriginal(PRODUCT_ID, "customer-1", 2, partition)
+        insertOriginal(PRODUCT_ID, "customer-2", 1, partition)
+
+        when:
+        def migrated = complaintStorageMigration.migrate().block()
+        def uniqueIndex = mongoTemplate.indexOps(partition).getIndexInfo()
+                .filter { it.name == "idx_product_complainant" }.blockFirst()
+
+        then:
+        migrated == 2
+        mongoTemplate.find(new Query(), Document, partition).collectList().block()*.keySet()
+                .every { it == ["_id", "p", "t", "d", "c", "g", "n"] as Set }
+        uniqueIndex.unique
+        uniqueIndex.indexFields*.key == ["p", "c"]
+        with(mongoTemplate.findById(id.toHexString(), Complaint, partition).block()) {
+            productId == PRODUCT_ID
+            complainantId == "customer-1"
+            counter == 2
+        }
+        complaintStorageMigration.migrate().block() == 0
+    }
+
+    private ObjectId insertOriginal(String productId, String complainantId, int counter, String collection = "complaints") {
+        def id = new ObjectId()
+        mongoTemplate.getCollection(collection).flatMap { collection ->
+            Mono.from(collection.insertOne(new Document("_id", id)
+                    .append("productId", productId)
+                    .append("content", "Broken")
+                    .append("creationDate", Date.from(CREATED.atZone(ZoneId.systemDefault()).toInstant()))
+                    .append("complainantId", complainantId)
+                    .append("country", "Poland")
+                    .append("counter", counter)))
+        }.block()
+        return id
+    }
+
+    private List<Document> rawComplaints() {
+        mongoTemplate.find(new Query(), Document, "complaints").collectList().block()
+    }
+
+    private static Complaint complaint(String productId, String complainantId) {
+        Complaint.builder()
+                .productId(productId)
+                .complainantId(complainantId)
+                .content("Broken")
+                .creationDate(CREATED)
+                .country("Poland")
+                .counter(1)
+                .build()
+    }
+}
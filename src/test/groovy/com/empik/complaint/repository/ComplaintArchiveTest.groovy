@@ -0,0 +1,314 @@
+package com.empik.complaint.repository
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.service.BulkItemResult
+import com.empik.complaint.service.ComplaintArchiver
+import com.empik.complaint.service.ComplaintBulkService
+import com.empik.complaint.service.ComplaintService
+import org.spockframework.spring.SpringBean
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate
+import org.springframework.data.mongodb.core.query.Criteria
+import org.springframework.data.mongodb.core.query.Query
+import org.springframework.data.mongodb.core.query.Update
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import org.testcontainers.containers.MongoDBContainer
+import org.testcontainers.junit.jupiter.Container
+import org.testcontainers.junit.jupiter.Testcontainers
+import org.testcontainers.utility.DockerImageName
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.LocalDateTime
+import java.time.YearMonth
+import java.util.concurrent.TimeUnit
+
+@SpringBootTest(properties = ["application.archive.batch-size=2", "application.archive.batch-delay-ms=0"])
+@Testcontainers
+class ComplaintArchiveTest extends Specification {
+
+    static final LocalDateTime JANUARY = LocalDateTime.now().minusYears(2).withMonth(1).withDayOfMonth(15).withNano(0)
+    static final LocalDateTime FEBRUARY = JANUARY.plusMonths(1)
+    static final LocalDateTime RECENT = LocalDateTime.now().minusDays(1).withNano(0)
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> {
+            if (!mongoDBContainer.isRunning()) {
+                mongoDBContainer.start()
+            }
+            return mongoDBContainer.getReplicaSetUrl()
+        })
+    }
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate
+
+    @Autowired
+    ComplaintRepository complaintRepository
+
+    @Autowired
+    ComplaintArchive complaintArchive
+
+    @Autowired
+    ComplaintArchiver complaintArchiver
+
+    @Autowired
+    ComplaintService complaintService
+
+    @Autowired
+    ComplaintBulkService complaintBulkService
+
+    @Autowired
+    ComplaintIndexInitializer complaintIndexInitializer
+
+    @SpringBean
+    GeoLocationClient geoLocationClient = Stub(GeoLocationClient) {
+        getCountryFromIp(_) >> Mono.just("Poland")
+    }
+
+    def setup() {
+        complaintRepository.deleteAll().block()
+        mongoTemplate.getCollectionNames()
+                .filter { it.startsWith(ComplaintArchive.PARTITION_PREFIX) || it == ComplaintArchive.KEYS_COLLECTION }
+                .concatMap { mongoTemplate.dropCollection(it) }
+                .blockLast()
+        complaintArchive.refreshPartitions().block()
+        complaintIndexInitializer.ensureIndexes().block()
+    }
+
+    def "should move old complaints into monthly partitions in chunks"() {
+        given:
+        save("product-1", "customer-1", JANUARY)
+        save("product-1", "customer-2", FEBRUARY)
+        save("product-2", "customer-1", FEBRUARY.plusDays(1))
+        save("product-1", "customer-3", RECENT)
+        save("product-1", "customer-4", JANUARY, RECENT)
+
+        when:
+        def moved = complaintArchiver.archive().block()
+
+        then:
+        moved == 3
+        liveComplaints()*.complainantId as Set == ["customer-3", "customer-4"] as Set
+        archived(JANUARY)*.complainantId == ["customer-1"]
+        archived(FEBRUARY)*.complainantId as Set == ["customer-2", "customer-1"] as Set
+        complaintArchive.partitionsOverlapping(null, null) == [partition(JANUARY), partition(FEBRUARY)]
+    }
+
+    def "should read only the partitions overlapping the date range"() {
+        given:
+        save("product-1", "customer-1", JANUARY)
+        save("product-1", "customer-2", FEBRUARY)
+        save("product-1", "customer-3", RECENT)
+        complaintArchiver.archive().block()
+
+        expect:
+        complaintArchive.partitionsOverlapping(FEBRUARY.minusDays(1), null) == [partition(FEBRUARY)]
+        complaintArchive.partitionsOverlapping(RECENT.minusDays(1), null) == []
+
+        complaintRepository.findByFilters("product-1", null, null, null, 0, 10)
+                .map { it.complainantId }.collectList().block() == ["customer-1", "customer-2", "customer-3"]
+        complaintRepository.findByFilters("product-1", null, null, null, 1, 2)
+                .map { it.complainantId }.collectList().block() == ["customer-3"]
+        complaintRepository.findByFilters(null, null, FEBRUARY.minusDays(1), null, 0, 10)
+                .map { it.complainantId }.collectList().block() == ["customer-2", "customer-3"]
+        complaintRepository.streamByFilters(null, null, null, null, 1, "complainantId")
+                .map { it.complainantId }.collectList().block() == ["customer-1", "customer-2", "customer-3"]
+        complaintRepository.aggregateByFilters(null, null, null, FEBRUARY.plusDays(1), [] as Set, null)
+                .collectList().block() == [new ComplaintStats(null, null, null, 2, 2)]
+    }
+
+    def "should restore an archived complaint when its pair is created again"() {
+        given:
+        def original = save("product-1", "customer-1", JANUARY)
+        complaintArchiver.archive().block()
+
+        expect:
+        complaintService.getComplaintById(original.id).block().creationDate == JANUARY
+
+        when:
+        def created = complaintService.createComplaint(new ComplaintCreateRequest("product-1", "Again", "customer-1"), "1.2.3.4").block()
+
+        then:
+        created.id == original.id
+        created.counter == 2
+        created.content == "Broken"
+        liveComplaints()*.id == [original.id]
+        archived(JANUARY).isEmpty()
+        mongoTemplate.count(new Query(), ComplaintArchive.KEYS_COLLECTION).block() == 0
+    }
+
+    def "should restore archived complaints before a content update or bulk create"() {
+        given:
+        def updated = save("product-1", "customer-1", JANUARY)
+        save("product-2", "customer-1", JANUARY)
+        complaintArchiver.archive().block()
+
+        when:
+        complaintService.updateComplaintContent(updated.id, "Still broken", "1.2.3.4").block()
+        def results = complaintBulkService.createComplaints(
+                Flux.just(new ComplaintCreateRequest("product-2", "Again", "customer-1")), "1.2.3.4").collectList().block()
+
+        then:
+        results*.status == [BulkItemResult.Status.INCREMENTED]
+        with(complaintRepository.findById(updated.id).block()) {
+            content == "Still broken"
+            counter == 1
+        }
+        complaintRepository.findByProductIdAndComplainantId("product-2", "customer-1").block().counter == 2
+        archived(JANUARY).isEmpty()
+    }
+
+    def "should restore archived complaints whose counter increments were flushed"() {
+        given:
+        save("product-1", "customer-1", JANUARY)
+        complaintArchiver.archive().block()
+
+        when:
+        complaintRepository.incrementCounters([new CounterIncrement("product-1", "customer-1", 3)]).block()
+
+        then:
+        with(complaintRepository.findByProductIdAndComplainantId("product-1", "customer-1").block()) {
+            counter == 4
+            updateDate == null
+            lastActivityDate.isAfter(RECENT)
+        }
+        archived(JANUARY).isEmpty()
+
+        when:
+        def moved = complaintArchiver.archive().block()
+
+        then: "the increment dated its activity, so it is not archived again"
+        moved == 0
+    }
+
+    def "should keep complaints incremented by any write path live without touching their update date"() {
+        given:
+        save("product-1", "customer-1", JANUARY)
+        save("product-2", "customer-1", JANUARY)
+        save("product-3", "customer-1", JANUARY)
+        save("product-4", "customer-1", JANUARY)
+
+        when: "single and bulk upserts, a direct increment and a flushed increment"
+        complaintRepository.upsertComplaint(Complaint.builder().productId("product-1").complainantId("customer-1")
+                .content("Again").country("Poland").build()).block()
+        complaintRepository.bulkUpsertComplaints([Complaint.builder().productId("product-2").complainantId("customer-1")
+                .content("Again").country("Poland").build()]).block()
+        complaintRepository.incrementCounter("product-3", "customer-1").block()
+        complaintRepository.incrementCounters([new CounterIncrement("product-4", "customer-1", 1)]).block()
+        def moved = complaintArchiver.archive().block()
+
+        then:
+        moved == 0
+        liveComplaints().every { it.counter == 2 && it.updateDate == null && it.lastActivityDate.isAfter(RECENT) }
+    }
+
+    def "should finish a restore that failed after writing the live complaint"() {
+        given: "a restore claimed the pair, wrote the live complaint with its increment and died"
+        def original = save("product-1", "customer-1", JANUARY)
+        complaintArchiver.archive().block()
+        claim("product-1", "customer-1", LocalDateTime.now().minusMinutes(1))
+        mongoTemplate.insert(original.toBuilder().counter(2).build()).block()
+
+        expect: "reads see the complaint once"
+        complaintRepository.findByFilters("product-1", null, null, null, 0, 10).collectList().block()*.id == [original.id]
+
+        when: "the next restore takes over the expired claim"
+        def restored = complaintArchive.restoreByPair("product-1", "customer-1", 1).block()
+
+        then: "the increment of the failed restore is not applied again"
+        restored.id == original.id
+        restored.counter == 3
+        liveComplaints()*.id == [original.id]
+        archived(JANUARY).isEmpty()
+        mongoTemplate.count(new Query(), ComplaintArchive.KEYS_COLLECTION).block() == 0
+    }
+
+    def "should wait for a restore in progress instead of restoring twice"() {
+        given:
+        save("product-1", "customer-1", JANUARY)
+        complaintArchiver.archive().block()
+        claim("product-1", "customer-1", LocalDateTime.now().plusMinutes(1))
+
+        when:
+        def waiting = complaintArchive.restoreByPair("product-1", "customer-1", 1).toFuture()
+        Thread.sleep(100)
+
+        then:
+        !waiting.isDone()
+
+        when: "the other restore finishes"
+        mongoTemplate.remove(new Query(), ComplaintArchive.KEYS_COLLECTION).block()
+
+        then: "there is nothing left to restore"
+        waiting.get(2, TimeUnit.SECONDS) == null
+        archived(JANUARY).size() == 1
+    }
+
+    def "should stream moves and restores as archive events rather than deletions and creates"() {
+        given:
+        def received = [].asSynchronized()
+        def subscription = complaintRepository.watchChanges(null).subscribe { received << it }
+
+        and: "the change stream is open once a probe complaint shows up"
+        new PollingConditions(timeout: 10, delay: 0.2).eventually {
+            save("probe-${UUID.randomUUID()}", "customer-0", RECENT)
+            assert received.any { it.type() == ComplaintEvent.Type.CREATED }
+        }
+        def original = save("product-1", "customer-1", JANUARY)
+
+        when:
+        complaintArchiver.archive().block()
+        complaintService.createComplaint(new ComplaintCreateRequest("product-1", "Again", "customer-1"), "1.2.3.4").block()
+        complaintRepository.deleteById(original.id).block()
+
+        then:
+        new PollingConditions(timeout: 10).eventually {
+            assert received.findAll { it.complaintId() == original.id }*.type() == [ComplaintEvent.Type.CREATED,
+                    ComplaintEvent.Type.ARCHIVED, ComplaintEvent.Type.RESTORED, ComplaintEvent.Type.DELETED]
+        }
+
+        cleanup:
+        subscription?.dispose()
+    }
+
+    private void claim(String productId, String complainantId, LocalDateTime expiresAt) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(productId + '\u0000' + complainantId)),
+                Update.update("restoringBy", "another-restore").set("restoreExpiresAt", expiresAt),
+                ComplaintArchive.KEYS_COLLECTION).block()
+    }
+
+    private Complaint save(String productId, String complainantId, LocalDateTime creationDate, LocalDateTime updateDate = null) {
+        complaintRepository.save(Complaint.builder()
+                .productId(productId)
+                .complainantId(complainantId)
+                .content("Broken")
+                .creationDate(creationDate)
+                .updateDate(updateDate)
+                .country("Poland")
+                .counter(1)
+                .build()).block()
+    }
+
+    private List<Complaint> liveComplaints() {
+        mongoTemplate.findAll(Complaint).collectList().block()
+    }
+
+    private List<Complaint> archived(LocalDateTime month) {
+        mongoTemplate.findAll(Complaint, partition(month)).collectList().block()
+    }
+
+    private static String partition(LocalDateTime month) {
+        ComplaintArchive.partitionName(YearMonth.from(month))
+    }
+}
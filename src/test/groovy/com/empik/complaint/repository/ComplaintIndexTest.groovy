@@ -0,0 +1,155 @@
+package com.empik.complaint.repository
+
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.model.ComplaintCursor
+import org.bson.Document
+import org.spockframework.spring.SpringBean
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate
+import org.springframework.data.mongodb.core.convert.QueryMapper
+import org.springframework.data.mongodb.core.query.Query
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import org.testcontainers.containers.MongoDBContainer
+import org.testcontainers.junit.jupiter.Container
+import org.testcontainers.junit.jupiter.Testcontainers
+import org.testcontainers.utility.DockerImageName
+import reactor.core.publisher.Mono
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.LocalDateTime
+
+@SpringBootTest
+@Testcontainers
+class ComplaintIndexTest extends Specification {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
+
+    @Shared
+    LocalDateTime now = LocalDateTime.now()
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> {
+            if (!mongoDBContainer.isRunning()) {
+                mongoDBContainer.start()
+            }
+            return mongoDBContainer.getReplicaSetUrl()
+        })
+    }
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate
+
+    @Autowired
+    ComplaintRepository complaintRepository
+
+    @Autowired
+    ComplaintIndexInitializer complaintIndexInitializer
+
+    @SpringBean
+    GeoLocationClient geoLocationClient = Stub(GeoLocationClient)
+
+    def setup() {
+        complaintRepository.deleteAll().block()
+        complaintIndexInitializer.ensureIndexes().block()
+        def complaints = (0..<500).collect { i ->
+            Complaint.builder()
+                    .productId("product-${i % 20}")
+                    .complainantId("customer-${i % 50}-${i}")
+                    .content("Content ${i}")
+                    .creationDate(now.minusMinutes(i))
+                    .country("Poland")
+                    .build()
+        }
+        complaintRepository.saveAll(complaints).blockLast()
+    }
+
+    def "should create all declared indexes"() {
+        when:
+        def indexNames = mongoTemplate.indexOps(Complaint).getIndexInfo().map { it.name }.collectList().block()
+
+        then:
+        indexNames.containsAll(["idx_product_complainant", "idx_product_creation", "idx_complainant_creation", "idx_creation"])
+    }
+
+    def "should build the unique index before startup completes and the text index in the background"() {
+        given:
+        mongoTemplate.indexOps(Complaint).dropAllIndexes().block()
+
+        when:
+        complaintIndexInitializer.afterSingletonsInstantiated()
+
+        then:
+        mongoTemplate.indexOps(Complaint).getIndexInfo().collectList().block()
+                .find { it.name == "idx_product_complainant" }?.unique
+        new PollingConditions(timeout: 10).eventually {
+            assert mongoTemplate.indexOps(Complaint).getIndexInfo().collectList().block()
+                    .any { index -> index.indexFields.any { it.text } }
+            assert complaintIndexInitializer.isSearchReady()
+        }
+    }
+
+    def "should fail startup when the unique index cannot be built"() {
+        given: "the same pair stored twice while the index was missing"
+        mongoTemplate.indexOps(Complaint).dropAllIndexes().block()
+        2.times {
+            mongoTemplate.insert(new Document("productId", "product-1").append("complainantId", "customer-1")
+                    .append("content", "Broken").append("counter", 1), "complaints").block()
+        }
+
+        when:
+        complaintIndexInitializer.afterSingletonsInstantiated()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should not fall back to a collection scan for filters #filters"() {
+        given:
+        def (productId, complainantId, fromDate, toDate, cursor) = filters
+        def query = Query.query(ComplaintRepositoryImpl.filterCriteria(productId, complainantId, fromDate, toDate, cursor))
+                .with(ComplaintRepositoryImpl.CURSOR_ORDER)
+                .limit(10)
+
+        when:
+        def plan = explain(query)
+
+        then:
+        !stages(plan.get("queryPlanner", Document).get("winningPlan", Document)).contains("COLLSCAN")
+
+        where:
+        filters << [
+                [null, "product-3"],
+                [null, "customer-7-7"],
+                [null, now.minusHours(2)],
+                [null, now.minusHours(1)],
+                [null, new ComplaintCursor(now.minusHours(3), "663e71f9a1a34d4a99a6c458")]
+        ].combinations()
+    }
+
+    private Document explain(Query query) {
+        def mapper = new QueryMapper(mongoTemplate.converter)
+        def entity = mongoTemplate.converter.mappingContext.getRequiredPersistentEntity(Complaint)
+        def filter = mapper.getMappedObject(query.queryObject, entity)
+        def sort = mapper.getMappedSort(query.sortObject, entity)
+
+        return mongoTemplate.getCollection("complaints")
+                .flatMap { collection -> Mono.from(collection.find(filter).sort(sort).limit(query.limit).explain(Document)) }
+                .block()
+    }
+
+    private static List<String> stages(Document plan) {
+        def stages = [plan.getString("stage")]
+        if (plan.containsKey("inputStage")) {
+            stages += stages(plan.get("inputStage", Document))
+        }
+        plan.getList("inputStages", Document, []).each { stages += stages(it) }
+        return stages
+    }
+}
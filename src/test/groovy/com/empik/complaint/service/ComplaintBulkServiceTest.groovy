@@ -0,0 +1,134 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.repository.BulkUpsertResult
+import com.empik.complaint.repository.ComplaintRepository
+import jakarta.validation.Validation
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import static com.empik.complaint.service.BulkItemResult.Status.CREATED
+import static com.empik.complaint.service.BulkItemResult.Status.INCREMENTED
+import static com.empik.complaint.service.BulkItemResult.Status.REJECTED
+
+class ComplaintBulkServiceTest extends Specification {
+
+    ComplaintRepository complaintRepository = Mock(ComplaintRepository)
+    GeoLocationClient geoLocationClient = Mock(GeoLocationClient)
+    CountryEnrichmentPipeline countryEnrichmentPipeline = Mock(CountryEnrichmentPipeline)
+    ComplaintCache complaintCache = Mock(ComplaintCache)
+    ComplaintBulkService complaintBulkService
+
+    def setup() {
+        complaintBulkService = new ComplaintBulkService(complaintRepository, geoLocationClient, countryEnrichmentPipeline, complaintCache,
+                Mock(ComplaintStatsService), Validation.buildDefaultValidatorFactory().validator)
+        complaintBulkService.batchSize = 500
+    }
+
+    def "should fold duplicates into one upsert per pair and report a result per submitted item"() {
+        given:
+        def requests = Flux.just(
+                new ComplaintCreateRequest("product-1", "Broken", "customer-1"),
+                new ComplaintCreateRequest("product-2", "Cracked", "customer-1"),
+                new ComplaintCreateRequest("product-1", "Still broken", "customer-1"),
+                new ComplaintCreateRequest("product-3", "Late", "customer-2"))
+        List<Complaint> written = null
+
+        when:
+        def results = complaintBulkService.createComplaints(requests, "10.0.0.1").collectList().block()
+
+        then:
+        1 * geoLocationClient.getCountryFromIp("10.0.0.1") >> Mono.just("Poland")
+        1 * complaintRepository.bulkUpsertComplaints(_ as List) >> { arguments ->
+            written = arguments[0]
+            Mono.just(new BulkUpsertResult([0: "id-1", 2: "id-3"], [:]))
+        }
+        written*.productId == ["product-1", "product-2", "product-3"]
+        written*.counter == [2, 1, 1]
+        written*.content == ["Broken", "Cracked", "Late"]
+        written.every { it.country == "Poland" }
+        1 * complaintCache.invalidate("product-2", "customer-1")
+        0 * complaintCache.invalidate(*_)
+
+        results*.index == [0L, 1L, 2L, 3L]
+        results*.status == [CREATED, INCREMENTED, INCREMENTED, CREATED]
+        results*.id == ["id-1", null, "id-1", "id-3"]
+    }
+
+    def "should reject invalid items without writing them"() {
+        given:
+        def requests = Flux.just(
+                new ComplaintCreateRequest("product-1", "", "customer-1"),
+                new ComplaintCreateRequest("product-2", "Cracked", "customer-1"))
+
+        when:
+        def results = complaintBulkService.createComplaints(requests, "10.0.0.1").collectList().block()
+
+        then:
+        1 * geoLocationClient.getCountryFromIp(_) >> Mono.just("Poland")
+        1 * complaintRepository.bulkUpsertComplaints({ it*.productId == ["product-2"] }) >>
+                Mono.just(new BulkUpsertResult([0: "id-2"], [:]))
+        results*.status == [REJECTED, CREATED]
+        results[0].error == "Content is required"
+    }
+
+    def "should report write errors for every item of the failed pair"() {
+        given:
+        def requests = Flux.just(
+                new ComplaintCreateRequest("product-1", "Broken", "customer-1"),
+                new ComplaintCreateRequest("product-1", "Broken", "customer-1"))
+
+        when:
+        def results = complaintBulkService.createComplaints(requests, "10.0.0.1").collectList().block()
+
+        then:
+        1 * geoLocationClient.getCountryFromIp(_) >> Mono.just("Poland")
+        1 * complaintRepository.bulkUpsertComplaints(_) >> Mono.just(new BulkUpsertResult([:], [0: "write failed"]))
+        results*.status == [REJECTED, REJECTED]
+        results*.error == ["write failed", "write failed"]
+    }
+
+    def "should resolve the country once for all chunks of a submission"() {
+        given:
+        complaintBulkService.batchSize = 2
+        def requests = Flux.range(0, 6).map { new ComplaintCreateRequest("product-$it", "Broken", "customer-1") }
+
+        when:
+        def results = complaintBulkService.createComplaints(requests, "10.0.0.1").collectList().block()
+
+        then:
+        1 * geoLocationClient.getCountryFromIp("10.0.0.1") >> Mono.just("Poland")
+        3 * complaintRepository.bulkUpsertComplaints({ it.size() == 2 }) >> Mono.just(new BulkUpsertResult([0: "a", 1: "b"], [:]))
+        results.size() == 6
+        results.every { it.status == CREATED }
+    }
+
+    def "should save pending country and hand inserted complaints to the enrichment pipeline when async enrichment is enabled"() {
+        given:
+        countryEnrichmentPipeline.isEnabled() >> true
+        def requests = Flux.just(new ComplaintCreateRequest("product-1", "Broken", "customer-1"))
+
+        when:
+        complaintBulkService.createComplaints(requests, "10.0.0.1").collectList().block()
+
+        then:
+        0 * geoLocationClient.getCountryFromIp(_)
+        1 * complaintRepository.bulkUpsertComplaints({ it[0].country == CountryEnrichmentPipeline.PENDING_COUNTRY && it[0].pendingIpAddress == "10.0.0.1" }) >>
+                Mono.just(new BulkUpsertResult([0: "id-1"], [:]))
+        1 * countryEnrichmentPipeline.submit("id-1", "10.0.0.1")
+    }
+
+    def "should not call geolocation when every item is invalid"() {
+        when:
+        def results = complaintBulkService.createComplaints(Flux.just(new ComplaintCreateRequest(null, null, null)), "10.0.0.1")
+                .collectList().block()
+
+        then:
+        0 * geoLocationClient.getCountryFromIp(_)
+        0 * complaintRepository.bulkUpsertComplaints(_)
+        results*.status == [REJECTED]
+    }
+}
@@ -0,0 +1,169 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.model.Complaint
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.LocalDateTime
+import java.util.concurrent.atomic.AtomicInteger
+
+import static com.empik.complaint.service.ComplaintCache.ExpirationPolicy.ACCESS
+import static com.empik.complaint.service.ComplaintCache.ExpirationPolicy.WRITE
+
+class ComplaintCacheTest extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    AtomicInteger loads = new AtomicInteger()
+
+    def "should load a complaint once and report hits"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 1_000, WRITE)
+
+        when:
+        def results = (1..4).collect { cache.get("id-1", loader(complaint("id-1"))).block() }
+
+        then:
+        results.every { it.id == "id-1" }
+        loads.get() == 1
+        meterRegistry.get("cache.gets").tag("cache", "complaints").tag("result", "hit").functionCounter().count() == 3
+        meterRegistry.get("complaint.cache.hit.ratio").gauge().value() == 0.75d
+        meterRegistry.get("complaint.cache.weight").gauge().value() > 0
+    }
+
+    def "should cache missing complaints for the negative ttl only"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 50, WRITE)
+
+        when:
+        def first = cache.get("missing", loader(null)).block()
+        def second = cache.get("missing", loader(null)).block()
+        sleep(200)
+        cache.get("missing", loader(null)).block()
+
+        then:
+        first == null
+        second == null
+        loads.get() == 2
+    }
+
+    def "should return written complaints without loading"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 1_000, WRITE)
+        cache.get("id-1", loader(null)).block()
+
+        when:
+        cache.put(complaint("id-1"))
+
+        then:
+        cache.get("id-1", loader(null)).block().id == "id-1"
+        loads.get() == 1
+    }
+
+    def "should invalidate by product and complainant pair"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 1_000, WRITE)
+        cache.put(complaint("id-1"))
+
+        when:
+        cache.invalidate("product-1", "customer-1")
+        cache.get("id-1", loader(complaint("id-1"))).block()
+
+        then:
+        loads.get() == 1
+    }
+
+    def "should keep frequently read complaints when expiring after access"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 300, 1_000, policy)
+        cache.put(complaint("id-1"))
+
+        when:
+        4.times {
+            sleep(100)
+            cache.get("id-1", loader(complaint("id-1"))).block()
+        }
+
+        then:
+        loads.get() == expectedLoads
+
+        where:
+        policy | expectedLoads
+        ACCESS | 0
+        WRITE  | 1
+    }
+
+    def "should evict entries beyond the weight bound"() {
+        given:
+        def entryWeight = ComplaintCache.estimateBytes("id-0", Optional.of(complaint("id-0")))
+        def cache = new ComplaintCache(meterRegistry, true, entryWeight * 10, 60_000, 1_000, WRITE)
+
+        when:
+        (0..<100).each { cache.put(complaint("id-$it")) }
+
+        then: "eviction runs asynchronously after the writes"
+        new PollingConditions(timeout: 2).eventually {
+            assert meterRegistry.get("complaint.cache.weight").gauge().value() <= entryWeight * 10
+        }
+    }
+
+    def "should ignore puts older than the cached complaint"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 1_000, WRITE)
+        def updated = LocalDateTime.of(2025, 5, 10, 14, 30)
+        cache.put(complaint("id-1").toBuilder().counter(3).updateDate(updated).content("Newest").build())
+
+        when:
+        cache.put(late)
+
+        then:
+        cache.get("id-1", loader(null)).block().content == "Newest"
+        loads.get() == 0
+
+        where:
+        late << [
+                complaint("id-1").toBuilder().counter(2).updateDate(LocalDateTime.of(2025, 5, 10, 14, 30)).content("Stale").build(),
+                complaint("id-1").toBuilder().counter(3).updateDate(LocalDateTime.of(2025, 5, 10, 14, 29)).content("Stale").build(),
+                complaint("id-1").toBuilder().counter(3).updateDate(null).content("Stale").build()
+        ]
+    }
+
+    def "should accept puts at least as new as the cached complaint"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 1_000, WRITE)
+        def updated = LocalDateTime.of(2025, 5, 10, 14, 30)
+        cache.put(complaint("id-1").toBuilder().counter(3).updateDate(updated).build())
+
+        when:
+        cache.put(complaint("id-1").toBuilder().counter(4).updateDate(updated).content("Newer").build())
+
+        then:
+        cache.get("id-1", loader(null)).block().content == "Newer"
+    }
+
+    def "should pass through to the loader when disabled"() {
+        given:
+        def cache = new ComplaintCache(meterRegistry, false, 0, 0, 0, WRITE)
+
+        when:
+        2.times { cache.get("id-1", loader(complaint("id-1"))).block() }
+
+        then:
+        loads.get() == 2
+    }
+
+    private def loader(Complaint result) {
+        return { String id -> Mono.fromCallable { loads.incrementAndGet(); result } }
+    }
+
+    private static Complaint complaint(String id) {
+        Complaint.builder()
+                .id(id)
+                .productId("product-1")
+                .complainantId("customer-1")
+                .content("Broken")
+                .country("Poland")
+                .build()
+    }
+}
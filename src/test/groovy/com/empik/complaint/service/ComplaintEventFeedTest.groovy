@@ -0,0 +1,128 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.exception.InvalidCursorException
+import com.empik.complaint.repository.ComplaintEvent
+import com.empik.complaint.repository.ComplaintRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.Exceptions
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Sinks
+import reactor.test.StepVerifier
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+
+class ComplaintEventFeedTest extends Specification {
+
+    ComplaintRepository complaintRepository = Mock(ComplaintRepository)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    ComplaintEventFeed feed = new ComplaintEventFeed(complaintRepository, meterRegistry, 2, 4, 1)
+    Sinks.Many<ComplaintEvent> changes = Sinks.many().multicast().directBestEffort()
+
+    def "should share one change stream between live subscribers"() {
+        given:
+        def first = []
+        def second = []
+
+        when:
+        def subscriptions = [feed.events(null).subscribe { first << it }, feed.events(null).subscribe { second << it }]
+        changes.tryEmitNext(event("a1"))
+        changes.tryEmitNext(event("a2"))
+        subscriptions*.dispose()
+
+        then:
+        1 * complaintRepository.watchChanges(null) >> changes.asFlux()
+        first*.resumeToken() == ["a1", "a2"]
+        second*.resumeToken() == ["a1", "a2"]
+        meterRegistry.get("complaint.events.subscribers").gauge().value() == 0
+    }
+
+    def "should disconnect a subscriber that falls behind without slowing down the others"() {
+        given:
+        complaintRepository.watchChanges(null) >> changes.asFlux()
+        def fast = []
+        feed.events(null).subscribe { fast << it }
+
+        expect:
+        StepVerifier.create(feed.events(null), 0)
+                .then { (1..5).each { changes.tryEmitNext(event("a$it")) } }
+                .expectErrorMatches(Exceptions::isOverflow)
+                .verify(Duration.ofSeconds(5))
+        fast*.resumeToken() == ["a1", "a2", "a3", "a4", "a5"]
+        meterRegistry.get("complaint.events.overflows").counter().count() == 1
+    }
+
+    def "should reopen a failed change stream after the last delivered event"() {
+        given:
+        complaintRepository.watchChanges(null) >> Flux.just(event("a1")).concatWith(Flux.error(new IllegalStateException("stepdown")))
+        complaintRepository.watchChanges("a1") >> Flux.just(event("a2")).concatWith(Flux.never())
+        def received = [].asSynchronized()
+
+        when:
+        def subscription = feed.events(null).subscribe { received << it }
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert received*.resumeToken() == ["a1", "a2"]
+        }
+
+        cleanup:
+        subscription?.dispose()
+    }
+
+    def "should serve a resume after a retained event from the shared change stream"() {
+        given:
+        complaintRepository.watchChanges(null) >> changes.asFlux()
+        def live = feed.events(null).subscribe()
+        (1..3).each { changes.tryEmitNext(event("a$it")) }
+        def received = []
+
+        when:
+        def resumed = feed.events("a1").subscribe { received << it }
+        changes.tryEmitNext(event("a4"))
+
+        then:
+        0 * complaintRepository.watchChanges(_)
+        received*.resumeToken() == ["a2", "a3", "a4"]
+        meterRegistry.get("complaint.events.catch-ups").counter().count() == 0
+
+        cleanup:
+        [live, resumed]*.dispose()
+    }
+
+    def "should catch up from an older event with a change stream of its own and then switch to the shared one"() {
+        given:
+        complaintRepository.watchChanges(null) >> changes.asFlux()
+        def live = feed.events(null).subscribe()
+        (3..4).each { changes.tryEmitNext(event("a$it")) }
+        def cancelled = false
+        def received = []
+
+        when:
+        def resumed = feed.events("a1").subscribe { received << it }
+        changes.tryEmitNext(event("a5"))
+
+        then:
+        1 * complaintRepository.watchChanges("a1") >> Flux.just(event("a2"), event("a3"))
+                .concatWith(Flux.never())
+                .doOnCancel { cancelled = true }
+        received*.resumeToken() == ["a2", "a3", "a4", "a5"]
+        cancelled
+        meterRegistry.get("complaint.events.catch-ups").counter().count() == 1
+
+        cleanup:
+        [live, resumed]*.dispose()
+    }
+
+    def "should reject a malformed resume token"() {
+        expect:
+        StepVerifier.create(feed.events("not a token"))
+                .expectError(InvalidCursorException)
+                .verify()
+    }
+
+    private static ComplaintEvent event(String resumeToken) {
+        new ComplaintEvent(ComplaintEvent.Type.CREATED, "id-$resumeToken", null, resumeToken)
+    }
+}
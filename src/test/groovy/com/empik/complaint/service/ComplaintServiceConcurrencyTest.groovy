@@ -0,0 +1,172 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.repository.ComplaintIndexInitializer
+import com.empik.complaint.repository.ComplaintRepository
+import org.spockframework.spring.SpringBean
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import org.testcontainers.containers.MongoDBContainer
+import org.testcontainers.junit.jupiter.Container
+import org.testcontainers.junit.jupiter.Testcontainers
+import org.testcontainers.utility.DockerImageName
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Schedulers
+import spock.lang.Specification
+
+@SpringBootTest
+@Testcontainers
+class ComplaintServiceConcurrencyTest extends Specification {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
+
+    private static final int PARALLEL_REQUESTS = 5000
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> {
+            if (!mongoDBContainer.isRunning()) {
+                mongoDBContainer.start()
+            }
+            return mongoDBContainer.getReplicaSetUrl()
+        })
+    }
+
+    @Autowired
+    ComplaintService complaintService
+
+    @Autowired
+    ComplaintBulkService complaintBulkService
+
+    @Autowired
+    ComplaintRepository complaintRepository
+
+    @Autowired
+    ComplaintIndexInitializer complaintIndexInitializer
+
+    @SpringBean
+    GeoLocationClient geoLocationClient = Stub(GeoLocationClient)
+
+    def setup() {
+        complaintRepository.deleteAll().block()
+        complaintIndexInitializer.ensureIndexes().block()
+        geoLocationClient.getCountryFromIp(_ as String) >> Mono.just("Poland")
+    }
+
+    def "should not lose counter increments under parallel duplicate creates"() {
+        given:
+        def request = new ComplaintCreateRequest("product-123", "Product is broken", "customer-456")
+
+        when:
+        Flux.range(0, PARALLEL_REQUESTS)
+                .parallel(32)
+                .runOn(Schedulers.parallel())
+                .flatMap { complaintService.createComplaint(request, "192.168.1.${it % 255}") }
+                .sequential()
+                .blockLast()
+
+        then:
+        def complaints = complaintRepository.findAll().collectList().block()
+        complaints.size() == 1
+        complaints[0].counter == PARALLEL_REQUESTS
+        complaints[0].content == "Product is broken"
+        complaints[0].country == "Poland"
+    }
+
+    def "should count every create across many parallel distinct and duplicate pairs"() {
+        given:
+        def products = 20
+
+        when:
+        Flux.range(0, PARALLEL_REQUESTS)
+                .parallel(32)
+                .runOn(Schedulers.parallel())
+                .flatMap { i ->
+                    complaintService.createComplaint(
+                            new ComplaintCreateRequest("product-${i % products}", "Content ${i}", "customer-456"),
+                            "192.168.1.1")
+                }
+                .sequential()
+                .blockLast()
+
+        then:
+        def complaints = complaintRepository.findAll().collectList().block()
+        complaints.size() == products
+        complaints.sum { it.counter } == PARALLEL_REQUESTS
+        complaints.every { it.counter == PARALLEL_REQUESTS / products }
+    }
+
+    def "should keep increments written while the content is updated"() {
+        given:
+        def request = new ComplaintCreateRequest("product-123", "Product is broken", "customer-456")
+        def created = complaintService.createComplaint(request, "192.168.1.1").block()
+
+        when: "every tenth request updates the content, the others are duplicates"
+        Flux.range(0, PARALLEL_REQUESTS)
+                .parallel(32)
+                .runOn(Schedulers.parallel())
+                .flatMap { i ->
+                    i % 10 == 0
+                            ? complaintService.updateComplaintContent(created.id, "Update ${i}", "192.168.1.1")
+                            : complaintService.createComplaint(request, "192.168.1.1")
+                }
+                .sequential()
+                .blockLast()
+
+        then:
+        def complaint = complaintRepository.findById(created.id).block()
+        complaint.counter == 1 + PARALLEL_REQUESTS * 9 / 10
+        complaint.content.startsWith("Update ")
+    }
+
+    def "should not overwrite a country resolved while the content was updated"() {
+        given:
+        def saved = complaintRepository.save(Complaint.builder()
+                .productId("product-123")
+                .complainantId("customer-456")
+                .content("Product is broken")
+                .country("Germany")
+                .build()).block()
+
+        when: "an update that read the country as Pending sets the one it resolved"
+        def updated = complaintRepository.updateContent(saved.id, "Still broken", "Poland", ["Unknown", "Pending"]).block()
+
+        then:
+        updated.content == "Still broken"
+        updated.country == "Germany"
+        updated.counter == 1
+    }
+
+    def "should retry bulk items that lose the insert race as increments"() {
+        given:
+        def submissions = 200
+        def pairs = 10
+
+        when:
+        def results = Flux.range(0, submissions)
+                .parallel(32)
+                .runOn(Schedulers.parallel())
+                .flatMap { i ->
+                    complaintBulkService.createComplaints(
+                            Flux.range(0, pairs).map { new ComplaintCreateRequest("product-$it", "Content ${i}", "customer-456") },
+                            "192.168.1.1")
+                }
+                .sequential()
+                .collectList()
+                .block()
+
+        then:
+        results.size() == submissions * pairs
+        results.every { it.status != BulkItemResult.Status.REJECTED }
+        results.count { it.status == BulkItemResult.Status.CREATED } == pairs
+        def complaints = complaintRepository.findAll().collectList().block()
+        complaints.size() == pairs
+        complaints.every { it.counter == submissions }
+    }
+}
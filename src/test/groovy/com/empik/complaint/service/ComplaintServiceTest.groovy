@@ -2,8 +2,14 @@ package com.empik.complaint.service
 
 import com.empik.complaint.api.dto.ComplaintCreateRequest
 import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.exception.InvalidCursorException
+import com.empik.complaint.exception.SearchUnavailableException
 import com.empik.complaint.model.Complaint
+import com.empik.complaint.model.ComplaintCursor
+import com.empik.complaint.repository.ComplaintIndexInitializer
 import com.empik.complaint.repository.ComplaintRepository
+import com.empik.complaint.repository.ProductStatsRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.reactivestreams.Publisher
 import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
@@ -18,12 +24,27 @@ class ComplaintServiceTest extends Specification {
 
     ComplaintRepository complaintRepository
     GeoLocationClient geoLocationClient
+    CountryEnrichmentPipeline countryEnrichmentPipeline
+    SimpleMeterRegistry meterRegistry
+    ComplaintStatsService complaintStatsService
+    ComplaintIndexInitializer complaintIndexInitializer
     ComplaintService complaintService
 
     def setup() {
         complaintRepository = Mock(ComplaintRepository)
         geoLocationClient = Mock(GeoLocationClient)
-        complaintService = new ComplaintService(complaintRepository, geoLocationClient)
+        countryEnrichmentPipeline = Mock(CountryEnrichmentPipeline)
+        meterRegistry = new SimpleMeterRegistry()
+        complaintIndexInitializer = Mock(ComplaintIndexInitializer)
+        complaintStatsService = new ComplaintStatsService(Mock(ProductStatsRepository), complaintRepository,
+                complaintIndexInitializer, meterRegistry)
+        complaintService = serviceWith(new ComplaintCache(meterRegistry, false, 0, 0, 0, ComplaintCache.ExpirationPolicy.WRITE))
+    }
+
+    private ComplaintService serviceWith(ComplaintCache complaintCache) {
+        new ComplaintService(complaintRepository, geoLocationClient, countryEnrichmentPipeline, complaintCache,
+                new CounterAggregator(complaintRepository, complaintStatsService, meterRegistry), complaintStatsService,
+                complaintIndexInitializer, meterRegistry)
     }
 
     def "should increment counter when complaint with same product and complainant exists"() {
@@ -37,16 +58,14 @@ class ComplaintServiceTest extends Specification {
                 .content("Original content")
                 .complainantId("customer-456")
                 .country("Poland")
-                .counter(1)
+                .counter(2)
                 .build()
 
 
-        1 * complaintRepository.findByProductIdAndComplainantId("product-123", "customer-456") >> Mono.just(existingComplaint)
-
-        1 * complaintRepository.save(_ as Complaint) >> { Complaint savedComplaint ->
-            Mono.just(savedComplaint)
-        }
+        1 * complaintRepository.incrementCounter("product-123", "customer-456") >> Mono.just(existingComplaint)
 
+        0 * complaintRepository.upsertComplaint(_)
+        0 * complaintRepository.save(_)
         0 * geoLocationClient.getCountryFromIp(_)
 
         when:
@@ -69,9 +88,9 @@ class ComplaintServiceTest extends Specification {
         given:
         def request = new ComplaintCreateRequest("product-123", "Product is broken", "customer-456")
         def ipAddress = "192.168.1.1"
-        1 *  complaintRepository.findByProductIdAndComplainantId("product-123", "customer-456") >> Mono.empty()
+        1 *  complaintRepository.incrementCounter("product-123", "customer-456") >> Mono.empty()
         1 *   geoLocationClient.getCountryFromIp(ipAddress) >> Mono.just("Poland")
-        1 *  complaintRepository.save(_ as Complaint) >> { Complaint complaint ->
+        1 *  complaintRepository.upsertComplaint(_ as Complaint) >> { Complaint complaint ->
             complaint.id = "generated-id"
             return Mono.just(complaint)
         }
@@ -94,6 +113,51 @@ class ComplaintServiceTest extends Specification {
     }
 
 
+    def "should save new complaint with pending country and defer geolocation when async enrichment is enabled"() {
+        given:
+        def request = new ComplaintCreateRequest("product-123", "Product is broken", "customer-456")
+        def ipAddress = "192.168.1.1"
+        countryEnrichmentPipeline.isEnabled() >> true
+        1 * complaintRepository.incrementCounter("product-123", "customer-456") >> Mono.empty()
+        1 * complaintRepository.upsertComplaint(_ as Complaint) >> { Complaint complaint ->
+            complaint.id = "generated-id"
+            return Mono.just(complaint)
+        }
+        1 * countryEnrichmentPipeline.submit("generated-id", ipAddress)
+        0 * geoLocationClient.getCountryFromIp(_)
+
+        when:
+        def result = complaintService.createComplaint(request, ipAddress)
+
+        then:
+        StepVerifier.create(result)
+                .assertNext({ complaint ->
+                    assert complaint.id == "generated-id"
+                    assert complaint.country == CountryEnrichmentPipeline.PENDING_COUNTRY
+                    assert complaint.pendingIpAddress == ipAddress
+                })
+                .verifyComplete()
+    }
+
+    def "should count new and incremented complaints"() {
+        given:
+        def request = new ComplaintCreateRequest("product-123", "Product is broken", "customer-456")
+        def existing = Complaint.builder().id("existing-id").counter(2).build()
+        complaintRepository.incrementCounter("product-123", "customer-456") >>> [Mono.just(existing), Mono.empty(), Mono.empty()]
+        geoLocationClient.getCountryFromIp(_) >> Mono.just("Poland")
+        complaintRepository.upsertComplaint(_ as Complaint) >>> [
+                Mono.just(Complaint.builder().id("new-id").counter(1).build()),
+                Mono.just(Complaint.builder().id("raced-id").counter(2).build())
+        ]
+
+        when: "one duplicate, one new pair and one create that lost the insert race"
+        3.times { complaintService.createComplaint(request, "192.168.1.1").block() }
+
+        then:
+        meterRegistry.get("complaint.creates").tag("result", "new").counter().count() == 1
+        meterRegistry.get("complaint.creates").tag("result", "incremented").counter().count() == 2
+    }
+
     def "should update complaint content"() {
         given:
         def complaintId = "complaint-id"
@@ -113,16 +177,19 @@ class ComplaintServiceTest extends Specification {
             if (id == complaintId) return Mono.just(existingComplaint)
             return Mono.empty()
         }
-        1 *  complaintRepository.save(_ as Complaint) >> { Complaint complaint -> Mono.just(complaint) }
+        1 * complaintRepository.updateContent(complaintId, newContent, null, ["Unknown", "Pending"]) >>
+                Mono.just(existingComplaint.toBuilder().content(newContent).updateDate(LocalDateTime.now()).counter(5).build())
+        0 * complaintRepository.save(_)
 
         when:
         def result = complaintService.updateComplaintContent(complaintId, newContent, ipAddress)
 
-        then:
+        then: "the stored complaint is emitted, with the increments written since it was read"
         StepVerifier.create(result)
                 .assertNext({ complaint ->
                     assert complaint.content == "Updated content"
                     assert nonNull(complaint.updateDate)
+                    assert complaint.counter == 5
                 })
                 .verifyComplete()
     }
@@ -131,7 +198,7 @@ class ComplaintServiceTest extends Specification {
         given:
         def complaintId = "non-existent-id"
 
-        1 *  complaintRepository.findById(_ as String) >> { String id ->
+        1 *  complaintRepository.findSummaryById(_ as String) >> { String id ->
             return Mono.empty()
         }
 
@@ -170,7 +237,8 @@ class ComplaintServiceTest extends Specification {
             if (ip == ipAddress) return Mono.just("Poland")
             return Mono.just("Unknown")
         }
-        1 *  complaintRepository.save(_ as Complaint) >> { Complaint complaint -> Mono.just(complaint) }
+        1 * complaintRepository.updateContent(complaintId, newContent, "Poland", ["Unknown", "Pending"]) >>
+                Mono.just(existingComplaint.toBuilder().content(newContent).country("Poland").updateDate(LocalDateTime.now()).build())
 
         when:
         def result = complaintService.updateComplaintContent(complaintId, newContent, ipAddress)
@@ -202,7 +270,8 @@ class ComplaintServiceTest extends Specification {
 
         1 * complaintRepository.findById(complaintId) >> Mono.just(existingComplaint)
         0 * geoLocationClient.getCountryFromIp(_)
-        1 * complaintRepository.save(_ as Complaint) >> { Complaint complaint -> Mono.just(complaint) }
+        1 * complaintRepository.updateContent(complaintId, newContent, null, _) >>
+                Mono.just(existingComplaint.toBuilder().content(newContent).build())
 
         when:
         def result = complaintService.updateComplaintContent(complaintId, newContent, ipAddress)
@@ -234,7 +303,7 @@ class ComplaintServiceTest extends Specification {
         def result = complaintService.getComplaintById(complaintId)
 
         then:
-        1 * complaintRepository.findById(complaintId) >> Mono.just(existingComplaint)
+        1 * complaintRepository.findSummaryById(complaintId) >> Mono.just(existingComplaint)
 
         StepVerifier.create(result)
                 .assertNext({ complaint ->
@@ -245,6 +314,28 @@ class ComplaintServiceTest extends Specification {
                 .verifyComplete()
     }
 
+    def "should serve repeated reads from the cache and see writes made through the service"() {
+        given:
+        complaintService = serviceWith(new ComplaintCache(meterRegistry, true, 1_000_000, 60_000, 60_000, ComplaintCache.ExpirationPolicy.WRITE))
+        def stored = Complaint.builder().id("complaint-id").productId("product-123").complainantId("customer-456")
+                .content("Original content").country("Poland").counter(1).build()
+        def updated = Complaint.builder().id("complaint-id").productId("product-123").complainantId("customer-456")
+                .content("Original content").country("Poland").counter(2).build()
+        1 * complaintRepository.findById("complaint-id") >> Mono.just(stored)
+        1 * complaintRepository.incrementCounter("product-123", "customer-456") >> Mono.just(updated)
+
+        when:
+        def first = complaintService.getComplaintById("complaint-id").block()
+        def second = complaintService.getComplaintById("complaint-id").block()
+        complaintService.createComplaint(new ComplaintCreateRequest("product-123", "Again", "customer-456"), "192.168.1.1").block()
+        def afterIncrement = complaintService.getComplaintById("complaint-id").block()
+
+        then:
+        first.counter == 1
+        second.is(first)
+        afterIncrement.counter == 2
+    }
+
     def "should get complaints with filters"() {
         given:
         def productId = "product-123"
@@ -317,4 +408,58 @@ class ComplaintServiceTest extends Specification {
                 })
                 .verifyComplete()
     }
+
+    def "should fetch complaints after the position encoded in the cursor"() {
+        given:
+        def creationDate = LocalDateTime.of(2025, 4, 1, 12, 30, 15, 123_000_000)
+        def cursor = new ComplaintCursor(creationDate, "663e71f9a1a34d4a99a6c458").encode()
+
+        def complaint = Complaint.builder()
+                .id("663e71f9a1a34d4a99a6c459")
+                .productId("product-123")
+                .content("Content")
+                .complainantId("customer-456")
+                .build()
+
+        1 * complaintRepository.findByFiltersAfter("product-123", null, null, null,
+                new ComplaintCursor(creationDate, "663e71f9a1a34d4a99a6c458"), 10) >> Flux.just(complaint)
+
+        when:
+        def result = complaintService.getComplaintsAfter("product-123", null, null, null, cursor, 10)
+
+        then:
+        StepVerifier.create(result)
+                .assertNext({ assert it.id == "663e71f9a1a34d4a99a6c459" })
+                .verifyComplete()
+    }
+
+    def "should reject a malformed cursor"() {
+        given:
+        0 * complaintRepository.findByFiltersAfter(*_)
+
+        when:
+        def result = complaintService.getComplaintsAfter(null, null, null, null, cursor, 10)
+
+        then:
+        StepVerifier.create(result)
+                .expectError(InvalidCursorException)
+                .verify()
+
+        where:
+        cursor << ["not base64!", "bm8tc2VwYXJhdG9y", Base64.urlEncoder.encodeToString("yesterday|id".bytes)]
+    }
+
+    def "should refuse to search until the text index is built"() {
+        given:
+        complaintIndexInitializer.isSearchReady() >> false
+
+        when:
+        def result = complaintService.searchComplaints("broken", null, null, null, null, 0, 10)
+
+        then:
+        0 * complaintRepository.searchByText(*_)
+        StepVerifier.create(result)
+                .expectError(SearchUnavailableException)
+                .verify()
+    }
 }
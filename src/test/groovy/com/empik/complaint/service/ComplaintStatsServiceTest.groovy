@@ -0,0 +1,154 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.repository.ComplaintIndexInitializer
+import com.empik.complaint.repository.ComplaintRepository
+import com.empik.complaint.repository.ComplaintStatsDelta
+import com.empik.complaint.repository.CounterIncrement
+import com.empik.complaint.repository.ProductStatsRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.LocalDate
+import java.time.LocalDateTime
+
+class ComplaintStatsServiceTest extends Specification {
+
+    static final LocalDateTime CREATED = LocalDateTime.of(2025, 5, 10, 14, 30)
+
+    ProductStatsRepository productStatsRepository = Mock(ProductStatsRepository)
+    ComplaintRepository complaintRepository = Mock(ComplaintRepository)
+    ComplaintIndexInitializer complaintIndexInitializer = Mock(ComplaintIndexInitializer)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    ComplaintStatsService complaintStatsService
+
+    def setup() {
+        complaintStatsService = new ComplaintStatsService(productStatsRepository, complaintRepository,
+                complaintIndexInitializer, meterRegistry)
+        complaintStatsService.enabled = true
+        complaintStatsService.rebuildBatchSize = 2
+    }
+
+    def "should record a saved complaint as new or incremented depending on its counter"() {
+        when:
+        complaintStatsService.recordSaved(complaint("product-1", "customer-1", counter)).block()
+
+        then:
+        1 * productStatsRepository.increment([new ComplaintStatsDelta("product-1", "Poland", CREATED.toLocalDate(), complaints, 1)]) >>
+                Mono.empty()
+
+        where:
+        counter | complaints
+        1       | 1
+        5       | 0
+    }
+
+    def "should look up complaints of increments that are not at hand"() {
+        given:
+        def increments = [
+                new CounterIncrement("product-1", "customer-1", 3),
+                new CounterIncrement("product-2", "customer-1", 1)]
+
+        when:
+        complaintStatsService.recordIncrements(increments).block()
+
+        then:
+        1 * complaintRepository.findIncremented(increments) >> Flux.just(
+                complaint("product-1", "customer-1", 0),
+                complaint("product-2", "customer-1", 0))
+        1 * productStatsRepository.increment([
+                new ComplaintStatsDelta("product-1", "Poland", CREATED.toLocalDate(), 0, 3),
+                new ComplaintStatsDelta("product-2", "Poland", CREATED.toLocalDate(), 0, 1)]) >> Mono.empty()
+    }
+
+    def "should not fail the write when statistics cannot be updated"() {
+        when:
+        complaintStatsService.recordIncremented(complaint("product-1", "customer-1", 2), 1).block()
+
+        then:
+        1 * productStatsRepository.increment(_) >> Mono.error(new IllegalStateException("timeout"))
+        noExceptionThrown()
+        meterRegistry.get("complaint.stats.failed").counter().count() == 1
+    }
+
+    def "should not touch statistics when disabled"() {
+        given:
+        complaintStatsService.enabled = false
+
+        when:
+        complaintStatsService.recordSaved(complaint("product-1", "customer-1", 1)).block()
+        complaintStatsService.recordIncrements([new CounterIncrement("product-1", "customer-1", 1)]).block()
+
+        then:
+        0 * productStatsRepository._
+        0 * complaintRepository._
+    }
+
+    def "should rebuild statistics from all complaints in chunks"() {
+        given:
+        List<List<ComplaintStatsDelta>> chunks = null
+
+        when:
+        complaintStatsService.rebuild().block()
+
+        then:
+        1 * complaintRepository.streamByFilters(null, null, null, null, 2, "productId", "country", "creationDate", "counter") >> Flux.just(
+                complaint("product-1", "customer-1", 4),
+                complaint("product-1", "customer-2", 1),
+                complaint("product-2", "customer-1", 2))
+        1 * productStatsRepository.rebuild(_) >> { arguments ->
+            chunks = (arguments[0] as Flux<List<ComplaintStatsDelta>>).collectList().block()
+            Mono.empty()
+        }
+        1 * complaintIndexInitializer.ensureIndexes() >> Mono.empty()
+        chunks == [
+                [new ComplaintStatsDelta("product-1", "Poland", LocalDate.of(2025, 5, 10), 1, 4),
+                 new ComplaintStatsDelta("product-1", "Poland", LocalDate.of(2025, 5, 10), 1, 1)],
+                [new ComplaintStatsDelta("product-2", "Poland", LocalDate.of(2025, 5, 10), 1, 2)]
+        ]
+    }
+
+    def "should also write increments of complaints the rebuild has already read into the rebuilt statistics"() {
+        given:
+        complaintStatsService.rebuildBatchSize = 1
+        def read = complaint("product-1", "customer-1", 4).toBuilder().id("a1").build()
+        def ahead = complaint("product-2", "customer-1", 2).toBuilder().id("b2").creationDate(CREATED.plusDays(1)).build()
+        complaintRepository.streamByFilters(*_) >> Flux.just(read, ahead)
+        productStatsRepository.increment(_) >> Mono.empty()
+        complaintIndexInitializer.ensureIndexes() >> Mono.empty()
+
+        when: "both complaints are incremented once the first chunk is read"
+        complaintStatsService.rebuild().block()
+
+        then:
+        1 * productStatsRepository.rebuild(_) >> { arguments ->
+            (arguments[0] as Flux<List<ComplaintStatsDelta>>).index()
+                    .concatMap { chunk -> chunk.t1 == 0
+                            ? complaintStatsService.recordIncremented(read, 1).then(complaintStatsService.recordIncremented(ahead, 1))
+                            : Mono.empty() }
+                    .then()
+        }
+        1 * productStatsRepository.incrementRebuild([new ComplaintStatsDelta("product-1", "Poland", CREATED.toLocalDate(), 0, 1)]) >>
+                Mono.empty()
+        0 * productStatsRepository.incrementRebuild(_)
+
+        when: "the rebuild is over"
+        complaintStatsService.recordIncremented(read, 1).block()
+
+        then:
+        0 * productStatsRepository.incrementRebuild(_)
+    }
+
+    private static Complaint complaint(String productId, String complainantId, int counter) {
+        Complaint.builder()
+                .productId(productId)
+                .content("Broken")
+                .complainantId(complainantId)
+                .creationDate(CREATED)
+                .country("Poland")
+                .counter(counter)
+                .build()
+    }
+}
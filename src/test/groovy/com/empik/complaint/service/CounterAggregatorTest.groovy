@@ -0,0 +1,316 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.repository.ComplaintIndexInitializer
+import com.empik.complaint.repository.ComplaintRepository
+import com.empik.complaint.repository.CounterIncrement
+import com.empik.complaint.repository.ProductStatsRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Schedulers
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+class CounterAggregatorTest extends Specification {
+
+    ComplaintRepository complaintRepository = Mock(ComplaintRepository)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    CounterAggregator aggregator
+
+    def setup() {
+        aggregator = aggregator(complaintRepository, 60_000)
+    }
+
+    def cleanup() {
+        aggregator.stop()
+    }
+
+    def "should answer duplicates of tracked pairs from memory"() {
+        given:
+        aggregator.track(complaint("product-1", 3))
+
+        expect:
+        aggregator.increment("product-2", "customer-1") == null
+        aggregator.increment("product-1", "customer-1").complaintId() == "id-product-1"
+        aggregator.increment("product-1", "customer-1").applyTo(complaint("product-1", 3)).counter == 5
+        meterRegistry.get("complaint.aggregation.coalesced").counter().count() == 2
+    }
+
+    def "should apply pending increments to the current complaint rather than the tracked one"() {
+        given:
+        aggregator.track(complaint("product-1", 3))
+        def pending = aggregator.increment("product-1", "customer-1")
+        def updated = complaint("product-1", 10).toBuilder().content("Still broken").build()
+
+        when:
+        def answered = pending.applyTo(updated)
+
+        then: "content written after tracking is kept and the stored counter of other nodes is honoured"
+        answered.content == "Still broken"
+        answered.counter == 11
+        updated.counter == 10
+    }
+
+    def "should not count flushed increments twice when the complaint was read before the flush"() {
+        given:
+        aggregator.track(complaint("product-1", 1))
+        def pending = aggregator.increment("product-1", "customer-1")
+        aggregator.increment("product-1", "customer-1")
+        complaintRepository.incrementCounters(_) >> Mono.just([:])
+
+        when:
+        aggregator.flush()
+
+        then:
+        pending.applyTo(complaint("product-1", 1)).counter == 3
+        pending.applyTo(complaint("product-1", 3)).counter == 3
+    }
+
+    def "should flush one summed increment per pair and stop tracking idle pairs"() {
+        given:
+        aggregator.track(complaint("product-1", 1))
+        aggregator.track(complaint("product-2", 1))
+        3.times { aggregator.increment("product-1", "customer-1") }
+        aggregator.increment("product-2", "customer-1")
+
+        when:
+        aggregator.flush()
+
+        then:
+        1 * complaintRepository.incrementCounters({ it.toSet() == [
+                new CounterIncrement("product-1", "customer-1", 3),
+                new CounterIncrement("product-2", "customer-1", 1)] as Set }) >> Mono.just([:])
+
+        when: "nothing happened since the previous flush"
+        aggregator.flush()
+
+        then:
+        0 * complaintRepository.incrementCounters(_)
+        aggregator.increment("product-1", "customer-1") == null
+    }
+
+    def "should keep failed increments for the next flush when retries are enabled"() {
+        given:
+        aggregator.retryFailedFlush = retry
+        aggregator.track(complaint("product-1", 1))
+        2.times { aggregator.increment("product-1", "customer-1") }
+
+        when:
+        aggregator.flush()
+        aggregator.flush()
+
+        then:
+        1 * complaintRepository.incrementCounters([new CounterIncrement("product-1", "customer-1", 2)]) >>
+                Mono.error(new IllegalStateException("timeout"))
+        expectedRetries * complaintRepository.incrementCounters([new CounterIncrement("product-1", "customer-1", 2)]) >>
+                Mono.just([:])
+        meterRegistry.get("complaint.aggregation.failed").counter().count() == 1
+
+        where:
+        retry | expectedRetries
+        true  | 1
+        false | 0
+    }
+
+    def "should flush early when a pair reaches the pending threshold"() {
+        given:
+        aggregator.stop()
+        aggregator = aggregator(complaintRepository, 60_000)
+        aggregator.maxPendingPerKey = 5
+        aggregator.track(complaint("product-1", 1))
+        // declared here rather than in then: so it is verified after the flush thread had time to run
+        1 * complaintRepository.incrementCounters([new CounterIncrement("product-1", "customer-1", 5)]) >> Mono.just([:])
+
+        when:
+        5.times { aggregator.increment("product-1", "customer-1") }
+
+        then:
+        new PollingConditions(timeout: 2).eventually {
+            assert meterRegistry.get("complaint.aggregation.flushed").counter().count() == 1
+        }
+    }
+
+    def "should flush pending increments on shutdown"() {
+        given:
+        aggregator.track(complaint("product-1", 1))
+        aggregator.increment("product-1", "customer-1")
+
+        when:
+        aggregator.stop()
+
+        then:
+        1 * complaintRepository.incrementCounters([new CounterIncrement("product-1", "customer-1", 1)]) >> Mono.just([:])
+    }
+
+    def "should not hold up flushes while statistics are recorded"() {
+        given:
+        def stats = Mock(ComplaintStatsService) {
+            isEnabled() >> true
+            recordIncrements(_) >> Mono.never()
+        }
+        aggregator.stop()
+        aggregator = aggregator(complaintRepository, 60_000, stats)
+        aggregator.flushTimeoutMs = 100
+        complaintRepository.incrementCounters(_) >> Mono.just([:])
+        aggregator.track(complaint("product-1", 1))
+
+        when:
+        aggregator.increment("product-1", "customer-1")
+        aggregator.flush()
+        aggregator.increment("product-1", "customer-1")
+        aggregator.flush()
+
+        then:
+        meterRegistry.get("complaint.aggregation.flushed").counter().count() == 2
+    }
+
+    def "should not lose increments racing flushes that seal idle pairs"() {
+        given:
+        def flushed = new AtomicLong()
+        def written = new AtomicLong()
+        complaintRepository.incrementCounters(_) >> { List<CounterIncrement> increments ->
+            increments.each { flushed.addAndGet(it.delta()) }
+            Mono.just([:])
+        }
+        aggregator.track(complaint("product-1", 1))
+        def threads = 8
+        def incrementsPerThread = 20_000
+        def running = new AtomicBoolean(true)
+
+        when: "duplicates not coalesced are written directly and tracked again, as the service does"
+        def flusher = Thread.start {
+            while (running.get()) {
+                aggregator.flush()
+            }
+        }
+        def workers = (1..threads).collect {
+            Thread.start {
+                incrementsPerThread.times { i ->
+                    if (aggregator.increment("product-1", "customer-1") == null) {
+                        written.incrementAndGet()
+                        aggregator.track(complaint("product-1", 1))
+                    }
+                    if (i % 64 == 0) {
+                        Thread.yield()
+                    }
+                }
+            }
+        }
+        workers*.join()
+        running.set(false)
+        flusher.join()
+        aggregator.flush()
+
+        then:
+        flushed.get() + written.get() == threads * incrementsPerThread
+    }
+
+    def "should cut writes for duplicate storms without losing increments"() {
+        given:
+        def requests = 20_000
+        def pairs = 10
+        def store = new CountingComplaintStore()
+        def repository = store.repository()
+        aggregator.stop()
+        aggregator = aggregator(repository, 20)
+        def complaintService = new ComplaintService(repository, { ip -> Mono.just("Poland") } as GeoLocationClient,
+                Stub(CountryEnrichmentPipeline),
+                new ComplaintCache(meterRegistry, false, 0, 0, 0, ComplaintCache.ExpirationPolicy.WRITE),
+                aggregator, noStats(repository), Stub(ComplaintIndexInitializer), meterRegistry)
+
+        when:
+        Flux.range(0, requests)
+                .parallel(16)
+                .runOn(Schedulers.parallel())
+                .flatMap { i -> complaintService.createComplaint(
+                        new ComplaintCreateRequest("product-${i % pairs}", "Broken", "customer-1"), "10.0.0.1") }
+                .sequential()
+                .blockLast()
+        aggregator.stop()
+
+        then:
+        store.counters().values().sum() == requests
+        store.counters().size() == pairs
+        store.writes.get() < requests / 20
+    }
+
+    private CounterAggregator aggregator(ComplaintRepository repository, long flushIntervalMs,
+                                         ComplaintStatsService stats = noStats(repository)) {
+        def aggregator = new CounterAggregator(repository, stats, meterRegistry)
+        aggregator.enabled = true
+        aggregator.flushIntervalMs = flushIntervalMs
+        aggregator.maxPendingPerKey = 1_000_000
+        aggregator.maxKeys = 1_000
+        aggregator.flushTimeoutMs = 5_000
+        aggregator.retryFailedFlush = true
+        aggregator.statsQueueCapacity = 64
+        aggregator.start()
+        return aggregator
+    }
+
+    private ComplaintStatsService noStats(ComplaintRepository repository) {
+        new ComplaintStatsService(Mock(ProductStatsRepository), repository, Mock(ComplaintIndexInitializer), meterRegistry)
+    }
+
+    private static Complaint complaint(String productId, int counter) {
+        Complaint.builder()
+                .id("id-$productId")
+                .productId(productId)
+                .complainantId("customer-1")
+                .content("Broken")
+                .country("Poland")
+                .counter(counter)
+                .build()
+    }
+
+    /**
+     * Map-backed repository counting every write round trip.
+     */
+    private class CountingComplaintStore {
+
+        final AtomicInteger writes = new AtomicInteger()
+        final Map<String, Complaint> complaints = new ConcurrentHashMap<>()
+
+        Map<String, Integer> counters() {
+            complaints.collectEntries { key, complaint -> [key, complaint.counter] }
+        }
+
+        ComplaintRepository repository() {
+            [
+                    findById            : { String id ->
+                        Mono.justOrEmpty(complaints.values().find { it.id == id })
+                    },
+                    incrementCounter    : { String productId, String complainantId ->
+                        writes.incrementAndGet()
+                        Mono.justOrEmpty(complaints.computeIfPresent(productId) { key, existing ->
+                            existing.toBuilder().counter(existing.counter + 1).build()
+                        })
+                    },
+                    upsertComplaint     : { Complaint complaint ->
+                        writes.incrementAndGet()
+                        def inserted = complaint.toBuilder().id("id-${complaint.productId}").build()
+                        Mono.just(complaints.merge(complaint.productId, inserted) { existing, ignored ->
+                            existing.toBuilder().counter(existing.counter + 1).build()
+                        })
+                    },
+                    incrementCounters   : { List<CounterIncrement> increments ->
+                        writes.incrementAndGet()
+                        increments.each { increment ->
+                            complaints.computeIfPresent(increment.productId()) { key, existing ->
+                                existing.toBuilder().counter(existing.counter + increment.delta()).build()
+                            }
+                        }
+                        Mono.just([:])
+                    }
+            ] as ComplaintRepository
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.repository.ComplaintRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.time.LocalDateTime
+
+class CountryEnrichmentPipelineTest extends Specification {
+
+    ComplaintRepository complaintRepository = Mock(ComplaintRepository)
+    GeoLocationClient geoLocationClient = Mock(GeoLocationClient)
+    ComplaintCache complaintCache = Mock(ComplaintCache)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    CountryEnrichmentPipeline pipeline
+
+    def setup() {
+        pipeline = new CountryEnrichmentPipeline(complaintRepository, geoLocationClient, complaintCache, meterRegistry)
+        pipeline.enabled = true
+        pipeline.queueCapacity = 16
+        pipeline.batchSize = 4
+        pipeline.batchMaxWaitMs = 50
+        pipeline.concurrency = 2
+        pipeline.shutdownTimeoutMs = 1000
+    }
+
+    def cleanup() {
+        pipeline.stop()
+    }
+
+    def "should resolve each distinct IP once per batch and patch countries with one update per country"() {
+        given:
+        def conditions = new PollingConditions(timeout: 5)
+        pipeline.start()
+
+        when:
+        pipeline.submit("id-1", "10.0.0.1")
+        pipeline.submit("id-2", "10.0.0.1")
+        pipeline.submit("id-3", "10.0.0.2")
+        pipeline.submit("id-4", "10.0.0.3")
+
+        then:
+        conditions.eventually {
+            assert meterRegistry.counter("complaint.enrichment.enriched").count() == 4
+            assert meterRegistry.get("complaint.enrichment.queue.depth").gauge().value() == 0
+        }
+        1 * geoLocationClient.getCountryFromIp("10.0.0.1") >> Mono.just("Poland")
+        1 * geoLocationClient.getCountryFromIp("10.0.0.2") >> Mono.just("Poland")
+        1 * geoLocationClient.getCountryFromIp("10.0.0.3") >> Mono.just("Germany")
+        1 * complaintRepository.updateCountry({ it as Set == ["id-1", "id-2", "id-3"] as Set }, "Pending", "Poland") >> Mono.just(3L)
+        1 * complaintRepository.updateCountry(["id-4"], "Pending", "Germany") >> Mono.just(1L)
+    }
+
+    def "should drop tasks and count overflow when the queue is full"() {
+        given:
+        pipeline.start()
+        geoLocationClient.getCountryFromIp(_) >> Mono.never()
+
+        when:
+        100.times { pipeline.submit("id-$it", "10.0.0.$it") }
+
+        then:
+        meterRegistry.counter("complaint.enrichment.dropped").count() > 0
+        0 * complaintRepository.updateCountry(*_)
+    }
+
+    def "should finish the queued tasks on shutdown"() {
+        given:
+        pipeline.start()
+        geoLocationClient.getCountryFromIp(_) >> Mono.just("Poland").delayElement(Duration.ofMillis(100))
+
+        when:
+        pipeline.submit("id-1", "10.0.0.1")
+        pipeline.submit("id-2", "10.0.0.1")
+        pipeline.stop()
+
+        then:
+        1 * complaintRepository.updateCountry(["id-1", "id-2"], "Pending", "Poland") >> Mono.just(2L)
+        meterRegistry.counter("complaint.enrichment.enriched").count() == 2
+    }
+
+    def "should requeue complaints still pending a country"() {
+        given:
+        def conditions = new PollingConditions(timeout: 5)
+        pipeline.requeueAfterMs = 60_000
+        pipeline.start()
+        geoLocationClient.getCountryFromIp("10.0.0.1") >> Mono.just("Poland")
+
+        when:
+        def requeued = pipeline.requeuePending().block()
+
+        then:
+        1 * complaintRepository.findPendingCountry("Pending", { it.isBefore(LocalDateTime.now().minusSeconds(59)) }, 16) >>
+                Flux.just(Complaint.builder().id("id-1").pendingIpAddress("10.0.0.1").build())
+        requeued == 1
+        meterRegistry.counter("complaint.enrichment.requeued").count() == 1
+        conditions.eventually {
+            assert meterRegistry.counter("complaint.enrichment.enriched").count() == 1
+        }
+        1 * complaintRepository.updateCountry(["id-1"], "Pending", "Poland") >> Mono.just(1L)
+    }
+
+    def "should not accept tasks when disabled"() {
+        given:
+        pipeline.enabled = false
+        pipeline.start()
+
+        expect:
+        !pipeline.isEnabled()
+    }
+}
@@ -0,0 +1,206 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.api.dto.ComplaintResponse
+import com.empik.complaint.exception.IdempotencyKeyConflictException
+import com.empik.complaint.exception.IdempotencyKeyMismatchException
+import com.empik.complaint.model.IdempotencyRecord
+import com.empik.complaint.repository.IdempotencyRecordRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.bson.Document
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import reactor.test.StepVerifier
+import reactor.util.context.Context
+import spock.lang.Specification
+
+import java.time.LocalDateTime
+import java.util.concurrent.atomic.AtomicInteger
+
+import static com.empik.complaint.service.IdempotentRequests.Store.MEMORY
+import static com.empik.complaint.service.IdempotentRequests.Store.MONGO
+
+class IdempotentRequestsTest extends Specification {
+
+    static final ComplaintResponse RESPONSE = new ComplaintResponse("id-1", "product-1", "Broken",
+            LocalDateTime.of(2025, 5, 10, 14, 30), null, "Poland")
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    IdempotencyRecordRepository recordRepository = Mock(IdempotencyRecordRepository)
+    MappingMongoConverter converter = converter()
+    AtomicInteger writes = new AtomicInteger()
+
+    def "should run a write once per key and replay its response"() {
+        given:
+        def requests = idempotentRequests(MEMORY)
+
+        when:
+        def first = requests.execute("key-1", "create", ComplaintResponse, write()).block()
+        def second = requests.execute("key-1", "create", ComplaintResponse, write()).block()
+        def other = requests.execute("key-2", "create", ComplaintResponse, write()).block()
+
+        then:
+        !first.replayed()
+        second.replayed()
+        second.response() == RESPONSE
+        !other.replayed()
+        writes.get() == 2
+        meterRegistry.get("complaint.idempotency.replayed").counter().count() == 1
+    }
+
+    def "should coalesce a repeat arriving while the write runs"() {
+        given:
+        def requests = idempotentRequests(MEMORY)
+        def response = Sinks.<ComplaintResponse> one()
+
+        when:
+        def first = requests.execute("key-1", "create", ComplaintResponse, { writes.incrementAndGet(); response.asMono() }).toFuture()
+        def second = requests.execute("key-1", "create", ComplaintResponse, write()).toFuture()
+        response.tryEmitValue(RESPONSE)
+
+        then:
+        first.get().response() == RESPONSE
+        second.get().replayed()
+        writes.get() == 1
+    }
+
+    def "should run the detached write with the context of the request"() {
+        given:
+        def requests = idempotentRequests(MEMORY)
+
+        when:
+        def traced = requests.execute("key-1", "create", ComplaintResponse, {
+            Mono.deferContextual { context -> Mono.just(RESPONSE).filter { context.hasKey("traceId") } }
+        }).contextWrite(Context.of("traceId", "trace-1")).block()
+
+        then:
+        traced.response() == RESPONSE
+    }
+
+    def "should reject a key reused for a different request"() {
+        given:
+        def requests = idempotentRequests(MEMORY)
+        requests.execute("key-1", "create", ComplaintResponse, write()).block()
+
+        expect:
+        StepVerifier.create(requests.execute("key-1", "update", ComplaintResponse, write()))
+                .expectError(IdempotencyKeyMismatchException)
+                .verify()
+        meterRegistry.get("complaint.idempotency.rejected").tag("reason", "mismatch").counter().count() == 1
+    }
+
+    def "should run a failed write again"() {
+        given:
+        def requests = idempotentRequests(MEMORY)
+
+        when:
+        def failed = requests.execute("key-1", "create", ComplaintResponse, { Mono.error(new IllegalStateException("down")) })
+                .onErrorResume { Mono.empty() }.block()
+        def retried = requests.execute("key-1", "create", ComplaintResponse, write()).block()
+
+        then:
+        failed == null
+        !retried.replayed()
+        writes.get() == 1
+    }
+
+    def "should not remember anything without a key or when disabled"() {
+        given:
+        def requests = idempotentRequests(MEMORY)
+        def disabled = new IdempotentRequests(recordRepository, converter, meterRegistry, false, MEMORY, 60_000, 100, 1_000, 100, 10)
+
+        when:
+        requests.execute(null, "create", ComplaintResponse, write()).block()
+        requests.execute(null, "create", ComplaintResponse, write()).block()
+        disabled.execute("key-1", "create", ComplaintResponse, write()).block()
+        disabled.execute("key-1", "create", ComplaintResponse, write()).block()
+
+        then:
+        writes.get() == 4
+    }
+
+    def "should store the response of a claimed key"() {
+        given:
+        def requests = idempotentRequests(MONGO)
+        Document stored = null
+
+        when:
+        def result = requests.execute("key-1", "create", ComplaintResponse, write()).block()
+
+        then:
+        1 * recordRepository.claim(_, _, _, _) >> Mono.just(true)
+        1 * recordRepository.complete(_, _) >> { String id, Document response -> stored = response; Mono.empty() }
+        !result.replayed()
+        converter.read(ComplaintResponse, stored) == RESPONSE
+    }
+
+    def "should replay the response stored by another node"() {
+        given:
+        def requests = idempotentRequests(MONGO)
+        def pending = IdempotencyRecord.builder().fingerprint(hashOf("create")).build()
+        def completed = IdempotencyRecord.builder().fingerprint(hashOf("create")).response(toDocument(RESPONSE)).build()
+
+        when:
+        def result = requests.execute("key-1", "create", ComplaintResponse, write()).block()
+
+        then:
+        2 * recordRepository.claim(_, _, _, _) >> Mono.just(false)
+        2 * recordRepository.find(_) >>> [Mono.just(pending), Mono.just(completed)]
+        result.replayed()
+        result.response() == RESPONSE
+        writes.get() == 0
+    }
+
+    def "should give up waiting for a write still in progress on another node"() {
+        given:
+        def requests = new IdempotentRequests(recordRepository, converter, meterRegistry, true, MONGO, 60_000, 100, 1_000, 0, 10)
+        recordRepository.claim(_, _, _, _) >> Mono.just(false)
+        recordRepository.find(_) >> Mono.just(IdempotencyRecord.builder().fingerprint(hashOf("create")).build())
+
+        expect:
+        StepVerifier.create(requests.execute("key-1", "create", ComplaintResponse, write()))
+                .expectError(IdempotencyKeyConflictException)
+                .verify()
+        writes.get() == 0
+    }
+
+    def "should release the claim of a failed write"() {
+        given:
+        def requests = idempotentRequests(MONGO)
+
+        when:
+        requests.execute("key-1", "create", ComplaintResponse, { Mono.error(new IllegalStateException("down")) })
+                .onErrorResume { Mono.empty() }.block()
+
+        then:
+        1 * recordRepository.claim(_, _, _, _) >> Mono.just(true)
+        1 * recordRepository.release(_) >> Mono.empty()
+        0 * recordRepository.complete(_, _)
+    }
+
+    private IdempotentRequests idempotentRequests(IdempotentRequests.Store store) {
+        new IdempotentRequests(recordRepository, converter, meterRegistry, true, store, 60_000, 100, 1_000, 1_000, 10)
+    }
+
+    private Closure<Mono<ComplaintResponse>> write() {
+        return { Mono.fromCallable { writes.incrementAndGet(); RESPONSE } }
+    }
+
+    private Document toDocument(ComplaintResponse response) {
+        def document = new Document()
+        converter.write(response, document)
+        document
+    }
+
+    private static String hashOf(String value) {
+        java.security.MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8")).encodeHex().toString()
+    }
+
+    private static MappingMongoConverter converter() {
+        def converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext())
+        converter.afterPropertiesSet()
+        converter
+    }
+}
@@ -0,0 +1,139 @@
+package com.empik.complaint.service
+
+import com.empik.complaint.api.dto.ComplaintCreateRequest
+import com.empik.complaint.client.BlockingGeoLocationClient
+import com.empik.complaint.client.GeoLocationClient
+import com.empik.complaint.exception.ComplaintNotFoundException
+import com.empik.complaint.model.Complaint
+import com.empik.complaint.repository.ComplaintIndexInitializer
+import com.empik.complaint.repository.ComplaintRepository
+import org.spockframework.spring.SpringBean
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.DynamicPropertyRegistry
+import org.springframework.test.context.DynamicPropertySource
+import org.testcontainers.containers.MongoDBContainer
+import org.testcontainers.junit.jupiter.Container
+import org.testcontainers.junit.jupiter.Testcontainers
+import org.testcontainers.utility.DockerImageName
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.test.StepVerifier
+import spock.lang.Specification
+
+@SpringBootTest(properties = "application.execution.mode=virtual-threads")
+@Testcontainers
+class VirtualThreadComplaintServiceTest extends Specification {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:5.0.9"))
+
+    private static final String IP_ADDRESS = "83.24.17.5"
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> {
+            if (!mongoDBContainer.isRunning()) {
+                mongoDBContainer.start()
+            }
+            return mongoDBContainer.getReplicaSetUrl()
+        })
+    }
+
+    @Autowired
+    ComplaintOperations complaintOperations
+
+    @Autowired
+    ComplaintRepository complaintRepository
+
+    @Autowired
+    ComplaintIndexInitializer complaintIndexInitializer
+
+    @SpringBean
+    GeoLocationClient geoLocationClient = Stub(GeoLocationClient) {
+        getCountryFromIp(_) >> Mono.just("Poland")
+    }
+
+    @SpringBean
+    BlockingGeoLocationClient blockingGeoLocationClient = Mock(BlockingGeoLocationClient)
+
+    List<Thread> lookupThreads = [].asSynchronized()
+
+    def setup() {
+        complaintRepository.deleteAll().block()
+        complaintIndexInitializer.ensureIndexes().block()
+    }
+
+    def "should serve the API's single-complaint operations"() {
+        expect:
+        complaintOperations instanceof VirtualThreadComplaintService
+    }
+
+    def "should create, increment, update and read complaints on virtual threads"() {
+        given:
+        blockingGeoLocationClient.resolveCountry(IP_ADDRESS) >> { lookupThreads << Thread.currentThread(); "Poland" }
+        def request = new ComplaintCreateRequest("product-1", "Broken", "customer-1")
+
+        when:
+        def created = complaintOperations.createComplaint(request, IP_ADDRESS).block()
+        def incremented = complaintOperations.createComplaint(request, IP_ADDRESS).block()
+        def updated = complaintOperations.updateComplaintContent(created.id, "Still broken", IP_ADDRESS).block()
+        def read = complaintOperations.getComplaintById(created.id).block()
+
+        then:
+        created.country == "Poland"
+        created.counter == 1
+        incremented.id == created.id
+        incremented.counter == 2
+        updated.content == "Still broken"
+        updated.updateDate != null
+        read.content == "Still broken"
+        with(complaintRepository.findById(created.id).block()) {
+            counter == 2
+            content == "Still broken"
+        }
+        lookupThreads.size() == 1
+        lookupThreads.every { it.virtual }
+    }
+
+    def "should count every one of parallel duplicate creates"() {
+        given:
+        blockingGeoLocationClient.resolveCountry(_) >> "Poland"
+        def request = new ComplaintCreateRequest("product-1", "Broken", "customer-1")
+
+        when:
+        Flux.range(0, 200)
+                .flatMap({ complaintOperations.createComplaint(request, IP_ADDRESS) }, 200)
+                .blockLast()
+
+        then:
+        complaintRepository.findByProductIdAndComplainantId("product-1", "customer-1").block().counter == 200
+    }
+
+    def "should resolve a missing country when the content is updated"() {
+        given:
+        def saved = complaintRepository.save(Complaint.builder()
+                .productId("product-1")
+                .complainantId("customer-1")
+                .content("Broken")
+                .country(GeoLocationClient.UNKNOWN_COUNTRY)
+                .build()).block()
+
+        when:
+        def updated = complaintOperations.updateComplaintContent(saved.id, "Still broken", IP_ADDRESS).block()
+
+        then:
+        1 * blockingGeoLocationClient.resolveCountry(IP_ADDRESS) >> "Poland"
+        updated.country == "Poland"
+    }
+
+    def "should fail for a complaint that does not exist"() {
+        expect:
+        StepVerifier.create(complaintOperations.getComplaintById("missing"))
+                .expectError(ComplaintNotFoundException)
+                .verify()
+        StepVerifier.create(complaintOperations.updateComplaintContent("missing", "Content", IP_ADDRESS))
+                .expectError(ComplaintNotFoundException)
+                .verify()
+    }
+}